@@ -49,6 +49,13 @@ public abstract class AbstractPushModule extends AMLoginModule {
     /** Used to make the polling occur every second. Not recommended to be set in production. **/
     protected final String nearInstantProperty = "com.forgerock.openam.authentication.push.nearinstant";
 
+    /**
+     * Milliseconds for which each poll is held open waiting for the response, defaults to 0 (disabled). Intended
+     * for use with the cluster notification of responses, which completes the wait as soon as any server receives
+     * the response.
+     **/
+    protected final String longPollProperty = "com.forgerock.openam.authentication.push.longpoll";
+
     /** Used to store tokens which may be updated by other machines in the cluster. **/
     protected final CTSPersistentStore coreTokenService = InjectorHolder.getInstance(CTSPersistentStore.class);
 
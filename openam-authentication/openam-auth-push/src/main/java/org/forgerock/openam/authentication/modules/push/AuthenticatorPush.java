@@ -48,6 +48,7 @@ import org.forgerock.openam.cts.exceptions.CoreTokenException;
 import org.forgerock.openam.services.push.PushMessage;
 import org.forgerock.openam.services.push.PushNotificationConstants;
 import org.forgerock.openam.services.push.PushNotificationException;
+import org.forgerock.openam.services.push.dispatch.MessageDispatcher;
 import org.forgerock.openam.services.push.dispatch.MessagePromise;
 import org.forgerock.openam.services.push.dispatch.Predicate;
 import org.forgerock.openam.services.push.dispatch.PushMessageChallengeResponsePredicate;
@@ -94,6 +95,7 @@ public class AuthenticatorPush extends AbstractPushModule {
     private PushDeviceSettings device;
 
     private PollingWaitAssistant pollingWaitAssistant;
+    private long longPollWait;
     private long expireTime;
 
     private String pushMessage;
@@ -123,6 +125,7 @@ public class AuthenticatorPush extends AbstractPushModule {
         } else {
             pollingWaitAssistant = new PollingWaitAssistant(timeout);
         }
+        longPollWait = SystemPropertiesManager.getAsInt(longPollProperty, 0);
 
         pushMessage = CollectionHelper.getMapAttr(options, DEVICE_PUSH_MESSAGE);
 
@@ -250,10 +253,16 @@ public class AuthenticatorPush extends AbstractPushModule {
     }
 
     private int waitingChecks() throws AuthLoginException {
+        if (longPollWait > 0 && pollingWaitAssistant.awaitCompletion(longPollWait)) {
+            return completeChecks();
+        }
+
         try {
-            Boolean ctsValue = checkCTSAuth(messageId);
+            MessageDispatcher messageDispatcher = pushService.getMessageDispatcher(realm);
+            // responses received by other servers complete the promise directly while the cluster is notified
+            Boolean ctsValue = messageDispatcher.isClusterNotified() ? null : checkCTSAuth(messageId);
             if (ctsValue != null) {
-                pushService.getMessageDispatcher(realm).forget(messageId);
+                messageDispatcher.forget(messageId);
                 coreTokenService.deleteAsync(messageId);
 
                 if (ctsValue) {
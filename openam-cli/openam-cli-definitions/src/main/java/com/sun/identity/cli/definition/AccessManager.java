@@ -86,9 +86,16 @@ public class AccessManager {
           macro="authentication",
           optionalOptions={
                   "batchstatus|b|s|Name of status file.",
-                  "continue|c|u|Continue processing the rest of the request when preceeding request was erroneous."},
+                  "continue|c|u|Continue processing the rest of the request when preceeding request was erroneous.",
+                  "threads|t|s|Number of requests to process concurrently, sharing the administrator session. The status of each request is printed as it completes, and written to the status file in the order of the batch file.",
+                  "checkpoint|k|s|Name of file recording the requests which succeeded, used to resume the batch. It is refused for a batch file with different requests."},
           resourceStrings={
                   "bulk-op-empty-datafile=Batch file, {0} was empty.",
+                  "bulk-op-invalid-threads=Number of threads, {0} was not a positive integer.",
+                  "bulk-op-checkpoint-mismatch=Checkpoint file, {0} was written for a different batch file. Remove it, or use another checkpoint file, to run this batch.",
+                  "bulk-op-resume-checkpoint=Resuming from checkpoint file, {0}. {1} requests have already succeeded.",
+                  "bulk-op-request-status=[{0}/{1}] {2} {3}",
+                  "bulk-op-throughput=Processed {0} requests ({1} failed, {2} skipped) in {3} ms, {4} requests per second.",
                   "unmatch-quote=Unmatched '.",
                   "unmatch-doublequote=Unmatched \"."})
   private String do_batch;
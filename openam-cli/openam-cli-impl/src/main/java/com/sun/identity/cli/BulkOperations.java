@@ -24,22 +24,53 @@
  *
  * $Id: BulkOperations.java,v 1.7 2008/10/30 18:23:18 veiming Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.cli;
 
 import com.iplanet.sso.SSOToken;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Multiple requests command.
+ * <p>
+ * By default the requests are queued and processed one after another by the
+ * command manager. If a number of threads or a checkpoint file is given, the
+ * requests are processed by this command with a pool of worker threads sharing
+ * the administrator session; the status of each request is printed as it
+ * completes, and written to the status file in the order of the batch file.
+ * The number of each successful request is recorded in the checkpoint file,
+ * after a hash of the batch, so that a failed batch can be resumed by running
+ * it again with the same checkpoint file; a checkpoint file written for another
+ * batch is refused. The throughput is reported at the end.
  */
 public class BulkOperations extends AuthenticatedCommand {
     private static final String BATCH_FILE = "batchfile";
     private static final String STATUS_FILE = "batchstatus";
+    private static final String THREADS = "threads";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String CHECKPOINT_HASH_PREFIX = "#batch ";
     
     public void handleRequest(RequestContext rc) 
         throws CLIException {
@@ -64,6 +95,21 @@ public class BulkOperations extends AuthenticatedCommand {
         }
 
         CLIRequest req = rc.getCLIRequest();
+        int threads = getThreads();
+        String checkpointFileName = getStringOptionValue(CHECKPOINT_FILE);
+
+        if ((threads > 1) || (checkpointFileName != null)) {
+            List<CLIRequest> requests = new ArrayList<CLIRequest>();
+            for (Iterator i = entries.iterator(); i.hasNext(); ) {
+                String argv = (String)i.next();
+                requests.add(new CLIRequest(req, makeStringArray(argv),
+                    ssoToken));
+            }
+            new ParallelBatch(requests, hash(entries), threads, continueFlag,
+                statusFileName, checkpointFileName).process();
+            return;
+        }
+
         CommandManager mgr = getCommandManager();
         mgr.setContinueFlag(continueFlag);
         mgr.setStatusFileName(statusFileName);
@@ -75,6 +121,48 @@ public class BulkOperations extends AuthenticatedCommand {
         }
     }
 
+    private int getThreads()
+        throws CLIException {
+        String strThreads = getStringOptionValue(THREADS);
+        if ((strThreads == null) || (strThreads.trim().length() == 0)) {
+            return 1;
+        }
+        try {
+            int threads = Integer.parseInt(strThreads.trim());
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        String[] arg = {strThreads};
+        throw new CLIException(MessageFormat.format(
+            getResourceString("bulk-op-invalid-threads"), (Object[])arg),
+            ExitCodes.INVALID_OPTION_VALUE);
+    }
+
+    /**
+     * Returns the SHA-256 hash of the entries of a batch, in hexadecimal.
+     */
+    static String hash(List entries)
+        throws CLIException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Iterator i = entries.iterator(); i.hasNext(); ) {
+                digest.update(((String)i.next()).trim().getBytes(
+                    StandardCharsets.UTF_8));
+                digest.update((byte)'\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new CLIException(e, ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+        }
+    }
+
     private String[] makeStringArray(String argv)
         throws CLIException
     {
@@ -164,4 +252,280 @@ public class BulkOperations extends AuthenticatedCommand {
             }
         }
     }
+
+    /**
+     * Processes the requests of a batch with a pool of worker threads.
+     */
+    final class ParallelBatch {
+        private final List<CLIRequest> requests;
+        private final String batchHash;
+        private final int threads;
+        private final boolean continueFlag;
+        private final String statusFileName;
+        private final String checkpointFileName;
+        private final Set<Integer> completed;
+        // status lines, written to the status file in the order of the batch
+        private final String[] statuses;
+        private final boolean[] done;
+        private int nextStatus;
+        private boolean checkpointStarted;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile boolean stopped;
+        private CLIException firstError;
+        private OutputStream statusOS;
+        private OutputStream checkpointOS;
+
+        ParallelBatch(List<CLIRequest> requests, String batchHash,
+            int threads, boolean continueFlag, String statusFileName,
+            String checkpointFileName) throws CLIException {
+            this.requests = requests;
+            this.batchHash = batchHash;
+            this.threads = Math.min(threads, requests.size());
+            this.continueFlag = continueFlag;
+            this.statusFileName = statusFileName;
+            this.checkpointFileName = checkpointFileName;
+            this.completed = readCheckpoint();
+            this.statuses = new String[requests.size()];
+            this.done = new boolean[requests.size()];
+            for (Integer entry : completed) {
+                done[entry - 1] = true;
+            }
+        }
+
+        void process()
+            throws CLIException {
+            IOutput outputWriter = getOutputWriter();
+            if (!completed.isEmpty()) {
+                Object[] arg = {checkpointFileName,
+                    Integer.toString(completed.size())};
+                outputWriter.printlnMessage(MessageFormat.format(
+                    getResourceString("bulk-op-resume-checkpoint"), arg));
+            }
+
+            long start = System.currentTimeMillis();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                boolean resuming = !completed.isEmpty();
+                if ((statusFileName != null) &&
+                    (statusFileName.trim().length() > 0)
+                ) {
+                    statusOS = new FileOutputStream(statusFileName, resuming);
+                }
+                if (checkpointFileName != null) {
+                    checkpointOS = new FileOutputStream(checkpointFileName,
+                        true);
+                    if (!checkpointStarted) {
+                        checkpointOS.write((CHECKPOINT_HASH_PREFIX +
+                            batchHash + "\n").getBytes(
+                            StandardCharsets.UTF_8));
+                        checkpointOS.flush();
+                    }
+                }
+
+                for (int i = 0; i < threads; i++) {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            processRequests();
+                        }
+                    });
+                }
+                executor.shutdown();
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // wait for the workers to process every request
+                }
+            } catch (IOException e) {
+                throw new CLIException(e,
+                    ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+                throw new CLIException(e,
+                    ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            } finally {
+                executor.shutdownNow();
+                writeRemainingStatuses();
+                close(statusOS);
+                close(checkpointOS);
+            }
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            int count = processed.get();
+            Object[] args = {Integer.toString(count),
+                Integer.toString(failed.get()),
+                Integer.toString(completed.size()), Long.toString(elapsed),
+                String.format("%.1f", (count * 1000.0) / elapsed)};
+            outputWriter.printlnMessage(MessageFormat.format(
+                getResourceString("bulk-op-throughput"), args));
+
+            if (firstError != null) {
+                throw firstError;
+            }
+            if ((checkpointFileName != null) && (failed.get() == 0)) {
+                // the batch is complete, so a rerun starts from the beginning
+                new File(checkpointFileName).delete();
+            }
+        }
+
+        private void processRequests() {
+            CommandManager mgr = getCommandManager();
+            while (!stopped) {
+                int index = next.getAndIncrement();
+                if (index >= requests.size()) {
+                    return;
+                }
+                int entry = index + 1;
+                if (completed.contains(entry)) {
+                    continue;
+                }
+
+                CLIRequest req = requests.get(index);
+                CLIException error = null;
+                try {
+                    req.process(mgr);
+                } catch (CLIException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new CLIException(e,
+                        ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+                }
+                completed(entry, req, error);
+            }
+        }
+
+        private synchronized void completed(int entry, CLIRequest req,
+            CLIException error) {
+            IOutput outputWriter = getOutputWriter();
+            int exitCode = (error == null) ? 0 : error.getExitCode();
+            processed.incrementAndGet();
+            Object[] args = {Integer.toString(entry),
+                Integer.toString(requests.size()), Integer.toString(exitCode),
+                CLIRequest.addAllArgs(req.getOptions()).trim()};
+            outputWriter.printlnMessage(MessageFormat.format(
+                getResourceString("bulk-op-request-status"), args));
+
+            try {
+                statuses[entry - 1] = CommandManager.formatStatus(
+                    req.getOptions(), exitCode);
+                done[entry - 1] = true;
+                writeStatuses();
+                if ((error == null) && (checkpointOS != null)) {
+                    checkpointOS.write((entry + "\n").getBytes(
+                        StandardCharsets.UTF_8));
+                    checkpointOS.flush();
+                }
+            } catch (IOException e) {
+                if (firstError == null) {
+                    firstError = new CLIException(e,
+                        ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+                }
+                stopped = true;
+            }
+
+            if (error != null) {
+                failed.incrementAndGet();
+                if (isVerbose()) {
+                    error.printStackTrace(System.out);
+                }
+                if (continueFlag) {
+                    outputWriter.printlnError(error.getMessage());
+                } else {
+                    if (firstError == null) {
+                        firstError = error;
+                    }
+                    stopped = true;
+                }
+            }
+        }
+
+        /**
+         * Writes the statuses of the requests completed without a request
+         * still in progress before them in the batch.
+         */
+        private void writeStatuses()
+            throws IOException {
+            while ((nextStatus < done.length) && done[nextStatus]) {
+                writeStatus(statuses[nextStatus]);
+                statuses[nextStatus++] = null;
+            }
+        }
+
+        /**
+         * Writes the statuses of the requests completed after a request which
+         * did not complete, when the batch is stopped.
+         */
+        private synchronized void writeRemainingStatuses() {
+            try {
+                for (; nextStatus < statuses.length; nextStatus++) {
+                    writeStatus(statuses[nextStatus]);
+                }
+            } catch (IOException e) {
+                if (firstError == null) {
+                    firstError = new CLIException(e,
+                        ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+                }
+            }
+        }
+
+        private void writeStatus(String status)
+            throws IOException {
+            if ((statusOS != null) && (status != null)) {
+                statusOS.write(status.getBytes());
+            }
+        }
+
+        private Set<Integer> readCheckpoint()
+            throws CLIException {
+            Set<Integer> entries = new HashSet<Integer>();
+            if ((checkpointFileName == null) ||
+                !new File(checkpointFileName).exists()
+            ) {
+                return entries;
+            }
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(checkpointFileName),
+                    StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                if (line == null) {
+                    return entries;
+                }
+                if (!line.equals(CHECKPOINT_HASH_PREFIX + batchHash)) {
+                    String[] arg = {checkpointFileName};
+                    throw new CLIException(MessageFormat.format(
+                        getResourceString("bulk-op-checkpoint-mismatch"),
+                        (Object[])arg), ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+                }
+                checkpointStarted = true;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        int entry = Integer.parseInt(line.trim());
+                        if ((entry > 0) && (entry <= requests.size())) {
+                            entries.add(entry);
+                        }
+                    } catch (NumberFormatException e) {
+                        // ignore a line left incomplete by a failure
+                    }
+                }
+            } catch (IOException e) {
+                throw new CLIException(e,
+                    ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            } finally {
+                close(reader);
+            }
+            return entries;
+        }
+
+        private void close(Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException ex) {
+                    // ignored
+                }
+            }
+        }
+    }
 }
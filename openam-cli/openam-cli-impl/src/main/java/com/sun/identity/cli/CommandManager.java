@@ -24,7 +24,7 @@
  *
  * $Id: CommandManager.java,v 1.37 2010/01/28 00:47:10 bigfatrat Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  * Portions Copyrighted 2014 Nomura Research Institute, Ltd
  */
 
@@ -35,6 +35,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -83,7 +84,7 @@ public class CommandManager {
     private List requestQueue = new Vector();
     private boolean bContinue;
     public static InitializeSystem initSys;
-    private Set ssoTokens = new HashSet();
+    private Set ssoTokens = Collections.synchronizedSet(new HashSet());
     private static boolean importSvcCmd;
 
     static {
@@ -613,7 +614,7 @@ public class CommandManager {
         }
     }
     
-    private static String formatStatus(String[] options, int exitCode) {
+    static String formatStatus(String[] options, int exitCode) {
         String strCode = Integer.toString(exitCode);
         if (exitCode < 10) {
             strCode = "  " + strCode;
@@ -0,0 +1,213 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.cli;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BulkOperationsTest {
+
+    private static final List<String> ENTRIES = Arrays.asList("first", "second", "third");
+
+    private BulkOperations operations;
+    private List<String> processed;
+    private File statusFile;
+    private File checkpointFile;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        operations = new TestBulkOperations();
+        processed = Collections.synchronizedList(new ArrayList<String>());
+        statusFile = File.createTempFile("batchstatus", ".txt");
+        checkpointFile = File.createTempFile("checkpoint", ".txt");
+        checkpointFile.delete();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        statusFile.delete();
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void shouldWriteStatusFileInRequestOrderWhateverTheOrderRequestsComplete() throws Exception {
+        // Given
+        CountDownLatch thirdDone = new CountDownLatch(1);
+        List<CLIRequest> requests = Arrays.<CLIRequest>asList(
+                new TestRequest("first", thirdDone, null, false),
+                new TestRequest("second", null, null, false),
+                new TestRequest("third", null, thirdDone, false));
+
+        // When
+        batch(requests, 3, null).process();
+
+        // Then
+        assertThat(processed.indexOf("third")).isLessThan(processed.indexOf("first"));
+        assertThat(read(statusFile)).containsExactly("  0 first ", "  0 second ", "  0 third ");
+    }
+
+    @Test
+    public void shouldResumeFromCheckpointWithTheRequestsWhichDidNotSucceed() throws Exception {
+        // Given
+        batch(requests(false, true, false), 1, checkpointFile.getPath()).processFailing();
+        processed.clear();
+
+        // When
+        batch(requests(false, false, false), 1, checkpointFile.getPath()).process();
+
+        // Then
+        assertThat(processed).containsExactly("second", "third");
+        assertThat(read(statusFile)).containsExactly("  0 first ",
+                status("second", ExitCodes.REQUEST_CANNOT_BE_PROCESSED), "  0 second ", "  0 third ");
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    public void shouldRefuseCheckpointWrittenForADifferentBatchFile() throws Exception {
+        // Given
+        String otherBatch = BulkOperations.hash(Arrays.asList("first", "other", "third"));
+        Files.write(checkpointFile.toPath(), Arrays.asList("#batch " + otherBatch, "1"), StandardCharsets.UTF_8);
+
+        // When
+        try {
+            batch(requests(false, false, false), 1, checkpointFile.getPath());
+            fail("Expected CLIException");
+        } catch (CLIException e) {
+            // Then
+            assertThat(e.getExitCode()).isEqualTo(ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            assertThat(e.getMessage()).isEqualTo("bulk-op-checkpoint-mismatch");
+        }
+        assertThat(processed).isEmpty();
+        assertThat(read(checkpointFile)).containsExactly("#batch " + otherBatch, "1");
+    }
+
+    private TestBatch batch(List<CLIRequest> requests, int threads, String checkpoint) throws CLIException {
+        return new TestBatch(operations.new ParallelBatch(requests, BulkOperations.hash(ENTRIES), threads, false,
+                statusFile.getPath(), checkpoint));
+    }
+
+    private List<CLIRequest> requests(boolean... failures) {
+        List<CLIRequest> requests = new ArrayList<>();
+        for (int i = 0; i < failures.length; i++) {
+            requests.add(new TestRequest(ENTRIES.get(i), null, null, failures[i]));
+        }
+        return requests;
+    }
+
+    private static String status(String option, int exitCode) {
+        String status = CommandManager.formatStatus(new String[] {option}, exitCode);
+        return status.substring(0, status.length() - 1);
+    }
+
+    private static List<String> read(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static final class TestBatch {
+        private final BulkOperations.ParallelBatch batch;
+
+        private TestBatch(BulkOperations.ParallelBatch batch) {
+            this.batch = batch;
+        }
+
+        private void process() throws CLIException {
+            batch.process();
+        }
+
+        private void processFailing() {
+            try {
+                batch.process();
+                fail("Expected CLIException");
+            } catch (CLIException e) {
+                assertThat(e.getExitCode()).isEqualTo(ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            }
+        }
+    }
+
+    private final class TestRequest extends CLIRequest {
+        private final String name;
+        private final CountDownLatch awaited;
+        private final CountDownLatch signalled;
+        private final boolean failing;
+
+        private TestRequest(String name, CountDownLatch awaited, CountDownLatch signalled, boolean failing) {
+            super(null, new String[] {name});
+            this.name = name;
+            this.awaited = awaited;
+            this.signalled = signalled;
+            this.failing = failing;
+        }
+
+        @Override
+        public void process(CommandManager mgr) throws CLIException {
+            try {
+                if (awaited != null && !awaited.await(5, TimeUnit.SECONDS)) {
+                    throw new CLIException("timed out", ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+                }
+            } catch (InterruptedException e) {
+                throw new CLIException(e, ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            }
+            processed.add(name);
+            if (signalled != null) {
+                signalled.countDown();
+            }
+            if (failing) {
+                throw new CLIException(name + " failed", ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
+            }
+        }
+    }
+
+    private static final class TestBulkOperations extends BulkOperations {
+        private final IOutput outputWriter = mock(IOutput.class);
+
+        @Override
+        protected IOutput getOutputWriter() {
+            return outputWriter;
+        }
+
+        @Override
+        protected String getResourceString(String key) {
+            return key;
+        }
+
+        @Override
+        protected CommandManager getCommandManager() {
+            return null;
+        }
+
+        @Override
+        protected boolean isVerbose() {
+            return false;
+        }
+    }
+}
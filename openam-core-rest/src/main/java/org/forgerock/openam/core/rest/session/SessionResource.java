@@ -78,6 +78,7 @@ import org.forgerock.openam.core.rest.session.action.GetPropertyNamesActionHandl
 import org.forgerock.openam.core.rest.session.action.GetTimeLeftActionHandler;
 import org.forgerock.openam.core.rest.session.action.IsActiveActionHandler;
 import org.forgerock.openam.core.rest.session.action.LogoutActionHandler;
+import org.forgerock.openam.core.rest.session.action.SessionUpdatesActionHandler;
 import org.forgerock.openam.core.rest.session.action.SetPropertyActionHandler;
 import org.forgerock.openam.core.rest.session.action.ValidateActionHandler;
 import org.forgerock.openam.rest.RestUtils;
@@ -87,6 +88,7 @@ import org.forgerock.services.context.Context;
 import org.forgerock.util.promise.Promise;
 
 import com.iplanet.am.util.SystemProperties;
+import com.iplanet.dpro.session.service.SessionService;
 import com.iplanet.dpro.session.share.SessionInfo;
 import com.iplanet.services.naming.WebtopNaming;
 import com.iplanet.sso.SSOTokenManager;
@@ -170,11 +172,12 @@ public class SessionResource implements CollectionResourceProvider {
      * @param authUtilsWrapper An instance of AuthUtilsWrapper
      * @param sessionPropertyWhitelist An instance of sessionPropertyWhitelist.
      * @param sessionResourceUtil An instance of the SessionResourceUtil.
+     * @param sessionService An instance of the SessionService.
      */
     @Inject
     public SessionResource(final SSOTokenManager ssoTokenManager, final AuthUtilsWrapper authUtilsWrapper,
             final SessionPropertyWhitelist sessionPropertyWhitelist,
-            final SessionResourceUtil sessionResourceUtil) {
+            final SessionResourceUtil sessionResourceUtil, final SessionService sessionService) {
         this.ssoTokenManager = ssoTokenManager;
         this.authUtilsWrapper = authUtilsWrapper;
         this.sessionPropertyWhitelist = sessionPropertyWhitelist;
@@ -191,10 +194,10 @@ public class SessionResource implements CollectionResourceProvider {
         actionHandlers.put(GET_TIME_LEFT_ACTION_ID, new GetTimeLeftActionHandler(sessionResourceUtil));
         actionHandlers.put(GET_PROPERTY_ACTION_ID,
                 new GetPropertyActionHandler(sessionPropertyWhitelist, sessionResourceUtil));
-        actionHandlers.put(SET_PROPERTY_ACTION_ID,
-                new SetPropertyActionHandler(sessionPropertyWhitelist, sessionResourceUtil));
-        actionHandlers.put(DELETE_PROPERTY_ACTION_ID,
-                new DeletePropertyActionHandler(sessionPropertyWhitelist, sessionResourceUtil));
+        actionHandlers.put(SET_PROPERTY_ACTION_ID, new SessionUpdatesActionHandler(sessionService,
+                new SetPropertyActionHandler(sessionPropertyWhitelist, sessionResourceUtil)));
+        actionHandlers.put(DELETE_PROPERTY_ACTION_ID, new SessionUpdatesActionHandler(sessionService,
+                new DeletePropertyActionHandler(sessionPropertyWhitelist, sessionResourceUtil)));
         actionHandlers.put(GET_PROPERTY_NAMES_ACTION_ID, new GetPropertyNamesActionHandler(sessionPropertyWhitelist));
     }
 
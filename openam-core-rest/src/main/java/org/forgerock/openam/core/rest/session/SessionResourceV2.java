@@ -69,6 +69,7 @@ import org.forgerock.openam.core.rest.session.action.GetSessionPropertiesActionH
 import org.forgerock.openam.core.rest.session.action.LogoutActionHandler;
 import org.forgerock.openam.core.rest.session.action.LogoutByHandleActionHandler;
 import org.forgerock.openam.core.rest.session.action.RefreshActionHandler;
+import org.forgerock.openam.core.rest.session.action.SessionUpdatesActionHandler;
 import org.forgerock.openam.core.rest.session.action.UpdateSessionPropertiesActionHandler;
 import org.forgerock.openam.dpro.session.PartialSession;
 import org.forgerock.openam.rest.RestUtils;
@@ -146,8 +147,8 @@ public class SessionResourceV2 implements CollectionResourceProvider {
         actionHandlers.put(GET_SESSION_INFO_ACTION_ID, new GetSessionInfoActionHandler(sessionResourceUtil));
         actionHandlers.put(GET_SESSION_PROPERTIES_ACTION_ID,
                 new GetSessionPropertiesActionHandler(sessionPropertyWhitelist, sessionResourceUtil));
-        actionHandlers.put(UPDATE_SESSION_PROPERTIES_ACTION_ID,
-                new UpdateSessionPropertiesActionHandler(sessionPropertyWhitelist, sessionResourceUtil));
+        actionHandlers.put(UPDATE_SESSION_PROPERTIES_ACTION_ID, new SessionUpdatesActionHandler(sessionService,
+                new UpdateSessionPropertiesActionHandler(sessionPropertyWhitelist, sessionResourceUtil)));
         actionHandlers.put(LOGOUT_BY_HANDLE_ACTION_ID, new LogoutByHandleActionHandler());
     }
 
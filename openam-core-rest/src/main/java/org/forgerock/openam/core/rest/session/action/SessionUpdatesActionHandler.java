@@ -0,0 +1,61 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.core.rest.session.action;
+
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+
+import com.iplanet.dpro.session.service.SessionService;
+
+/**
+ * Runs an action which sets several properties of a session as a single session unit of work, so that the session
+ * is persisted once rather than once for each property, if coalescing is enabled.
+ * <p>
+ * The decorated handler must complete its work before returning, as the unit of work ends when it returns.
+ *
+ * @see SessionService#beginSessionUpdates()
+ * @since 14.0.0
+ */
+public class SessionUpdatesActionHandler implements ActionHandler {
+
+    private final SessionService sessionService;
+    private final ActionHandler delegate;
+
+    /**
+     * Constructs a SessionUpdatesActionHandler instance.
+     *
+     * @param sessionService The session service, which brackets the unit of work.
+     * @param delegate The handler updating the session properties.
+     */
+    public SessionUpdatesActionHandler(SessionService sessionService, ActionHandler delegate) {
+        this.sessionService = sessionService;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Promise<ActionResponse, ResourceException> handle(String tokenId, Context context,
+            ActionRequest request) {
+        sessionService.beginSessionUpdates();
+        try {
+            return delegate.handle(tokenId, context, request);
+        } finally {
+            sessionService.endSessionUpdates();
+        }
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.core.rest.session;
@@ -31,6 +31,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.testng.AssertJUnit.*;
 
+import com.iplanet.dpro.session.service.SessionService;
 import com.iplanet.services.naming.WebtopNamingQuery;
 import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
@@ -148,7 +149,7 @@ public class SessionResourceTest {
         });
 
         sessionResource = new SessionResource(ssoTokenManager, authUtilsWrapper,
-                propertyWhitelist, sessionResourceUtil) {
+                propertyWhitelist, sessionResourceUtil, mock(SessionService.class)) {
 
             @Override
             protected String getTokenIdFromHeader(Context context, String cookieName) {
@@ -196,7 +197,7 @@ public class SessionResourceTest {
         SessionResourceUtil sessionResourceUtil = spy(new SessionResourceUtil(null, mockManager, null));
         List<String> list = Arrays.asList(badger, weasel);
         doReturn(list).when(sessionResourceUtil).getAllServerIds();
-        SessionResource resource = new SessionResource(null, null, null, sessionResourceUtil);
+        SessionResource resource = new SessionResource(null, null, null, sessionResourceUtil, null);
 
 
         // When
@@ -219,7 +220,7 @@ public class SessionResourceTest {
 
 
         SessionResourceUtil sessionResourceUtil = spy(new SessionResourceUtil(null, mockManager, null));
-        SessionResource resource = new SessionResource(null, null, null, sessionResourceUtil);
+        SessionResource resource = new SessionResource(null, null, null, sessionResourceUtil, null);
 
         // When
         resource.queryCollection(null, request, mockHandler);
@@ -33,6 +33,8 @@ import org.forgerock.openam.session.SessionEventType;
 import org.forgerock.openam.utils.Time;
 import org.forgerock.util.Reject;
 
+import com.iplanet.dpro.session.share.SessionInfo;
+
 /**
  * This class represents a session event.
  *
@@ -44,6 +46,7 @@ public class InternalSessionEvent {
     private final InternalSession internalSession;
     private final SessionEventType eventType;
     private final long eventTime;
+    private SessionInfo sessionInfo;
 
     /**
      * Creates a new event.
@@ -78,6 +81,24 @@ public class InternalSessionEvent {
         return internalSession;
     }
 
+    /**
+     * Gets the state of the session which emitted this event, as it was when the event was queued to be dispatched
+     * asynchronously, or as it is now if the event was not queued.
+     *
+     * @return The state of the session.
+     */
+    public SessionInfo getSessionInfo() {
+        return sessionInfo != null ? sessionInfo : internalSession.toSessionInfo();
+    }
+
+    /**
+     * Captures the state of the session, before the event is handed over to another thread while the session may
+     * still change.
+     */
+    void captureSessionInfo() {
+        sessionInfo = internalSession.toSessionInfo();
+    }
+
     /**
      * Gets the type of event that has occurred.
      * 
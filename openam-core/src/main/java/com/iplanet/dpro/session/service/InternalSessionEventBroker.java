@@ -15,26 +15,310 @@
  */
 package com.iplanet.dpro.session.service;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.inject.Singleton;
 import javax.inject.Inject;
 
+import org.forgerock.util.thread.ExecutorServiceFactory;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.dpro.session.SessionID;
+import com.sun.identity.shared.debug.Debug;
+
 /**
  * Propagates {@link InternalSessionEvent} to fixed set of observers.
+ * <p>
+ * By default every observer is notified on the thread which caused the event. If asynchronous dispatch is enabled
+ * with the {@link #ASYNC_ENABLED} system property, only the {@link SynchronousInternalSessionListener}s are notified
+ * on that thread; the event is then queued for the other observers on one of a number of partitions, chosen by the
+ * session ID so that the events of a session are delivered in the order in which they occurred. A thread calling
+ * {@link #onEvent(InternalSessionEvent)} blocks while the queue of its partition is full, even if it is interrupted.
+ * The state of the session is captured when the event is queued, and is available to the observers through
+ * {@link InternalSessionEvent#getSessionInfo()}. Events still queued when the server shuts down are not delivered.
  */
 @Singleton
 public class InternalSessionEventBroker implements InternalSessionListener {
 
-    private final InternalSessionListener[] listeners;
+    /**
+     * System property enabling the asynchronous dispatch of events.
+     */
+    public static final String ASYNC_ENABLED = "org.forgerock.openam.session.events.async.enabled";
+    /**
+     * System property defining the number of partitions, each with its own queue and thread, events are dispatched on.
+     */
+    public static final String ASYNC_PARTITIONS = "org.forgerock.openam.session.events.async.partitions";
+    /**
+     * System property defining the number of events which may be queued on each partition.
+     */
+    public static final String ASYNC_QUEUE_SIZE = "org.forgerock.openam.session.events.async.queueSize";
 
+    private static final int DEFAULT_PARTITIONS = 4;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final String THREAD_POOL_NAME = "InternalSessionEventBroker";
+
+    /** Marks the threads dispatching queued events, so that events raised by observers are not queued behind them. */
+    private static final ThreadLocal<Boolean> DISPATCHING = new ThreadLocal<>();
+
+    private final InternalSessionListener[] synchronousListeners;
+    private final InternalSessionListener[] asynchronousListeners;
+    private final ListenerStatistics[] statistics;
+    private final List<BlockingQueue<QueuedEvent>> partitions = new ArrayList<>();
+    private final Debug debug;
+    private final AtomicLong blocked = new AtomicLong();
+
+    /**
+     * Creates a broker which notifies every observer on the thread which caused the event.
+     *
+     * @param listeners The observers.
+     */
     @Inject
     public InternalSessionEventBroker(final InternalSessionListener... listeners){
-        this.listeners = listeners;
+        this(null, 0, 0, null, listeners);
+    }
+
+    /**
+     * Creates a broker which dispatches events asynchronously if configured to by the system properties.
+     *
+     * @param executorServiceFactory Creates the threads dispatching queued events.
+     * @param debug The session debug instance.
+     * @param listeners The observers.
+     */
+    public InternalSessionEventBroker(ExecutorServiceFactory executorServiceFactory, Debug debug,
+            InternalSessionListener... listeners) {
+        this(SystemProperties.getAsBoolean(ASYNC_ENABLED, false)
+                        ? executorServiceFactory.createFixedThreadPool(getPartitionCount(), THREAD_POOL_NAME)
+                        : null,
+                getPartitionCount(), SystemProperties.getAsInt(ASYNC_QUEUE_SIZE, DEFAULT_QUEUE_SIZE), debug,
+                listeners);
+    }
+
+    /**
+     * Creates a broker which dispatches events on the given executor, or synchronously if it is null.
+     *
+     * @param executor Runs one dispatching thread for each partition.
+     * @param partitionCount The number of partitions.
+     * @param queueSize The number of events which may be queued on each partition.
+     * @param debug The session debug instance.
+     * @param listeners The observers.
+     */
+    InternalSessionEventBroker(ExecutorService executor, int partitionCount, int queueSize, Debug debug,
+            InternalSessionListener... listeners) {
+        this.debug = debug;
+        List<InternalSessionListener> synchronous = new ArrayList<>();
+        List<InternalSessionListener> asynchronous = new ArrayList<>();
+        for (InternalSessionListener listener : listeners) {
+            if (executor == null || listener instanceof SynchronousInternalSessionListener) {
+                synchronous.add(listener);
+            } else {
+                asynchronous.add(listener);
+            }
+        }
+        this.synchronousListeners = synchronous.toArray(new InternalSessionListener[synchronous.size()]);
+        this.asynchronousListeners = asynchronous.toArray(new InternalSessionListener[asynchronous.size()]);
+        this.statistics = new ListenerStatistics[asynchronousListeners.length];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = new ListenerStatistics();
+        }
+        if (asynchronousListeners.length > 0) {
+            for (int i = 0; i < partitionCount; i++) {
+                BlockingQueue<QueuedEvent> queue = new ArrayBlockingQueue<>(queueSize);
+                partitions.add(queue);
+                executor.execute(new PartitionDispatcher(queue));
+            }
+        }
     }
 
     @Override
     public void onEvent(final InternalSessionEvent event) {
-        for (final InternalSessionListener listener : listeners) {
+        for (final InternalSessionListener listener : synchronousListeners) {
             listener.onEvent(event);
         }
+        if (asynchronousListeners.length == 0) {
+            return;
+        }
+
+        QueuedEvent queued = new QueuedEvent(event);
+        if (Boolean.TRUE.equals(DISPATCHING.get())) {
+            // raised by an observer, which would deadlock if it blocked on its own full partition
+            dispatch(queued);
+            return;
+        }
+        event.captureSessionInfo();
+        BlockingQueue<QueuedEvent> queue = partitions.get(getPartition(event));
+        if (!queue.offer(queued)) {
+            blocked.incrementAndGet();
+            putUninterruptibly(queue, queued);
+        }
+    }
+
+    /**
+     * Queues the event even if the thread is interrupted, as dispatching it on the calling thread instead would
+     * deliver it ahead of the events of its session still queued. The interrupt is restored once the event is queued.
+     */
+    private void putUninterruptibly(BlockingQueue<QueuedEvent> queue, QueuedEvent queued) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(queued);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns how far behind each observer notified asynchronously is, keyed by the class name of the observer.
+     *
+     * @return The statistics of each asynchronous observer, empty if events are dispatched synchronously.
+     */
+    public Map<String, ListenerStatistics> getListenerStatistics() {
+        Map<String, ListenerStatistics> result = new LinkedHashMap<>();
+        for (int i = 0; i < asynchronousListeners.length; i++) {
+            result.put(asynchronousListeners[i].getClass().getName(), statistics[i]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return The number of events waiting to be dispatched asynchronously.
+     */
+    public int getQueuedEventCount() {
+        int count = 0;
+        for (BlockingQueue<QueuedEvent> queue : partitions) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of times a thread raising an event blocked as the queue of its partition was full.
+     */
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    private int getPartition(InternalSessionEvent event) {
+        SessionID sessionID = event.getInternalSession().getID();
+        int hash = sessionID == null ? 0 : sessionID.hashCode();
+        return (hash & Integer.MAX_VALUE) % partitions.size();
+    }
+
+    private void dispatch(QueuedEvent queued) {
+        for (int i = 0; i < asynchronousListeners.length; i++) {
+            statistics[i].record(NANOSECONDS.toMillis(System.nanoTime() - queued.queuedAt));
+            try {
+                asynchronousListeners[i].onEvent(queued.event);
+            } catch (RuntimeException e) {
+                debug.error("InternalSessionEventBroker: {} failed to process {} event",
+                        asynchronousListeners[i].getClass().getName(), queued.event.getType(), e);
+            }
+        }
+    }
+
+    private static int getPartitionCount() {
+        return Math.max(1, SystemProperties.getAsInt(ASYNC_PARTITIONS, DEFAULT_PARTITIONS));
+    }
+
+    /**
+     * Dispatches the events queued on a partition, in order.
+     */
+    private final class PartitionDispatcher implements Runnable {
+
+        private final BlockingQueue<QueuedEvent> queue;
+
+        private PartitionDispatcher(BlockingQueue<QueuedEvent> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            DISPATCHING.set(Boolean.TRUE);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    dispatch(queue.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                DISPATCHING.remove();
+            }
+        }
+    }
+
+    private static final class QueuedEvent {
+        private final InternalSessionEvent event;
+        private final long queuedAt = System.nanoTime();
+
+        private QueuedEvent(InternalSessionEvent event) {
+            this.event = event;
+        }
+    }
+
+    /**
+     * The lag of an observer notified asynchronously: the time between an event being raised and the observer
+     * being notified of it.
+     */
+    public static final class ListenerStatistics {
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong totalLag = new AtomicLong();
+        private final AtomicLong maxLag = new AtomicLong();
+        private volatile long lastLag;
+
+        private void record(long lag) {
+            events.incrementAndGet();
+            totalLag.addAndGet(lag);
+            lastLag = lag;
+            long max = maxLag.get();
+            while (lag > max && !maxLag.compareAndSet(max, lag)) {
+                max = maxLag.get();
+            }
+        }
+
+        /**
+         * @return The number of events the observer has been notified of.
+         */
+        public long getEventCount() {
+            return events.get();
+        }
+
+        /**
+         * @return The lag of the most recent event, in milliseconds.
+         */
+        public long getLastLag() {
+            return lastLag;
+        }
+
+        /**
+         * @return The average lag, in milliseconds.
+         */
+        public long getAverageLag() {
+            long count = events.get();
+            return count == 0 ? 0 : totalLag.get() / count;
+        }
+
+        /**
+         * @return The largest lag, in milliseconds.
+         */
+        public long getMaxLag() {
+            return maxLag.get();
+        }
     }
 }
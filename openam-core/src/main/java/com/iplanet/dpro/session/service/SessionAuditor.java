@@ -78,7 +78,7 @@ public class SessionAuditor implements InternalSessionListener {
 
     @Override
     public void onEvent(final InternalSessionEvent event) {
-        auditActivity(event.getInternalSession().toSessionInfo(), event.getType(), event.getTime());
+        auditActivity(event.getSessionInfo(), event.getType(), event.getTime());
     }
 
     public void auditActivity(SessionInfo sessionInfo, SessionEventType eventType, long timestamp) {
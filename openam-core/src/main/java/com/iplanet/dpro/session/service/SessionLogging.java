@@ -90,7 +90,7 @@ public class SessionLogging implements InternalSessionListener {
                 logSystemMessage("SESSION_MAX_LIMIT_REACHED");
                 break;
             default:
-                logEvent(event.getInternalSession().toSessionInfo(), event.getType(), event.getTime());
+                logEvent(event.getSessionInfo(), event.getType(), event.getTime());
         }
     }
 
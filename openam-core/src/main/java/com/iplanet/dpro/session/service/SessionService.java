@@ -185,6 +185,39 @@ public class SessionService {
         sessionAccessManager.removeSessionId(sessionID);
     }
 
+    /**
+     * Begins a unit of work on the current thread, during which the updates made to stored sessions may be coalesced
+     * and persisted once, by the matching call to {@link #endSessionUpdates()}.
+     *
+     * @see SessionAccessManager#beginUnitOfWork()
+     */
+    public void beginSessionUpdates() {
+        sessionAccessManager.beginUnitOfWork();
+    }
+
+    /**
+     * Ends the unit of work begun by {@link #beginSessionUpdates()}, persisting the sessions updated during it.
+     *
+     * @see SessionAccessManager#endUnitOfWork()
+     */
+    public void endSessionUpdates() {
+        sessionAccessManager.endUnitOfWork();
+    }
+
+    /**
+     * Ends the unit of work begun by {@link #beginSessionUpdates()} when the work done during it has failed. A failure
+     * to persist the sessions is logged rather than thrown, so that it does not hide the failure in flight.
+     *
+     * @see #endSessionUpdates()
+     */
+    public void endSessionUpdatesAfterFailure() {
+        try {
+            sessionAccessManager.endUnitOfWork();
+        } catch (RuntimeException e) {
+            sessionDebug.error("SessionService.endSessionUpdatesAfterFailure: unable to persist the sessions", e);
+        }
+    }
+
     private void fireSessionEvent(InternalSession session, SessionEventType sessionEventType) {
         sessionEventBroker.onEvent(new InternalSessionEvent(session, sessionEventType));
     }
@@ -55,7 +55,7 @@ import com.sun.identity.shared.debug.Debug;
 /**
  * Executes all the globally set session timeout handlers in response to session timeout events.
  */
-public class SessionTimeoutHandlerExecutor implements InternalSessionListener {
+public class SessionTimeoutHandlerExecutor implements SynchronousInternalSessionListener {
 
     private final Debug sessionDebug;
     private final SSOTokenManager ssoTokenManager;
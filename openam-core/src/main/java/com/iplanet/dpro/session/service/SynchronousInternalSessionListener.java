@@ -0,0 +1,25 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.iplanet.dpro.session.service;
+
+/**
+ * An {@link InternalSessionListener} which must be notified of each event on the thread which caused it, before the
+ * session operation completes, even when the {@link InternalSessionEventBroker} dispatches events asynchronously.
+ *
+ * @since 14.0.0
+ */
+public interface SynchronousInternalSessionListener extends InternalSessionListener {
+}
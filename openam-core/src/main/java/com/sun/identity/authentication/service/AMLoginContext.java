@@ -46,6 +46,9 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.Callback;
@@ -140,6 +143,19 @@ public class AMLoginContext {
     private boolean processDone = false;
     private boolean jaasCheck = false;
     private Thread jaasThread = null;
+    private final Lock callbackLock = new ReentrantLock();
+    private final Condition callbackChanged = callbackLock.newCondition();
+    private final Runnable pageTimeoutHandler = new Runnable() {
+        @Override
+        public void run() {
+            callbackLock.lock();
+            try {
+                callbackChanged.signalAll();
+            } finally {
+                callbackLock.unlock();
+            }
+        }
+    };
     private Callback[] recdCallback;
     private final AuthenticationProcessEventAuditor auditor;
 
@@ -416,10 +432,7 @@ public class AMLoginContext {
 
             if (jaasCheck) {
                 debug.message("Using pure jaas mode.");
-                if (authThread == null) {
-                    authThread = new AuthThreadManager();
-                    authThread.start();
-                }
+                initAuthThreadManager();
             }
 
             loginContext = LoginContextFactory.getInstance()
@@ -526,8 +539,12 @@ public class AMLoginContext {
                     jaasThread = null;
                     errorState = true;
                 } else {
-                    jaasThread = new JAASLoginThread(this);
-                    jaasThread.start();
+                    jaasThread = authThread.startLogin(new Runnable() {
+                        @Override
+                        public void run() {
+                            runLogin();
+                        }
+                    }, "JAASLoginThread");
                 }
             } else {
                 runLogin();
@@ -560,7 +577,6 @@ public class AMLoginContext {
      * Starts the login process ,calls JAAS Login Context
      */
     public void runLogin() {
-        Thread thread = Thread.currentThread();
         String logFailedMessage = bundle.getString("loginFailed");
         String logFailedError = null;
         AuthenticationFailureReason failureReason = null;
@@ -818,7 +834,7 @@ public class AMLoginContext {
                     + "AMLoginContext:LoginStatus: " + loginStatus.getStatus());
         }
         if (isPureJAAS()) {
-            authThread.removeFromHash(thread, "timeoutHash");
+            authThread.removeLogin(this);
 
             // notify possible waiting thread
             authContext.getLoginState().setReceivedCallback(null, this);
@@ -919,7 +935,16 @@ public class AMLoginContext {
      *
      * @return array of Required Callbacks from <code>CallbackHandler</code>.
      */
-    private synchronized Callback[] getRequiredInfoCallback() {
+    private Callback[] getRequiredInfoCallback() {
+        callbackLock.lock();
+        try {
+            return getRequiredInfoCallbackLocked();
+        } finally {
+            callbackLock.unlock();
+        }
+    }
+
+    private Callback[] getRequiredInfoCallbackLocked() {
         if (debug.messageEnabled()) {
             debug.message("getRequiredInfo.. " + loginStatus.getStatus());
         }
@@ -935,10 +960,10 @@ public class AMLoginContext {
             debug.message("lastCallbackSent : " + lastCallbackSent);
             debug.message("pageTimeOut : " + pageTimeOut);
         }
-        authThread.setHash(thread, pageTimeOut, lastCallbackSent);
+        authThread.startPageTimeout(this, pageTimeOut, lastCallbackSent, pageTimeoutHandler);
 
         while ((!isFailed) && (authContext.getLoginState().getReceivedInfo() == null)
-                && (loginStatus.getStatus() == LoginStatus.AUTH_IN_PROGRESS)) {
+                && (loginStatus.getStatus() == LoginStatus.AUTH_IN_PROGRESS) && !authThread.isTimedOut(this)) {
             try {
                 if (debug.messageEnabled()) {
                     debug.message(Thread.currentThread() + "Waiting.." + loginStatus.getStatus());
@@ -948,8 +973,9 @@ public class AMLoginContext {
                 }
                 if (!isFailed
                         && loginStatus.getStatus() == LoginStatus.AUTH_IN_PROGRESS
-                        && authContext.getLoginState().getReceivedInfo() == null) {
-                    this.wait();
+                        && authContext.getLoginState().getReceivedInfo() == null
+                        && !authThread.isTimedOut(this)) {
+                    callbackChanged.await();
                 }
             } catch (InterruptedException e) {
                 debug.message("getRecdinfo INTERRUPTED");
@@ -963,7 +989,7 @@ public class AMLoginContext {
         if (debug.messageEnabled()) {
             debug.message("Returning getRequiredInfo... :" + getRequiredInfo);
         }
-        authThread.removeFromHash(thread, "timeoutHash");
+        authThread.stopPageTimeout(this);
         return getRequiredInfo;
     }
 
@@ -997,7 +1023,16 @@ public class AMLoginContext {
      *
      * @return submitted credentials/callbacks.
      */
-    public synchronized Callback[] submitCallbackInfo() {
+    public Callback[] submitCallbackInfo() {
+        callbackLock.lock();
+        try {
+            return submitCallbackInfoLocked();
+        } finally {
+            callbackLock.unlock();
+        }
+    }
+
+    private Callback[] submitCallbackInfoLocked() {
         if (debug.messageEnabled()) {
             debug.message("submitRequiredInfo. ThreadName is.. :" + Thread.currentThread().getName());
         }
@@ -1015,8 +1050,9 @@ public class AMLoginContext {
             debug.message("lastCallbackSent : " + lastCallbackSent);
             debug.message("pageTimeOut : " + pageTimeOut);
         }
-        authThread.setHash(thread,pageTimeOut, lastCallbackSent);
-        while (authContext.getLoginState().getSubmittedInfo() == null && loginStatus.getStatus() == LoginStatus.AUTH_IN_PROGRESS) {
+        authThread.startPageTimeout(this, pageTimeOut, lastCallbackSent, pageTimeoutHandler);
+        while (authContext.getLoginState().getSubmittedInfo() == null
+                && loginStatus.getStatus() == LoginStatus.AUTH_IN_PROGRESS && !authThread.isTimedOut(this)) {
             try {
                 if (debug.messageEnabled()) {
                     debug.message(Thread.currentThread() + " Waiting...." + loginStatus.getStatus());
@@ -1024,8 +1060,8 @@ public class AMLoginContext {
                 if (loginStatus.getStatus() != LoginStatus.AUTH_IN_PROGRESS) {
                     return null;
                 }
-                if ((authContext.getLoginState().getSubmittedInfo() == null)) {
-                    wait();
+                if (authContext.getLoginState().getSubmittedInfo() == null && !authThread.isTimedOut(this)) {
+                    callbackChanged.await();
                 }
             } catch (InterruptedException e) {
                 debug.message("submitRequired info INTERRUPTED");
@@ -1033,7 +1069,7 @@ public class AMLoginContext {
             }
         }
         debug.message("Threadwaking up go submit info...");
-        authThread.removeFromHash(thread, "timeoutHash");
+        authThread.stopPageTimeout(this);
         Callback[] setSubmittedInfo = authContext.getLoginState().getSubmittedInfo();
         debug.message("Returning submitted info: ");
         return setSubmittedInfo;
@@ -2000,29 +2036,27 @@ public class AMLoginContext {
     }
 
     /**
-     * This thread is created when a pure JAAS module is found in the
-     * authentication chain,  which used to be created in
-     * <code>AMLoginContext</code>.
+     * Returns the lock guarding the callbacks exchanged with a pure JAAS
+     * login thread. <code>LoginState</code> must hold it while updating the
+     * callbacks, and then call {@link #signalCallbacksChanged()}.
+     *
+     * @return the callback lock.
      */
-    private class JAASLoginThread  extends Thread {
-
-        private AMLoginContext amlc;
+    Lock getCallbackLock() {
+        return callbackLock;
+    }
 
-        /**
-         * Creates <code>JAASLoginThread</code> object.
-         *
-         * @param amlc <code>AMLoginContext</code> in which the running method is
-         *        defined.
-         */
-        JAASLoginThread(AMLoginContext amlc) {
-            this.amlc = amlc;
-        }
+    /**
+     * Wakes up the threads waiting for callbacks to be received or
+     * submitted. Must be called while holding {@link #getCallbackLock()}.
+     */
+    void signalCallbacksChanged() {
+        callbackChanged.signalAll();
+    }
 
-        /**
-         * Run the thread task which is defined in <code>AMLoginContext</code>.
-         */
-        public void run() {
-            amlc.runLogin();
+    private static synchronized void initAuthThreadManager() {
+        if (authThread == null) {
+            authThread = new AuthThreadManager();
         }
     }
 }
@@ -33,78 +33,108 @@ package com.sun.identity.authentication.service;
 
 import static org.forgerock.openam.utils.Time.*;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+
+import com.iplanet.am.util.SystemProperties;
 import com.sun.identity.shared.debug.Debug;
 
 /**
- * AuthThreadManager sleeps for n milliseconds as set in 
- * iplanet-am-auth-sleep-interval wakes up and checks for each thread 
- * in the timeout Hash for timeout.
- * If thread has timed out adds thread to timedOutHash and removed from
- * timeoutHash. 
+ * AuthThreadManager starts the threads running pure JAAS logins and times
+ * out the logins whose threads are parked waiting for callbacks.
+ * <p>
+ * Page timeouts are kept per login. When a thread of a login parks, the page
+ * timeout of the login is scheduled. If a thread of the login is still
+ * parked when the timeout fires, the login is recorded as timed out and its
+ * timeout handler wakes up the parked threads, which are never interrupted,
+ * as a request thread may already have moved on to another request. Parking
+ * and unparking a thread therefore costs no more than scheduling and
+ * cancelling a task, however many logins are in progress.
+ * <p>
+ * If {@link #VIRTUAL_THREADS} is set and the JVM supports virtual threads,
+ * logins run on virtual threads, so that logins parked on a callback page do
+ * not hold on to a platform thread each.
  */
-public class AuthThreadManager extends Thread   {
+public class AuthThreadManager {
+
+    /**
+     * Property enabling the use of virtual threads to run pure JAAS logins,
+     * when supported by the JVM. Defaults to false.
+     */
+    public static final String VIRTUAL_THREADS =
+        "org.forgerock.openam.authentication.jaas.virtualThreads";
 
-    long timeout = 60;
     static Debug debug = null;
-    static int i=0;
-    Hashtable timeoutHash = new Hashtable();
-    Hashtable timedOutHash = new Hashtable();
-    long lastCallbackSent;
-    long defaultSleepTime = 300000;
+    // the page timeout of each login, guarded by itself
+    private final Map<Object, PageTimeout> timeouts = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Method virtualThreadFactory;
+    private final Object virtualThreadBuilder;
+    private final AtomicLong startedLogins = new AtomicLong();
+    private final AtomicLong timedOutLogins = new AtomicLong();
 
     /**
      * Creates <code>AuthThreadManager</code> object.
      */
     public AuthThreadManager () {
+        this(InjectorHolder.getInstance(ExecutorServiceFactory.class)
+            .createScheduledService(1),
+            SystemProperties.getAsBoolean(VIRTUAL_THREADS, false));
+    }
+
+    AuthThreadManager(ScheduledExecutorService scheduler,
+        boolean virtualThreads) {
         debug = Debug.getInstance("amThreadManager");
-        defaultSleepTime = AuthD.getAuth().getDefaultSleepTime();
-        if (debug.messageEnabled()) {
-            debug.message("Default sleep time : " + defaultSleepTime);
+        this.scheduler = scheduler;
+        Method factory = null;
+        Object builder = null;
+        if (virtualThreads) {
+            try {
+                builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                factory = Class.forName("java.lang.Thread$Builder")
+                    .getMethod("unstarted", Runnable.class);
+            } catch (ReflectiveOperationException e) {
+                debug.warning("AuthThreadManager: virtual threads are not "
+                    + "supported by this JVM, using platform threads.");
+                builder = null;
+            }
         }
+        virtualThreadFactory = factory;
+        virtualThreadBuilder = builder;
     }
 
     /**
-     * thread sleeps for n milliseconds as set in iplanet-am-auth-sleep-interval
-     * wakes up and checks for each thread in the timeout Hash for timeout.
-     * if thread has timed out adds thread to timedOutHash and removed from
-     * timeoutHash 
+     * Starts a thread running the pure JAAS login.
+     * @param login the login to run.
+     * @param name the name of the thread.
+     * @return the started thread.
      */
-    public void run() {
-        while (true) {
+    public Thread startLogin(Runnable login, String name) {
+        Thread thread = null;
+        if (virtualThreadFactory != null) {
             try {
-                sleep(defaultSleepTime);
-                if (debug.messageEnabled()) {
-                    debug.message("Thread Waking up");
-                    debug.message("timeoutHash :" + timeoutHash);
-                }
-
-                if ((timeoutHash != null) && (!timeoutHash.isEmpty())) {
-                    Enumeration timeoutElem = timeoutHash.keys();
-                    while (timeoutElem.hasMoreElements()) {
-                        Object key = timeoutElem.nextElement();
-                        Thread thread = (Thread) key;
-                        Hashtable s = (Hashtable) timeoutHash.get(key);
-                        long timeout = ((Long)s.get("PageTimeout")).longValue();
-                        long lastCallbackSent = 
-                            ((Long) s.get("LastCallbackSent")).longValue();
-
-                        if (isLoginTimeout(lastCallbackSent , timeout)) {
-                            if (debug.messageEnabled()) {
-                                debug.message("Interrupting thread" + thread);
-                            }
-                            thread.interrupt();
-                            timeoutHash.remove(key);
-                            timedOutHash.put(thread, Boolean.TRUE);
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                debug.message("Error run : " , e);
+                thread = (Thread) virtualThreadFactory.invoke(
+                    virtualThreadBuilder, login);
+            } catch (ReflectiveOperationException e) {
+                debug.error("AuthThreadManager.startLogin: unable to create "
+                    + "virtual thread", e);
             }
         }
+        if (thread == null) {
+            thread = new Thread(login);
+        }
+        thread.setName(name);
+        thread.start();
+        startedLogins.incrementAndGet();
+        return thread;
     }
 
     /**
@@ -114,91 +144,170 @@ public class AuthThreadManager extends Thread   {
      * @return <code>true</code> if the thread is timed out. 
      */
     public boolean isLoginTimeout(long lastCallbackSent, long timeout) {
-        long now = currentTimeMillis();
-        long timeoutVal = lastCallbackSent + (timeout -3) * 1000;
-        return (timeoutVal < now);
+        return getTimeoutDelay(lastCallbackSent, timeout) < 0;
     }
 
     /**
-     * Stores the thread as key and the time out value &
-     * last callback sent in a Hashtable 
-     * @param currentThread will be stored
+     * Schedules the page timeout of the login, one of whose threads is about
+     * to park waiting for callbacks. If another thread of the login is
+     * already parked, the timeout is rescheduled for the latest page.
+     * @param login the login, which identifies the timeout.
      * @param pageTimeOut configured timeout value
      * @param lastCallbackSent time for last callback was sent
+     * @param onTimeout wakes up the parked threads of the login when the
+     *        timeout fires.
      */
-    public void setHash(
-        Thread currentThread,
+    public void startPageTimeout(
+        Object login,
         long pageTimeOut,
-        long lastCallbackSent) {
+        long lastCallbackSent,
+        Runnable onTimeout) {
         if (debug.messageEnabled()) {
-            debug.message("Setting hash... : "  + currentThread);
+            debug.message("Starting page timeout of login " + login);
         }
-        if (timeoutHash.contains(currentThread)) {
-            return;
+        long delay = Math.max(0, getTimeoutDelay(lastCallbackSent, pageTimeOut));
+        synchronized (timeouts) {
+            PageTimeout timeout = timeouts.get(login);
+            if (timeout == null) {
+                timeout = new PageTimeout(login, onTimeout);
+                timeouts.put(login, timeout);
+            }
+            if (!timeout.timedOut) {
+                timeout.parked++;
+                timeout.schedule(delay);
+            }
         }
-        Hashtable param = new Hashtable();
-        param.put("PageTimeout" , new Long(pageTimeOut));
-        param.put("LastCallbackSent",new Long(lastCallbackSent));
-
-        timeoutHash.put(currentThread,param);    
+    }
 
-        if (debug.messageEnabled()){
-            debug.message("timeOutHash is : " + timeoutHash);
+    /**
+     * Cancels the page timeout of the login once none of its threads is
+     * parked any more, unless the login has already timed out.
+     * @param login the login, which identifies the timeout.
+     */
+    public void stopPageTimeout(Object login) {
+        synchronized (timeouts) {
+            PageTimeout timeout = timeouts.get(login);
+            if (timeout != null && !timeout.timedOut && --timeout.parked <= 0) {
+                timeouts.remove(login);
+                timeout.cancel();
+            }
         }
     }
 
     /**
-     * Checks if thread has timed out
-     * @param thread will be checked
-     * @return <code>true</code> if the is timed out
+     * Checks if the login has timed out
+     * @param login will be checked
+     * @return <code>true</code> if the login is timed out
      */
-    public boolean isTimedOut(Thread thread) {
-        if (debug.messageEnabled()) {
-            debug.message("Timed ut hash has : " + timedOutHash);
-        }
-        if  ((timedOutHash ==  null) || (timedOutHash.isEmpty())) {
-            return false;
-        }
-        try {
-            Boolean timedOut = (Boolean) timedOutHash.get(thread);
-            return timedOut.booleanValue();
-        } catch (Exception e ) {
-            return false;
+    public boolean isTimedOut(Object login) {
+        synchronized (timeouts) {
+            PageTimeout timeout = timeouts.get(login);
+            return timeout != null && timeout.timedOut;
         }
     }
-    
+
     /**
-     * Removes thread from <code>Hashtable</code> specified by hashName
-     * @param thread will be removed from the hash
-     * @param hashName has associated thread
+     * Removes the page timeout of the login, whether it is scheduled or has
+     * timed out, once the login has completed or its timeout has been
+     * handled.
+     * @param login the login, which identifies the timeout.
      */
-    public void removeFromHash(Thread thread,String hashName) {
-        if (debug.messageEnabled()) {
-            debug.message("Request to remove thread " + 
-                thread + "from hash : " + hashName);
-        }
-        if (hashName.equals("timeoutHash")) {
-            removeHash(timeoutHash,thread);
-            if (debug.messageEnabled()){
-                debug.message("timeOutHash is : " + timeoutHash);
+    public void removeLogin(Object login) {
+        synchronized (timeouts) {
+            PageTimeout timeout = timeouts.remove(login);
+            if (timeout != null) {
+                timeout.cancel();
             }
         }
+    }
 
-        if (hashName.equals("timedOutHash")) {
-            removeHash(timedOutHash,thread);
-            if (debug.messageEnabled()){
-                debug.message("timedOutHash is : " + timedOutHash);
+    /**
+     * Returns the number of logins whose threads are currently parked waiting
+     * for callbacks.
+     * @return the number of parked logins.
+     */
+    public int getParkedLoginCount() {
+        synchronized (timeouts) {
+            int parked = 0;
+            for (PageTimeout timeout : timeouts.values()) {
+                if (!timeout.timedOut) {
+                    parked++;
+                }
             }
-        } 
+            return parked;
+        }
+    }
+
+    /**
+     * Returns the number of pure JAAS logins started.
+     * @return the number of started logins.
+     */
+    public long getStartedLoginCount() {
+        return startedLogins.get();
+    }
+
+    /**
+     * Returns the number of logins which have been timed out.
+     * @return the number of timed out logins.
+     */
+    public long getTimedOutLoginCount() {
+        return timedOutLogins.get();
+    }
+
+    private long getTimeoutDelay(long lastCallbackSent, long timeout) {
+        return lastCallbackSent + (timeout - 3) * 1000 - currentTimeMillis();
     }
 
-    void removeHash(Hashtable hash,Thread thread) {
-        if ((hash == null) || hash.isEmpty()) {
-            return;
+    /**
+     * The page timeout of a login, guarded by the timeouts of the manager.
+     */
+    private final class PageTimeout {
+        private final Object login;
+        private final Runnable onTimeout;
+        private ScheduledFuture<?> future;
+        private int generation;
+        private int parked;
+        private boolean timedOut;
+
+        private PageTimeout(Object login, Runnable onTimeout) {
+            this.login = login;
+            this.onTimeout = onTimeout;
         }
-        try {
-            hash.remove(thread);
-        } catch (Exception e) {
+
+        private void schedule(long delay) {
+            cancel();
+            final int scheduled = ++generation;
+            future = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fire(scheduled);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancel() {
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        private void fire(int scheduled) {
+            synchronized (timeouts) {
+                if (timeouts.get(login) != this || scheduled != generation
+                    || timedOut) {
+                    return;
+                }
+                timedOut = true;
+                future = null;
+            }
+            if (debug.messageEnabled()) {
+                debug.message("Login timed out " + login);
+            }
+            timedOutLogins.incrementAndGet();
+            // the parked threads lock the login, so must be woken up without
+            // holding the timeouts
+            onTimeout.run();
         }
     }
 }
@@ -122,11 +122,11 @@ public class DSAMECallbackHandler implements CallbackHandler {
                 }
 
                 callbacks = am.submitCallbackInfo();
-                // check if the thread had timedout 
-                if (authThreadManager.isTimedOut(thread)) {
+                // check if the login had timedout 
+                if (authThreadManager.isTimedOut(am)) {
                     loginState.setTimedOut(true);
                     loginState.setReceivedCallback(null,am) ;
-                    authThreadManager.removeFromHash(thread,"timedOutHash");
+                    authThreadManager.removeLogin(am);
                     throw new IOException(AMAuthErrorCode.AUTH_TIMEOUT);
                 }
                     // check if there is a timeout 
@@ -78,6 +78,28 @@ public class DefaultSessionActivator implements SessionActivator {
                                      SessionService sessionService, Subject subject)
             throws AuthException {
 
+        // persist the many updates made to the sessions while activating them once, if coalescing is enabled
+        sessionService.beginSessionUpdates();
+        boolean updated = false;
+        try {
+            boolean result = updateSessionsInUnitOfWork(newSession, loginState, sessionToActivate, authSession,
+                    sessionService, subject);
+            updated = true;
+            return result;
+        } finally {
+            if (updated) {
+                sessionService.endSessionUpdates();
+            } else {
+                sessionService.endSessionUpdatesAfterFailure();
+            }
+        }
+    }
+
+    private boolean updateSessionsInUnitOfWork(InternalSession newSession, LoginState loginState,
+                                               InternalSession sessionToActivate, InternalSession authSession,
+                                               SessionService sessionService, Subject subject)
+            throws AuthException {
+
         final SessionID authSessionId = authSession.getID();
 
         newSession.clearAuthContext();
@@ -91,6 +91,7 @@ import com.iplanet.dpro.session.SessionException;
 import com.iplanet.dpro.session.SessionID;
 import com.iplanet.dpro.session.service.AuthenticationSessionStore;
 import com.iplanet.dpro.session.service.InternalSession;
+import com.iplanet.dpro.session.service.SessionService;
 import com.iplanet.dpro.session.service.SessionState;
 import com.iplanet.dpro.session.service.SessionType;
 import com.iplanet.sso.SSOException;
@@ -484,11 +485,14 @@ public class LoginState {
     void setReceivedCallback(
             Callback[] callback,
             AMLoginContext amLoginContext) {
-        synchronized (amLoginContext) {
+        amLoginContext.getCallbackLock().lock();
+        try {
             submittedCallbackInfo = null;
             receivedCallbackInfo = callback;
             prevCallback = callback;
-            amLoginContext.notify();
+            amLoginContext.signalCallbacksChanged();
+        } finally {
+            amLoginContext.getCallbackLock().unlock();
         }
     }
 
@@ -513,11 +517,14 @@ public class LoginState {
      void setSubmittedCallback(
             Callback[] callback,
             AMLoginContext amLoginContext) {
-        synchronized (amLoginContext) {
+        amLoginContext.getCallbackLock().lock();
+        try {
             prevCallback = receivedCallbackInfo;
             receivedCallbackInfo = null;
             submittedCallbackInfo = callback;
-            amLoginContext.notify();
+            amLoginContext.signalCallbacksChanged();
+        } finally {
+            amLoginContext.getCallbackLock().unlock();
         }
     }
 
@@ -4814,11 +4821,25 @@ public class LoginState {
      * @param type indicates success, failure or logout
      */
     void postProcess(AuthContext.IndexType indexType, String indexName, PostProcessEvent type) {
-        Set<AMPostAuthProcessInterface> postLoginInstanceSet = getPostLoginInstances(getPostLoginClassSet(indexType, indexName));
-        if ((postLoginInstanceSet != null) &&
-                (!postLoginInstanceSet.isEmpty())) {
-            for (AMPostAuthProcessInterface postLoginInstance : postLoginInstanceSet) {
-                executePostProcessSPI(postLoginInstance, type);
+        // the plugins may set many properties of the stored session, persist them once if coalescing is enabled
+        SessionService sessionService = AuthD.getSessionService();
+        sessionService.beginSessionUpdates();
+        boolean processed = false;
+        try {
+            Set<AMPostAuthProcessInterface> postLoginInstanceSet =
+                    getPostLoginInstances(getPostLoginClassSet(indexType, indexName));
+            if ((postLoginInstanceSet != null) &&
+                    (!postLoginInstanceSet.isEmpty())) {
+                for (AMPostAuthProcessInterface postLoginInstance : postLoginInstanceSet) {
+                    executePostProcessSPI(postLoginInstance, type);
+                }
+            }
+            processed = true;
+        } finally {
+            if (processed) {
+                sessionService.endSessionUpdates();
+            } else {
+                sessionService.endSessionUpdatesAfterFailure();
             }
         }
     }
@@ -5250,7 +5271,20 @@ public class LoginState {
         if (stateless || isNoSession()) {
             return;
         }
-        authenticationSessionStore.promoteSession(sessionReference);
+        // the promoted session is persisted once, with any update made to it while it is promoted
+        SessionService sessionService = AuthD.getSessionService();
+        sessionService.beginSessionUpdates();
+        boolean promoted = false;
+        try {
+            authenticationSessionStore.promoteSession(sessionReference);
+            promoted = true;
+        } finally {
+            if (promoted) {
+                sessionService.endSessionUpdates();
+            } else {
+                sessionService.endSessionUpdatesAfterFailure();
+            }
+        }
     }
 
     /**
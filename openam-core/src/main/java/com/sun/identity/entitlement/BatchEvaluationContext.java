@@ -0,0 +1,65 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.auth.Subject;
+
+/**
+ * State shared by the evaluations of the resources of a single batch request. The subject and environment are the
+ * same for every resource of the batch, so the subject search indexes and the decisions of the policy subjects are
+ * resolved once and reused across resources.
+ */
+final class BatchEvaluationContext {
+
+    private final Map<String, SubjectDecision> subjectDecisions = new ConcurrentHashMap<>();
+    private volatile Set<String> subjectIndexes;
+
+    /**
+     * Returns the subject search indexes of the subject, retrieving them on the first call of the batch.
+     *
+     * @param sam The subject attributes manager of the realm.
+     * @param subject The subject under evaluation.
+     * @param applicationName The application name.
+     * @return The subject search indexes.
+     * @throws EntitlementException If the subject attributes cannot be retrieved.
+     */
+    Set<String> getSubjectSearchFilter(SubjectAttributesManager sam, Subject subject, String applicationName)
+            throws EntitlementException {
+        Set<String> indexes = subjectIndexes;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = subjectIndexes;
+                if (indexes == null) {
+                    indexes = sam.getSubjectSearchFilter(subject, applicationName);
+                    subjectIndexes = indexes;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * @return The decisions of the policy subjects evaluated so far, keyed on the subject type and state.
+     */
+    Map<String, SubjectDecision> getSubjectDecisions() {
+        return subjectDecisions;
+    }
+}
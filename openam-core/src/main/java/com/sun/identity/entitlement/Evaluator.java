@@ -38,11 +38,19 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import javax.security.auth.Subject;
 import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.PolicyConstants;
 import org.forgerock.openam.entitlement.monitoring.EntitlementConfigurationWrapper;
 import org.forgerock.openam.entitlement.monitoring.PolicyMonitor;
 import org.forgerock.openam.entitlement.monitoring.PolicyMonitoringType;
+import org.forgerock.openam.session.util.AppTokenHandler;
+import org.forgerock.util.thread.ExecutorServiceFactory;
 
 /**
  * The class evaluates entitlement request and provides decisions.
@@ -56,6 +64,17 @@ public class Evaluator {
 
     public static final int DEFAULT_POLICY_EVAL_THREAD = 10;
 
+    /**
+     * System property enabling the batch evaluation of requests for several resources, which resolves the subject
+     * once for the whole request and evaluates the resources in parallel.
+     */
+    public static final String BATCH_EVALUATION_ENABLED = "org.forgerock.openam.entitlement.batch.evaluation.enabled";
+
+    /**
+     * System property defining the number of threads evaluating the resources of batch requests.
+     */
+    public static final String BATCH_EVALUATION_THREADS = "org.forgerock.openam.entitlement.batch.evaluation.threads";
+
     private final PolicyMonitor policyMonitor;
     private final EntitlementConfigurationWrapper configWrapper;
 
@@ -99,6 +118,17 @@ public class Evaluator {
         configWrapper = new EntitlementConfigurationWrapper();
     }
 
+    /**
+     * Constructor for tests, with the monitoring dependencies given.
+     */
+    Evaluator(Subject subject, String applicationName, PolicyMonitor policyMonitor,
+            EntitlementConfigurationWrapper configWrapper) {
+        adminSubject = subject;
+        this.applicationName = applicationName;
+        this.policyMonitor = policyMonitor;
+        this.configWrapper = configWrapper;
+    }
+
     /**
      * Constructor to create an evaluator the default service type.
      *
@@ -162,6 +192,10 @@ public class Evaluator {
             throw new EntitlementException(424);
         }
 
+        if (resourceNames.size() > 1 && SystemPropertiesManager.getAsBoolean(BATCH_EVALUATION_ENABLED, false)) {
+            return evaluateBatch(realm, subject, resourceNames, environment);
+        }
+
         List<Entitlement> results = new ArrayList<Entitlement>();
 
         for (String res : resourceNames) {
@@ -204,6 +238,99 @@ public class Evaluator {
 
         long startTime = currentTimeMillis();
 
+        Application application = getApplication(realm);
+
+        // Normalise the incoming resource URL.
+        String normalisedResourceName = application.getResourceComparator().canonicalize(resourceName);
+
+        PrivilegeEvaluator evaluator = new PrivilegeEvaluator();
+        List<Entitlement> results = evaluator.evaluate(realm, adminSubject, subject,
+                applicationName, normalisedResourceName, resourceName, environment, recursive);
+
+        if (configWrapper.isMonitoringRunning()) {
+            policyMonitor.addEvaluation(currentTimeMillis() - startTime, realm, applicationName, resourceName,
+                    subject, recursive ? PolicyMonitoringType.SUBTREE : PolicyMonitoringType.SELF);
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns a list of entitlements for a given subject, resource names and environment, evaluating the resources
+     * together as a batch. The subject search indexes and the decisions of the policy subjects are resolved once for
+     * the whole batch, and the resources are evaluated in parallel. The results are returned in the order of the
+     * resource names.
+     *
+     * @param realm Realm Name.
+     * @param subject Subject who is under evaluation.
+     * @param resourceNames Resource names.
+     * @param environment Environment parameters.
+     * @return a list of entitlements for a given subject, resource names
+     *         and environment.
+     * @throws EntitlementException if the result cannot be determined.
+     */
+    public List<Entitlement> evaluateBatch(
+        final String realm,
+        final Subject subject,
+        Set<String> resourceNames,
+        final Map<String, Set<String>> environment
+    ) throws EntitlementException {
+        if ((resourceNames == null) || resourceNames.isEmpty()) {
+            throw new EntitlementException(424);
+        }
+
+        long startTime = currentTimeMillis();
+
+        final Application application = getApplication(realm);
+        final BatchEvaluationContext batchContext = new BatchEvaluationContext();
+        final Object appToken = AppTokenHandler.getAndClear();
+        List<Future<List<Entitlement>>> evaluations = new ArrayList<Future<List<Entitlement>>>(resourceNames.size());
+
+        try {
+            for (final String resourceName : resourceNames) {
+                evaluations.add(submit(new Callable<List<Entitlement>>() {
+                    @Override
+                    public List<Entitlement> call() throws EntitlementException {
+                        AppTokenHandler.set(appToken);
+                        return evaluateResource(realm, subject, application, resourceName, environment,
+                                batchContext);
+                    }
+                }));
+            }
+
+            List<Entitlement> results = new ArrayList<Entitlement>();
+            for (Future<List<Entitlement>> evaluation : evaluations) {
+                List<Entitlement> r = evaluation.get();
+                if ((r != null) && !r.isEmpty()) {
+                    results.addAll(r);
+                }
+            }
+
+            if (configWrapper.isMonitoringRunning()) {
+                policyMonitor.addBatchEvaluation(currentTimeMillis() - startTime, resourceNames.size(), realm,
+                        applicationName, subject);
+            }
+
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EntitlementException) {
+                throw (EntitlementException) e.getCause();
+            }
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e);
+        } finally {
+            for (Future<List<Entitlement>> evaluation : evaluations) {
+                evaluation.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the application of this evaluator in the realm.
+     */
+    Application getApplication(String realm) throws EntitlementException {
         // Delegation to applications is currently not configurable, passing super admin (see AME-4959)
         Application application = getApplicationService(SUPER_ADMIN_SUBJECT, realm).getApplication(applicationName);
 
@@ -211,22 +338,59 @@ public class Evaluator {
             // App retrieval error.
             throw new EntitlementException(EntitlementException.APP_RETRIEVAL_ERROR, new String[] {realm});
         }
+        return application;
+    }
+
+    /**
+     * Evaluates one resource of a batch request, on a thread of the batch executor.
+     */
+    List<Entitlement> evaluateResource(String realm, Subject subject, Application application,
+            String resourceName, Map<String, Set<String>> environment, BatchEvaluationContext batchContext)
+            throws EntitlementException {
+        long startTime = currentTimeMillis();
 
         // Normalise the incoming resource URL.
         String normalisedResourceName = application.getResourceComparator().canonicalize(resourceName);
 
         PrivilegeEvaluator evaluator = new PrivilegeEvaluator();
         List<Entitlement> results = evaluator.evaluate(realm, adminSubject, subject,
-                applicationName, normalisedResourceName, resourceName, environment, recursive);
+                applicationName, normalisedResourceName, resourceName, environment, batchContext);
 
         if (configWrapper.isMonitoringRunning()) {
             policyMonitor.addEvaluation(currentTimeMillis() - startTime, realm, applicationName, resourceName,
-                    subject, recursive ? PolicyMonitoringType.SUBTREE : PolicyMonitoringType.SELF);
+                    subject, PolicyMonitoringType.SELF);
         }
 
         return results;
     }
 
+    /**
+     * Returns the executor evaluating the resources of batch requests.
+     */
+    ExecutorService getBatchExecutor() {
+        return BatchExecutorHolder.EXECUTOR;
+    }
+
+    private <T> Future<T> submit(Callable<T> task) throws EntitlementException {
+        try {
+            return getBatchExecutor().submit(task);
+        } catch (RejectedExecutionException e) {
+            PolicyConstants.DEBUG.error("Evaluator.evaluateBatch: evaluation rejected", e);
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e);
+        }
+    }
+
+    /**
+     * Lazily creates the threads evaluating the resources of batch requests, which are stopped on shutdown by the
+     * executor service factory.
+     */
+    private static final class BatchExecutorHolder {
+
+        private static final ExecutorService EXECUTOR = InjectorHolder.getInstance(ExecutorServiceFactory.class)
+                .createFixedThreadPool(SystemPropertiesManager.getAsInt(BATCH_EVALUATION_THREADS,
+                        DEFAULT_POLICY_EVAL_THREAD), "PolicyBatchEvaluator");
+    }
+
     /**
      * Returns application name.
      * 
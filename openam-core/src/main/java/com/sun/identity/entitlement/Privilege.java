@@ -24,7 +24,7 @@
  *
  * $Id: Privilege.java,v 1.14 2010/01/08 22:20:47 veiming Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 
 package com.sun.identity.entitlement;
@@ -36,6 +36,7 @@ import com.sun.identity.sm.SMSEntry;
 
 import org.forgerock.openam.entitlement.CachingEntitlementCondition;
 import org.forgerock.openam.entitlement.PolicyConstants;
+import org.forgerock.openam.entitlement.PrivilegeEvaluatorContext;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -665,8 +666,18 @@ public abstract class Privilege implements IPrivilege {
         SubjectDecision decision;
 
         if (getSubject() != null) {
-            SubjectAttributesManager mgr = SubjectAttributesManager.getInstance(adminSubject, realm);
-            decision = getSubject().evaluate(realm, mgr, subject, resourceName, environment);
+            PrivilegeEvaluatorContext context = PrivilegeEvaluatorContext.getCurrent();
+            Map<String, SubjectDecision> cache = context == null ? null : context.getSubjectDecisionCache();
+            String cacheKey = cache == null ? null : getSubject().getClass().getName() + getSubject().getState();
+
+            decision = cache == null ? null : cache.get(cacheKey);
+            if (decision == null) {
+                SubjectAttributesManager mgr = getSubjectAttributesManager(adminSubject, realm);
+                decision = getSubject().evaluate(realm, mgr, subject, resourceName, environment);
+                if (cache != null) {
+                    cache.put(cacheKey, decision);
+                }
+            }
         } else {
             decision = new SubjectDecision(true, Collections.<String, Set<String>>emptyMap());
         }
@@ -682,6 +693,13 @@ public abstract class Privilege implements IPrivilege {
         return decision;
     }
 
+    /**
+     * Returns the subject attributes manager of the realm.
+     */
+    SubjectAttributesManager getSubjectAttributesManager(Subject adminSubject, String realm) {
+        return SubjectAttributesManager.getInstance(adminSubject, realm);
+    }
+
     protected ConditionDecision doesConditionMatch(
         String realm,
         Subject subject,
@@ -72,6 +72,7 @@ class PrivilegeEvaluator {
     private Set<String> actionNames;
     private EntitlementCombiner entitlementCombiner;
     private boolean recursive;
+    private BatchEvaluationContext batchContext;
     private EntitlementException eException;
     private final Lock lock = new ReentrantLock();
     private final Condition hasResults = lock.newCondition();
@@ -253,6 +254,36 @@ class PrivilegeEvaluator {
 
     }
 
+    /**
+     * Returns list of entitlements which is entitled to a subject, for one resource of a batch request. The subject
+     * search indexes and policy subject decisions are shared with the other resources of the batch.
+     *
+     * @param adminSubject Administrator subject which is used for evaluation.
+     * @param subject Subject to be evaluated.
+     * @param applicationName Application Name.
+     * @param normalisedResourceName The normalised resource name.
+     * @param requestedResourceName The requested resource name.
+     * @param envParameters Environment parameters.
+     * @param batchContext State shared by the evaluations of the batch.
+     * @return list of entitlements for the resource.
+     * @throws com.sun.identity.entitlement.EntitlementException if
+     * evaluation fails.
+     */
+    List<Entitlement> evaluate(
+        String realm,
+        Subject adminSubject,
+        Subject subject,
+        String applicationName,
+        String normalisedResourceName,
+        String requestedResourceName,
+        Map<String, Set<String>> envParameters,
+        BatchEvaluationContext batchContext
+    ) throws EntitlementException {
+        this.batchContext = batchContext;
+        return evaluate(realm, adminSubject, subject, applicationName, normalisedResourceName,
+                requestedResourceName, envParameters, false);
+    }
+
     /**
      * Responsible for the core evaluation of policies associated with the request resource.
      *
@@ -268,7 +299,9 @@ class PrivilegeEvaluator {
 
         // Search for relevant policies.
         final SubjectAttributesManager sam = SubjectAttributesManager.getInstance(adminSubject, realm);
-        final Set<String> subjectIndexes = sam.getSubjectSearchFilter(subject, applicationName);
+        final Set<String> subjectIndexes = batchContext == null
+                ? sam.getSubjectSearchFilter(subject, applicationName)
+                : batchContext.getSubjectSearchFilter(sam, subject, applicationName);
         final PrivilegeIndexStore indexStore = PrivilegeIndexStore.getInstance(adminSubject, realm);
         final Iterator<IPrivilege> policyIterator = indexStore.search(realm, indexes, subjectIndexes, recursive);
 
@@ -297,6 +330,9 @@ class PrivilegeEvaluator {
         // Define an evaluation context.
         final PrivilegeEvaluatorContext context =
                 new PrivilegeEvaluatorContext(realm, normalisedResourceName, applicationName);
+        if (batchContext != null) {
+            context.setSubjectDecisionCache(batchContext.getSubjectDecisions());
+        }
         final Object appToken = AppTokenHandler.getAndClear();
 
         // Submit additional policies to be executed by worker threads.
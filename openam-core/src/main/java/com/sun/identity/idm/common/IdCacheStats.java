@@ -24,10 +24,17 @@
  *
  * $Id: IdCacheStats.java,v 1.2 2008/08/07 17:22:06 arviranga Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.idm.common;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.sun.identity.shared.stats.Stats;
 import com.sun.identity.shared.stats.StatsListener;
 
@@ -56,6 +63,8 @@ public class IdCacheStats implements StatsListener {
 
     private Stats stats = null;
 
+    private final ConcurrentMap<String, RealmStats> realmStats = new ConcurrentHashMap<>();
+
 
     /**
      * Creates a new IdRepo Stats
@@ -99,6 +108,54 @@ public class IdCacheStats implements StatsListener {
         }
     }
 
+    /**
+     * Records a read of an identity of the realm which was answered from the cache.
+     *
+     * @param realm The realm of the identity.
+     */
+    public void recordRealmHit(String realm) {
+        getRealmStats(realm).hits.incrementAndGet();
+    }
+
+    /**
+     * Records a read of an identity of the realm which was answered from the cache of identities which do not exist.
+     *
+     * @param realm The realm of the identity.
+     */
+    public void recordRealmNegativeHit(String realm) {
+        getRealmStats(realm).negativeHits.incrementAndGet();
+    }
+
+    /**
+     * Records a read of an identity of the realm which had to be loaded from the data stores.
+     *
+     * @param realm The realm of the identity.
+     * @param loadTime The time spent loading the identity, in nanoseconds.
+     */
+    public void recordRealmMiss(String realm, long loadTime) {
+        RealmStats realmStat = getRealmStats(realm);
+        realmStat.misses.incrementAndGet();
+        realmStat.loadTime.addAndGet(loadTime);
+    }
+
+    /**
+     * Returns the cache statistics of the realm.
+     *
+     * @param realm The realm.
+     * @return The statistics of the realm, never {@code null}.
+     */
+    public RealmStats getRealmStats(String realm) {
+        String key = realm == null ? "/" : realm.toLowerCase();
+        RealmStats realmStat = realmStats.get(key);
+        if (realmStat == null) {
+            RealmStats created = new RealmStats();
+            realmStat = realmStats.putIfAbsent(key, created);
+            if (realmStat == null) {
+                realmStat = created;
+            }
+        }
+        return realmStat;
+    }
 
     /**
      * Prints the session statistics for the given session table.
@@ -122,12 +179,66 @@ public class IdCacheStats implements StatsListener {
                 + "\nTotal number of FQDN Search hits since server start: "
                 + totalSearchHits + "\nOverall Hit ratio: "
                 + (double) totalSearchHits / (double) totalSearchRequests
-                + "\nTotal Cache Size: " + cacheSize + "\n");
+                + "\nTotal Cache Size: " + cacheSize + "\n"
+                + printRealmStats());
 
         // Reset interval hits to 0
         intervalCount = 0;
         totalIntervalHits = 0;
     
    }
-}
 
+    private String printRealmStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, RealmStats> entry : realmStats.entrySet()) {
+            RealmStats realmStat = entry.getValue();
+            sb.append("Realm ").append(entry.getKey())
+                    .append(": hits ").append(realmStat.getHitCount())
+                    .append(", negative hits ").append(realmStat.getNegativeHitCount())
+                    .append(", misses ").append(realmStat.getMissCount())
+                    .append(", average load time (ms) ").append(realmStat.getAverageLoadTime())
+                    .append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Cache statistics of the identities of a realm.
+     */
+    public static final class RealmStats {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong negativeHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong loadTime = new AtomicLong();
+
+        /**
+         * @return The number of reads answered from the cache.
+         */
+        public long getHitCount() {
+            return hits.get();
+        }
+
+        /**
+         * @return The number of reads of identities which do not exist answered from the cache.
+         */
+        public long getNegativeHitCount() {
+            return negativeHits.get();
+        }
+
+        /**
+         * @return The number of reads loaded from the data stores.
+         */
+        public long getMissCount() {
+            return misses.get();
+        }
+
+        /**
+         * @return The average time, in milliseconds, spent loading a read from the data stores.
+         */
+        public double getAverageLoadTime() {
+            long count = misses.get();
+            return count == 0 ? 0 : (double) loadTime.get() / TimeUnit.MILLISECONDS.toNanos(1) / count;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.idm.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.sun.identity.common.DNUtils;
+
+/**
+ * Index of the keys of the identity cache by their reversed normalized DN, so that the entries of a sub-tree are a
+ * range of the index rather than a scan of every cached entry.
+ */
+final class IdCacheDNIndex {
+
+    private final ConcurrentSkipListMap<String, String> keys = new ConcurrentSkipListMap<>();
+
+    /**
+     * Indexes a cache key.
+     *
+     * @param key the cache key, the DN of the identity.
+     */
+    void add(String key) {
+        keys.put(getIndexKey(key), key);
+    }
+
+    /**
+     * Removes a cache key from the index.
+     *
+     * @param key the cache key, the DN of the identity.
+     */
+    void remove(String key) {
+        keys.remove(getIndexKey(key), key);
+    }
+
+    /**
+     * Returns the cache keys of the sub-tree of a DN: the DN itself and the DNs below it.
+     *
+     * @param dn the base DN of the sub-tree.
+     * @return the cache keys in the sub-tree.
+     */
+    Collection<String> getSubTree(String dn) {
+        String base = getIndexKey(dn);
+        List<String> subTree = new ArrayList<>();
+        String key = keys.get(base);
+        if (key != null) {
+            subTree.add(key);
+        }
+        // the reversed DNs below the base continue the reversed base with a separator between RDNs
+        String prefix = base + ',';
+        subTree.addAll(keys.subMap(prefix, prefix + Character.MAX_VALUE).values());
+        return subTree;
+    }
+
+    /**
+     * Removes every cache key from the index.
+     */
+    void clear() {
+        keys.clear();
+    }
+
+    private static String getIndexKey(String dn) {
+        String normalized = DNUtils.normalizeDN(dn);
+        return new StringBuilder(normalized == null ? dn.toLowerCase() : normalized).reverse().toString();
+    }
+}
@@ -39,6 +39,7 @@ import com.sun.identity.common.configuration.ConfigurationObserver;
 import com.sun.identity.idm.AMIdentity;
 import com.sun.identity.idm.IdCachedServices;
 import com.sun.identity.idm.IdConstants;
+import com.sun.identity.idm.IdRepoBundle;
 import com.sun.identity.idm.IdRepoErrorCode;
 import com.sun.identity.idm.IdRepoException;
 import com.sun.identity.idm.IdSearchControl;
@@ -60,6 +61,9 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.forgerock.guava.common.cache.Cache;
 import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.RemovalCause;
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
 import org.forgerock.openam.utils.CrestQuery;
 import org.forgerock.util.thread.listener.ShutdownListener;
 import org.forgerock.util.thread.listener.ShutdownManager;
@@ -75,12 +79,25 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
     static final int CACHE_MAX_SIZE_INT = 10000;
 
+    /**
+     * How long, in seconds, the identities found not to exist are cached for. Zero disables negative caching.
+     */
+    static final String NEGATIVE_CACHE_TTL_KEY = "com.iplanet.am.sdk.cache.negative.ttl";
+
+    static final String NEGATIVE_CACHE_MAX_SIZE_KEY = "com.iplanet.am.sdk.cache.negative.maxSize";
+
     private static int maxSize;
 
     private static IdCachedServicesImpl instance;
 
     // Class Private
-    private Cache<String, IdCacheBlock> idRepoCache;
+    private volatile Cache<String, IdCacheBlock> idRepoCache;
+
+    // Cache keys indexed by their DN, so that the entries of a sub-tree are a range of the index
+    private final IdCacheDNIndex cachedDNs = new IdCacheDNIndex();
+
+    // Identities which were not found in the data stores, and the error raised when reading them
+    private final IdNegativeCache negativeCache;
 
     private IdCacheStats cacheStats;
 
@@ -109,6 +126,8 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     private IdCachedServicesImpl() {
         super();
         initializeCache();
+        negativeCache = new IdNegativeCache(SystemProperties.getAsInt(NEGATIVE_CACHE_TTL_KEY, 0),
+                SystemProperties.getAsInt(NEGATIVE_CACHE_MAX_SIZE_KEY, CACHE_MAX_SIZE_INT));
         stats = Stats.getInstance(getClass().getName());
         cacheStats = new IdCacheStats(IdConstants.IDREPO_CACHESTAT);
         stats.addStatsListener(cacheStats);
@@ -118,12 +137,33 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     }
 
     private void initializeCache() {
-        idRepoCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        idRepoCache = CacheBuilder.newBuilder().maximumSize(maxSize)
+                .removalListener(new RemovalListener<String, IdCacheBlock>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, IdCacheBlock> notification) {
+                        String key = notification.getKey();
+                        if (notification.getCause() != RemovalCause.REPLACED && key != null
+                                && !idRepoCache.asMap().containsKey(key)) {
+                            cachedDNs.remove(key);
+                        }
+                    }
+                }).build();
     }
 
     private void resetCache(int maxCacheSize) {
         setMaxSize(maxCacheSize);
-        clearCache();
+        Cache<String, IdCacheBlock> oldCache = idRepoCache;
+        // clear the index before the new cache is in use, so that the entries added to the new cache stay indexed
+        cachedDNs.clear();
+        initializeCache();
+        oldCache.invalidateAll();
+        negativeCache.invalidateAll();
+    }
+
+    // Adds the entry to the cache and to the DN index
+    private void putInCache(String dn, IdCacheBlock cb) {
+        idRepoCache.put(dn, cb);
+        cachedDNs.add(dn);
     }
 
     /**
@@ -191,21 +231,14 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     // Update/Dirty methods of this class.
     // *************************************************************************
     private void removeCachedAttributes(String affectDNs, Set attrNames) {
-        for (String key : idRepoCache.asMap().keySet()) {
-            key = DNUtils.normalizeDN(key);
-            int l1 = key.length();
-            int l2 = affectDNs.length();
-            if (key.regionMatches(true, (l1 - l2), affectDNs, 0, l2)) {
-                // key ends with 'affectDN' string
-                IdCacheBlock cb = idRepoCache.getIfPresent(key);
-                if (cb != null) {
-                    // key ends with 'affectDN' string
-                    if ((attrNames != null) &&
-                        !cb.hasExpiredAndUpdated() && cb.isExists()) {
-                        cb.removeAttributes(attrNames);
-                    } else {
-                        cb.clear();
-                    }
+        for (String key : cachedDNs.getSubTree(affectDNs)) {
+            IdCacheBlock cb = idRepoCache.getIfPresent(key);
+            if (cb != null) {
+                if ((attrNames != null) &&
+                    !cb.hasExpiredAndUpdated() && cb.isExists()) {
+                    cb.removeAttributes(attrNames);
+                } else {
+                    cb.clear();
                 }
             }
         }
@@ -220,9 +253,19 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
      * EventService notifies that all entries have been modified (or should be
      * marked dirty).
      */
-    public synchronized void clearCache() {
+    public void clearCache() {
         idRepoCache.invalidateAll();
-        initializeCache();
+        negativeCache.invalidateAll();
+    }
+
+    /**
+     * Returns the cache statistics of the identities of a realm.
+     *
+     * @param realm The realm DN.
+     * @return The statistics of the realm.
+     */
+    public IdCacheStats.RealmStats getRealmStats(String realm) {
+        return cacheStats.getRealmStats(realm);
     }
 
     /**
@@ -255,6 +298,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         String cachedID = getCacheId(dn);
         switch (eventType) {
         case AMEvent.OBJECT_ADDED:
+            negativeCache.invalidate(cachedID);
             cb = getFromCache(dn);
             if (cb != null) { // Mark an invalid entry as valid now
                 cb.setExists(true);
@@ -371,6 +415,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         // Check in the cache
         IdCacheBlock cb = idRepoCache.getIfPresent(dn);
         if (cb == null) { // Entry not present in cache
+            checkNegativeCache(dn, amOrgName);
             if (DEBUG.messageEnabled()) {
                 DEBUG.message("IdCachedServicesImpl.getAttributes(): "
                         + "NO entry found in Cachefor key = " + dn
@@ -381,15 +426,23 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             // If the attributes returned here have an empty set as value, then
             // such attributes do not have a value or invalid attributes.
             // Internally keep track of these attributes.
-            attributes = (AMHashMap) super.getAttributes(token, type, name,
-                    attrNames, amOrgName, amsdkDN, isStringValues);
+            long start = System.nanoTime();
+            try {
+                attributes = (AMHashMap) super.getAttributes(token, type, name,
+                        attrNames, amOrgName, amsdkDN, isStringValues);
+            } catch (IdRepoException ide) {
+                cacheNotFound(dn, ide);
+                throw ide;
+            } finally {
+                cacheStats.recordRealmMiss(amOrgName, System.nanoTime() - start);
+            }
 
             // Find the missing attributes and add to cache
             Set missAttrNames = attributes.getMissingAndEmptyKeys(attrNames);
             cb = new IdCacheBlock(dn, true);
             cb.putAttributes(principalDN, attributes, missAttrNames, false,
                     !isStringValues);
-            idRepoCache.put(dn, cb);
+            putInCache(dn, cb);
         } else { // Entry present in cache
             attributes = (AMHashMap) cb.getAttributes(principalDN, attrNames,
                     !isStringValues);
@@ -405,9 +458,16 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                             + "attributes from DS: "
                             + missAttrNames);
                 }
-                AMHashMap dsAttributes = (AMHashMap) super.getAttributes(token,
-                        type, name, attrNames, amOrgName, amsdkDN,
-                        isStringValues);
+                // Only read the attributes which are not cached
+                long start = System.nanoTime();
+                AMHashMap dsAttributes;
+                try {
+                    dsAttributes = (AMHashMap) super.getAttributes(token,
+                            type, name, missAttrNames, amOrgName, amsdkDN,
+                            isStringValues);
+                } finally {
+                    cacheStats.recordRealmMiss(amOrgName, System.nanoTime() - start);
+                }
                 attributes.putAll(dsAttributes);
 
                 // Add these attributes, may be found in DS or just mark them
@@ -418,6 +478,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                         false, !isStringValues);
             } else { // All attributes found in cache
                 cacheStats.updateGetHitCount(getSize());
+                cacheStats.recordRealmHit(amOrgName);
                 if (MonitoringUtil.isRunning() &&
                     ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
                     long li = (long)getSize();
@@ -456,6 +517,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         AMHashMap attributes;
         if ((cb != null) && cb.hasCompleteSet(principalDN)) {
             cacheStats.updateGetHitCount(getSize());
+            cacheStats.recordRealmHit(amOrgName);
             if (MonitoringUtil.isRunning() &&
                 ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
                 long li = (long)getSize();
@@ -475,11 +537,22 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                     + " complete attribute"
                     + " set NOT found in cache. Getting from DS.");
             }
-            attributes = (AMHashMap) super.getAttributes(token, type, name,
-                amOrgName, amsdkDN);
+            if (cb == null) {
+                checkNegativeCache(dn, amOrgName);
+            }
+            long start = System.nanoTime();
+            try {
+                attributes = (AMHashMap) super.getAttributes(token, type, name,
+                    amOrgName, amsdkDN);
+            } catch (IdRepoException ide) {
+                cacheNotFound(dn, ide);
+                throw ide;
+            } finally {
+                cacheStats.recordRealmMiss(amOrgName, System.nanoTime() - start);
+            }
             if (cb == null) {
                 cb = new IdCacheBlock(dn, true);
-                idRepoCache.put(dn, cb);
+                putInCache(dn, cb);
             }
             cb.putAttributes(principalDN, attributes, null, true, false);
             if (DEBUG.messageEnabled()) {
@@ -536,6 +609,30 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         idRepoCache.invalidate(dn);
     }
 
+    @Override
+    public AMIdentity create(SSOToken token, IdType type, String name,
+        Map attrMap, String amOrgName) throws IdRepoException, SSOException {
+        AMIdentity id = super.create(token, type, name, attrMap, amOrgName);
+        negativeCache.invalidate(getCacheId(id.getUniversalId().toLowerCase()));
+        return id;
+    }
+
+    @Override
+    public boolean isExists(SSOToken token, IdType type, String name,
+        String amOrgName) throws SSOException, IdRepoException {
+        String dn = new AMIdentity(token, name, type, amOrgName, null).getUniversalId().toLowerCase();
+        if (negativeCache.get(getCacheId(dn)) != null) {
+            cacheStats.recordRealmNegativeHit(amOrgName);
+            return false;
+        }
+        boolean exists = super.isExists(token, type, name, amOrgName);
+        if (!exists) {
+            negativeCache.put(getCacheId(dn), new IdRepoException(IdRepoBundle.BUNDLE_NAME,
+                    IdRepoErrorCode.TYPE_NOT_FOUND, new Object[] {name, type.getName()}));
+        }
+        return exists;
+    }
+
     public void removeAttributes(SSOToken token, IdType type, String name,
         Set attrNames, String orgName, String amsdkDN)
         throws IdRepoException, SSOException {
@@ -650,6 +747,20 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         return (answer);
     }
 
+    // Throws the exception cached for an identity which was not found in the data stores
+    private void checkNegativeCache(String dn, String amOrgName) throws IdRepoException {
+        IdRepoException notFound = negativeCache.get(getCacheId(dn));
+        if (notFound != null) {
+            cacheStats.recordRealmNegativeHit(amOrgName);
+            throw notFound;
+        }
+    }
+
+    // Caches the identity as not existing if it was not found in any data store
+    private void cacheNotFound(String dn, IdRepoException ide) {
+        negativeCache.put(getCacheId(dn), ide);
+    }
+
     // Return cache block for the universal identifier
     private IdCacheBlock getFromCache(String dn) {
         IdCacheBlock cb = idRepoCache.getIfPresent(dn);
@@ -0,0 +1,124 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.idm.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+
+import com.sun.identity.idm.IdRepoErrorCode;
+import com.sun.identity.idm.IdRepoException;
+
+/**
+ * Caches, for a short time, the identities which were not found in any data store, and the error raised when reading
+ * them.
+ * <p>
+ * Only the resource bundle, error code and arguments of the error are kept, and a new exception is built for every
+ * lookup, so that callers never share, or see the stack trace of, the exception of another request.
+ */
+final class IdNegativeCache {
+
+    private final boolean enabled;
+    private final Cache<String, NotFound> notFound;
+
+    /**
+     * Creates the cache.
+     *
+     * @param ttlSeconds how long identities are cached for, zero or less to disable negative caching.
+     * @param maxSize the maximum number of identities cached.
+     */
+    IdNegativeCache(int ttlSeconds, int maxSize) {
+        this.enabled = ttlSeconds > 0;
+        this.notFound = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Math.max(ttlSeconds, 1), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return true if identities found not to exist are cached.
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Caches the identity as not existing if the error shows it was not found in any data store.
+     *
+     * @param id the cache ID of the identity.
+     * @param error the error raised when reading the identity.
+     */
+    void put(String id, IdRepoException error) {
+        if (enabled && (IdRepoErrorCode.UNABLE_FIND_ENTRY.equals(error.getErrorCode())
+                || IdRepoErrorCode.TYPE_NOT_FOUND.equals(error.getErrorCode()))) {
+            notFound.put(id, new NotFound(error));
+        }
+    }
+
+    /**
+     * Returns a new exception for an identity cached as not existing.
+     *
+     * @param id the cache ID of the identity.
+     * @return a new exception equivalent to the cached error, or {@code null} if the identity is not cached.
+     */
+    IdRepoException get(String id) {
+        if (!enabled) {
+            return null;
+        }
+        NotFound cached = notFound.getIfPresent(id);
+        return cached == null ? null : cached.newException();
+    }
+
+    /**
+     * Removes the identity, which may now exist.
+     *
+     * @param id the cache ID of the identity.
+     */
+    void invalidate(String id) {
+        notFound.invalidate(id);
+    }
+
+    /**
+     * Removes every identity.
+     */
+    void invalidateAll() {
+        notFound.invalidateAll();
+    }
+
+    private static final class NotFound {
+        private final String bundleName;
+        private final String errorCode;
+        private final String ldapErrorCode;
+        private final Object[] args;
+
+        @SuppressWarnings("deprecation")
+        private NotFound(IdRepoException error) {
+            this.bundleName = error.getResourceBundleName();
+            this.errorCode = error.getErrorCode();
+            this.ldapErrorCode = error.getLDAPErrorCode();
+            this.args = error.getMessageArgs() == null ? null : error.getMessageArgs().clone();
+        }
+
+        private IdRepoException newException() {
+            IdRepoException error = new IdRepoException(bundleName, errorCode, args == null ? null : args.clone());
+            if (ldapErrorCode != null) {
+                error.setLDAPErrorCode(ldapErrorCode);
+            }
+            return error;
+        }
+    }
+}
@@ -842,6 +842,6 @@ public class LogReader {
     }
 
     public static boolean isLogSecure() {
-        return (logSecurity.equalsIgnoreCase("ON"));
+        return ("ON".equalsIgnoreCase(logSecurity));
     }
 }
@@ -48,10 +48,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 
+import org.forgerock.util.annotations.VisibleForTesting;
+
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.am.util.ThreadPoolException;
 import com.iplanet.log.ConnectionException;
 import com.iplanet.log.DriverLoadException;
@@ -76,9 +81,25 @@ import com.sun.identity.monitoring.SsoServerLoggingSvcImpl;
  * table name which will be created if it doesn't already exists.
  * <p>
  * By default DBFormatter is used for formatting the logRecords.
+ * <p>
+ * If batching is enabled with the {@link #BATCH_ENABLED} system property, the buffered records are inserted with a
+ * single reused PreparedStatement, in JDBC batches of up to {@link #BATCH_SIZE} records each committed in one
+ * transaction. A batch which fails is rolled back and its records are inserted one at a time, so that the usual
+ * recovery from a lost connection or a missing table applies.
  */
 public class DBHandler extends Handler {
 
+    /**
+     * System property enabling the batched insertion of log records.
+     */
+    public static final String BATCH_ENABLED = "org.forgerock.openam.log.db.batch.enabled";
+    /**
+     * System property defining the maximum number of log records inserted by a batch.
+     */
+    public static final String BATCH_SIZE = "org.forgerock.openam.log.db.batch.size";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     private LogManager lmanager = LogManagerUtil.getLogManager();
     private String driver;
     private String databaseURL;
@@ -104,6 +125,16 @@ public class DBHandler extends Handler {
     private String oraDataType;
     private String mysqlDataType;
 
+    private final boolean batchEnabled;
+    private final int batchSize;
+    private final Object batchLock = new Object();
+    private PreparedStatement batchStatement;
+    private String batchStatementString;
+    private Connection batchStatementConnection;
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchTime = new AtomicLong();
+    private final AtomicLong maxBatchTime = new AtomicLong();
+
     private void configure() throws NullLocationException, FormatterInitException {
         setFilter(null);
         try {
@@ -311,6 +342,8 @@ public class DBHandler extends Handler {
      * @param tableName Database table name for logger.
      */
     public DBHandler(String tableName) {
+        batchEnabled = SystemProperties.getAsBoolean(BATCH_ENABLED, false);
+        batchSize = Math.max(1, SystemProperties.getAsInt(BATCH_SIZE, DEFAULT_BATCH_SIZE));
         if ((tableName == null) || (tableName.length() == 0)) {
             return;
         }
@@ -360,6 +393,25 @@ public class DBHandler extends Handler {
         }
     }
 
+    /**
+     * Constructor used by the tests, inserting the records in batches over the provided connection, only when
+     * flushed.
+     * @param tableName Database table name for logger.
+     * @param conn The connection to the database.
+     * @param formatter The formatter providing the columns and the data of the records.
+     * @param batchSize The maximum number of records inserted by a batch.
+     */
+    @VisibleForTesting
+    DBHandler(String tableName, Connection conn, Formatter formatter, int batchSize) {
+        this.tableName = tableName;
+        this.conn = conn;
+        this.batchEnabled = true;
+        this.batchSize = batchSize;
+        this.recCountLimit = Integer.MAX_VALUE;
+        this.recordBuffer = new LinkedList<LogRecord>();
+        setFormatter(formatter);
+    }
+
     /**
      * Publishes the provided LogRecord.
      * @param logRecord the log record to be published.
@@ -398,6 +450,18 @@ public class DBHandler extends Handler {
      * @throws SQLException if there is an issue creating or preparing the statement values.
      */
     private PreparedStatement getInsertPreparedStatement(List<String> values) throws SQLException {
+        PreparedStatement preparedStatement = conn.prepareStatement(getInsertStatementString(values));
+        setInsertValues(preparedStatement, values);
+        return preparedStatement;
+    }
+
+    /**
+     * Construct the INSERT statement for the number of values to be inserted into the table that this DBHandler
+     * represents.
+     * @param values The values to be added as part of the INSERT statement
+     * @return The INSERT statement, with a placeholder for each value.
+     */
+    private String getInsertStatementString(List<String> values) {
 
         StringBuilder insertStringBuffer = new StringBuilder(2000);
         insertStringBuffer.append("INSERT INTO ").append(tableName);
@@ -420,9 +484,16 @@ public class DBHandler extends Handler {
             Debug.message(tableName +
                 ":DBHandler:getInsertPreparedStatement preparedStatementString is " + preparedStatementString);
         }
+        return preparedStatementString;
+    }
 
-        PreparedStatement preparedStatement = conn.prepareStatement(preparedStatementString);
-
+    /**
+     * Set the values to be inserted as the parameters of the INSERT statement.
+     * @param preparedStatement The INSERT statement.
+     * @param values The values to be added as part of the INSERT statement
+     * @throws SQLException if there is an issue setting the statement values.
+     */
+    private void setInsertValues(PreparedStatement preparedStatement, List<String> values) throws SQLException {
         // Column numbers in PreparedStatements start at 1 not 0.
         // Set the time and data values directly, these are always the first two columns.
         preparedStatement.setTimestamp(1, new Timestamp(Long.parseLong(values.get(0))));
@@ -435,8 +506,6 @@ public class DBHandler extends Handler {
         for (int i = 2; i < values.size(); i++) {
             preparedStatement.setString(i + 1, values.get(i));
         }
-
-        return preparedStatement;
     }
 
     /**
@@ -568,6 +637,10 @@ public class DBHandler extends Handler {
         } catch (AMLogException ale) {
             Debug.error(tableName + ":DBHandler:close/flush error: " + ale.getMessage());
         }
+        synchronized (batchLock) {
+            closeStatement(batchStatement);
+            batchStatement = null;
+        }
         if(conn != null) {
             try {
                 conn.close();
@@ -1009,6 +1082,14 @@ public class DBHandler extends Handler {
             closeStatement(testConnectionStatement);
         }
 
+        if (batchEnabled) {
+            int logged = logRecordsInBatches(records);
+            // the records which were not committed are inserted one at a time, to recover from the error
+            for (int i = 0; i < logged; i++) {
+                records.removeFirst();
+            }
+        }
+
         PreparedStatement insertStatement = null;
         for (LogRecord record : records) {
             List<String> values = getValues(record);
@@ -1190,6 +1271,133 @@ public class DBHandler extends Handler {
         }
     }
 
+    /**
+     * Insert the records in JDBC batches, each committed in a single transaction. Stops at the first batch which
+     * fails, after rolling it back.
+     * @param records The records to be inserted.
+     * @return The number of records, from the start of the list, which were committed.
+     */
+    private int logRecordsInBatches(List<LogRecord> records) {
+        synchronized (batchLock) {
+            int logged = 0;
+            boolean autoCommit = true;
+            try {
+                autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                while (logged < records.size()) {
+                    long start = System.nanoTime();
+                    int batched = 0;
+                    PreparedStatement statement = null;
+                    for (LogRecord record : records.subList(logged, Math.min(logged + batchSize, records.size()))) {
+                        List<String> values = getValues(record);
+                        String statementString = getInsertStatementString(values);
+                        if (statement != null && !statementString.equals(batchStatementString)) {
+                            // the columns of the table have changed, start a new batch
+                            break;
+                        }
+                        statement = getBatchStatement(statementString);
+                        setInsertValues(statement, values);
+                        statement.addBatch();
+                        batched++;
+                    }
+                    statement.executeBatch();
+                    conn.commit();
+                    logged += batched;
+                    recordBatch(batched, System.nanoTime() - start);
+                }
+            } catch (SQLException sqle) {
+                if (Debug.messageEnabled()) {
+                    Debug.message(tableName + ":DBHandler:logRecordsInBatches:SQLException (" + sqle.getErrorCode()
+                            + "): " + sqle.getMessage());
+                }
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    if (Debug.messageEnabled()) {
+                        Debug.message(tableName + ":DBHandler:logRecordsInBatches:rollback:SQLE ("
+                                + ex.getErrorCode() + "): " + ex.getMessage());
+                    }
+                }
+                closeStatement(batchStatement);
+                batchStatement = null;
+            } finally {
+                try {
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException ex) {
+                    if (Debug.messageEnabled()) {
+                        Debug.message(tableName + ":DBHandler:logRecordsInBatches:setAutoCommit:SQLE ("
+                                + ex.getErrorCode() + "): " + ex.getMessage());
+                    }
+                }
+            }
+            return logged;
+        }
+    }
+
+    /**
+     * Return the reused INSERT statement, prepared again if the statement or the connection have changed.
+     */
+    private PreparedStatement getBatchStatement(String statementString) throws SQLException {
+        if (batchStatement == null || batchStatementConnection != conn
+                || !statementString.equals(batchStatementString)) {
+            closeStatement(batchStatement);
+            batchStatement = null;
+            batchStatement = conn.prepareStatement(statementString);
+            batchStatementString = statementString;
+            batchStatementConnection = conn;
+        }
+        return batchStatement;
+    }
+
+    private void recordBatch(int size, long time) {
+        batchCount.incrementAndGet();
+        batchTime.addAndGet(time);
+        long max = maxBatchTime.get();
+        while (time > max && !maxBatchTime.compareAndSet(max, time)) {
+            max = maxBatchTime.get();
+        }
+        //Monit start
+        if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+            dbLogHandlerForMonitoring.incHandlerSuccessCount(size);
+        }
+        //Monit end
+        if (Debug.messageEnabled()) {
+            Debug.message(tableName + ":DBHandler:logRecordsInBatches: inserted " + size + " records in "
+                    + TimeUnit.NANOSECONDS.toMillis(time) + "ms, " + getBacklog() + " records buffered");
+        }
+    }
+
+    /**
+     * @return The number of JDBC batches of log records inserted.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return The average time, in milliseconds, taken to insert and commit a batch of log records.
+     */
+    public double getAverageBatchLatency() {
+        long count = batchCount.get();
+        return count == 0 ? 0 : (double) batchTime.get() / TimeUnit.MILLISECONDS.toNanos(1) / count;
+    }
+
+    /**
+     * @return The longest time, in milliseconds, taken to insert and commit a batch of log records.
+     */
+    public long getMaxBatchLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(maxBatchTime.get());
+    }
+
+    /**
+     * @return The approximate number of log records buffered waiting to be inserted.
+     */
+    public int getBacklog() {
+        // not synchronized, as this is called while inserting records which may hold the handler's lock
+        LinkedList<LogRecord> buffer = recordBuffer;
+        return buffer == null ? 0 : buffer.size();
+    }
+
     private void closeResultSet(ResultSet resultSet) {
 
         if (resultSet != null) {
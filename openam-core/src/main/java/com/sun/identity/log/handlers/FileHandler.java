@@ -41,6 +41,8 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -49,6 +51,7 @@ import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.am.util.ThreadPoolException;
 import com.iplanet.log.NullLocationException;
 import com.sun.identity.common.GeneralTaskRunnable;
@@ -65,6 +68,8 @@ import com.sun.identity.monitoring.SsoServerLoggingSvcImpl;
 import java.io.FileNotFoundException;
 import java.util.Calendar;
 
+import org.forgerock.openam.utils.file.AsyncFileAppender;
+
 /**
  * This <tt> FileHandler </tt> is very much similar to the
  * <t> java.util.logging.FileHandler </tt>. <p> The <TT> FileHandler </TT>
@@ -76,9 +81,37 @@ import java.util.Calendar;
  * etc., * to the base filename. The Locking mechanism is much more relaxed 
  * (in JDK's  FileHandler an exclusive lock is created on the file till the
  * handler is closed which makes reading impossible)
+ * <p>
+ * If {@link #ASYNC_ENABLED} is set, formatted records are handed to an {@link AsyncFileAppender} instead of being
+ * buffered, and the file is rotated and written in batches by its background thread.
  */
 public class FileHandler extends java.util.logging.Handler {
 
+    /**
+     * Whether records are written by a background thread through a lock-free ring buffer.
+     */
+    public static final String ASYNC_ENABLED = "org.forgerock.openam.log.file.async.enabled";
+
+    /**
+     * The number of records the ring buffer holds.
+     */
+    public static final String ASYNC_CAPACITY = "org.forgerock.openam.log.file.async.capacity";
+
+    /**
+     * How long, in milliseconds, a thread waits for space in a full ring buffer before its record is dropped.
+     */
+    public static final String ASYNC_MAX_WAIT = "org.forgerock.openam.log.file.async.maxWait";
+
+    private static final int DEFAULT_ASYNC_CAPACITY = 8192;
+    private static final int DEFAULT_ASYNC_MAX_WAIT = 100;
+    private static final long ASYNC_FLUSH_TIMEOUT = 10000L;
+
+    /**
+     * Whether a sidecar time index is written alongside each log file, for {@link LogReadFileHandler} to skip the
+     * parts of the file outside the time window of a query. Records written asynchronously are not indexed.
+     */
+    public static final String INDEX_ENABLED = "org.forgerock.openam.log.file.index.enabled";
+
     private LogManager lmanager = LogManagerUtil.getLogManager();
     private OutputStream output;
     private Writer writer;
@@ -98,6 +131,11 @@ public class FileHandler extends java.util.logging.Handler {
     private static String headerString = null;
     private SsoServerLoggingSvcImpl logServiceImplForMonitoring = null;
     private SsoServerLoggingHdlrEntryImpl fileLogHandlerForMonitoring = null;
+    private final boolean asyncEnabled = SystemProperties.getAsBoolean(ASYNC_ENABLED, false);
+    private AsyncFileAppender asyncAppender;
+    private FileChannel channel;
+    private final boolean indexEnabled = SystemProperties.getAsBoolean(INDEX_ENABLED, false);
+    private LogFileIndex logIndex;
 
     private int rotationInterval = -1;
     private long lastRotation;
@@ -112,11 +150,13 @@ public class FileHandler extends java.util.logging.Handler {
 
         OutputStream out;
         String filename = null;
+        long written;
 
         MeteredStream(File fileName, boolean append) throws IOException {
             this.filename = fileName.toString();
             FileOutputStream fout = new FileOutputStream(filename, append);
             this.out = new BufferedOutputStream(fout);
+            this.written = append ? fileName.length() : 0;
         }
 
         /**
@@ -127,6 +167,7 @@ public class FileHandler extends java.util.logging.Handler {
          */
         public void write(int b) throws IOException {
             out.write(b);
+            written++;
         }
 
         /**
@@ -137,6 +178,7 @@ public class FileHandler extends java.util.logging.Handler {
          */
         public void write(byte[] b) throws IOException {
             out.write(b);
+            written += b.length;
         }
 
         /**
@@ -150,6 +192,7 @@ public class FileHandler extends java.util.logging.Handler {
         public void write(byte[] b, int offset, int length)
                 throws IOException {
             out.write(b, offset, length);
+            written += length;
         }
 
         /**
@@ -343,8 +386,18 @@ public class FileHandler extends java.util.logging.Handler {
      * Create a file of the name of FileOutputStream.
      */
     private void open(File fileName, boolean append) throws IOException {
-        meteredStream = new MeteredStream(fileName, append);
-        setOutputStream(meteredStream);
+        if (!append) {
+            LogFileIndex.delete(fileName);
+        }
+        if (indexEnabled && !asyncEnabled) {
+            logIndex = new LogFileIndex(fileName);
+        }
+        if (asyncEnabled) {
+            channel = new FileOutputStream(fileName, append).getChannel();
+        } else {
+            meteredStream = new MeteredStream(fileName, append);
+            setOutputStream(meteredStream);
+        }
         checkForHeaderWritten(fileName.toString());
     }
 
@@ -384,7 +437,11 @@ public class FileHandler extends java.util.logging.Handler {
 
         recordBuffer = new LinkedList();
 
-        if (timeBufferingEnabled) {
+        if (asyncEnabled) {
+            asyncAppender = new AsyncFileAppender(this.fileName, new FileDestination(),
+                    SystemProperties.getAsInt(ASYNC_CAPACITY, DEFAULT_ASYNC_CAPACITY),
+                    SystemProperties.getAsInt(ASYNC_MAX_WAIT, DEFAULT_ASYNC_MAX_WAIT));
+        } else if (timeBufferingEnabled) {
             startTimeBufferingThread();
         }
 
@@ -443,7 +500,12 @@ public class FileHandler extends java.util.logging.Handler {
      * Flush any buffered messages and Close all the files.
      */
     public void close() {
+        if (asyncAppender != null) {
+            asyncAppender.close(ASYNC_FLUSH_TIMEOUT);
+            closeChannel();
+        }
         flush();
+        closeIndex();
         if (writer != null) {
             try {
                 writer.close();
@@ -477,6 +539,14 @@ public class FileHandler extends java.util.logging.Handler {
         }
         Formatter formatter = getFormatter();
         String message = formatter.format(lrecord);
+        if (asyncAppender != null) {
+            if (!asyncAppender.append(toBytes(message))) {
+                if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+                    fileLogHandlerForMonitoring.incHandlerDroppedCount(1);
+                }
+            }
+            return;
+        }
         synchronized (this) {        
             recordBuffer.add(message);
             if (recordBuffer.size() >= recCountLimit) {
@@ -525,6 +595,10 @@ public class FileHandler extends java.util.logging.Handler {
     }
 
     public void flush() {
+        if (asyncAppender != null) {
+            asyncAppender.flush(ASYNC_FLUSH_TIMEOUT);
+            return;
+        }
         synchronized (this) {
             if (recordBuffer.size() <= 0) {
                 return;
@@ -546,10 +620,10 @@ public class FileHandler extends java.util.logging.Handler {
                 }
                 try {
                     if (!headerWritten) {
-                        writer.write(getHeaderString());
+                        writeHeader();
                         headerWritten = true;
                     }
-                    writer.write(message);
+                    writeRecord(message);
                     if (MonitoringUtil.isRunning() &&
                         fileLogHandlerForMonitoring != null) {
                         fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
@@ -562,12 +636,44 @@ public class FileHandler extends java.util.logging.Handler {
         }        
     }
 
+    private void writeHeader() throws IOException {
+        if (logIndex == null) {
+            writer.write(getHeaderString());
+        } else {
+            meteredStream.write(toBytes(getHeaderString()));
+        }
+    }
+
+    /**
+     * Writes a record. While the file is indexed the record is encoded here and
+     * written straight to the metered stream, so that its byte range is known
+     * without flushing the writer.
+     */
+    private void writeRecord(String message) throws IOException {
+        if (logIndex == null) {
+            writer.write(message);
+            return;
+        }
+        long start = meteredStream.written;
+        meteredStream.write(toBytes(message));
+        logIndex.recordWritten(message, start, meteredStream.written);
+    }
+
+    private void closeIndex() {
+        if (logIndex != null) {
+            logIndex.close();
+            logIndex = null;
+        }
+    }
+
     private boolean needsRotation(String message) {
+        return needsRotation(message.length());
+    }
+
+    private boolean needsRotation(long length) {
         if (rotateEnabled) {
             if (rotatingBySize) {
-                if (!message.isEmpty()
-                        && new File(meteredStream.filename).length() >= maxFileSize
-                                - message.length()) {
+                if (length > 0 && files[0].length() >= maxFileSize - length) {
                     return true;
                 }
             } else {
@@ -585,6 +691,7 @@ public class FileHandler extends java.util.logging.Handler {
     }
 
     private void rotate() {
+       closeIndex();
        if (writer != null) {
             try {
                 writer.flush();
@@ -594,6 +701,7 @@ public class FileHandler extends java.util.logging.Handler {
                         "Error closing writer", ex);
             }
         }
+        closeChannel();
         if (rotatingBySize) {
             //
             //  delete file<n>; file<n-1> becomes file<n>; and so on.
@@ -619,6 +727,7 @@ public class FileHandler extends java.util.logging.Handler {
                     if (!renameSuccess) {
                         copyFile(f1.toString(), f2.toString());
                     }
+                    LogFileIndex.rename(f1, f2);
                 }
             }
         } else {
@@ -626,6 +735,7 @@ public class FileHandler extends java.util.logging.Handler {
             lastRotation = currentTimeMillis();
             // Delete the oldest file if it exists
             if (files[count].exists()) {
+                LogFileIndex.delete(files[count]);
                 try {
                     files[count].delete();
                 } catch (SecurityException secex) {
@@ -662,6 +772,95 @@ public class FileHandler extends java.util.logging.Handler {
         }
     }
 
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                Debug.error(fileName + ":FileHandler: Error closing channel", ex);
+            }
+            channel = null;
+        }
+    }
+
+    private byte[] toBytes(String message) {
+        String encoding = getEncoding();
+        if (encoding != null) {
+            try {
+                return message.getBytes(encoding);
+            } catch (UnsupportedEncodingException e) {
+                Debug.error(fileName + ":FileHandler: Unsupported Encoding", e);
+            }
+        }
+        return message.getBytes();
+    }
+
+    /**
+     * @return The number of records dropped because the background writer could not keep up, or 0 if records are
+     * not written asynchronously.
+     */
+    public long getAsyncDroppedCount() {
+        return asyncAppender == null ? 0 : asyncAppender.getDroppedCount();
+    }
+
+    /**
+     * @return The number of records waiting for the background writer, or 0 if records are not written
+     * asynchronously.
+     */
+    public long getAsyncWriterLag() {
+        return asyncAppender == null ? 0 : asyncAppender.getLag();
+    }
+
+    /**
+     * Rotates the file and writes its header on the background thread of the {@link AsyncFileAppender}.
+     */
+    private class FileDestination implements AsyncFileAppender.Destination {
+
+        @Override
+        public FileChannel getChannel(int batchBytes) throws IOException {
+            if (files == null) {
+                throw new IOException(fileName + ":FileHandler: log file not open");
+            }
+            if (channel == null || needsRotation(batchBytes)) {
+                rotateOrReopen();
+            }
+            if (!headerWritten) {
+                ByteBuffer header = ByteBuffer.wrap(toBytes(getHeaderString()));
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                headerWritten = true;
+            }
+            return channel;
+        }
+
+        private void rotateOrReopen() throws IOException {
+            if (channel == null) {
+                open(files[0], true);
+            } else {
+                rotate();
+            }
+            if (channel == null) {
+                throw new IOException(fileName + ":FileHandler: could not open " + files[0]);
+            }
+        }
+
+        @Override
+        public void written(int records) {
+            if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+                fileLogHandlerForMonitoring.incHandlerSuccessCount(records);
+            }
+        }
+
+        @Override
+        public void failed(int records, IOException e) {
+            Debug.error(fileName + ":FileHandler: could not write to file: ", e);
+            if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+                fileLogHandlerForMonitoring.incHandlerDroppedCount(records);
+            }
+        }
+    }
+
     private void copyFile(String input, String output) {
         if (Debug.messageEnabled()) {
             Debug.message(fileName + ":FileHandler: CopyFile Method called");
@@ -763,10 +962,10 @@ public class FileHandler extends java.util.logging.Handler {
                 }
                 try {
                     if (!headerWritten) {
-                        writer.write(getHeaderString());
+                        writeHeader();
                         headerWritten = true;
                     }
-                    writer.write(message);
+                    writeRecord(message);
                     if (MonitoringUtil.isRunning() &&
                         fileLogHandlerForMonitoring != null) {
                         fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
@@ -0,0 +1,233 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.LogRecord;
+
+/**
+ * Queues log records for a single writer thread, which hands them to a {@link Sink} in order and in batches, and
+ * commits each batch once.
+ * <p>
+ * A record or signature which fails to be written is reported to the sink and counted as dropped, and the writer
+ * carries on with the following records, so that a single bad record cannot stop the writer and leave publishers
+ * waiting on a full queue. Threads waiting in {@link #await()} are always released once the batch holding their
+ * request has been handled.
+ */
+class GroupCommitQueue implements Runnable {
+
+    /**
+     * Writes the records handed over by the writer thread, which holds the lock of the queue while calling it.
+     */
+    interface Sink {
+
+        /**
+         * Writes a record.
+         *
+         * @param record The record.
+         */
+        void write(LogRecord record);
+
+        /**
+         * Writes a signature of the records written so far.
+         */
+        void sign();
+
+        /**
+         * Commits the records written since the last commit.
+         */
+        void commit();
+
+        /**
+         * Reports that a record, signature or commit failed.
+         *
+         * @param message Describes what failed.
+         * @param e The failure.
+         */
+        void failed(String message, RuntimeException e);
+    }
+
+    private final Object signatureRequest = new Object();
+    private final Object shutdownRequest = new Object();
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private final Sink sink;
+    private final Object lock;
+    private final Thread thread;
+    private final AtomicBoolean signaturePending = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates the queue and its writer thread, which is not started.
+     *
+     * @param name The name of the writer thread.
+     * @param sink Writes the records.
+     * @param lock Held by the writer thread while it writes and commits a batch.
+     * @param queueSize The maximum number of records queued, publishers wait when the queue is full.
+     * @param batchSize The maximum number of records written by a batch.
+     */
+    GroupCommitQueue(String name, Sink sink, Object lock, int queueSize, int batchSize) {
+        this.queue = new LinkedBlockingQueue<Object>(Math.max(1, queueSize));
+        this.batchSize = Math.max(1, batchSize);
+        this.sink = sink;
+        this.lock = lock;
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a record, waiting while the queue is full.
+     *
+     * @param record The record.
+     * @return false if the thread was interrupted before the record could be queued.
+     */
+    boolean enqueue(LogRecord record) {
+        return put(record);
+    }
+
+    /**
+     * Queues a request for the records written so far to be signed, unless one is already queued. Never waits, as it
+     * is called by the shared timer thread: the request is skipped if the queue is full, and is made again by the
+     * next periodic signature.
+     *
+     * @return true if the request was queued.
+     */
+    boolean requestSignature() {
+        if (!signaturePending.compareAndSet(false, true)) {
+            return false;
+        }
+        if (!queue.offer(signatureRequest)) {
+            signaturePending.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the records queued before this call have been written and committed. Returns immediately when
+     * called by the writer thread.
+     */
+    void await() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        CountDownLatch written = new CountDownLatch(1);
+        if (put(written)) {
+            try {
+                written.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    void shutdown() {
+        put(shutdownRequest);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of records and signatures which could not be written.
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of records and requests queued.
+     */
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    private boolean put(Object item) {
+        try {
+            queue.put(item);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Object> batch = new ArrayList<Object>(batchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            List<CountDownLatch> waiting = new ArrayList<CountDownLatch>();
+            try {
+                synchronized (lock) {
+                    for (Object item : batch) {
+                        if (item == shutdownRequest) {
+                            running = false;
+                        } else if (item instanceof CountDownLatch) {
+                            waiting.add((CountDownLatch) item);
+                        } else {
+                            handle(item);
+                        }
+                    }
+                    try {
+                        sink.commit();
+                    } catch (RuntimeException e) {
+                        sink.failed("could not commit batch", e);
+                    }
+                }
+            } finally {
+                for (CountDownLatch latch : waiting) {
+                    latch.countDown();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void handle(Object item) {
+        try {
+            if (item == signatureRequest) {
+                signaturePending.set(false);
+                sink.sign();
+            } else {
+                sink.write((LogRecord) item);
+            }
+        } catch (RuntimeException e) {
+            dropped.incrementAndGet();
+            sink.failed(item == signatureRequest ? "could not write signature" : "could not write record", e);
+        }
+    }
+}
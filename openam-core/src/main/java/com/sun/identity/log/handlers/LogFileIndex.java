@@ -0,0 +1,209 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.identity.log.spi.Debug;
+
+/**
+ * A sidecar index of an ELF log file, written by {@link FileHandler} as records are logged and used by
+ * {@link LogFileScanner} to skip the parts of the file outside the time window of a query.
+ * <p>
+ * The index is a list of blocks, each giving the byte range of a run of records in the log file and the smallest and
+ * largest value of their time field. Records written without an index, for example before indexing was enabled,
+ * are not covered by any block and are always scanned. An index that refers past the end of its log file is ignored.
+ */
+class LogFileIndex {
+
+    /**
+     * The suffix added to the name of a log file to give the name of its index.
+     */
+    static final String SUFFIX = ".idx";
+
+    private static final int BLOCK_RECORDS = 256;
+
+    private final File indexFile;
+    private long blockStart = -1;
+    private long blockEnd;
+    private String minTime;
+    private String maxTime;
+    private int blockRecords;
+
+    /**
+     * Creates an index writer for the given log file. Blocks are appended to any existing index.
+     *
+     * @param logFile The log file.
+     */
+    LogFileIndex(File logFile) {
+        this.indexFile = indexFile(logFile);
+    }
+
+    /**
+     * Adds a record to the current block, writing the block out once it is full.
+     *
+     * @param message The formatted record.
+     * @param start The offset of the record in the log file.
+     * @param end The offset following the record in the log file.
+     */
+    void recordWritten(String message, long start, long end) {
+        String time = timeOf(message);
+        if (time == null || (blockStart >= 0 && start != blockEnd)) {
+            // the record cannot be summarised, or the block would not be contiguous, so leave it unindexed
+            close();
+            if (time == null) {
+                return;
+            }
+        }
+        if (blockStart < 0) {
+            blockStart = start;
+            minTime = time;
+            maxTime = time;
+        } else if (time.compareTo(minTime) < 0) {
+            minTime = time;
+        } else if (time.compareTo(maxTime) > 0) {
+            maxTime = time;
+        }
+        blockEnd = end;
+        if (++blockRecords >= BLOCK_RECORDS) {
+            close();
+        }
+    }
+
+    /**
+     * Writes out the current block, if it holds any records.
+     */
+    void close() {
+        if (blockStart < 0) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile, true))) {
+            out.writeLong(blockStart);
+            out.writeLong(blockEnd);
+            out.writeUTF(minTime);
+            out.writeUTF(maxTime);
+        } catch (IOException e) {
+            Debug.error("LogFileIndex.close: unable to write " + indexFile, e);
+        }
+        blockStart = -1;
+        blockRecords = 0;
+        minTime = null;
+        maxTime = null;
+    }
+
+    /**
+     * Reads the index of the given log file.
+     *
+     * @param logFile The log file.
+     * @return The blocks of the index in file order, or an empty list if there is no usable index.
+     */
+    static List<Block> read(File logFile) {
+        File indexFile = indexFile(logFile);
+        if (!indexFile.isFile()) {
+            return Collections.emptyList();
+        }
+        long length = logFile.length();
+        List<Block> blocks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            long previousEnd = 0;
+            while (true) {
+                Block block = new Block(in.readLong(), in.readLong(), in.readUTF(), in.readUTF());
+                if (block.start < previousEnd || block.end < block.start || block.end > length) {
+                    Debug.warning("LogFileIndex.read: ignoring stale index " + indexFile);
+                    return Collections.emptyList();
+                }
+                previousEnd = block.end;
+                blocks.add(block);
+            }
+        } catch (EOFException e) {
+            // end of the index, or a block only partly written
+        } catch (IOException e) {
+            Debug.warning("LogFileIndex.read: unable to read " + indexFile, e);
+            return Collections.emptyList();
+        }
+        return blocks;
+    }
+
+    /**
+     * Deletes the index of the given log file.
+     *
+     * @param logFile The log file.
+     */
+    static void delete(File logFile) {
+        File indexFile = indexFile(logFile);
+        if (indexFile.exists() && !indexFile.delete()) {
+            Debug.error("LogFileIndex.delete: could not delete " + indexFile);
+        }
+    }
+
+    /**
+     * Moves the index of a log file that has been renamed. The index is deleted if it cannot be moved.
+     *
+     * @param from The previous name of the log file.
+     * @param to The new name of the log file.
+     */
+    static void rename(File from, File to) {
+        delete(to);
+        File indexFile = indexFile(from);
+        if (indexFile.exists() && !indexFile.renameTo(indexFile(to))) {
+            delete(from);
+        }
+    }
+
+    static File indexFile(File logFile) {
+        return new File(logFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Returns the time field of an ELF formatted record, which is always the first field.
+     */
+    static String timeOf(String message) {
+        if (message.startsWith("\"")) {
+            int end = message.indexOf('"', 1);
+            return end > 0 ? message.substring(1, end) : null;
+        }
+        int end = message.indexOf('\t');
+        return end > 0 ? message.substring(0, end) : null;
+    }
+
+    /**
+     * A run of records in the log file.
+     */
+    static final class Block {
+        final long start;
+        final long end;
+        final String minTime;
+        final String maxTime;
+
+        Block(long start, long end, String minTime, String maxTime) {
+            this.start = start;
+            this.end = end;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+    }
+}
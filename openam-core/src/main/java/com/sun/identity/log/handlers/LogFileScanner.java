@@ -0,0 +1,430 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.sun.identity.log.LogQuery;
+import com.sun.identity.log.QueryElement;
+import com.sun.identity.log.spi.Debug;
+
+/**
+ * Streams the records of ELF log files that match a {@link LogQuery}, without reading the files into memory.
+ * <p>
+ * The files are read through memory mapped windows. Conditions on the time field are checked against the
+ * {@link LogFileIndex} of each file, so that blocks of records outside the requested time window are not read at
+ * all, and the values of conditions that every matching record must contain are looked for in the raw line before it
+ * is split into fields. The first element returned is the header row, as with
+ * {@link LogReadFileHandler#logRecRead(java.util.Set, LogQuery, boolean)}, followed by the matching records in file
+ * order.
+ */
+class LogFileScanner implements Iterator<String[]> {
+
+    private static final String VERSION = "#Version:";
+    private static final String FIELDS = "#Fields: ";
+    private static final long MAP_WINDOW = 32L * 1024 * 1024;
+
+    private final List<File> files;
+    private final LogQuery query;
+    private final boolean sourceData;
+    private final Charset charset = Charset.defaultCharset();
+
+    private String[] header;
+    private int[] columnIndices;
+    private List<Condition> conditions;
+    private boolean matchAll;
+    private List<String> requiredValues;
+
+    private int fileIndex = -1;
+    private File file;
+    private List<long[]> ranges;
+    private int rangeIndex;
+    private long position;
+    private long rangeEnd;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private String[] next;
+    private boolean headerReturned;
+    private long skippedBytes;
+
+    /**
+     * Creates a scanner over the given files.
+     *
+     * @param files The log files, read in the given order.
+     * @param query The query the records must match, may be null.
+     * @param sourceData Whether quoted fields are returned without their quotes.
+     */
+    LogFileScanner(List<File> files, LogQuery query, boolean sourceData) {
+        this.files = files;
+        this.query = query;
+        this.sourceData = sourceData;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        try {
+            next = advance();
+        } catch (IOException e) {
+            throw new RuntimeException("Problem in reading " + file, e);
+        }
+        return next != null;
+    }
+
+    @Override
+    public String[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String[] result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return The number of bytes not read because the index showed they were outside the time window of the query.
+     */
+    long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    private String[] advance() throws IOException {
+        while (true) {
+            if (file == null && !nextFile()) {
+                return null;
+            }
+            if (!headerReturned) {
+                headerReturned = true;
+                return header;
+            }
+            String line = readLine();
+            if (line == null) {
+                file = null;
+                continue;
+            }
+            if (line.trim().isEmpty() || line.startsWith(VERSION) || line.startsWith(FIELDS)
+                    || !containsRequiredValues(line)) {
+                continue;
+            }
+            String[] record = project(LogReadFileHandler.getFields(line, sourceData));
+            if (matches(record)) {
+                return record;
+            }
+        }
+    }
+
+    private boolean nextFile() throws IOException {
+        while (++fileIndex < files.size()) {
+            file = files.get(fileIndex);
+            long length = file.length();
+            window = null;
+            position = 0;
+            rangeEnd = 0;
+            ranges = new ArrayList<>();
+            ranges.add(new long[] {0, length});
+            rangeIndex = 0;
+            String fields = readHeader();
+            if (fields == null) {
+                Debug.warning("LogFileScanner: no header in " + file);
+                continue;
+            }
+            if (header == null) {
+                initialiseQuery(fields);
+            }
+            ranges = new ArrayList<>();
+            rangeIndex = 0;
+            rangeEnd = position;
+            computeRanges(position, length);
+            return true;
+        }
+        file = null;
+        return false;
+    }
+
+    private String readHeader() throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.startsWith(FIELDS)) {
+                return line.substring(FIELDS.length());
+            }
+        }
+        return null;
+    }
+
+    private void initialiseQuery(String fields) {
+        List allFields = LogReadFileHandler.getFields(fields, true);
+        List columns = query == null ? null : query.getColumns();
+        List<String> selected = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < allFields.size(); i++) {
+            String field = (String) allFields.get(i);
+            if (columns == null || columns.contains(field)) {
+                selected.add(field);
+                indices.add(i);
+            }
+        }
+        header = selected.toArray(new String[selected.size()]);
+        if (columns != null) {
+            columnIndices = new int[indices.size()];
+            for (int i = 0; i < columnIndices.length; i++) {
+                columnIndices[i] = indices.get(i);
+            }
+        }
+
+        conditions = new ArrayList<>();
+        requiredValues = new ArrayList<>();
+        List queries = query == null ? null : query.getQueries();
+        if (queries == null || queries.isEmpty()) {
+            return;
+        }
+        matchAll = query.getGlobalOperand() == LogQuery.MATCH_ALL_CONDITIONS || queries.size() == 1;
+        String timeField = allFields.isEmpty() ? null : (String) allFields.get(0);
+        for (Object element : queries) {
+            QueryElement qe = (QueryElement) element;
+            int position = indexOf(header, qe.getFieldName());
+            conditions.add(new Condition(qe, position,
+                    sourceData && position >= 0 && header[position].equals(timeField)));
+            if (matchAll && isRequiredValue(qe)) {
+                requiredValues.add(qe.getFieldValue());
+            }
+        }
+    }
+
+    private static int indexOf(String[] fields, String name) {
+        for (int i = 0; i < fields.length; i++) {
+            if (name.compareTo(fields[i]) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the value of the condition appears unchanged in the raw line of every record matching it. Values
+     * holding characters escaped by {@link ELFFormatter} are excluded.
+     */
+    private static boolean isRequiredValue(QueryElement qe) {
+        switch (qe.getRelation()) {
+            case QueryElement.EQ:
+            case QueryElement.CN:
+            case QueryElement.SW:
+            case QueryElement.EW:
+                String value = qe.getFieldValue();
+                return value != null && !value.isEmpty() && value.indexOf('"') < 0 && value.indexOf('\\') < 0
+                        && value.indexOf('\r') < 0 && value.indexOf('\n') < 0;
+            default:
+                return false;
+        }
+    }
+
+    private boolean containsRequiredValues(String line) {
+        for (String value : requiredValues) {
+            if (!line.contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String[] project(List fields) {
+        if (columnIndices == null) {
+            return (String[]) fields.toArray(new String[fields.size()]);
+        }
+        String[] record = new String[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; i++) {
+            if (columnIndices[i] < fields.size()) {
+                record[i] = (String) fields.get(columnIndices[i]);
+            }
+        }
+        return record;
+    }
+
+    private boolean matches(String[] record) {
+        if (conditions.isEmpty()) {
+            return true;
+        }
+        for (Condition condition : conditions) {
+            boolean match = condition.matches(record);
+            if (match != matchAll) {
+                return match;
+            }
+        }
+        return matchAll;
+    }
+
+    /**
+     * Splits the rest of the file into the ranges to be read, leaving out the indexed blocks which cannot hold a
+     * matching record.
+     */
+    private void computeRanges(long start, long end) {
+        long from = start;
+        if (hasTimeConditions()) {
+            for (LogFileIndex.Block block : LogFileIndex.read(file)) {
+                if (block.start < from || !excludes(block)) {
+                    continue;
+                }
+                if (block.start > from) {
+                    ranges.add(new long[] {from, block.start});
+                }
+                skippedBytes += block.end - block.start;
+                from = block.end;
+            }
+        }
+        if (from < end) {
+            ranges.add(new long[] {from, end});
+        }
+    }
+
+    private boolean hasTimeConditions() {
+        for (Condition condition : conditions) {
+            if (condition.timeField) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean excludes(LogFileIndex.Block block) {
+        if (matchAll) {
+            for (Condition condition : conditions) {
+                if (condition.excludes(block)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (Condition condition : conditions) {
+            if (!condition.excludes(block)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next line of the current range, moving on to the following ranges as each is used up.
+     */
+    private String readLine() throws IOException {
+        while (true) {
+            while (position >= rangeEnd) {
+                if (rangeIndex == ranges.size()) {
+                    return null;
+                }
+                long[] range = ranges.get(rangeIndex++);
+                position = range[0];
+                rangeEnd = range[1];
+            }
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                map(position, MAP_WINDOW);
+            }
+            int from = (int) (position - windowStart);
+            int limit = window.limit();
+            int end = from;
+            while (end < limit && window.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && windowStart + limit < rangeEnd) {
+                // the line runs past the end of the window, so map again from its start
+                map(position, from > 0 ? MAP_WINDOW : 2L * limit);
+                continue;
+            }
+            byte[] bytes = new byte[end - from];
+            ByteBuffer line = window.duplicate();
+            line.position(from);
+            line.get(bytes);
+            position = windowStart + Math.min(end + 1, limit);
+            return new String(bytes, charset);
+        }
+    }
+
+    private void map(long start, long size) throws IOException {
+        long length = Math.min(Math.min(size, rangeEnd - start), Integer.MAX_VALUE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        windowStart = start;
+    }
+
+    /**
+     * A condition of the query, with the position of its field resolved against the header.
+     */
+    private static final class Condition {
+        private final QueryElement element;
+        private final int position;
+        private final boolean timeField;
+
+        private Condition(QueryElement element, int position, boolean timeField) {
+            this.element = element;
+            this.position = position;
+            this.timeField = timeField;
+        }
+
+        private boolean matches(String[] record) {
+            if (position < 0 || position >= record.length || record[position] == null) {
+                return false;
+            }
+            return LogReadFileHandler.matches(record[position], element);
+        }
+
+        /**
+         * Whether no record of the block can match this condition.
+         */
+        private boolean excludes(LogFileIndex.Block block) {
+            if (position < 0) {
+                return true;
+            }
+            if (!timeField) {
+                return false;
+            }
+            String value = element.getFieldValue();
+            switch (element.getRelation()) {
+                case QueryElement.EQ:
+                    return value.compareTo(block.minTime) < 0 || value.compareTo(block.maxTime) > 0;
+                case QueryElement.GT:
+                    return block.maxTime.compareTo(value) <= 0;
+                case QueryElement.GE:
+                    return block.maxTime.compareTo(value) < 0;
+                case QueryElement.LT:
+                    return block.minTime.compareTo(value) >= 0;
+                case QueryElement.LE:
+                    return block.minTime.compareTo(value) > 0;
+                case QueryElement.SW:
+                    return block.maxTime.compareTo(value) < 0 || block.minTime.compareTo(value + '\uffff') > 0;
+                default:
+                    return false;
+            }
+        }
+    }
+}
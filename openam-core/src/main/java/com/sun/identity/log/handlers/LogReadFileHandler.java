@@ -26,16 +26,22 @@
  *
  */
 /*
- * Portions Copyrighted [2011] [ForgeRock AS]
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.sun.identity.log.handlers;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import com.sun.identity.log.LogConstants;
@@ -78,6 +84,11 @@ public class LogReadFileHandler implements LogReadHandler {
      * LogReader calls this method method. It collects header, records,
      * applies query (if any), sorts (if asked) the records on field, checks
      * the max records to return, collects all the recods and returns.
+     * <p>
+     * Queries on source data that do not sort the records are streamed
+     * through {@link #logRecIterator(Set, LogQuery, boolean)}, so that only
+     * the records returned are held in memory and indexed blocks outside the
+     * time window of the query are not read.
      *
      * @param fileName is complete filename with path
      * @param logQuery is user specified qury chriteria with sorting requirement
@@ -95,6 +106,10 @@ public class LogReadFileHandler implements LogReadHandler {
             throws IOException, NoSuchFieldException,
             IllegalArgumentException, RuntimeException,
             Exception {
+        if (sourceData && isStreamed(logQuery) && new File(fileName).isFile()) {
+            return toArray(logRecIterator(Collections.singleton(fileName),
+                    logQuery, sourceData));
+        }
         // if the object is persistence use it otherwise don't
         this.cleaner();
         this.logFileName = fileName;
@@ -316,6 +331,78 @@ public class LogReadFileHandler implements LogReadHandler {
         return queryResult;
     }
 
+    /**
+     * Returns the records of the given files that match the query, reading them as the iterator is consumed rather
+     * than collecting every record first. The first element is the header row, followed by the matching records in
+     * file order. If the query asks for a number of most recent records only that many are held in memory.
+     * <p>
+     * Blocks of records outside the time window of the query are skipped using the index written by
+     * {@link FileHandler}. Queries that sort the records, and secure logs, are read with
+     * {@link #logRecRead(Set, LogQuery, boolean)}.
+     *
+     * @param fileNames the files to read, complete with path, in the order they are read.
+     * @param logQuery is user specified query criteria.
+     * @param sourceData it specifies whether return data should be original
+     *        data received by logger (source) or formatted data as in file.
+     * @return an iterator over the header and the matched records.
+     * @throws Exception if it fails to read log records.
+     */
+    public Iterator<String[]> logRecIterator(Set fileNames, LogQuery logQuery, boolean sourceData)
+            throws Exception {
+        if (!isStreamed(logQuery)) {
+            String[][] result = logRecRead(fileNames, logQuery, sourceData);
+            if (result == null) {
+                return Collections.<String[]>emptyList().iterator();
+            }
+            return Arrays.asList(result).iterator();
+        }
+        List<File> files = new ArrayList<>();
+        for (Object fileName : fileNames) {
+            files.add(new File((String) fileName));
+        }
+        LogFileScanner scanner = new LogFileScanner(files, logQuery, sourceData);
+        int maxRecords = 1;
+        if (logQuery != null && logQuery.getNumRecordsWanted() != LogQuery.MOST_RECENT_MAX_RECORDS
+                && logQuery.getNumRecordsWanted() >= LogQuery.ALL_RECORDS) {
+            maxRecords = logQuery.getNumRecordsWanted();
+        }
+        if (maxRecords == 0) {
+            maxRecords = 1;
+        }
+        if (maxRecords == LogQuery.ALL_RECORDS || !scanner.hasNext()) {
+            return scanner;
+        }
+        // keep only the most recent records
+        String[] header = scanner.next();
+        Deque<String[]> records = new ArrayDeque<>(Math.min(maxRecords, 1024) + 1);
+        while (scanner.hasNext()) {
+            if (records.size() == maxRecords) {
+                records.removeFirst();
+            }
+            records.add(scanner.next());
+        }
+        records.addFirst(header);
+        if (Debug.messageEnabled()) {
+            Debug.message("LogReadFileHandler.logRecIterator: skipped " + scanner.getSkippedBytes()
+                    + " bytes using the log index");
+        }
+        return records.iterator();
+    }
+
+    // sorting needs every record, and secure logs depend on the blank line handling of getRecords
+    private static boolean isStreamed(LogQuery logQuery) {
+        return (logQuery == null || logQuery.getSortingField() == null) && !LogReader.isLogSecure();
+    }
+
+    // collects the header and records, or returns null if the file has no header
+    private static String[][] toArray(Iterator<String[]> records) {
+        List<String[]> result = new ArrayList<>();
+        while (records.hasNext()) {
+            result.add(records.next());
+        }
+        return result.isEmpty() ? null : result.toArray(new String[result.size()][]);
+    }
+
     // This method collects all the ELF header fields.
     private boolean getFieldNames(boolean addFields, LogQuery logQry)
             throws IOException,
@@ -599,7 +686,6 @@ public class LogReadFileHandler implements LogReadHandler {
         String[] fields = (String[]) listOfValidRecords.get(0);
         int fieldNo = fields.length;
         String fldName = elem.getFieldName();
-        String fldValue = elem.getFieldValue();
         // find the field position first
         for (int i = 0; i < fieldNo; i++) {
             if (fldName.compareTo(fields[i]) == 0) {
@@ -610,18 +696,24 @@ public class LogReadFileHandler implements LogReadHandler {
         if (fieldPos == -1) {
             return (isFound);
         }
+        return matches(record[fieldPos], elem);
+    }
+
+    // checks whether a field value matches the query element
+    static boolean matches(String value, QueryElement elem) {
+        String fldValue = elem.getFieldValue();
         int result = 0;
         int rel = elem.getRelation();
 
         switch (rel) {
             case QueryElement.CN:  // contains
-                return (record[fieldPos].indexOf(fldValue) != -1);
+                return (value.indexOf(fldValue) != -1);
             case QueryElement.SW:  // starts with
-                return (record[fieldPos].startsWith(fldValue));
+                return (value.startsWith(fldValue));
             case QueryElement.EW:  // ends with
-                return (record[fieldPos].endsWith(fldValue));
+                return (value.endsWith(fldValue));
             default:
-                result = record[fieldPos].compareTo(fldValue);
+                result = value.compareTo(fldValue);
         }
 
         switch (rel) {
@@ -687,7 +779,7 @@ public class LogReadFileHandler implements LogReadHandler {
     }
 
     // method to split ELF formatted line into fields
-    private ArrayList getFields(String bufferedStr,
+    static ArrayList getFields(String bufferedStr,
             boolean source) {
         String str = bufferedStr.trim();
         ArrayList fields = new ArrayList();
@@ -53,6 +53,7 @@ import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.log.NullLocationException;
 import com.sun.identity.common.GeneralTaskRunnable;
 import com.sun.identity.common.SystemTimer;
@@ -87,14 +88,44 @@ import com.sun.identity.security.keystore.AMPassword;
  * The Locking mechanism is much more relaxed(in JDK's
  * FileHandler an exclusive lock is created on the file till the handler is
  * closed which makes reading impossible)
+ * <p>
+ * If group commit is enabled with the {@link #GROUP_COMMIT_ENABLED} system
+ * property, publishing a record only queues it. A dedicated writer thread
+ * formats the queued records in order, generating their MACs, and writes them
+ * in batches with one flush, and optionally one fsync, per batch. Periodic
+ * signatures are then generated by the writer thread between two batches, so
+ * that the chain of MACs and signatures checked by <tt>LogVerifier</tt> is
+ * the same as when each record is written by the publishing thread.
  * @author rk133022
  * @version 6.0
  */
 public class SecureFileHandler extends java.util.logging.Handler {
+
+    /**
+     * System property enabling group commit of the secure log records.
+     */
+    public static final String GROUP_COMMIT_ENABLED = "org.forgerock.openam.log.secure.groupCommit.enabled";
+    /**
+     * System property defining the maximum number of records written by a group commit batch.
+     */
+    public static final String GROUP_COMMIT_BATCH_SIZE = "org.forgerock.openam.log.secure.groupCommit.batchSize";
+    /**
+     * System property defining the maximum number of records queued for writing, publishing threads wait when the
+     * queue is full.
+     */
+    public static final String GROUP_COMMIT_QUEUE_SIZE = "org.forgerock.openam.log.secure.groupCommit.queueSize";
+    /**
+     * System property defining whether the log file is synced to disk after each group commit batch.
+     */
+    public static final String GROUP_COMMIT_SYNC = "org.forgerock.openam.log.secure.groupCommit.sync";
+
+    private static final int DEFAULT_GROUP_COMMIT_BATCH_SIZE = 256;
+    private static final int DEFAULT_GROUP_COMMIT_QUEUE_SIZE = 10000;
     
     private LogManager lmanager = LogManagerUtil.getLogManager();
     private static String PREFIX = "_secure.";
     private OutputStream output;
+    private FileOutputStream fileOutput;
     private Writer writer;
     private MeteredStream meteredStream;
     private static Hashtable archiverTable = new Hashtable();
@@ -117,6 +148,7 @@ public class SecureFileHandler extends java.util.logging.Handler {
     private SsoServerLoggingSvcImpl logServiceImplForMonitoring = null;
     private SsoServerLoggingHdlrEntryImpl sfLogHandlerForMonitoring = null;
     private static String token = null;
+    private volatile GroupCommitQueue groupCommitQueue = null;
     
     static {
         String logPass= (String)
@@ -313,6 +345,7 @@ public class SecureFileHandler extends java.util.logging.Handler {
         int len = 0;
         len = (int)fileName.length();
         FileOutputStream fout = new FileOutputStream(fileName.toString(), true);
+        fileOutput = fout;
         
         BufferedOutputStream bout = new BufferedOutputStream(fout);
         meteredStream = new MeteredStream(bout, len);
@@ -353,6 +386,12 @@ public class SecureFileHandler extends java.util.logging.Handler {
         
             logger.setCurrentFile(PREFIX + logName);
             initializeSecurity();
+            if (SystemProperties.getAsBoolean(GROUP_COMMIT_ENABLED, false)) {
+                groupCommitQueue = new GroupCommitQueue("SecureFileHandler-" + logName, new GroupCommitSink(), this,
+                    SystemProperties.getAsInt(GROUP_COMMIT_QUEUE_SIZE, DEFAULT_GROUP_COMMIT_QUEUE_SIZE),
+                    SystemProperties.getAsInt(GROUP_COMMIT_BATCH_SIZE, DEFAULT_GROUP_COMMIT_BATCH_SIZE));
+                groupCommitQueue.start();
+            }
         }
 
         if(MonitoringUtil.isRunning()){
@@ -386,6 +425,11 @@ public class SecureFileHandler extends java.util.logging.Handler {
         if (Debug.messageEnabled()) {
             Debug.message(logName+":SecureFileHandler: close() called");
         }
+        GroupCommitQueue committer = groupCommitQueue;
+        if (committer != null) {
+            groupCommitQueue = null;
+            committer.shutdown();
+        }
         flush();
         try {
             if (writer != null) {
@@ -417,18 +461,55 @@ public class SecureFileHandler extends java.util.logging.Handler {
      * ELF. This method first checks if the header is already written to the 
      * file, if not, gets the header from the Formatter and writes it at the 
      * beginning of the file.
+     * If group commit is enabled the record is queued, and written by the
+     * writer thread.
      * @param lrecord the log record to be published.
      */
-    public synchronized void publish(LogRecord lrecord) {
+    public void publish(LogRecord lrecord) {
         if (MonitoringUtil.isRunning() && sfLogHandlerForMonitoring != null) {
             sfLogHandlerForMonitoring.incHandlerRequestCount(1);
         }
+        GroupCommitQueue committer = groupCommitQueue;
+        if (committer != null) {
+            if (isLoggable(lrecord) && !committer.enqueue(lrecord)) {
+                Debug.error(logName + ":SecureFileHandler: interrupted queueing record");
+                if (MonitoringUtil.isRunning() && sfLogHandlerForMonitoring != null) {
+                    sfLogHandlerForMonitoring.incHandlerDroppedCount(1);
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            if (writeRecord(lrecord, true)) {
+                archiveIfFull();
+            }
+        }
+    }
+
+    /**
+     * Waits until the records queued for group commit have been written to
+     * the log file. Returns immediately if group commit is not enabled.
+     */
+    public void awaitPendingRecords() {
+        GroupCommitQueue committer = groupCommitQueue;
+        if (committer != null) {
+            committer.await();
+        }
+    }
+
+    /**
+     * Formats and writes the record, generating its MAC.
+     * @param lrecord the log record to be written.
+     * @param flushRecord whether to flush the record to the file.
+     * @return true if the record was written.
+     */
+    private boolean writeRecord(LogRecord lrecord, boolean flushRecord) {
         if (writer == null) {
             Debug.warning(logName+":SecureFileHandler: Writer is null");
-            return;
+            return false;
         }
         if (!isLoggable(lrecord)) {
-            return;
+            return false;
         }
         String message = "";
         message = getFormatter().format(lrecord);
@@ -448,7 +529,14 @@ public class SecureFileHandler extends java.util.logging.Handler {
                 sfLogHandlerForMonitoring.incHandlerDroppedCount(1);
             }
         }
-        flush();
+        if (flushRecord) {
+            flush();
+            setLastLineForLogger();
+        }
+        return message.length() > 0;
+    }
+
+    private void setLastLineForLogger() {
         // This flag is set only when the Verification is on and at that time
         // the last line for the logger is not set for the duration of the 
         // verification.
@@ -459,12 +547,18 @@ public class SecureFileHandler extends java.util.logging.Handler {
         if(lv.getVerificationFlag() == false) {
             helper.setLastLineforLogger(true);
         }
+    }
+
+    /**
+     * Archives the file if it has reached its maximum size.
+     */
+    private void archiveIfFull() {
         if (Debug.messageEnabled()) {
                 Debug.message(logName+":Check for file size = "
                 + maxFileSize+" with size written = " 
                 + meteredStream.written);
         }
-        if ((message.length() > 0 ) && (meteredStream.written >= maxFileSize)) {
+        if (meteredStream.written >= maxFileSize) {
             if (Debug.messageEnabled()) {
                 Debug.message("SecureFileHandler: FileFull Event reached");
             }
@@ -1008,6 +1102,16 @@ public class SecureFileHandler extends java.util.logging.Handler {
          *  If the earlier entry is a sign then it refrains from signing again.
          */
         public void run(){
+            GroupCommitQueue committer = groupCommitQueue;
+            if (committer != null) {
+                // signed by the writer thread, in sequence with the records; never waits on this shared timer
+                // thread, a signature already pending or a full queue skips this period's request
+                if (!committer.requestSignature() && Debug.messageEnabled()) {
+                    Debug.message(logName + ":SignTask: signature request skipped, one is pending or the queue is"
+                            + " full");
+                }
+                return;
+            }
             Logger logger = 
                 (com.sun.identity.log.Logger)Logger.getLogger(logName);
             try {
@@ -1090,5 +1194,64 @@ public class SecureFileHandler extends java.util.logging.Handler {
         }
         
     }// end of class SignTask
-}
 
+    /**
+     *  Writes the records of the group commit mode, called by the writer
+     *  thread of the queue while it holds the lock of this handler.
+     */
+    private class GroupCommitSink implements GroupCommitQueue.Sink {
+
+        private final boolean sync = SystemProperties.getAsBoolean(GROUP_COMMIT_SYNC, true);
+        // records may have been written since the last signature before the server started
+        private boolean unsignedRecords = true;
+
+        public void write(LogRecord record) {
+            if (writeRecord(record, false)) {
+                unsignedRecords = true;
+                archiveIfFull();
+            }
+        }
+
+        public void commit() {
+            flush();
+            if (sync && fileOutput != null) {
+                try {
+                    fileOutput.getFD().sync();
+                } catch (IOException ioe) {
+                    Debug.error(logName + ":SecureFileHandler: could not sync file", ioe);
+                }
+            }
+            setLastLineForLogger();
+        }
+
+        public void failed(String message, RuntimeException e) {
+            Debug.error(logName + ":SecureFileHandler: " + message, e);
+            if (MonitoringUtil.isRunning() && sfLogHandlerForMonitoring != null) {
+                sfLogHandlerForMonitoring.incHandlerDroppedCount(1);
+            }
+        }
+
+        public void sign() {
+            // If last record was also a signature then don't generate a signature.
+            if (!unsignedRecords) {
+                return;
+            }
+            try {
+                String signature = new LogSign(logName).sign();
+                if ((signature == null) || signature.equals("")) {
+                    Debug.warning(logName + "Signature is Null");
+                    return;
+                }
+                com.sun.identity.log.LogRecord lr =
+                    new com.sun.identity.log.LogRecord(Level.SEVERE, "Signature");
+                lr.setLoggerName(logName);
+                lr.addLogInfo(LogConstants.SIGNATURE_FIELDNAME, signature);
+                if (writeRecord(lr, false)) {
+                    unsignedRecords = false;
+                }
+            } catch (Exception e) {
+                Debug.error(logName + ":Error Writing Signature", e);
+            }
+        }
+    }
+}
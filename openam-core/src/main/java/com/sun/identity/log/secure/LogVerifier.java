@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Vector;
+import java.util.logging.Handler;
 import java.util.logging.LogManager;
 
 import com.sun.identity.common.GeneralTaskRunnable;
@@ -231,6 +232,11 @@ public class LogVerifier{
         synchronized(logger) {
             verificationOn = true;
             long start = currentTimeMillis();
+            // records queued for group commit must be in the file being read
+            Handler[] handlers = logger.getHandlers();
+            if ((handlers.length > 0) && (handlers[0] instanceof SecureFileHandler)) {
+                ((SecureFileHandler) handlers[0]).awaitPendingRecords();
+            }
             helper = SecureFileHandler.getSecureLogHelper(name);
             fileList = SecureFileHandler.getCurrentFileList(name);
             if (fileList == null) {
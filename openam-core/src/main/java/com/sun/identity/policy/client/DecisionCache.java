@@ -0,0 +1,488 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.policy.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
+
+import com.sun.identity.policy.PolicyException;
+import com.sun.identity.policy.ResourceMatch;
+import com.sun.identity.policy.interfaces.ResourceName;
+
+/**
+ * Concurrent cache of the policy decisions fetched by the policy client, indexed by service name, resource name,
+ * session token ID and scope.
+ * <p>
+ * No cache-wide lock is taken to read or update the cache. In addition to the decisions themselves, the cache
+ * maintains:
+ * <ul>
+ *     <li>a sorted index of the canonical resource names of each service, so that a policy change notification only
+ *     compares the cached resources sharing a prefix with the changed resources, rather than every cached
+ *     resource;</li>
+ *     <li>an index of the resources cached for each session token, so that the decisions of a session are evicted
+ *     without walking every cached resource when the session is destroyed.</li>
+ * </ul>
+ * The number of resources cached per service, and of sessions cached per resource, are bounded. As a bound is
+ * approached the least recently used entries are evicted, and the session token index entries of evicted or
+ * invalidated entries are removed.
+ */
+final class DecisionCache {
+
+    private static final char WILDCARD = '*';
+    private static final char ONE_LEVEL_WILDCARD_DELIMITER = '-';
+
+    private final ConcurrentMap<String, ServiceEntries> services = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<ResourceKey>> tokenIndex = new ConcurrentHashMap<>();
+    private volatile int resourceCap;
+    private volatile int sessionCap;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param resourceCap maximum number of resources cached per service.
+     * @param sessionCap maximum number of sessions cached per resource.
+     */
+    DecisionCache(int resourceCap, int sessionCap) {
+        setCaps(resourceCap, sessionCap);
+    }
+
+    /**
+     * Changes the bounds of the cache. If the bounds change, the cached results are discarded, as the bounds of the
+     * cached services and resources are fixed when they are created.
+     *
+     * @param resourceCap maximum number of resources cached per service.
+     * @param sessionCap maximum number of sessions cached per resource.
+     */
+    void setCaps(int resourceCap, int sessionCap) {
+        resourceCap = Math.max(1, resourceCap);
+        sessionCap = Math.max(1, sessionCap);
+        if (resourceCap == this.resourceCap && sessionCap == this.sessionCap) {
+            return;
+        }
+        this.resourceCap = resourceCap;
+        this.sessionCap = sessionCap;
+        for (String serviceName : services.keySet()) {
+            discardService(serviceName);
+        }
+    }
+
+    /**
+     * Returns the cached results.
+     *
+     * @param serviceName service name.
+     * @param resourceName resource name.
+     * @param tokenID session token ID.
+     * @param scope evaluation scope.
+     * @return the cached results, an array of resource results, environment, expiry time and action names, or
+     * {@code null} if no results are cached.
+     */
+    Object[] get(String serviceName, String resourceName, String tokenID, String scope) {
+        ServiceEntries service = services.get(serviceName);
+        ResourceEntry resource = service == null ? null : service.resources.getIfPresent(resourceName);
+        TokenEntry token = resource == null ? null : resource.tokens.getIfPresent(tokenID);
+        return token == null ? null : token.scopes.get(scope);
+    }
+
+    /**
+     * Caches results. The results array must not be modified once cached.
+     *
+     * @param serviceName service name.
+     * @param resourceName resource name.
+     * @param tokenID session token ID.
+     * @param scope evaluation scope.
+     * @param results the results to cache.
+     * @param comparator the resource comparator of the service, used to index the resource, may be null.
+     */
+    void put(String serviceName, String resourceName, String tokenID, String scope, Object[] results,
+            ResourceName comparator) {
+        ServiceEntries service = services.get(serviceName);
+        if (service == null) {
+            ServiceEntries created = new ServiceEntries();
+            service = services.putIfAbsent(serviceName, created);
+            if (service == null) {
+                service = created;
+            }
+        }
+        ResourceEntry resource = service.resources.getIfPresent(resourceName);
+        if (resource == null) {
+            ResourceEntry created = new ResourceEntry(new ResourceKey(serviceName, resourceName),
+                    indexKey(resourceName, comparator));
+            resource = service.resources.asMap().putIfAbsent(resourceName, created);
+            if (resource == null) {
+                resource = created;
+                service.index(resourceName, resource.indexKey);
+            }
+        }
+        TokenEntry token = resource.tokens.getIfPresent(tokenID);
+        if (token == null) {
+            TokenEntry created = new TokenEntry();
+            token = resource.tokens.asMap().putIfAbsent(tokenID, created);
+            if (token == null) {
+                token = created;
+                indexToken(tokenID, resource.key);
+            }
+        }
+        token.scopes.put(scope, results);
+    }
+
+    /**
+     * Records a request answered from the cache.
+     */
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Records a request which required contacting the policy service.
+     */
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Removes the results cached for the session.
+     *
+     * @param tokenID session token ID.
+     * @return the number of resources whose results were removed.
+     */
+    int removeToken(String tokenID) {
+        Set<ResourceKey> keys = tokenIndex.remove(tokenID);
+        if (keys == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (ResourceKey key : keys) {
+            ServiceEntries service = services.get(key.serviceName);
+            ResourceEntry resource = service == null ? null : service.resources.getIfPresent(key.resourceName);
+            if (resource != null && resource.tokens.asMap().remove(tokenID) != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the results cached for the resources affected by a policy change. A cached resource is affected if it
+     * is the same as, matches the wildcards of, or is a sub resource of an affected resource name.
+     *
+     * @param serviceName service name.
+     * @param affectedResourceNames the resource names of the changed policies.
+     * @param comparator the resource comparator of the service, if null every resource of the service is removed.
+     * @return the number of cached resources removed.
+     */
+    int invalidate(String serviceName, Collection<String> affectedResourceNames, ResourceName comparator) {
+        ServiceEntries service = services.get(serviceName);
+        if (service == null || affectedResourceNames == null || affectedResourceNames.isEmpty()) {
+            return 0;
+        }
+        if (comparator == null) {
+            int size = (int) service.resources.size();
+            clearService(serviceName);
+            return size;
+        }
+        int removed = 0;
+        for (String affected : affectedResourceNames) {
+            for (String cached : candidates(service, affected, comparator)) {
+                if (isAffected(cached, affected, comparator) && service.remove(cached)) {
+                    removed++;
+                }
+            }
+        }
+        invalidations.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Removes every result cached for the service.
+     *
+     * @param serviceName service name.
+     */
+    void clearService(String serviceName) {
+        invalidations.addAndGet(discardService(serviceName));
+    }
+
+    /**
+     * @return the number of requests answered from the cache.
+     */
+    long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests which required contacting the policy service.
+     */
+    long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of cached resources and sessions evicted to keep the cache within its bounds.
+     */
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of cached resources removed because of policy changes.
+     */
+    long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @param serviceName service name.
+     * @return the number of resources cached for the service.
+     */
+    int getResourceCount(String serviceName) {
+        ServiceEntries service = services.get(serviceName);
+        return service == null ? 0 : (int) service.resources.size();
+    }
+
+    /**
+     * @return the number of sessions with cached results.
+     */
+    int getSessionCount() {
+        return tokenIndex.size();
+    }
+
+    /**
+     * Removes the service and the session token index entries of its resources.
+     *
+     * @return the number of resources removed.
+     */
+    private int discardService(String serviceName) {
+        ServiceEntries removed = services.remove(serviceName);
+        if (removed == null) {
+            return 0;
+        }
+        int size = (int) removed.resources.size();
+        removed.resources.invalidateAll();
+        return size;
+    }
+
+    private boolean isAffected(String cached, String affected, ResourceName comparator) {
+        if (affected.equals(cached)) {
+            return true;
+        }
+        ResourceMatch match = comparator.compare(cached, affected, true);
+        return ResourceMatch.EXACT_MATCH.equals(match)
+                || ResourceMatch.WILDCARD_MATCH.equals(match)
+                || ResourceMatch.SUB_RESOURCE_MATCH.equals(match);
+    }
+
+    /**
+     * Returns the cached resources which may be affected by the change of a resource: those whose canonical name
+     * starts with the literal prefix of the affected resource, and those whose canonical name is a prefix of it.
+     */
+    private Set<String> candidates(ServiceEntries service, String affected, ResourceName comparator) {
+        String prefix = literalPrefix(indexKey(affected, comparator));
+        if (prefix.isEmpty()) {
+            return new HashSet<>(service.resources.asMap().keySet());
+        }
+        Set<String> candidates = new HashSet<>();
+        ConcurrentNavigableMap<String, Set<String>> descendants =
+                service.prefixIndex.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        for (Set<String> names : descendants.values()) {
+            candidates.addAll(names);
+        }
+        for (int i = 1; i < prefix.length(); i++) {
+            Set<String> names = service.prefixIndex.get(prefix.substring(0, i));
+            if (names != null) {
+                candidates.addAll(names);
+            }
+        }
+        return candidates;
+    }
+
+    private static String literalPrefix(String resource) {
+        int wildcard = resource.indexOf(WILDCARD);
+        if (wildcard < 0) {
+            return resource;
+        }
+        if (wildcard > 0 && resource.charAt(wildcard - 1) == ONE_LEVEL_WILDCARD_DELIMITER) {
+            wildcard--;
+        }
+        return resource.substring(0, wildcard);
+    }
+
+    private static String indexKey(String resourceName, ResourceName comparator) {
+        String canonical = resourceName;
+        if (comparator != null) {
+            try {
+                canonical = comparator.canonicalize(resourceName);
+            } catch (PolicyException e) {
+                canonical = resourceName;
+            }
+        }
+        // comparators may ignore case, so index case insensitively to find every candidate
+        return canonical == null ? "" : canonical.toLowerCase(Locale.ROOT);
+    }
+
+    private void indexToken(String tokenID, ResourceKey key) {
+        while (true) {
+            Set<ResourceKey> keys = tokenIndex.get(tokenID);
+            if (keys == null) {
+                Set<ResourceKey> created = Collections.newSetFromMap(new ConcurrentHashMap<ResourceKey, Boolean>());
+                keys = tokenIndex.putIfAbsent(tokenID, created);
+                if (keys == null) {
+                    keys = created;
+                }
+            }
+            keys.add(key);
+            // retry if the set was emptied and unlinked concurrently by unindexToken
+            if (tokenIndex.get(tokenID) == keys) {
+                return;
+            }
+        }
+    }
+
+    private void unindexToken(String tokenID, ResourceKey key) {
+        Set<ResourceKey> keys = tokenIndex.get(tokenID);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                tokenIndex.remove(tokenID, keys);
+            }
+        }
+    }
+
+    private static final class TokenEntry {
+        private final ConcurrentMap<String, Object[]> scopes = new ConcurrentHashMap<>(4);
+    }
+
+    private final class ResourceEntry {
+        private final ResourceKey key;
+        private final String indexKey;
+        private final Cache<String, TokenEntry> tokens;
+
+        private ResourceEntry(ResourceKey key, String indexKey) {
+            this.key = key;
+            this.indexKey = indexKey;
+            this.tokens = CacheBuilder.newBuilder()
+                    .maximumSize(sessionCap)
+                    .removalListener(new RemovalListener<String, TokenEntry>() {
+                        @Override
+                        public void onRemoval(RemovalNotification<String, TokenEntry> notification) {
+                            // sessions removed explicitly are unindexed by removeToken or by the resource's removal
+                            if (notification.wasEvicted()) {
+                                unindexToken(notification.getKey(), ResourceEntry.this.key);
+                                evictions.incrementAndGet();
+                            }
+                        }
+                    })
+                    .build();
+        }
+    }
+
+    private final class ServiceEntries {
+        private final Cache<String, ResourceEntry> resources;
+        private final ConcurrentSkipListMap<String, Set<String>> prefixIndex = new ConcurrentSkipListMap<>();
+
+        private ServiceEntries() {
+            this.resources = CacheBuilder.newBuilder()
+                    .maximumSize(resourceCap)
+                    .removalListener(new RemovalListener<String, ResourceEntry>() {
+                        @Override
+                        public void onRemoval(RemovalNotification<String, ResourceEntry> notification) {
+                            ResourceEntry removed = notification.getValue();
+                            unindex(notification.getKey(), removed.indexKey);
+                            for (String tokenID : removed.tokens.asMap().keySet()) {
+                                unindexToken(tokenID, removed.key);
+                            }
+                            if (notification.wasEvicted()) {
+                                evictions.incrementAndGet();
+                            }
+                        }
+                    })
+                    .build();
+        }
+
+        private void index(String resourceName, String indexKey) {
+            while (true) {
+                Set<String> names = prefixIndex.get(indexKey);
+                if (names == null) {
+                    Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                    names = prefixIndex.putIfAbsent(indexKey, created);
+                    if (names == null) {
+                        names = created;
+                    }
+                }
+                names.add(resourceName);
+                // retry if the set was emptied and unlinked concurrently by remove
+                if (prefixIndex.get(indexKey) == names) {
+                    return;
+                }
+            }
+        }
+
+        private boolean remove(String resourceName) {
+            return resources.asMap().remove(resourceName) != null;
+        }
+
+        private void unindex(String resourceName, String indexKey) {
+            Set<String> names = prefixIndex.get(indexKey);
+            if (names != null) {
+                names.remove(resourceName);
+                if (names.isEmpty()) {
+                    prefixIndex.remove(indexKey, names);
+                }
+            }
+        }
+    }
+
+    private static final class ResourceKey {
+        private final String serviceName;
+        private final String resourceName;
+
+        private ResourceKey(String serviceName, String resourceName) {
+            this.serviceName = serviceName;
+            this.resourceName = resourceName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResourceKey)) {
+                return false;
+            }
+            ResourceKey other = (ResourceKey) o;
+            return serviceName.equals(other.serviceName) && resourceName.equals(other.resourceName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * serviceName.hashCode() + resourceName.hashCode();
+        }
+    }
+}
@@ -31,7 +31,6 @@ package com.sun.identity.policy.client;
 
 import static org.forgerock.openam.utils.Time.*;
 
-import com.iplanet.am.util.Cache;
 import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.Session;
 import com.iplanet.dpro.session.SessionException;
@@ -97,6 +96,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Singleton class that implements client side policy decision cache.
@@ -113,11 +113,11 @@ class ResourceResultCache implements SSOTokenListener {
             = Collections.synchronizedSet(new HashSet(10));
 
     //serviceName -> resourceName -> sessionId -> scope -> result
-    private Map resultCache = new HashMap(10); 
+    private final DecisionCache resultCache;
 
     private PolicyNotificationHandler notificationHandler;
     private Set tokenRegistry = 
-        Collections.synchronizedSet(new HashSet(10000));
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private int        cacheTtl;
     private Set        advicesHandleableByAM; 
 
@@ -166,6 +166,9 @@ class ResourceResultCache implements SSOTokenListener {
     private ResourceResultCache(PolicyProperties policyProperties) 
             throws PolicyException {
         this.policyProperties = policyProperties;
+        resultCache = new DecisionCache(
+                policyProperties.getResultsCacheResourceCap(),
+                policyProperties.getResultsCacheSessionCap());
         notificationHandler = new PolicyNotificationHandler(this);
         cacheTtl = policyProperties.getCacheTtl();
 
@@ -204,6 +207,9 @@ class ResourceResultCache implements SSOTokenListener {
         }  else {
             resourceResultCache.policyProperties = policyProperties;
             resourceResultCache.cacheTtl = policyProperties.getCacheTtl();
+            resourceResultCache.resultCache.setCaps(
+                    policyProperties.getResultsCacheResourceCap(),
+                    policyProperties.getResultsCacheSessionCap());
         }
         return resourceResultCache;
     } 
@@ -436,129 +442,83 @@ class ResourceResultCache implements SSOTokenListener {
                     + ":entering ");
         }
 
-        Map resourceTokenIDsMap = null;
-        // resultCache -> serviceName -> resourceName -> sessionId -> scope -> result
-        synchronized(resultCache) {
-            // resourceName -> sessionId -> scope -> result
-            resourceTokenIDsMap = (Map)resultCache.get(serviceName);
-            if (resourceTokenIDsMap == null) {
-                // changed to fix 4295 Policy cache causes frequent 
-                // full gc or out of memory issues
-                resourceTokenIDsMap 
-                        = new Cache(policyProperties.getResultsCacheResourceCap());
-                resultCache.put(serviceName, resourceTokenIDsMap);
-            }
-        }
-
-        Map tokenIDScopesMap = null;
-        // resourceTokenIDsMap -> resourceName -> sessionId -> scope -> result
-        synchronized(resourceTokenIDsMap) {
-            // sessionId -> scope -> result
-            tokenIDScopesMap = (Map)resourceTokenIDsMap.get(resourceName);
-            if (tokenIDScopesMap == null) {
-                // changed to fix 4295 Policy cache causes frequent full 
-                // gc or out of memory issues
-                tokenIDScopesMap  
-                        = new Cache(policyProperties.getResultsCacheSessionCap());
-                resourceTokenIDsMap.put(resourceName, tokenIDScopesMap);
-            }
-        }
-
-        Map scopeResultsMap= null;
         String tokenID =  token.getTokenID().toString();
-        // tokenIDScopesMap -> sessionId -> scope -> result
-        synchronized(tokenIDScopesMap) {
-            scopeResultsMap = (Map)tokenIDScopesMap.get(tokenID);
-            if (scopeResultsMap == null) {
-                scopeResultsMap = new HashMap();
-                tokenIDScopesMap.put(tokenID, scopeResultsMap);
-                if (!tokenRegistry.contains(tokenID)) {
-                    try {
-                        token.addSSOTokenListener(this);
-                        tokenRegistry.add(tokenID);
-                    } catch (SSOTokenListenersUnsupportedException ex) {
-                        // Catching exception to avoid adding tokenID to tokenRegistry
-                        // scopeResultsMap will be populated and returned to the caller but not cached
-                        debug.message("ResourceResultCache.getResourceResults(): could not add sso listener: {}", ex.getMessage());
-                    }
-                }
+        boolean cacheResults = true;
+        if (!tokenRegistry.contains(tokenID)) {
+            try {
+                token.addSSOTokenListener(this);
+                tokenRegistry.add(tokenID);
+            } catch (SSOTokenListenersUnsupportedException ex) {
+                // Results are returned to the caller but not cached, as they could not be cleared on logout
+                cacheResults = false;
+                debug.message("ResourceResultCache.getResourceResults(): could not add sso listener: {}", ex.getMessage());
             }
         }
 
-        Object[] results = null;
+        // resultCache -> serviceName -> resourceName -> sessionId -> scope -> result
+        //array elements:resourceResults, env, ttl, actionNames
+        Object[] results = resultCache.get(serviceName, resourceName, tokenID, scope);
         boolean fetchResultsFromServer = false;
-        // scopeResultsMap -> scope -> result
-        synchronized(scopeResultsMap) {
-            results = (Object[])scopeResultsMap.get(scope);
-            if ( results == null) {
-
-                //array elements:resourceResults, env, ttl, actionNames
-                results = new Object[4];
-                scopeResultsMap.put(scope, results);
+        if ( !useCache ) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since useCache is false");
             }
-
-            if ( !useCache ) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since useCache is false");
-                }
-                fetchResultsFromServer = true;
-            } else if (results[0] == null) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server "
-                            + " since results not in cache");
-                }
-                fetchResultsFromServer = true;
-            } else if ((env == null) && (results[1] != null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since env does not match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((env != null) && !env.equals(results[1])) { 
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since env does not Match");
-                }
-                fetchResultsFromServer = true;
-            } else if (((Long) results[2]).longValue()
-                    < currentTimeMillis()) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since results ttl has "
-                            + " expired");
-                }
-                fetchResultsFromServer = true;
-            } else if ((actionNames == null) && (results[3] != null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since action names do not "
-                            + " match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((actionNames != null) &&  (results[3] == null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since action names do not "
-                            + " Match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((results[3] !=null) &&!((Set)results[3]).containsAll(
-                    actionNames))  {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since cached action names "
-                            + " do not cover request action names");
-                }
-                fetchResultsFromServer = true;
-            } else if (resourceResultsHasAdvices((Set)(results[0]))
-                    && PolicyProperties.SELF.equals(cacheMode)) { 
-                //get from server if there were advices in the cached decision
-                //we do this only if cacheMode is self
-                fetchResultsFromServer = true;
-
+            fetchResultsFromServer = true;
+        } else if (results == null || results[0] == null) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server "
+                        + " since results not in cache");
+            }
+            fetchResultsFromServer = true;
+        } else if ((env == null) && (results[1] != null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since env does not match");
+            }
+            fetchResultsFromServer = true;
+        } else if ((env != null) && !env.equals(results[1])) { 
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since env does not Match");
+            }
+            fetchResultsFromServer = true;
+        } else if (((Long) results[2]).longValue()
+                < currentTimeMillis()) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since results ttl has "
+                        + " expired");
+            }
+            fetchResultsFromServer = true;
+        } else if ((actionNames == null) && (results[3] != null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since action names do not "
+                        + " match");
             }
+            fetchResultsFromServer = true;
+        } else if ((actionNames != null) &&  (results[3] == null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since action names do not "
+                        + " Match");
+            }
+            fetchResultsFromServer = true;
+        } else if ((results[3] !=null) &&!((Set)results[3]).containsAll(
+                actionNames))  {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since cached action names "
+                        + " do not cover request action names");
+            }
+            fetchResultsFromServer = true;
+        } else if (resourceResultsHasAdvices((Set)(results[0]))
+                && PolicyProperties.SELF.equals(cacheMode)) { 
+            //get from server if there were advices in the cached decision
+            //we do this only if cacheMode is self
+            fetchResultsFromServer = true;
 
         }
 
@@ -575,6 +535,8 @@ class ResourceResultCache implements SSOTokenListener {
                         serviceName, token, resourceName, scope, 
                         actionNames, env);
             }
+            // cached results are replaced rather than updated, so that readers never see partial results
+            results = new Object[4];
             results[0] = resourceResults;
 
             if (env != null) {
@@ -591,7 +553,13 @@ class ResourceResultCache implements SSOTokenListener {
                 actionNames.addAll(actionNames1);
             }
             results[3] = actionNames;
+            resultCache.recordMiss();
+            if (cacheResults) {
+                resultCache.put(serviceName, resourceName, tokenID, scope, results,
+                        policyProperties.getResourceComparator(serviceName));
+            }
         } else {
+            resultCache.recordHit();
             if (debug.messageEnabled()) {
                 debug.message("ResourceResultCache.getResourceResults():"
                         + "would not contact server, "
@@ -1232,42 +1200,20 @@ class ResourceResultCache implements SSOTokenListener {
         }
 
         try {
-            synchronized(resultCache) {
-                Set services = (Set)resultCache.keySet();
-                Iterator serviceIter = services.iterator();
-                while (serviceIter.hasNext()) {
-                    String serviceName = (String)serviceIter.next();
-                    Map resourceTokenIDsMap = (Map)resultCache.get(serviceName);
-                    synchronized(resourceTokenIDsMap) {
-                        Set resources = (Set)resourceTokenIDsMap.keySet();
-                        Iterator resourceIter = resources.iterator();
-                        while (resourceIter.hasNext()) {
-                            String resource = (String)resourceIter.next();
-                            Map tokenIDScopesMap 
-                                    = (Map)resourceTokenIDsMap.get(resource);
-                            if (tokenIDScopesMap != null) {
-                                tokenIDScopesMap.remove(tokenID);
-                            }
-                            
-                            boolean tokenPresent = tokenRegistry.remove(tokenID);
-                            if ( (tokenPresent == false) &&
-                                (debug.messageEnabled()) ) {
-                                debug.message("ResourceResultCache. tokenID= "
-                                    + SECRET_MASK
-                                    + " not found in Token Registry.");
-                            }
-
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                    + "ssoTokenChanged():"
-                                    + "removing cache results for "
-                                    + "tokenID=" + SECRET_MASK //mask tokenID
-                                    + ":serviceName=" + serviceName 
-                                    + ":resource=" + resource);
-                            }
-                        }
-                    }
-                }
+            boolean tokenPresent = tokenRegistry.remove(tokenID);
+            if ( (tokenPresent == false) &&
+                (debug.messageEnabled()) ) {
+                debug.message("ResourceResultCache. tokenID= "
+                    + SECRET_MASK
+                    + " not found in Token Registry.");
+            }
+            int removed = resultCache.removeToken(tokenID);
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache."
+                    + "ssoTokenChanged():"
+                    + "removed cache results for "
+                    + "tokenID=" + SECRET_MASK //mask tokenID
+                    + ":resources=" + removed);
             }
         } catch (Throwable t) {
             if (debug.warningEnabled()) {
@@ -1289,84 +1235,17 @@ class ResourceResultCache implements SSOTokenListener {
             return;
         }  
 
-        Map resourceTokenIDsMap 
-                = (Map)(resourceResultCache.resultCache).get(serviceName);
-        if ((resourceTokenIDsMap == null)
-                || resourceTokenIDsMap.isEmpty()) {
-            return;
-        } 
-
         ResourceName resourceComparator 
                 = resourceResultCache.policyProperties
                 .getResourceComparator(serviceName);
-        Iterator arIter = affectedResourceNames.iterator();
-        while (arIter.hasNext()) {
-            String affectedRN = (String)arIter.next();
-            if (debug.messageEnabled()) {
-                debug.message("ResourceResultCache."
-                        + "clearCacheForResourceNames():"
-                        + "affectedResourceName=" + affectedRN);
-            }
-            synchronized (resourceTokenIDsMap) {
-                Set cachedResourceNames = resourceTokenIDsMap.keySet();
-                Iterator crIter = cachedResourceNames.iterator();
-                while (crIter.hasNext()) {
-                    String cachedRN = (String)crIter.next();
-                    if (debug.messageEnabled()) {
-                        debug.message("ResourceResultCache."
-                                + "clearCacheForResourceNames():"
-                                + "affectedResourceName=" + affectedRN
-                                + ":cachedResourceName=" + cachedRN);
-                    }
-                    if (affectedRN.equals(cachedRN)) {
-                        crIter.remove();
-                        if (debug.messageEnabled()) {
-                            debug.message("ResourceResultCache."
-                                    + "clearCacheForResourceNames():"
-                                    + "cleared cached results for "
-                                    + "resourceName=" + cachedRN
-                                    + ":affectedResourceName=" + affectedRN
-                                    + ":match=SAME RESOURCE NAME");
-                        }
-                    } else {
-                        ResourceMatch rm 
-                                = resourceComparator.compare( cachedRN, 
-                                affectedRN, true); //wildcard compare
-                        if (rm.equals(ResourceMatch.EXACT_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=EXACT_MATCH");
-                            }
-                        } else if (rm.equals(ResourceMatch.WILDCARD_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=WILD_CARD_MATCH");
-                            }
-                        } else if (rm.equals(
-                                ResourceMatch.SUB_RESOURCE_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=SUB_RESOURCE_MACTH");
-                            }
-                        }
-                    }
-                }
-            }
+        int removed = resourceResultCache.resultCache.invalidate(serviceName,
+                affectedResourceNames, resourceComparator);
+        if (debug.messageEnabled()) {
+            debug.message("ResourceResultCache."
+                    + "clearCacheForResourceNames():"
+                    + "affectedResourceNames=" + affectedResourceNames
+                    + ":cleared cached results for " + removed
+                    + " resource names");
         }
     }
 
@@ -1567,9 +1446,7 @@ class ResourceResultCache implements SSOTokenListener {
                     + "clearCachedDecisionsForService():"
                     + "serviceName=" + serviceName);
         } 
-        synchronized(resultCache) {
-            resultCache.remove(serviceName);
-        }
+        resultCache.clearService(serviceName);
     }
 
     /**
@@ -408,6 +408,30 @@ public class CachedSMSEntry implements SMSEventListener {
         }
     }
 
+    // Returns the valid cached entry of the DN, or null if it is not cached
+    static CachedSMSEntry getCachedEntry(String dn) {
+        CachedSMSEntry answer = (CachedSMSEntry) smsEntries.get(DN.valueOf(dn).toString().toLowerCase());
+        return answer != null && answer.isValid() ? answer : null;
+    }
+
+    // Returns a copy of the attributes of the valid, up to date cached entries, keyed by normalized DN
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, Set<String>>> getCachedAttributes() {
+        Map<String, Map<String, Set<String>>> answer = new HashMap<>();
+        synchronized (smsEntries) {
+            for (Object item : smsEntries.entrySet()) {
+                Map.Entry<String, CachedSMSEntry> entry = (Map.Entry<String, CachedSMSEntry>) item;
+                CachedSMSEntry cEntry = entry.getValue();
+                synchronized (cEntry.dirtyLock) {
+                    if (cEntry.isValid() && !cEntry.dirty && !cEntry.isNewEntry()) {
+                        answer.put(entry.getKey(), SMSUtils.copyAttributes(cEntry.smsEntry.getAttributes()));
+                    }
+                }
+            }
+        }
+        return answer;
+    }
+
     // Clears the cache
     static void clearCache() {
         synchronized (smsEntries) {
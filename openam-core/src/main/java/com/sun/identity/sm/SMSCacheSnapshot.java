@@ -0,0 +1,391 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.sm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.AccessController;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+import org.forgerock.util.thread.listener.ShutdownListener;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.sso.SSOToken;
+import com.sun.identity.common.CaseInsensitiveHashMap;
+import com.sun.identity.common.ShutdownManager;
+import com.sun.identity.security.AdminTokenAction;
+import com.sun.identity.shared.Constants;
+
+/**
+ * On-disk snapshot of the entries held in the SMS cache, used to serve the configuration read while the server
+ * starts without waiting for the configuration store.
+ * <p>
+ * The snapshot is loaded when it is first used, and discarded if it was written by a different version of the
+ * server or for a different configuration store. Each entry of the snapshot is served once, to the first read of
+ * its DN, and is then read again from the configuration store in the background; if the entry has changed since the
+ * snapshot was written, the cached entry is refreshed and its listeners notified as if a change notification had
+ * been received. The snapshot is no longer served once it has been replaced.
+ * <p>
+ * A new snapshot is written from the valid cached entries a configurable time after the server has started, and
+ * again when the server shuts down. As the entries may hold secrets, the snapshot file is only readable and writable
+ * by its owner.
+ * <p>
+ * The snapshot is disabled by default, and is enabled in server mode with the {@link #SNAPSHOT_ENABLED} system
+ * property.
+ *
+ * @since 14.0.0
+ */
+class SMSCacheSnapshot {
+
+    /**
+     * System property enabling the SMS cache snapshot.
+     */
+    static final String SNAPSHOT_ENABLED = "org.forgerock.openam.sm.cache.snapshot.enabled";
+    /**
+     * System property defining the path of the snapshot file. Defaults to a file in the configuration directory.
+     */
+    static final String SNAPSHOT_FILE = "org.forgerock.openam.sm.cache.snapshot.file";
+    /**
+     * System property defining how long, in seconds, after the server starts the snapshot is written.
+     */
+    static final String SNAPSHOT_WRITE_DELAY = "org.forgerock.openam.sm.cache.snapshot.write.delay";
+
+    private static final String DEFAULT_FILE_NAME = ".smsCacheSnapshot";
+    private static final int DEFAULT_WRITE_DELAY = 300;
+    private static final int FORMAT_VERSION = 1;
+    private static final long VALIDATION_DELAY = 1000L;
+    private static final SMSCacheSnapshot DISABLED = new SMSCacheSnapshot(null, null, null);
+
+    private static volatile SMSCacheSnapshot instance;
+
+    private final File file;
+    private final String storeId;
+    private final Map<String, Map<String, Set<String>>> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private volatile boolean serving;
+
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    SMSCacheSnapshot(File file, String storeId, ScheduledExecutorService executor) {
+        this.file = file;
+        this.storeId = storeId;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the snapshot of the SMS cache, loading it from disk on first use.
+     *
+     * @return The snapshot, which serves no entries if the snapshot is disabled.
+     */
+    static SMSCacheSnapshot getInstance() {
+        if (instance == null) {
+            synchronized (SMSCacheSnapshot.class) {
+                if (instance == null) {
+                    instance = createInstance();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static SMSCacheSnapshot createInstance() {
+        if (!SystemProperties.isServerMode() || !SystemProperties.getAsBoolean(SNAPSHOT_ENABLED, false)) {
+            return DISABLED;
+        }
+        String path = SystemProperties.get(SNAPSHOT_FILE);
+        if (path == null) {
+            String configPath = SystemProperties.get(SystemProperties.CONFIG_PATH);
+            if (configPath == null) {
+                return DISABLED;
+            }
+            path = configPath + File.separator + DEFAULT_FILE_NAME;
+        }
+        final SMSCacheSnapshot snapshot = new SMSCacheSnapshot(new File(path), SMSEntry.getRootSuffix(),
+                InjectorHolder.getInstance(ExecutorServiceFactory.class).createScheduledService(1));
+        snapshot.load();
+        snapshot.executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                snapshot.write();
+            }
+        }, SystemProperties.getAsInt(SNAPSHOT_WRITE_DELAY, DEFAULT_WRITE_DELAY), TimeUnit.SECONDS);
+        ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+            @Override
+            public void shutdown() {
+                snapshot.executor.shutdownNow();
+                snapshot.write();
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Returns the attributes of the entry as they were when the snapshot was written, and schedules the entry to be
+     * read again from the configuration store. Each entry is only returned once.
+     *
+     * @param dn The DN of the entry.
+     * @return The attributes of the entry, or {@code null} if the entry is not in the snapshot.
+     */
+    Map<String, Set<String>> take(String dn) {
+        if (!serving) {
+            return null;
+        }
+        final String normalizedDN = normalize(dn);
+        final Map<String, Set<String>> attributes = entries.remove(normalizedDN);
+        if (attributes == null) {
+            return null;
+        }
+        try {
+            // delayed so that the entry being read has been added to the SMS cache
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    validate(normalizedDN, attributes);
+                }
+            }, VALIDATION_DELAY, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the entry cannot be validated
+            return null;
+        }
+        served.incrementAndGet();
+        Map<String, Set<String>> answer = new CaseInsensitiveHashMap<>(attributes.size());
+        answer.putAll(SMSUtils.copyAttributes(attributes));
+        return answer;
+    }
+
+    /**
+     * @return The number of entries served from the snapshot.
+     */
+    long getServedCount() {
+        return served.get();
+    }
+
+    /**
+     * @return The number of entries served from the snapshot which had changed since the snapshot was written.
+     */
+    long getStaleCount() {
+        return stale.get();
+    }
+
+    void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || !getServerVersion().equals(readString(in))
+                    || !String.valueOf(storeId).equals(readString(in))) {
+                SMSEntry.debug.message("SMSCacheSnapshot: discarding snapshot written by another version");
+                return;
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String dn = readString(in);
+                int attributeCount = in.readInt();
+                Map<String, Set<String>> attributes = new HashMap<>(attributeCount);
+                for (int j = 0; j < attributeCount; j++) {
+                    String name = readString(in);
+                    int valueCount = in.readInt();
+                    Set<String> values = new HashSet<>(valueCount);
+                    for (int k = 0; k < valueCount; k++) {
+                        values.add(readString(in));
+                    }
+                    attributes.put(name, values);
+                }
+                entries.put(dn, attributes);
+            }
+            serving = true;
+            if (SMSEntry.debug.messageEnabled()) {
+                SMSEntry.debug.message("SMSCacheSnapshot: loaded " + entryCount + " entries from " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+            SMSEntry.debug.warning("SMSCacheSnapshot: unable to load snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Replaces the snapshot on disk with the valid entries of the SMS cache, and stops serving the previous
+     * snapshot.
+     */
+    void write() {
+        write(CachedSMSEntry.getCachedAttributes());
+    }
+
+    /**
+     * Replaces the snapshot on disk with the entries, and stops serving the previous snapshot.
+     *
+     * @param cached The attributes of the entries, by normalized DN.
+     */
+    synchronized void write(Map<String, Map<String, Set<String>>> cached) {
+        serving = false;
+        entries.clear();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(createOwnerOnly(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, getServerVersion());
+            writeString(out, String.valueOf(storeId));
+            out.writeInt(cached.size());
+            for (Map.Entry<String, Map<String, Set<String>>> entry : cached.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<String, Set<String>> attribute : entry.getValue().entrySet()) {
+                    writeString(out, attribute.getKey());
+                    Set<String> values = attribute.getValue() == null
+                            ? Collections.<String>emptySet() : attribute.getValue();
+                    out.writeInt(values.size());
+                    for (String value : values) {
+                        writeString(out, value);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            SMSEntry.debug.warning("SMSCacheSnapshot: unable to write snapshot " + file, e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            SMSEntry.debug.warning("SMSCacheSnapshot: unable to replace snapshot " + file);
+            tmp.delete();
+        } else if (SMSEntry.debug.messageEnabled()) {
+            SMSEntry.debug.message("SMSCacheSnapshot: wrote " + cached.size() + " entries to " + file);
+        }
+    }
+
+    private void validate(String normalizedDN, Map<String, Set<String>> snapshotAttributes) {
+        try {
+            if (sameAttributes(read(normalizedDN), snapshotAttributes)) {
+                return;
+            }
+            stale.incrementAndGet();
+            refresh(normalizedDN);
+        } catch (Exception e) {
+            // the entry may have been deleted, or the store be unavailable; clear the entry so it is read again
+            SMSEntry.debug.warning("SMSCacheSnapshot: unable to validate entry " + normalizedDN, e);
+            clear(normalizedDN);
+        }
+    }
+
+    /**
+     * Reads the current attributes of an entry from the configuration store.
+     */
+    Map<String, Set<String>> read(String normalizedDN) throws Exception {
+        SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
+        return SMSEntry.smsObject.read(adminToken, normalizedDN);
+    }
+
+    /**
+     * Refreshes the cached entry served from the snapshot, which has changed since the snapshot was written.
+     */
+    void refresh(String normalizedDN) {
+        CachedSMSEntry cachedEntry = CachedSMSEntry.getCachedEntry(normalizedDN);
+        if (cachedEntry != null) {
+            if (SMSEntry.debug.messageEnabled()) {
+                SMSEntry.debug.message("SMSCacheSnapshot: refreshing stale entry " + normalizedDN);
+            }
+            cachedEntry.refresh();
+        }
+    }
+
+    /**
+     * Clears the cached entry served from the snapshot, which could not be validated.
+     */
+    void clear(String normalizedDN) {
+        CachedSMSEntry cachedEntry = CachedSMSEntry.getCachedEntry(normalizedDN);
+        if (cachedEntry != null) {
+            cachedEntry.clear();
+        }
+    }
+
+    /**
+     * Creates the file, readable and writable by its owner only, and opens it for writing.
+     */
+    private static OutputStream createOwnerOnly(File file) throws IOException {
+        Path path = file.toPath();
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, restrict the file to its owner as far as the platform allows
+            Files.createFile(path);
+            if (!(file.setReadable(false, false) && file.setReadable(true, true)
+                    && file.setWritable(false, false) && file.setWritable(true, true))) {
+                SMSEntry.debug.warning("SMSCacheSnapshot: unable to restrict the permissions of " + file);
+            }
+        }
+        return Files.newOutputStream(path);
+    }
+
+    static boolean sameAttributes(Map<String, Set<String>> current, Map<String, Set<String>> cached) {
+        if (current == null || cached == null) {
+            return current == cached;
+        }
+        if (current.size() != cached.size()) {
+            return false;
+        }
+        Map<String, Set<String>> lookup = new CaseInsensitiveHashMap<>(cached.size());
+        lookup.putAll(cached);
+        for (Map.Entry<String, Set<String>> attribute : current.entrySet()) {
+            if (!attribute.getValue().equals(lookup.get(attribute.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String normalize(String dn) {
+        return DN.valueOf(dn).toString().toLowerCase();
+    }
+
+    private static String getServerVersion() {
+        return String.valueOf(SystemProperties.get(Constants.AM_VERSION));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -24,7 +24,7 @@
  *
  * $Id: SMSEntry.java,v 1.53 2009/12/07 19:46:47 veiming Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 
 package com.sun.identity.sm;
@@ -696,7 +696,10 @@ public class SMSEntry implements Cloneable {
             // permission is denied
             getDelegationPermission(token, normalizedDN, readActionSet);
         }
-        attrSet = smsObject.read(token, dn);
+        attrSet = SMSCacheSnapshot.getInstance().take(dn);
+        if (attrSet == null) {
+            attrSet = smsObject.read(token, dn);
+        }
         if (attrSet == null) {
             newEntry = true;
         } else {
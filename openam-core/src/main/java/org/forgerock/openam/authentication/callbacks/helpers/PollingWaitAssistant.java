@@ -16,7 +16,10 @@ package org.forgerock.openam.authentication.callbacks.helpers;
  */
 
 import org.forgerock.openam.utils.Time;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The PollingWaitAssistant class is used by an authentication module to assist in the completion of the PollingWait
@@ -110,6 +113,32 @@ public class PollingWaitAssistant {
         return PollingWaitState.WAITING;
     }
 
+    /**
+     * Waits for the future to complete, for no longer than the given period nor beyond the timeout. This allows a
+     * module to hold a poll open until the event arrives, rather than have the client poll again after each wait
+     * period.
+     *
+     * @param maxWaitInMilliSeconds the longest period to wait for.
+     * @return true if the future is done, false if it is not or this helper has not been started.
+     */
+    public boolean awaitCompletion(long maxWaitInMilliSeconds) {
+        if (!started) {
+            return false;
+        }
+        long remaining = timeoutInMilliSeconds - (Time.currentTimeMillis() - startTime);
+        long wait = Math.min(maxWaitInMilliSeconds, remaining);
+        if (wait > 0 && !finishFutureEvent.isDone()) {
+            try {
+                finishFutureEvent.get(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // the outcome is left to the caller, through getPollingWaitState
+            }
+        }
+        return finishFutureEvent.isDone();
+    }
+
     /**
      * Gets the current wait period for the callback at this stage in the polling period.
      *
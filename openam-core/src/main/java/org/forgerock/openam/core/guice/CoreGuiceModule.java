@@ -67,7 +67,7 @@ import org.forgerock.openam.cts.monitoring.impl.CTSMonitoringStoreImpl;
 import org.forgerock.openam.cts.monitoring.impl.queue.MonitoredResultHandlerFactory;
 import org.forgerock.openam.cts.worker.CTSWorkerTask;
 import org.forgerock.openam.cts.worker.CTSWorkerTaskProvider;
-import org.forgerock.openam.cts.worker.filter.CTSWorkerSelectAllFilter;
+import org.forgerock.openam.cts.worker.filter.CTSWorkerShardFilter;
 import org.forgerock.openam.cts.worker.process.CTSWorkerDeleteProcess;
 import org.forgerock.openam.cts.worker.process.MaxSessionTimeExpiredProcess;
 import org.forgerock.openam.cts.worker.process.SessionIdleTimeExpiredProcess;
@@ -82,6 +82,7 @@ import org.forgerock.openam.session.SessionCookies;
 import org.forgerock.openam.session.SessionPollerPool;
 import org.forgerock.openam.session.SessionServiceURLService;
 import org.forgerock.openam.session.SessionURL;
+import org.forgerock.openam.session.service.access.SessionCountIndex;
 import org.forgerock.openam.session.service.access.persistence.InternalSessionPersistenceStoreStep;
 import org.forgerock.openam.session.service.access.persistence.InternalSessionStore;
 import org.forgerock.openam.session.service.access.persistence.InternalSessionStoreChain;
@@ -366,15 +367,18 @@ public class CoreGuiceModule extends AbstractModule {
 
     @Provides @Inject @Singleton
     InternalSessionEventBroker getSessionEventBroker(
+            final ExecutorServiceFactory executorServiceFactory,
+            @Named(SessionConstants.SESSION_DEBUG) final Debug sessionDebug,
             final SessionLogging sessionLogging,
             final SessionAuditor sessionAuditor,
             final SessionNotificationSender sessionNotificationSender,
             final SessionNotificationPublisher sessionNotificationPublisher,
-            final SessionTimeoutHandlerExecutor sessionTimeoutHandlerExecutor) {
+            final SessionTimeoutHandlerExecutor sessionTimeoutHandlerExecutor,
+            final SessionCountIndex sessionCountIndex) {
 
-        return new InternalSessionEventBroker(
+        return new InternalSessionEventBroker(executorServiceFactory, sessionDebug,
                 sessionLogging, sessionAuditor, sessionNotificationSender, sessionNotificationPublisher,
-                sessionTimeoutHandlerExecutor);
+                sessionTimeoutHandlerExecutor, sessionCountIndex);
     }
 
     @Provides
@@ -466,24 +470,24 @@ public class CoreGuiceModule extends AbstractModule {
     CTSWorkerTask getDeleteAllMaxExpiredReaperTask(
             @Named(CTSWorkerConstants.PAST_EXPIRY_DATE) CTSWorkerQuery query,
             CTSWorkerDeleteProcess deleteProcess,
-            CTSWorkerSelectAllFilter selectAllFilter) {
-        return new CTSWorkerTask(query, deleteProcess, selectAllFilter);
+            CTSWorkerShardFilter shardFilter) {
+        return new CTSWorkerTask(query, deleteProcess, shardFilter);
     }
 
     @Provides @Inject @Named(CTSWorkerConstants.MAX_SESSION_TIME_EXPIRED)
     CTSWorkerTask getMaxSessionTimeExpiredTask(
             @Named(CTSWorkerConstants.MAX_SESSION_TIME_EXPIRED) CTSWorkerQuery query,
             MaxSessionTimeExpiredProcess maxSessionTimeExpiredProcess,
-            CTSWorkerSelectAllFilter selectAllFilter) {
-        return new CTSWorkerTask(query, maxSessionTimeExpiredProcess, selectAllFilter);
+            CTSWorkerShardFilter shardFilter) {
+        return new CTSWorkerTask(query, maxSessionTimeExpiredProcess, shardFilter);
     }
 
     @Provides @Inject @Named(CTSWorkerConstants.SESSION_IDLE_TIME_EXPIRED)
     CTSWorkerTask getSessionIdleTimeExpiredTask(
             @Named(CTSWorkerConstants.SESSION_IDLE_TIME_EXPIRED) CTSWorkerQuery query,
             SessionIdleTimeExpiredProcess sessionIdleTimeExpiredProcess,
-            CTSWorkerSelectAllFilter selectAllFilter) {
-        return new CTSWorkerTask(query, sessionIdleTimeExpiredProcess, selectAllFilter);
+            CTSWorkerShardFilter shardFilter) {
+        return new CTSWorkerTask(query, sessionIdleTimeExpiredProcess, shardFilter);
     }
 
     @Provides @Inject
@@ -25,6 +25,7 @@ import org.forgerock.openam.cts.continuous.ContinuousQuery;
 import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
 import org.forgerock.openam.cts.exceptions.CoreTokenException;
 import org.forgerock.openam.cts.utils.blob.TokenBlobStrategy;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
 import org.forgerock.openam.tokens.CoreTokenField;
 
@@ -70,6 +71,16 @@ public interface CTSPersistentStore {
      */
     void createAsync(Token token) throws CoreTokenException;
 
+    /**
+     * Creates a Token in the persistent store asynchronously, and notifies the handler of the result of the operation.
+     *
+     * @param token Non null Token to create.
+     * @param handler Non null ResultHandler notified once the token has been created, or has failed to be.
+     * @throws CoreTokenException If there was an error while performing the different
+     * {@link TokenBlobStrategy}s on the provided Token, or while queuing the operation.
+     */
+    void createAsync(Token token, ResultHandler<Token, CoreTokenException> handler) throws CoreTokenException;
+
     /**
      * Read a Token from the persistent store synchronously.
      *
@@ -86,6 +86,13 @@ public class CTSPersistentStoreImpl implements CTSPersistentStore {
         debug("Token {0} queued for creation", token.getTokenId());
     }
 
+    @Override
+    public void createAsync(Token token, ResultHandler<Token, CoreTokenException> handler)
+            throws CoreTokenException {
+        adapter.create(token, handler);
+        debug("Token {0} queued for creation", token.getTokenId());
+    }
+
     @Override
     public Token read(String tokenId) throws CoreTokenException {
         Token token = adapter.read(tokenId);
@@ -38,6 +38,11 @@ public class CoreTokenConfig {
     private final int runPeriod;
     private final int cleanupPageSize;
 
+    private final boolean reaperCoordinationEnabled;
+    private final int reaperLeaseDuration;
+    private final int reaperRateLimit;
+    private final int reaperPagesInFlight;
+
     private final int sleepInterval;
 
     // Token Blob strategy flags
@@ -76,6 +81,14 @@ public class CoreTokenConfig {
 
         // Controls the size of pages requested for CTS Reaper
         cleanupPageSize = 1000;
+
+        // Controls how the CTS Reaper shares out its work across the cluster and paces it
+        reaperCoordinationEnabled = Boolean.parseBoolean(
+                SystemPropertiesManager.get(CoreTokenConstants.CTS_REAPER_COORDINATION_ENABLED));
+        reaperLeaseDuration = getSystemManagerPropertyAsInt(CoreTokenConstants.CTS_REAPER_LEASE_DURATION,
+                3 * runPeriod);
+        reaperRateLimit = getSystemManagerPropertyAsInt(CoreTokenConstants.CTS_REAPER_RATE_LIMIT, 0);
+        reaperPagesInFlight = getSystemManagerPropertyAsInt(CoreTokenConstants.CTS_REAPER_PAGES_IN_FLIGHT, 0);
     }
 
     /**
@@ -185,4 +198,34 @@ public class CoreTokenConfig {
     public int getCleanupPageSize() {
         return cleanupPageSize;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return True if the servers of the cluster share out the deletes and timeouts of the CTS Reaper.
+     */
+    public boolean isReaperCoordinationEnabled() {
+        return reaperCoordinationEnabled;
+    }
+
+    /**
+     * @return The duration in milliseconds of the lease through which this server takes part in CTS Reaper
+     * coordination.
+     */
+    public int getReaperLeaseDuration() {
+        return reaperLeaseDuration;
+    }
+
+    /**
+     * @return The maximum number of tokens per second the CTS Reaper processes, zero for no limit.
+     */
+    public int getReaperRateLimit() {
+        return reaperRateLimit;
+    }
+
+    /**
+     * @return The maximum number of pages of tokens the CTS Reaper has being processed while fetching the next page,
+     * zero by default so that each page is processed before the next page is fetched.
+     */
+    public int getReaperPagesInFlight() {
+        return reaperPagesInFlight;
+    }
+}
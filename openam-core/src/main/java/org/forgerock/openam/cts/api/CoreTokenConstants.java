@@ -127,6 +127,29 @@ public class CoreTokenConstants {
      */
     public static final String CTS_ASYNC_QUEUE_SIZE = "org.forgerock.services.cts.async.queue.size";
 
+    /**
+     * Whether the servers of a cluster coordinate, through leases held in the CTS, to share out the deletes and
+     * session timeouts of the CTS Reaper. Every server still runs the CTS Reaper searches.
+     */
+    public static final String CTS_REAPER_COORDINATION_ENABLED =
+            "org.forgerock.services.cts.reaper.coordination.enabled";
+
+    /**
+     * The duration in milliseconds of the lease through which a server takes part in CTS Reaper coordination.
+     */
+    public static final String CTS_REAPER_LEASE_DURATION = "org.forgerock.services.cts.reaper.lease.duration";
+
+    /**
+     * The maximum number of tokens per second the CTS Reaper of a server deletes or times out, zero for no limit.
+     */
+    public static final String CTS_REAPER_RATE_LIMIT = "org.forgerock.services.cts.reaper.rate.limit";
+
+    /**
+     * The maximum number of pages of tokens the CTS Reaper has being processed while fetching the next page, zero (the
+     * default) to process each page before fetching the next.
+     */
+    public static final String CTS_REAPER_PAGES_IN_FLIGHT = "org.forgerock.services.cts.reaper.pages.in.flight";
+
     /**
      * Binding constant for the CTS Jackson Object Mapper.
      */
@@ -95,6 +95,39 @@ public class CoreTokenAdapter {
         return createHandler;
     }
 
+    /**
+     * Create a token in the persistent store, and notify the given handler of the result.
+     *
+     * @param token Token to create.
+     * @param handler Non null ResultHandler notified once the asynchronous operation has completed.
+     * @throws CoreTokenException If there was an error as a result of queuing this operation.
+     */
+    public void create(Token token, final ResultHandler<Token, CoreTokenException> handler)
+            throws CoreTokenException {
+        Reject.ifNull(handler);
+        applyBlobStrategy(token);
+        debug("Create: queued {0} Token {1}\n{2}", token.getType(), token.getTokenId(), token);
+        final ResultHandler<Token, CoreTokenException> createHandler = handlerFactory.getCreateHandler();
+        dispatcher.create(token, new ResultHandler<Token, CoreTokenException>() {
+            @Override
+            public Token getResults() throws CoreTokenException {
+                return createHandler.getResults();
+            }
+
+            @Override
+            public void processResults(Token result) {
+                createHandler.processResults(result);
+                handler.processResults(result);
+            }
+
+            @Override
+            public void processError(Exception error) {
+                createHandler.processError(error);
+                handler.processError(error);
+            }
+        });
+    }
+
     /**
      * Read the Token based on its Token ID.
      *
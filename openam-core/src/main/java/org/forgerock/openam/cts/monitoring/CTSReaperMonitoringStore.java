@@ -16,6 +16,8 @@
 
 package org.forgerock.openam.cts.monitoring;
 
+import java.util.Map;
+
 /**
  * A data structure for storing monitoring information about the CTS Reaper.
  * The CTS Reaper will use an instance of this data structure to store information about runs as and when they
@@ -41,4 +43,20 @@ public interface CTSReaperMonitoringStore {
      * @return The rate of session deletion by the CTS Reaper.
      */
     double getRateOfDeletedSessions();
+
+    /**
+     * Adds the run of the CTS Reaper over a share of the tokens to the monitoring store.
+     *
+     * @param shardIndex The position of the share of tokens processed by the run.
+     * @param runTime The duration of the run in milliseconds.
+     * @param numberOfDeletedTokens The number of tokens deleted by the run.
+     */
+    void addShardRun(int shardIndex, long runTime, long numberOfDeletedTokens);
+
+    /**
+     * Gets the throughput of the CTS Reaper runs over each share of the tokens since server start up.
+     *
+     * @return The number of tokens deleted per second, by share position.
+     */
+    Map<Integer, Double> getShardThroughput();
 }
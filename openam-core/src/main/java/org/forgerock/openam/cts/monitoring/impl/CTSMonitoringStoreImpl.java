@@ -31,6 +31,7 @@ import org.forgerock.openam.cts.monitoring.impl.reaper.ReaperMonitor;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
@@ -206,6 +207,22 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
         return reaperMonitor.getRateOfDeletion();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addShardRun(int shardIndex, long runTime, long numberOfDeletedTokens) {
+        reaperMonitor.addShardRun(shardIndex, runTime, numberOfDeletedTokens);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Integer, Double> getShardThroughput() {
+        return reaperMonitor.getShardThroughput();
+    }
+
     @Override
     public void addConnection(boolean success) {
         connectionStore.addConnection(success);
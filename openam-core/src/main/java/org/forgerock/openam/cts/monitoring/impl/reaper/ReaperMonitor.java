@@ -18,6 +18,11 @@ package org.forgerock.openam.cts.monitoring.impl.reaper;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class maintains a store of information about each CTS Reaper run since server start up.
@@ -27,6 +32,7 @@ import java.util.List;
 public class ReaperMonitor {
 
     private final List<ReaperRun> reaperRuns = new ArrayList<ReaperRun>();
+    private final ConcurrentMap<Integer, ShardRuns> shardRuns = new ConcurrentHashMap<>();
 
     /**
      * {@inheritDoc}
@@ -51,6 +57,49 @@ public class ReaperMonitor {
         return numDeletedSessions / reaperRuns.size();
     }
 
+    /**
+     * Adds a run by the CTS Reaper over a share of the tokens.
+     *
+     * @param shardIndex The position of the share of tokens processed by the run.
+     * @param runTime The duration of the run in milliseconds.
+     * @param numberOfDeletedTokens The number of tokens deleted by the run.
+     */
+    public void addShardRun(final int shardIndex, final long runTime, final long numberOfDeletedTokens) {
+        ShardRuns runs = shardRuns.get(shardIndex);
+        if (runs == null) {
+            ShardRuns created = new ShardRuns();
+            runs = shardRuns.putIfAbsent(shardIndex, created);
+            if (runs == null) {
+                runs = created;
+            }
+        }
+        runs.runTime.addAndGet(runTime);
+        runs.deletedTokens.addAndGet(numberOfDeletedTokens);
+    }
+
+    /**
+     * Gets the number of tokens deleted per second by the runs over each share of the tokens.
+     *
+     * @return The throughput by share position.
+     */
+    public Map<Integer, Double> getShardThroughput() {
+        Map<Integer, Double> throughput = new TreeMap<>();
+        for (Map.Entry<Integer, ShardRuns> runs : shardRuns.entrySet()) {
+            long runTime = runs.getValue().runTime.get();
+            double deleted = runs.getValue().deletedTokens.get();
+            throughput.put(runs.getKey(), runTime == 0 ? 0D : deleted * 1000D / runTime);
+        }
+        return throughput;
+    }
+
+    /**
+     * Totals of the runs over a share of the tokens.
+     */
+    private static class ShardRuns {
+        private final AtomicLong runTime = new AtomicLong();
+        private final AtomicLong deletedTokens = new AtomicLong();
+    }
+
     /**
      * Models a run by the CTS Reaper and holds information about when the run started and stopped and the number of
      * sessions the run deleted.
@@ -38,6 +38,7 @@ import com.sun.identity.shared.debug.Debug;
 public class CTSWorkerInit {
 
     private final Collection<CTSWorkerTask> workers;
+    private final CTSWorkerShard shard;
     private final ThreadMonitor monitor;
     private final CoreTokenConfig config;
     private final ScheduledExecutorService scheduledService;
@@ -48,17 +49,19 @@ public class CTSWorkerInit {
      * Default Guice provided instance.
      *
      * @param workerTaskProvider Non null, required.
+     * @param shard Non null, required for sharing out tokens between the servers of the cluster.
      * @param monitor Non null, required for thread monitoring.
      * @param config Non null, required for configuration.
      * @param scheduledService Non null, required for scheduling.
      * @param debug Non null, required for debugging.
      */
     @Inject
-    public CTSWorkerInit(CTSWorkerTaskProvider workerTaskProvider, ThreadMonitor monitor,
+    public CTSWorkerInit(CTSWorkerTaskProvider workerTaskProvider, CTSWorkerShard shard, ThreadMonitor monitor,
                          CoreTokenConfig config,
                          @Named(CoreTokenConstants.CTS_SCHEDULED_SERVICE) ScheduledExecutorService scheduledService,
                          @Named(CoreTokenConstants.CTS_DEBUG) Debug debug) {
         this.workers = workerTaskProvider.getTasks();
+        this.shard = shard;
         this.monitor = monitor;
         this.config = config;
         this.scheduledService = scheduledService;
@@ -74,6 +77,17 @@ public class CTSWorkerInit {
     public synchronized void startTasks() throws IllegalStateException {
         Reject.ifTrue(started);
 
+        if (shard.isEnabled()) {
+            // Take part in the cluster before the first run, and renew the lease well within its duration
+            long renewPeriod = Math.max(1, Math.min(config.getRunPeriod(), config.getReaperLeaseDuration() / 3));
+            monitor.watchScheduledThread(
+                    scheduledService,
+                    shard,
+                    0,
+                    renewPeriod,
+                    TimeUnit.MILLISECONDS);
+        }
+
         for (CTSWorkerTask worker : workers) {
             debug.message(CoreTokenConstants.DEBUG_HEADER + "Starting {}", worker);
 
@@ -0,0 +1,219 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.worker;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.api.CoreTokenConstants;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.filter.TokenFilterBuilder;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
+import org.forgerock.openam.utils.TimeUtils;
+
+import com.iplanet.services.naming.ServerEntryNotFoundException;
+import com.iplanet.services.naming.WebtopNaming;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Shares out the deletes and session timeouts performed by the CTS Reaper between the servers of the cluster, so that
+ * each expired token is deleted or timed out by one server rather than by every server.
+ * <p>
+ * The share is applied to the results of the CTS Reaper searches, by {@link
+ * org.forgerock.openam.cts.worker.filter.CTSWorkerShardFilter}, not to the searches themselves: the token IDs are
+ * opaque and no token attribute records a shard, so every server still runs and pages the full search for expired
+ * tokens. Only the load of the deletes and timeouts is shared out.
+ * <p>
+ * Each server taking part holds a lease, a token in the CTS which it renews periodically and which expires if the
+ * server stops. The servers holding a live lease are ordered by server ID, and each server processes the tokens whose
+ * ID hashes to its position. When a server leaves the cluster, its tokens are shared out again once its lease
+ * expires.
+ * <p>
+ * If coordination is disabled, or the leases cannot be read, this server processes every token.
+ */
+@Singleton
+public class CTSWorkerShard implements Runnable {
+
+    static final String LEASE_MARKER = "ctsReaperLease";
+    private static final String LEASE_PREFIX = LEASE_MARKER + "-";
+
+    private final CTSPersistentStore store;
+    private final CoreTokenConfig config;
+    private final Debug debug;
+    private volatile Assignment assignment = Assignment.ALL;
+
+    /**
+     * Default Guice provided instance.
+     *
+     * @param store Non null, the CTS the leases are held in.
+     * @param config Non null, required for configuration.
+     * @param debug Non null, required for debugging.
+     */
+    @Inject
+    public CTSWorkerShard(CTSPersistentStore store, CoreTokenConfig config,
+            @Named(CoreTokenConstants.CTS_DEBUG) Debug debug) {
+        this.store = store;
+        this.config = config;
+        this.debug = debug;
+    }
+
+    /**
+     * @return True if the servers of the cluster share out the deletes and timeouts of the CTS Reaper.
+     */
+    public boolean isEnabled() {
+        return config.isReaperCoordinationEnabled();
+    }
+
+    /**
+     * Renews the lease of this server, and updates the share of tokens it processes from the live leases.
+     */
+    @Override
+    public void run() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            String serverId = getServerId();
+            renewLease(serverId);
+            List<String> servers = getLiveServers();
+            if (!servers.contains(serverId)) {
+                servers.add(serverId);
+                Collections.sort(servers);
+            }
+            Assignment current = new Assignment(servers.indexOf(serverId), servers.size());
+            if (!current.equals(assignment)) {
+                debug.message(CoreTokenConstants.DEBUG_HEADER + "CTS Reaper now processing shard {} of {}",
+                        current.index, current.count);
+            }
+            assignment = current;
+        } catch (CoreTokenException | ServerEntryNotFoundException e) {
+            debug.warning(CoreTokenConstants.DEBUG_HEADER
+                    + "Unable to coordinate the CTS Reaper, processing every token", e);
+            assignment = Assignment.ALL;
+        }
+    }
+
+    /**
+     * Whether the token, returned by a CTS Reaper search, is deleted or timed out by this server.
+     *
+     * @param tokenId The ID of the token.
+     * @return True if this server should process the token.
+     */
+    public boolean isOwned(String tokenId) {
+        Assignment current = assignment;
+        return current.count <= 1 || tokenId == null
+                || (tokenId.hashCode() & Integer.MAX_VALUE) % current.count == current.index;
+    }
+
+    /**
+     * @return The position of the share of tokens processed by this server.
+     */
+    public int getShardIndex() {
+        return assignment.index;
+    }
+
+    /**
+     * @return The number of servers the tokens are shared out between.
+     */
+    public int getShardCount() {
+        return assignment.count;
+    }
+
+    /**
+     * @return The ID of this server.
+     * @throws ServerEntryNotFoundException If this server is not found in the naming table.
+     */
+    String getServerId() throws ServerEntryNotFoundException {
+        return WebtopNaming.getAMServerID();
+    }
+
+    private void renewLease(String serverId) throws CoreTokenException {
+        Token lease = new Token(LEASE_PREFIX + serverId, TokenType.GENERIC);
+        lease.setAttribute(CoreTokenField.STRING_ONE, LEASE_MARKER);
+        lease.setAttribute(CoreTokenField.STRING_TWO, serverId);
+        lease.setExpiryTimestamp(
+                TimeUtils.fromUnixTime(currentTimeMillis() + config.getReaperLeaseDuration(), MILLISECONDS));
+        store.update(lease);
+    }
+
+    private List<String> getLiveServers() throws CoreTokenException {
+        TokenFilter filter = new TokenFilterBuilder()
+                .returnAttribute(CoreTokenField.STRING_TWO)
+                .returnAttribute(CoreTokenField.EXPIRY_DATE)
+                .and()
+                .withAttribute(CoreTokenField.TOKEN_TYPE, TokenType.GENERIC)
+                .withAttribute(CoreTokenField.STRING_ONE, LEASE_MARKER)
+                .build();
+        Collection<PartialToken> leases = store.attributeQuery(filter);
+        long now = currentTimeMillis();
+        List<String> servers = new ArrayList<>(leases.size());
+        for (PartialToken lease : leases) {
+            String serverId = lease.getValue(CoreTokenField.STRING_TWO);
+            Calendar expiry = lease.getValue(CoreTokenField.EXPIRY_DATE);
+            // expired leases remain until the reaper deletes them
+            if (serverId != null && expiry != null && expiry.getTimeInMillis() > now) {
+                servers.add(serverId);
+            }
+        }
+        Collections.sort(servers);
+        return servers;
+    }
+
+    /**
+     * The share of tokens processed by this server.
+     */
+    private static final class Assignment {
+        private static final Assignment ALL = new Assignment(0, 1);
+
+        private final int index;
+        private final int count;
+
+        private Assignment(int index, int count) {
+            this.index = index;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Assignment)) {
+                return false;
+            }
+            Assignment other = (Assignment) o;
+            return index == other.index && count == other.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * index + count;
+        }
+    }
+}
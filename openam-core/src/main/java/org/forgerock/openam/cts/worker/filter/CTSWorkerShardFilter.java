@@ -0,0 +1,67 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.worker.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.forgerock.openam.cts.worker.CTSWorkerFilter;
+import org.forgerock.openam.cts.worker.CTSWorkerShard;
+import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
+
+/**
+ * Filter that returns the partial tokens whose ID falls in the share of tokens processed by this server, as assigned
+ * by the {@link CTSWorkerShard}. Every partial token is returned when CTS Reaper coordination is disabled.
+ * <p>
+ * The filter is applied to each page of search results, so it splits the deletes and timeouts between the servers,
+ * but every server still runs the whole search.
+ */
+public class CTSWorkerShardFilter implements CTSWorkerFilter {
+
+    private final CTSWorkerShard shard;
+
+    /**
+     * @param shard Non null, the share of tokens processed by this server.
+     */
+    @Inject
+    public CTSWorkerShardFilter(CTSWorkerShard shard) {
+        this.shard = shard;
+    }
+
+    @Override
+    public Collection<PartialToken> filter(Collection<PartialToken> tokens) {
+        if (!shard.isEnabled()) {
+            return Collections.unmodifiableCollection(tokens);
+        }
+        List<PartialToken> owned = new ArrayList<>(tokens.size());
+        for (PartialToken token : tokens) {
+            if (shard.isOwned(token.<String>getValue(CoreTokenField.TOKEN_ID))) {
+                owned.add(token);
+            }
+        }
+        return Collections.unmodifiableCollection(owned);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName();
+    }
+}
@@ -15,7 +15,9 @@
  */
 package org.forgerock.openam.cts.worker.process;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.lang.time.StopWatch;
@@ -28,9 +30,31 @@ import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
 /**
  * {@link CTSWorkerProcess} base class handling repeated steps such as paging through query results,
  * thread interruption and waiting for each page of results to be processed.
+ * <p>
+ * When a {@link CTSWorkerThrottle} is provided, processing is paced to the throttle's rate limit, and if the throttle
+ * allows pages in flight the next page of results is fetched while up to that many previous pages are being
+ * processed. Otherwise each page is processed before the next page is fetched, which is the default.
  */
 public abstract class CTSWorkerBaseProcess implements CTSWorkerProcess {
 
+    private final CTSWorkerThrottle throttle;
+
+    /**
+     * Creates a process which processes each page before fetching the next.
+     */
+    protected CTSWorkerBaseProcess() {
+        this(null);
+    }
+
+    /**
+     * Creates a process paced by the provided throttle.
+     *
+     * @param throttle The throttle pacing the processing of pages, may be null.
+     */
+    protected CTSWorkerBaseProcess(CTSWorkerThrottle throttle) {
+        this.throttle = throttle;
+    }
+
     @Override
     public final void handle(CTSWorkerQuery query, CTSWorkerFilter filter) {
         // Timers for debugging
@@ -40,6 +64,8 @@ public abstract class CTSWorkerBaseProcess implements CTSWorkerProcess {
         try {
 
             long total = 0;
+            int pagesInFlight = throttle == null ? 0 : throttle.getPagesInFlight();
+            Deque<CountDownLatch> inFlight = new ArrayDeque<>();
             waitingStopWatch.start();
             waitingStopWatch.suspend();
             queryStopWatch.start();
@@ -56,15 +82,26 @@ public abstract class CTSWorkerBaseProcess implements CTSWorkerProcess {
                 total += filteredTokens.size();
                 queryStopWatch.suspend();
 
-                // process the results; as handleBatch is an asynchronous call, await its completion
+                // process the results; as handleBatch is an asynchronous call, await the completion of the oldest
+                // pages once the limit of pages in flight is reached
                 // - retrieving and processing all results pages may cause an OutOfMemory error
                 waitingStopWatch.resume();
-                CountDownLatch latch = handleBatch(filteredTokens);
-                latch.await();
+                if (throttle != null) {
+                    throttle.acquire(filteredTokens.size());
+                }
+                inFlight.addLast(handleBatch(filteredTokens));
+                while (inFlight.size() > pagesInFlight) {
+                    inFlight.removeFirst().await();
+                }
                 waitingStopWatch.suspend();
 
                 queryStopWatch.resume();
             }
+            queryStopWatch.suspend();
+            waitingStopWatch.resume();
+            while (!inFlight.isEmpty()) {
+                inFlight.removeFirst().await();
+            }
             queryStopWatch.stop();
             waitingStopWatch.stop();
 
@@ -28,6 +28,7 @@ import org.forgerock.openam.cts.impl.query.worker.CTSWorkerQuery;
 import org.forgerock.openam.cts.impl.queue.TaskDispatcher;
 import org.forgerock.openam.cts.monitoring.CTSReaperMonitoringStore;
 import org.forgerock.openam.cts.worker.CTSWorkerFilter;
+import org.forgerock.openam.cts.worker.CTSWorkerShard;
 import org.forgerock.openam.cts.worker.CTSWorkerTask;
 import org.forgerock.openam.sm.datalayer.api.ResultHandler;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
@@ -45,6 +46,7 @@ public class CTSWorkerDeleteProcess extends CTSWorkerBaseProcess {
 
     private TokenDeletion tokenDeletion;
     private CTSReaperMonitoringStore monitoringStore;
+    private CTSWorkerShard shard;
     private Debug debug;
 
     /**
@@ -53,12 +55,18 @@ public class CTSWorkerDeleteProcess extends CTSWorkerBaseProcess {
      *
      * @param tokenDeletion Batch deletion of tokens utility.
      * @param monitoringStore Utility to record monitoring information.
+     * @param shard The share of tokens processed by this server, recorded with the monitoring information.
+     * @param throttle Paces the deletion of tokens.
      * @param debug Debug output.
      */
     @Inject
     public CTSWorkerDeleteProcess(TokenDeletion tokenDeletion,
                                   CTSReaperMonitoringStore monitoringStore,
+                                  CTSWorkerShard shard,
+                                  CTSWorkerThrottle throttle,
                                   @Named(CoreTokenConstants.CTS_DEBUG) Debug debug) {
+        super(throttle);
+        this.shard = shard;
         this.tokenDeletion = tokenDeletion;
         this.monitoringStore = monitoringStore;
         this.debug = debug;
@@ -71,8 +79,9 @@ public class CTSWorkerDeleteProcess extends CTSWorkerBaseProcess {
 
     @Override
     protected void handleSucceeded(final StopWatch queryStopWatch, final StopWatch waitingStopWatch, final long total) {
-        monitoringStore.addReaperRun(queryStopWatch.getStartTime(),
-                queryStopWatch.getTime() + waitingStopWatch.getTime(), total);
+        long runTime = queryStopWatch.getTime() + waitingStopWatch.getTime();
+        monitoringStore.addReaperRun(queryStopWatch.getStartTime(), runTime, total);
+        monitoringStore.addShardRun(shard.getShardIndex(), runTime, total);
         debug.message("Worker threads Time: {0}ms", Long.toString(waitingStopWatch.getTime()));
     }
 
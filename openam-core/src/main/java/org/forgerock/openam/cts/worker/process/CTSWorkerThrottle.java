@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.worker.process;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.forgerock.openam.cts.CoreTokenConfig;
+
+/**
+ * Paces the processing of tokens by the CTS worker processes of this server, so that the CTS Reaper does not
+ * overwhelm the directory with deletes and updates, and bounds the number of pages being processed at once.
+ * <p>
+ * The rate limit is shared by every process of the server.
+ */
+@Singleton
+public class CTSWorkerThrottle {
+
+    private final int rateLimit;
+    private final int pagesInFlight;
+    private long nextFreeTime;
+
+    /**
+     * @param config Non null, required for configuration.
+     */
+    @Inject
+    public CTSWorkerThrottle(CoreTokenConfig config) {
+        this.rateLimit = config.getReaperRateLimit();
+        this.pagesInFlight = Math.max(0, config.getReaperPagesInFlight());
+    }
+
+    /**
+     * @return The maximum number of pages which may be being processed while the next page is fetched, zero to
+     * process each page before fetching the next.
+     */
+    public int getPagesInFlight() {
+        return pagesInFlight;
+    }
+
+    /**
+     * Blocks until the tokens can be processed without exceeding the rate limit.
+     *
+     * @param tokens The number of tokens about to be processed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void acquire(int tokens) throws InterruptedException {
+        if (rateLimit <= 0 || tokens <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeTime < now) {
+                nextFreeTime = now;
+            }
+            wait = nextFreeTime - now;
+            nextFreeTime += SECONDS.toNanos(tokens) / rateLimit;
+        }
+        if (wait > 0) {
+            NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -50,7 +50,9 @@ public class MaxSessionTimeExpiredProcess extends CTSWorkerBaseProcess {
     public MaxSessionTimeExpiredProcess(
             final TaskDispatcher queue,
             final Provider<SessionAccessManager> accessManager,
+            final CTSWorkerThrottle throttle,
             @Named(CoreTokenConstants.CTS_DEBUG) final Debug debug) {
+        super(throttle);
         this.debug = debug;
         this.timeoutHandler = SessionExpiryBatchHandler.forMaxSessionTimeExpired(queue, accessManager);
     }
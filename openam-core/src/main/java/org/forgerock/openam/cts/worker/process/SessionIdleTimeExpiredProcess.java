@@ -50,7 +50,9 @@ public class SessionIdleTimeExpiredProcess extends CTSWorkerBaseProcess {
     public SessionIdleTimeExpiredProcess(
             final TaskDispatcher queue,
             final Provider<SessionAccessManager> accessManager,
+            final CTSWorkerThrottle throttle,
             @Named(CoreTokenConstants.CTS_DEBUG) final Debug debug) {
+        super(throttle);
         this.debug = debug;
         this.timeoutHandler = SessionExpiryBatchHandler.forSessionIdleTimeExpired(queue, accessManager);
     }
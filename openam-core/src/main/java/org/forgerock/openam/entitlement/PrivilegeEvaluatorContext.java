@@ -21,11 +21,13 @@
  * your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.entitlement;
 
 import com.sun.identity.entitlement.ConditionDecision;
+import com.sun.identity.entitlement.SubjectDecision;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -47,6 +49,11 @@ public class PrivilegeEvaluatorContext implements Serializable {
      * representation.
      */
     private Map<String, ConditionDecision> conditionDecisionCache = new HashMap<String, ConditionDecision>();
+    /**
+     * An entitlement subject decision cache, shared by the evaluations of a batch request, where the subject decisions
+     * are cached based on the subject's type and state. Null when subject decisions are not cached.
+     */
+    private transient Map<String, SubjectDecision> subjectDecisionCache;
     private static ThreadLocal <PrivilegeEvaluatorContext> currentCtx = new ThreadLocal();
 
     /**
@@ -135,4 +142,22 @@ public class PrivilegeEvaluatorContext implements Serializable {
     public Map<String, ConditionDecision> getConditionDecisionCache() {
         return conditionDecisionCache;
     }
+
+    /**
+     * Return the subject decision cache.
+     *
+     * @return the subject decision cache, or null if subject decisions are not cached.
+     */
+    public Map<String, SubjectDecision> getSubjectDecisionCache() {
+        return subjectDecisionCache;
+    }
+
+    /**
+     * Set the subject decision cache, which must be safe for use by concurrent evaluator threads.
+     *
+     * @param subjectDecisionCache the subject decision cache.
+     */
+    public void setSubjectDecisionCache(Map<String, SubjectDecision> subjectDecisionCache) {
+        this.subjectDecisionCache = subjectDecisionCache;
+    }
 }
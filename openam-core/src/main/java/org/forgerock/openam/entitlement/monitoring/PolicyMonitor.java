@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.entitlement.monitoring;
@@ -53,6 +53,39 @@ public interface PolicyMonitor {
     void addEvaluation(String policyName, long duration, String realm,
                        String applicationName, String resourceName, Subject subject);
 
+    /**
+     * Adds the evaluation of a batch request, which evaluates several resources together, which should be recorded
+     * by the PolicyMonitor. The evaluation of each resource of the batch is also recorded individually.
+     *
+     * @param duration Total length of time in ms the batch took to complete
+     * @param resourceCount The number of resources evaluated by the batch
+     * @param realm Realm in which the evaluation took place
+     * @param applicationName Application name against which the evaluation was made
+     * @param subject The subject making the evaluation
+     */
+    void addBatchEvaluation(long duration, int resourceCount, String realm, String applicationName, Subject subject);
+
+    /**
+     * Total number of batch evaluations which have taken place.
+     *
+     * @return The total number of batch evaluations which have occurred
+     */
+    long getBatchEvaluationCumulativeCount();
+
+    /**
+     * Average length of time a batch evaluation takes to complete.
+     *
+     * @return The average length of time it takes to complete a batch evaluation in ms
+     */
+    long getAverageBatchEvaluationTime();
+
+    /**
+     * Returns information on the slowest performing batch evaluation.
+     *
+     * @return information on the slowest performing batch evaluation
+     */
+    String getSlowestBatchEvaluation();
+
     /**
      * Returns information on the slowest performing evaluation.
      *
@@ -11,7 +11,7 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.entitlement.monitoring;
 
@@ -50,6 +50,10 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     //internal monitoring store
     private final InternalEvaluationTimingStore internalEvaluationTimingStore;
 
+    //batch monitoring stores
+    private final EvaluationMonitoringStore batchEvaluationMonitoringStore;
+    private final EvaluationTimingStore batchEvaluationTimingStore;
+
     //for pushing off our monitoring writes to another thread
     private final ExecutorService executorService;
     public static final String EXECUTOR_BINDING_NAME = "POLICY_MONITORING_EXECUTOR";
@@ -64,6 +68,8 @@ public class PolicyMonitorImpl implements PolicyMonitor {
      * @param subtreeEvaluationMonitoringStore Store for the SUBTREE mode evaluation monitoring
      * @param subtreeEvaluationTimingStore Store for the SELF mode timing monitoring
      * @param internalEvaluationTimingStore Store for the internal privilege evaluation monitoring
+     * @param batchEvaluationMonitoringStore Store for the batch evaluation monitoring
+     * @param batchEvaluationTimingStore Store for the batch evaluation timing monitoring
      */
     @Inject
     public PolicyMonitorImpl(@Named(POLICY_MONITOR_DEBUG) Debug debug,
@@ -72,7 +78,9 @@ public class PolicyMonitorImpl implements PolicyMonitor {
                              final EvaluationTimingStore selfEvaluationTimingStore,
                              final EvaluationMonitoringStore subtreeEvaluationMonitoringStore,
                              final EvaluationTimingStore subtreeEvaluationTimingStore,
-                             final InternalEvaluationTimingStore internalEvaluationTimingStore) {
+                             final InternalEvaluationTimingStore internalEvaluationTimingStore,
+                             final EvaluationMonitoringStore batchEvaluationMonitoringStore,
+                             final EvaluationTimingStore batchEvaluationTimingStore) {
         this.debug = debug;
         this.executorService = executorService;
         this.selfEvaluationMonitoringStore = selfEvaluationMonitoringStore;
@@ -80,6 +88,8 @@ public class PolicyMonitorImpl implements PolicyMonitor {
         this.subtreeEvaluationMonitoringStore = subtreeEvaluationMonitoringStore;
         this.subtreeEvaluationTimingStore = subtreeEvaluationTimingStore;
         this.internalEvaluationTimingStore = internalEvaluationTimingStore;
+        this.batchEvaluationMonitoringStore = batchEvaluationMonitoringStore;
+        this.batchEvaluationTimingStore = batchEvaluationTimingStore;
     }
 
     /**
@@ -136,6 +146,50 @@ public class PolicyMonitorImpl implements PolicyMonitor {
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addBatchEvaluation(final long duration, final int resourceCount, final String realm,
+                                   final String applicationName, final Subject subject) {
+
+        try {
+            executorService.submit(new Runnable() {
+                public void run() {
+                    batchEvaluationMonitoringStore.increment();
+                    batchEvaluationTimingStore.addTiming(duration, realm, applicationName,
+                            resourceCount + " resources", subject);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            debug.error("Unable to store batch evaluation time - task rejected from pool", ree);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBatchEvaluationCumulativeCount() {
+        return batchEvaluationMonitoringStore.getEvaluationCumulativeCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAverageBatchEvaluationTime() {
+        return batchEvaluationTimingStore.getDurationAverage();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSlowestBatchEvaluation() {
+        return batchEvaluationTimingStore.getSlowestEvaluation();
+    }
+
     /**
      * {@inheritDoc}
      */
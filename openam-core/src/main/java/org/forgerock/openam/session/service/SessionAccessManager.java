@@ -15,7 +15,16 @@
  */
 package org.forgerock.openam.session.service;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -29,9 +38,11 @@ import org.forgerock.openam.session.service.access.persistence.InternalSessionSt
 import org.forgerock.openam.session.service.access.persistence.SessionPersistenceException;
 import org.forgerock.openam.shared.concurrency.ThreadMonitor;
 import org.forgerock.openam.utils.StringUtils;
+import org.forgerock.openam.utils.Time;
 import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.Session;
 import com.iplanet.dpro.session.SessionException;
 import com.iplanet.dpro.session.SessionID;
@@ -44,10 +55,26 @@ import com.sun.identity.shared.debug.Debug;
 /**
  * Class for managing access to Sessions. This class handles concepts such as persisting a session for the first time,
  * as well as updating a stored session.
+ * <p>
+ * If enabled with the {@link #COALESCE_ENABLED} system property, the updates made to stored sessions by a thread
+ * between {@link #beginUnitOfWork()} and {@link #endUnitOfWork()} are not persisted as they are made, but once for
+ * each session when the unit of work ends. Sessions left unpersisted for longer than {@link #COALESCE_MAX_DELAY}
+ * milliseconds, for example by a unit of work which never ends, are persisted by a timer.
  */
 @Singleton
 public class SessionAccessManager implements SessionPersistenceManager {
 
+    /**
+     * System property enabling the coalescing of the session updates made during a unit of work.
+     */
+    public static final String COALESCE_ENABLED = "org.forgerock.openam.session.persistence.coalesce.enabled";
+    /**
+     * System property defining how long, in milliseconds, a coalesced update may wait to be persisted.
+     */
+    public static final String COALESCE_MAX_DELAY = "org.forgerock.openam.session.persistence.coalesce.maxDelay";
+
+    private static final int DEFAULT_COALESCE_MAX_DELAY = 1000;
+
     private final Debug debug;
 
     private final SessionCache sessionCache;
@@ -57,6 +84,15 @@ public class SessionAccessManager implements SessionPersistenceManager {
     private final MonitoringOperations monitoringOperations; // Note: there should be an increment and a decrement in this class for this to make sense
     private final NonExpiringSessionManager nonExpiringSessionManager;
 
+    private final boolean coalesce;
+    private final long coalesceMaxDelay;
+    /** The sessions of each thread's unit of work, if it has begun one. */
+    private final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<>();
+    /** The sessions updated by any unit of work but not yet persisted, with the time of their first update. */
+    private final ConcurrentMap<InternalSession, Long> pendingUpdates = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+    private final AtomicLong delayedUpdates = new AtomicLong();
+
     @VisibleForTesting
     @Inject
     SessionAccessManager(@Named(SessionConstants.SESSION_DEBUG) final Debug debug,
@@ -65,11 +101,35 @@ public class SessionAccessManager implements SessionPersistenceManager {
                          @Named(CoreTokenConstants.CTS_SCHEDULED_SERVICE) final ScheduledExecutorService scheduler,
                          final ThreadMonitor threadMonitor,
                          final InternalSessionStore internalSessionStore) {
+        this(debug, sessionCache, monitoringOperations, scheduler, threadMonitor, internalSessionStore,
+                SystemProperties.getAsBoolean(COALESCE_ENABLED, false),
+                SystemProperties.getAsInt(COALESCE_MAX_DELAY, DEFAULT_COALESCE_MAX_DELAY));
+    }
+
+    @VisibleForTesting
+    SessionAccessManager(final Debug debug,
+                         final SessionCache sessionCache,
+                         final MonitoringOperations monitoringOperations,
+                         final ScheduledExecutorService scheduler,
+                         final ThreadMonitor threadMonitor,
+                         final InternalSessionStore internalSessionStore,
+                         final boolean coalesce,
+                         final long coalesceMaxDelay) {
         this.debug = debug;
         this.sessionCache = sessionCache;
         this.monitoringOperations = monitoringOperations;
         this.nonExpiringSessionManager = new NonExpiringSessionManager(this, scheduler, threadMonitor);
         this.internalSessionStore = internalSessionStore;
+        this.coalesce = coalesce;
+        this.coalesceMaxDelay = coalesceMaxDelay;
+        if (coalesce) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushDelayedUpdates();
+                }
+            }, coalesceMaxDelay, coalesceMaxDelay, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -150,13 +210,14 @@ public class SessionAccessManager implements SessionPersistenceManager {
     }
 
     /**
-     * Persist the provided InternalSession to the backend.
+     * Persist the provided InternalSession to the backend. Within a unit of work, the session is persisted when the
+     * unit of work ends, together with the updates made to it after this call.
      * @param session The session to persist.
      */
     public void persistInternalSession(InternalSession session) {
         session.setStored(true);
         session.setPersistenceManager(this);
-        update(session);
+        notifyUpdate(session);
         if (!session.willExpire()) {
             nonExpiringSessionManager.addNonExpiringSession(session);
         }
@@ -194,6 +255,7 @@ public class SessionAccessManager implements SessionPersistenceManager {
             throw new RuntimeException(e);
         }
 
+        pendingUpdates.remove(internalSession);
         internalSession.setStored(false);
         internalSession.setPersistenceManager(null);
         // Session Constraint
@@ -205,7 +267,96 @@ public class SessionAccessManager implements SessionPersistenceManager {
     @Override
     public void notifyUpdate(InternalSession internalSession) {
         Reject.ifNull(internalSession);
-        update(internalSession);
+        UnitOfWork work = coalesce ? unitOfWork.get() : null;
+        if (work == null || !internalSession.isStored()) {
+            update(internalSession);
+            return;
+        }
+        if (pendingUpdates.putIfAbsent(internalSession, Time.currentTimeMillis()) != null) {
+            coalescedUpdates.incrementAndGet();
+        }
+        work.sessions.add(internalSession);
+    }
+
+    /**
+     * Begins a unit of work on the current thread, such as the handling of a request or an authentication step.
+     * If coalescing is enabled, the updates made to sessions until the matching {@link #endUnitOfWork()} are
+     * persisted when it is called. Units of work may be nested, in which case the updates are persisted when the
+     * outermost unit of work ends.
+     */
+    public void beginUnitOfWork() {
+        if (!coalesce) {
+            return;
+        }
+        UnitOfWork work = unitOfWork.get();
+        if (work == null) {
+            work = new UnitOfWork();
+            unitOfWork.set(work);
+        }
+        work.depth++;
+    }
+
+    /**
+     * Ends the unit of work begun by the matching {@link #beginUnitOfWork()}, persisting the sessions updated during
+     * it if it is the outermost unit of work. Must be called in a {@code finally} block.
+     */
+    public void endUnitOfWork() {
+        UnitOfWork work = unitOfWork.get();
+        if (work == null || --work.depth > 0) {
+            return;
+        }
+        unitOfWork.remove();
+        RuntimeException failure = null;
+        for (InternalSession session : work.sessions) {
+            try {
+                flush(session);
+            } catch (RuntimeException e) {
+                debug.error("SessionAccessManager: unable to persist session at the end of a unit of work", e);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return The number of session updates not persisted because a later update in the same unit of work was.
+     */
+    public long getCoalescedUpdateCount() {
+        return coalescedUpdates.get();
+    }
+
+    /**
+     * @return The number of coalesced session updates persisted by the timer rather than at the end of their unit
+     * of work.
+     */
+    public long getDelayedUpdateCount() {
+        return delayedUpdates.get();
+    }
+
+    private void flush(InternalSession session) {
+        if (pendingUpdates.remove(session) != null) {
+            update(session);
+        }
+    }
+
+    private void flushDelayedUpdates() {
+        long threshold = Time.currentTimeMillis() - coalesceMaxDelay;
+        Iterator<Map.Entry<InternalSession, Long>> entries = pendingUpdates.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<InternalSession, Long> entry = entries.next();
+            if (entry.getValue() <= threshold && pendingUpdates.remove(entry.getKey(), entry.getValue())) {
+                delayedUpdates.incrementAndGet();
+                try {
+                    update(entry.getKey());
+                } catch (RuntimeException e) {
+                    debug.error("SessionAccessManager: unable to persist delayed session update", e);
+                }
+            }
+        }
     }
 
     private void update(InternalSession session) {
@@ -217,4 +368,13 @@ public class SessionAccessManager implements SessionPersistenceManager {
             }
         }
     }
+
+    /**
+     * The sessions updated by a thread during its current unit of work.
+     */
+    private static final class UnitOfWork {
+        private final Set<InternalSession> sessions =
+                Collections.newSetFromMap(new IdentityHashMap<InternalSession, Boolean>());
+        private int depth;
+    }
 }
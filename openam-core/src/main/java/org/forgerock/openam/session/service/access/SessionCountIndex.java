@@ -0,0 +1,509 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.session.service.access;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.forgerock.util.query.QueryFilter.equalTo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.api.fields.SessionTokenField;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.filter.TokenFilterBuilder;
+import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.continuous.ChangeType;
+import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.session.SessionConstants;
+import org.forgerock.openam.session.service.access.persistence.SessionPersistenceStore;
+import org.forgerock.openam.sm.datalayer.api.DataLayerException;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
+import org.forgerock.openam.utils.TimeUtils;
+import org.forgerock.opendj.ldap.Attribute;
+import org.forgerock.opendj.ldap.GeneralizedTime;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.dpro.session.SessionException;
+import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.service.InternalSession;
+import com.iplanet.dpro.session.service.InternalSessionEvent;
+import com.iplanet.dpro.session.service.SynchronousInternalSessionListener;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Index of the sessions of each user, used to check session quotas without searching the CTS for every session of
+ * the user on every login.
+ * <p>
+ * The sessions of a user are read from the CTS the first time they are needed, and then kept up to date with the
+ * sessions created and destroyed on this server, and with the session tokens added, modified and deleted in the CTS
+ * by other servers. A session token of the user which is unknown to the index causes the user's sessions to be read
+ * again from the CTS. Cached users also expire after a configurable time, bounding the effect of any missed change.
+ * <p>
+ * As with a CTS search, a session is counted until its token is deleted, by this server or by the CTS reaper. A
+ * session which times out therefore remains counted until its token is deleted, whereas a session logged out or
+ * destroyed on this server is no longer counted straight away. The expiration time of a session is updated when its
+ * token is modified, as when the session is refreshed.
+ * <p>
+ * The index is disabled by default, and is enabled with the {@link #INDEX_ENABLED} system property. It is not used
+ * if the CTS cannot notify it of session token changes.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class SessionCountIndex implements SynchronousInternalSessionListener {
+
+    /**
+     * System property enabling the session count index.
+     */
+    public static final String INDEX_ENABLED = "org.forgerock.openam.session.quota.index.enabled";
+    /**
+     * System property defining the maximum number of users whose sessions are indexed.
+     */
+    public static final String INDEX_SIZE = "org.forgerock.openam.session.quota.index.size";
+    /**
+     * System property defining how long, in seconds, the sessions of a user are indexed for before being read again
+     * from the CTS.
+     */
+    public static final String INDEX_TTL = "org.forgerock.openam.session.quota.index.ttl";
+
+    private static final int DEFAULT_INDEX_SIZE = 100000;
+    private static final int DEFAULT_INDEX_TTL = 300;
+    private static final int STRIPES = 1024;
+
+    private final boolean caseSensitiveUUID = SystemProperties.getAsBoolean(Constants.CASE_SENSITIVE_UUID);
+
+    private final Debug debug;
+    private final SessionPersistenceStore sessionPersistenceStore;
+    private final CTSPersistentStore coreTokenService;
+    private final TokenIdFactory tokenIdFactory;
+    private final CoreTokenConfig coreTokenConfig;
+    private final boolean enabled;
+    private final Cache<String, UserSessions> users;
+    private final ConcurrentMap<String, String> tokenUsers = new ConcurrentHashMap<>();
+    private final SessionTokenListener listener = new SessionTokenListener();
+    /** Counts changes to the sessions of the users hashed to each stripe, to detect changes racing a CTS read. */
+    private final AtomicLongArray changes = new AtomicLongArray(STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile boolean listening;
+    private volatile boolean listenerFailed;
+
+    /**
+     * Creates the index, configured from the system properties.
+     *
+     * @param debug The session debug instance.
+     * @param sessionPersistenceStore The store the sessions of a user are read from.
+     * @param coreTokenService The CTS, which notifies the index of session token changes.
+     * @param tokenIdFactory The factory used to find the CTS token ID of a session.
+     * @param coreTokenConfig The CTS configuration, defining how session tokens expire.
+     */
+    @Inject
+    public SessionCountIndex(@Named(SessionConstants.SESSION_DEBUG) Debug debug,
+            SessionPersistenceStore sessionPersistenceStore, CTSPersistentStore coreTokenService,
+            TokenIdFactory tokenIdFactory, CoreTokenConfig coreTokenConfig) {
+        this(debug, sessionPersistenceStore, coreTokenService, tokenIdFactory, coreTokenConfig,
+                SystemProperties.getAsBoolean(INDEX_ENABLED, false),
+                SystemProperties.getAsInt(INDEX_SIZE, DEFAULT_INDEX_SIZE),
+                SystemProperties.getAsInt(INDEX_TTL, DEFAULT_INDEX_TTL));
+    }
+
+    SessionCountIndex(Debug debug, SessionPersistenceStore sessionPersistenceStore,
+            CTSPersistentStore coreTokenService, TokenIdFactory tokenIdFactory, CoreTokenConfig coreTokenConfig,
+            boolean enabled, int size, int ttlSeconds) {
+        this.debug = debug;
+        this.sessionPersistenceStore = sessionPersistenceStore;
+        this.coreTokenService = coreTokenService;
+        this.tokenIdFactory = tokenIdFactory;
+        this.coreTokenConfig = coreTokenConfig;
+        this.enabled = enabled;
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttlSeconds, SECONDS)
+                .removalListener(new RemovalListener<String, UserSessions>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, UserSessions> notification) {
+                        for (String tokenId : notification.getValue().tokenIds.keySet()) {
+                            tokenUsers.remove(tokenId, notification.getKey());
+                        }
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the expiration time of each session of the user, from the index if the user's sessions are indexed.
+     *
+     * @param uuid The user's universal ID.
+     * @return A map of session ID to expiration time, in seconds.
+     * @throws SessionException If the sessions of the user could not be read from the CTS.
+     */
+    public Map<String, Long> getAllSessionsByUUID(String uuid) throws SessionException {
+        if (!isActive()) {
+            return sessionPersistenceStore.getAllSessionsByUUID(uuid);
+        }
+        String user = normalise(uuid);
+        UserSessions sessions = users.getIfPresent(user);
+        if (sessions != null) {
+            hits.incrementAndGet();
+            return sessions.toMap();
+        }
+        misses.incrementAndGet();
+        int stripe = stripe(user);
+        long stamp = changes.get(stripe);
+        Map<String, Long> loaded = sessionPersistenceStore.getAllSessionsByUUID(uuid);
+        if (changes.get(stripe) == stamp) {
+            sessions = new UserSessions();
+            for (Map.Entry<String, Long> session : loaded.entrySet()) {
+                sessions.add(session.getKey(), session.getValue(), toTokenId(session.getKey()));
+            }
+            index(user, sessions);
+            if (changes.get(stripe) != stamp) {
+                // a change raced the indexing of the user
+                users.asMap().remove(user, sessions);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the number of sessions of the user.
+     *
+     * @param uuid The user's universal ID.
+     * @return The number of sessions of the user.
+     * @throws SessionException If the sessions of the user could not be read from the CTS.
+     */
+    public int getSessionCount(String uuid) throws SessionException {
+        return getAllSessionsByUUID(uuid).size();
+    }
+
+    /**
+     * Returns the ID of the session of the user which expires first.
+     *
+     * @param uuid The user's universal ID.
+     * @return The session ID, or {@code null} if the user has no session.
+     * @throws SessionException If the sessions of the user could not be read from the CTS.
+     */
+    public String getNextExpiringSessionId(String uuid) throws SessionException {
+        String next = null;
+        long nextExpiry = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> session : getAllSessionsByUUID(uuid).entrySet()) {
+            if (session.getValue() < nextExpiry) {
+                nextExpiry = session.getValue();
+                next = session.getKey();
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public void onEvent(InternalSessionEvent event) {
+        if (!enabled) {
+            return;
+        }
+        InternalSession session = event.getInternalSession();
+        String uuid = session.getUUID();
+        if (uuid == null || session.getID() == null) {
+            return;
+        }
+        String user = normalise(uuid);
+        String sessionId = session.getID().toString();
+        UserSessions sessions;
+        switch (event.getType()) {
+        case SESSION_CREATION:
+            changed(user);
+            sessions = users.getIfPresent(user);
+            if (sessions != null) {
+                long expiry = MILLISECONDS.toSeconds(session.getExpirationTime(MILLISECONDS)
+                        + coreTokenConfig.getSessionExpiryGracePeriod(MILLISECONDS));
+                String tokenId = toTokenId(sessionId);
+                sessions.add(sessionId, expiry, tokenId);
+                if (tokenId != null) {
+                    tokenUsers.put(tokenId, user);
+                }
+            }
+            break;
+        case LOGOUT:
+        case DESTROY:
+            changed(user);
+            sessions = users.getIfPresent(user);
+            if (sessions != null) {
+                String tokenId = sessions.remove(sessionId);
+                if (tokenId != null) {
+                    tokenUsers.remove(tokenId, user);
+                }
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Removes every user from the index.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            changes.incrementAndGet(i);
+        }
+        users.invalidateAll();
+    }
+
+    /**
+     * @return The number of session lookups answered from the index.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of session lookups which required searching the CTS.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of users removed from the index after a change could not be applied to it.
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return The number of users whose sessions are indexed.
+     */
+    public long getIndexedUserCount() {
+        return users.size();
+    }
+
+    private boolean isActive() {
+        if (!enabled || listenerFailed) {
+            return false;
+        }
+        if (!listening) {
+            synchronized (this) {
+                if (!listening && !listenerFailed) {
+                    try {
+                        coreTokenService.addContinuousQueryListener(listener, getTokenFilter());
+                        listening = true;
+                    } catch (CoreTokenException | RuntimeException e) {
+                        debug.warning("SessionCountIndex: unable to listen to session token changes, the session "
+                                + "count index is disabled", e);
+                        listenerFailed = true;
+                    }
+                }
+            }
+        }
+        return listening;
+    }
+
+    private void index(String user, UserSessions sessions) {
+        users.put(user, sessions);
+        for (String tokenId : sessions.tokenIds.keySet()) {
+            tokenUsers.put(tokenId, user);
+        }
+    }
+
+    private void invalidate(String user) {
+        changed(user);
+        if (users.asMap().remove(user) != null) {
+            invalidations.incrementAndGet();
+            if (debug.messageEnabled()) {
+                debug.message("SessionCountIndex: removed sessions of user " + user + " from the index");
+            }
+        }
+    }
+
+    private void changed(String user) {
+        changes.incrementAndGet(stripe(user));
+    }
+
+    private String toTokenId(String sessionId) {
+        try {
+            return tokenIdFactory.toSessionTokenId(new SessionID(sessionId));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private String normalise(String uuid) {
+        return caseSensitiveUUID ? uuid : uuid.toLowerCase();
+    }
+
+    private static int stripe(String user) {
+        return (user.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static TokenFilter getTokenFilter() {
+        return new TokenFilterBuilder()
+                .returnAttribute(CoreTokenField.USER_ID)
+                .returnAttribute(SessionTokenField.SESSION_ID.getField())
+                .returnAttribute(CoreTokenField.EXPIRY_DATE)
+                .withQuery(equalTo(CoreTokenField.TOKEN_TYPE, TokenType.SESSION))
+                .build();
+    }
+
+    private static Long getExpiry(Map<String, ?> changeSet) {
+        String value = getValue(changeSet, CoreTokenField.EXPIRY_DATE);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return TimeUtils.toUnixTime(GeneralizedTime.valueOf(value).toCalendar());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String getValue(Map<String, ?> changeSet, CoreTokenField field) {
+        Object value = changeSet == null ? null : changeSet.get(field.toString());
+        if (value instanceof Attribute) {
+            return ((Attribute) value).isEmpty() ? null : ((Attribute) value).firstValueAsString();
+        }
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * The sessions of a user, with their expiration time in seconds and CTS token ID.
+     */
+    private static final class UserSessions {
+        private final ConcurrentMap<String, Long> expiryTimes = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, String> tokenIds = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, String> sessionTokens = new ConcurrentHashMap<>();
+
+        void add(String sessionId, long expiry, String tokenId) {
+            expiryTimes.put(sessionId, expiry);
+            if (tokenId != null) {
+                tokenIds.put(tokenId, sessionId);
+                sessionTokens.put(sessionId, tokenId);
+            }
+        }
+
+        boolean contains(String sessionId) {
+            return expiryTimes.containsKey(sessionId);
+        }
+
+        void refresh(String sessionId, long expiry) {
+            expiryTimes.replace(sessionId, expiry);
+        }
+
+        String remove(String sessionId) {
+            expiryTimes.remove(sessionId);
+            String tokenId = sessionTokens.remove(sessionId);
+            if (tokenId != null) {
+                tokenIds.remove(tokenId, sessionId);
+            }
+            return tokenId;
+        }
+
+        String removeToken(String tokenId) {
+            String sessionId = tokenIds.remove(tokenId);
+            if (sessionId != null) {
+                expiryTimes.remove(sessionId);
+                sessionTokens.remove(sessionId, tokenId);
+            }
+            return sessionId;
+        }
+
+        Map<String, Long> toMap() {
+            return new HashMap<>(expiryTimes);
+        }
+    }
+
+    /**
+     * Applies the session token changes made by every server to the index.
+     */
+    private final class SessionTokenListener implements ContinuousQueryListener<Object> {
+
+        @Override
+        public void objectChanged(String tokenId, Map<String, Object> changeSet, ChangeType changeType) {
+            String user = tokenUsers.get(tokenId);
+            if (changeType == ChangeType.DELETE) {
+                if (user != null) {
+                    changed(user);
+                    UserSessions sessions = users.getIfPresent(user);
+                    if (sessions != null) {
+                        sessions.removeToken(tokenId);
+                    }
+                    tokenUsers.remove(tokenId, user);
+                }
+                return;
+            }
+            String uuid = getValue(changeSet, CoreTokenField.USER_ID);
+            if (uuid != null) {
+                user = normalise(uuid);
+            }
+            if (user == null) {
+                return;
+            }
+            UserSessions sessions = users.getIfPresent(user);
+            String sessionId = getValue(changeSet, SessionTokenField.SESSION_ID.getField());
+            if (sessions != null && (sessionId == null || !sessions.contains(sessionId))) {
+                // a session created by another server, whose expiration time is only known to the CTS
+                invalidate(user);
+            } else if (sessions != null) {
+                Long expiry = getExpiry(changeSet);
+                if (expiry != null) {
+                    sessions.refresh(sessionId, expiry);
+                }
+            }
+        }
+
+        @Override
+        public void objectsChanged(Set<String> tokenIds) {
+            for (String tokenId : tokenIds) {
+                String user = tokenUsers.get(tokenId);
+                if (user != null) {
+                    invalidate(user);
+                }
+            }
+        }
+
+        @Override
+        public void connectionLost() {
+            debug.warning("SessionCountIndex: lost connection to the CTS, clearing the session count index");
+            invalidateAll();
+        }
+
+        @Override
+        public void processError(DataLayerException error) {
+            debug.error("SessionCountIndex: error listening to session token changes", error);
+            invalidateAll();
+        }
+    }
+}
@@ -53,21 +53,27 @@ public class SessionQueryManager {
     private SessionPersistenceStore sessionPersistenceStore;
     private final SessionChangeAuthorizer sessionChangeAuthorizer;
     private final SessionServiceConfig serviceConfig;
+    private final SessionCountIndex sessionCountIndex;
 
     /**
      * Creates a session query manager.
      * @param debug The debug object.
      * @param sessionPersistenceStore The store which is being used for queries.
+     * @param sessionChangeAuthorizer The authorizer for session queries.
+     * @param serviceConfig The session service configuration.
+     * @param sessionCountIndex The index of the sessions of each user.
      */
     @Inject
     public SessionQueryManager(@Named(SessionConstants.SESSION_DEBUG) final Debug debug,
                                SessionPersistenceStore sessionPersistenceStore,
                                SessionChangeAuthorizer sessionChangeAuthorizer,
-                               SessionServiceConfig serviceConfig) {
+                               SessionServiceConfig serviceConfig,
+                               SessionCountIndex sessionCountIndex) {
         this.debug = debug;
         this.sessionPersistenceStore = sessionPersistenceStore;
         this.sessionChangeAuthorizer = sessionChangeAuthorizer;
         this.serviceConfig = serviceConfig;
+        this.sessionCountIndex = sessionCountIndex;
     }
 
     /**
@@ -98,7 +104,7 @@ public class SessionQueryManager {
      *             repository.
      */
     public Map<String, Long> getAllSessionsByUUID(String uuid) throws SessionException {
-        return sessionPersistenceStore.getAllSessionsByUUID(uuid);
+        return sessionCountIndex.getAllSessionsByUUID(uuid);
     }
 
     /**
@@ -69,6 +69,14 @@ public interface InternalSessionCache {
      */
     void put(InternalSession session);
 
+    /**
+     * Records that this server is persisting the session, so that the resulting change to its CTS token is not taken
+     * to be a change made by another server.
+     *
+     * @param session Non null InternalSession being persisted.
+     */
+    void stored(InternalSession session);
+
     /**
      * Remove the Session from the cache.
      *
@@ -16,7 +16,13 @@
 
 package org.forgerock.openam.session.service.access.persistence.caching;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import org.forgerock.openam.session.service.access.persistence.InternalSessionStore;
 import org.forgerock.openam.session.service.access.persistence.InternalSessionStoreStep;
@@ -29,47 +35,111 @@ import com.iplanet.dpro.session.service.InternalSession;
 
 /**
  * This class provides a bridge between caching code, and the InternalSession persisting steps.
+ *
+ * Sessions missing from the cache are loaded from the next step at most once at a time for each key: threads
+ * requesting a session which is already being loaded wait for that load to complete and share its result.
  */
+@Singleton
 public class InternalSessionCacheStep implements InternalSessionStoreStep {
 
     private InternalSessionCache sessionCache;
 
+    private final ConcurrentMap<SessionID, Load> loadsBySessionID = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Load> loadsByHandle = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SessionID, Load> loadsByRestrictedID = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalescedLoads = new AtomicLong();
+
     @Inject
     public InternalSessionCacheStep(InternalSessionCache sessionCache) {
         this.sessionCache = sessionCache;
     }
 
     @Override
-    public InternalSession getBySessionID(SessionID sessionID, InternalSessionStore next) throws SessionPersistenceException {
+    public InternalSession getBySessionID(final SessionID sessionID, final InternalSessionStore next)
+            throws SessionPersistenceException {
         Reject.ifNull(sessionID);
 
         InternalSession internalSession = sessionCache.getBySessionID(sessionID);
         if (internalSession != null) {
             return internalSession;
         }
-        return cacheInternalSession(next.getBySessionID(sessionID));
+        return load(loadsBySessionID, sessionID, new Loader() {
+            @Override
+            public InternalSession load() throws SessionPersistenceException {
+                return next.getBySessionID(sessionID);
+            }
+        });
     }
 
     @Override
-    public InternalSession getByHandle(String sessionHandle, InternalSessionStore next) throws SessionPersistenceException {
+    public InternalSession getByHandle(final String sessionHandle, final InternalSessionStore next)
+            throws SessionPersistenceException {
         Reject.ifNull(sessionHandle);
 
         InternalSession internalSession = sessionCache.getByHandle(sessionHandle);
         if (internalSession != null) {
             return internalSession;
         }
-        return cacheInternalSession(next.getByHandle(sessionHandle));
+        return load(loadsByHandle, sessionHandle, new Loader() {
+            @Override
+            public InternalSession load() throws SessionPersistenceException {
+                return next.getByHandle(sessionHandle);
+            }
+        });
     }
 
     @Override
-    public InternalSession getByRestrictedID(SessionID sessionID, InternalSessionStore next) throws SessionPersistenceException {
+    public InternalSession getByRestrictedID(final SessionID sessionID, final InternalSessionStore next)
+            throws SessionPersistenceException {
         Reject.ifNull(sessionID);
 
         InternalSession internalSession = sessionCache.getByRestrictedID(sessionID);
         if (internalSession != null) {
             return internalSession;
         }
-        return cacheInternalSession(next.getByRestrictedID(sessionID));
+        return load(loadsByRestrictedID, sessionID, new Loader() {
+            @Override
+            public InternalSession load() throws SessionPersistenceException {
+                return next.getByRestrictedID(sessionID);
+            }
+        });
+    }
+
+    /**
+     * @return The number of sessions loaded from the next step.
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * @return The number of requests for a session which waited for a load already in progress rather than loading
+     * the session again.
+     */
+    public long getCoalescedLoadCount() {
+        return coalescedLoads.get();
+    }
+
+    private <K> InternalSession load(ConcurrentMap<K, Load> inFlight, K key, Loader loader)
+            throws SessionPersistenceException {
+        Load load = new Load();
+        Load existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            coalescedLoads.incrementAndGet();
+            return existing.await();
+        }
+        loads.incrementAndGet();
+        try {
+            InternalSession internalSession = cacheInternalSession(loader.load());
+            load.complete(internalSession, null);
+            return internalSession;
+        } catch (SessionPersistenceException | RuntimeException e) {
+            load.complete(null, e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
     }
 
     private InternalSession cacheInternalSession(InternalSession internalSession) {
@@ -84,6 +154,7 @@ public class InternalSessionCacheStep implements InternalSessionStoreStep {
     public void store(InternalSession session, InternalSessionStore next) throws SessionPersistenceException {
         Reject.ifNull(session);
         sessionCache.put(session);
+        sessionCache.stored(session);
         next.store(session);
     }
 
@@ -93,4 +164,47 @@ public class InternalSessionCacheStep implements InternalSessionStoreStep {
         sessionCache.remove(sessionID);
         next.remove(sessionID);
     }
+
+    /**
+     * Loads a session from the next step.
+     */
+    private interface Loader {
+        InternalSession load() throws SessionPersistenceException;
+    }
+
+    /**
+     * The result of loading a session, shared with the threads which requested it while it was loading.
+     */
+    private static final class Load {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile InternalSession session;
+        private volatile Exception failure;
+
+        private void complete(InternalSession session, Exception failure) {
+            this.session = session;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private InternalSession await() throws SessionPersistenceException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof SessionPersistenceException) {
+                throw (SessionPersistenceException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return session;
+        }
+    }
 }
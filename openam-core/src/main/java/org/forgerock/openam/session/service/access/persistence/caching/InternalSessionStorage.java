@@ -15,54 +15,173 @@
  */
 package org.forgerock.openam.session.service.access.persistence.caching;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.forgerock.util.query.QueryFilter.equalTo;
+
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.filter.TokenFilterBuilder;
+import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.continuous.ChangeType;
+import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.session.SessionConstants;
+import org.forgerock.openam.sm.datalayer.api.DataLayerException;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
 import org.forgerock.openam.utils.SingleValueMapper;
 import org.forgerock.util.Reject;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.SessionID;
 import com.iplanet.dpro.session.service.InternalSession;
 import com.iplanet.dpro.session.service.SessionServiceConfig;
+import com.sun.identity.shared.debug.Debug;
 
 /**
  * This implementation of the cache which is managed entirely externally.
  *
  * This cache has been designed to remove previous references to Session handles and restricted tokens
  * when they are no longer referenced by the InternalSession.
+ *
+ * By default the cache is unbounded. If enabled with the {@link #BOUNDED} system property, it holds at most
+ * {@link #MAX_SIZE} sessions, evicting the least recently used, and evicts sessions not accessed for
+ * {@link #IDLE_TIMEOUT} seconds; evicted sessions are read again from the CTS when next needed.
+ *
+ * If enabled with the {@link #INVALIDATION} system property, the cache is told of changes to session tokens by a
+ * CTS continuous query, and removes the sessions modified or deleted by other servers so that they are read again
+ * rather than served stale. The changes caused by this server persisting a session are recognised, as recorded by
+ * {@link #stored(InternalSession)}, and do not remove the session.
  */
 @Singleton
 public class InternalSessionStorage implements InternalSessionCache {
-    private final ConcurrentHashMap<SessionID, InternalSession> cache;
+
+    /**
+     * System property bounding the size of the cache and evicting idle sessions.
+     */
+    public static final String BOUNDED = "org.forgerock.openam.session.cache.bounded.enabled";
+    /**
+     * System property defining the maximum number of sessions cached when bounded. Defaults to the maximum number of
+     * sessions of the session service.
+     */
+    public static final String MAX_SIZE = "org.forgerock.openam.session.cache.maxSize";
+    /**
+     * System property defining how long, in seconds, a session may be unused before it is evicted when bounded.
+     */
+    public static final String IDLE_TIMEOUT = "org.forgerock.openam.session.cache.idleTimeout";
+    /**
+     * System property enabling the removal of sessions changed by other servers.
+     */
+    public static final String INVALIDATION = "org.forgerock.openam.session.cache.invalidation.enabled";
+
+    private static final int DEFAULT_IDLE_TIMEOUT = 600;
+    /** How long, in seconds, the CTS is expected to take at most to notify this server of its own change. */
+    private static final int LOCAL_CHANGE_TIMEOUT = 60;
+
+    private final Cache<SessionID, InternalSession> cache;
     private final SingleValueMapper<String, InternalSession> handle = new SingleValueMapper<>();
     private final SingleValueMapper<SessionID, InternalSession> restricted = new SingleValueMapper<>();
+    /** The session ID of the CTS token of each cached session, when invalidation is enabled. */
+    private final ConcurrentMap<String, SessionID> tokenSessions = new ConcurrentHashMap<>();
+    /** The number of changes made by this server to each CTS token which the CTS has yet to notify. */
+    private final Cache<String, AtomicInteger> localChanges;
+
+    private final CTSPersistentStore coreTokenService;
+    private final TokenIdFactory tokenIdFactory;
+    private final Debug debug;
+    private final boolean invalidation;
+    private final SessionTokenListener listener = new SessionTokenListener();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile boolean listening;
+    private volatile boolean listenerFailed;
 
     /**
      * Construct an InternalSessionCache intended to provide Session caching for provided SessionService configuration.
      * @param config Non null configuration to base caching estimates from.
+     * @param coreTokenService The CTS, which notifies the cache of session token changes.
+     * @param tokenIdFactory The factory used to find the CTS token ID of a session.
+     * @param debug The session debug instance.
      */
     @Inject
+    InternalSessionStorage(SessionServiceConfig config, CTSPersistentStore coreTokenService,
+            TokenIdFactory tokenIdFactory, @Named(SessionConstants.SESSION_DEBUG) Debug debug) {
+        this(config, coreTokenService, tokenIdFactory, debug,
+                SystemProperties.getAsBoolean(BOUNDED, false),
+                SystemProperties.getAsInt(MAX_SIZE, config.getMaxSessions()),
+                SystemProperties.getAsInt(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT),
+                SystemProperties.getAsBoolean(INVALIDATION, false));
+    }
+
+    /**
+     * Construct an unbounded InternalSessionCache which is not told of changes made by other servers.
+     * @param config Non null configuration to base caching estimates from.
+     */
     InternalSessionStorage(SessionServiceConfig config) {
-        cache = new ConcurrentHashMap<>(config.getMaxSessions());
+        this(config, null, null, null, false, 0, 0, false);
+    }
+
+    InternalSessionStorage(SessionServiceConfig config, CTSPersistentStore coreTokenService,
+            TokenIdFactory tokenIdFactory, Debug debug, boolean bounded, int maxSize, int idleTimeout,
+            boolean invalidation) {
+        this.coreTokenService = coreTokenService;
+        this.tokenIdFactory = tokenIdFactory;
+        this.debug = debug;
+        this.invalidation = invalidation;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .initialCapacity(Math.max(config.getMaxSessions(), 16));
+        if (bounded) {
+            builder.maximumSize(maxSize).expireAfterAccess(idleTimeout, SECONDS);
+        }
+        this.cache = builder.removalListener(new RemovalListener<SessionID, InternalSession>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<SessionID, InternalSession> notification) {
+                        unmap(notification.getKey(), notification.getValue());
+                        if (notification.wasEvicted()) {
+                            evictions.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+        this.localChanges = CacheBuilder.newBuilder()
+                .expireAfterWrite(LOCAL_CHANGE_TIMEOUT, SECONDS)
+                .build();
     }
 
     @Override
     public InternalSession getBySessionID(SessionID sessionID) {
-        return cache.get(sessionID);
+        return record(cache.getIfPresent(sessionID));
     }
 
     @Override
     public InternalSession getByHandle(String sessionHandle) {
-        return handle.get(sessionHandle);
+        return record(handle.get(sessionHandle));
     }
 
     @Override
     public InternalSession getByRestrictedID(SessionID sessionID) {
-        return restricted.get(sessionID);
+        return record(restricted.get(sessionID));
     }
 
     @Override
@@ -79,42 +198,219 @@ public class InternalSessionStorage implements InternalSessionCache {
         for (SessionID restrictedID : session.getRestrictedTokens()) {
             restricted.put(restrictedID, session);
         }
-    }
-
-    @Override
-    public InternalSession remove(SessionID sessionID) {
-        InternalSession remove = cache.remove(sessionID);
 
-        if (remove == null) {
-            return null;
+        // CTS Token
+        if (invalidation && listen()) {
+            String tokenId = toTokenId(session.getID());
+            if (tokenId != null) {
+                tokenSessions.put(tokenId, session.getID());
+            }
         }
+    }
 
-        // Clear Session Handle
-        if (remove.getSessionHandle() != null) {
-            handle.remove(remove.getSessionHandle());
+    @Override
+    public void stored(InternalSession session) {
+        Reject.ifNull(session);
+        if (!invalidation || !listening) {
+            return;
         }
-
-        // Clear Restricted Tokens
-        for (SessionID restrictedID : remove.getRestrictedTokens()) {
-            restricted.remove(restrictedID);
+        String tokenId = toTokenId(session.getID());
+        if (tokenId != null) {
+            AtomicInteger pending = localChanges.asMap().putIfAbsent(tokenId, new AtomicInteger(1));
+            if (pending != null) {
+                pending.incrementAndGet();
+            }
         }
+    }
 
-        return remove;
+    @Override
+    public InternalSession remove(SessionID sessionID) {
+        return cache.asMap().remove(sessionID);
     }
 
     @Override
     public int size() {
-        return cache.size();
+        return (int) cache.size();
     }
 
     @Override
     public boolean isEmpty() {
-        return cache.isEmpty();
+        return cache.size() == 0;
     }
 
     @Override
     public Collection<InternalSession> getAllSessions() {
-        return Collections.unmodifiableCollection(cache.values());
+        return Collections.unmodifiableCollection(cache.asMap().values());
+    }
+
+    /**
+     * @return The number of lookups answered by the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
     }
 
+    /**
+     * @return The number of lookups not answered by the cache.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of sessions evicted as the cache was full or they were idle.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of sessions removed as they were changed by another server.
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    private InternalSession record(InternalSession session) {
+        if (session == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return session;
+    }
+
+    /**
+     * Clears the session handle, restricted tokens and CTS token of a session removed from the cache, unless they
+     * have since been mapped to another session.
+     */
+    private void unmap(SessionID sessionID, InternalSession removed) {
+        if (removed == null) {
+            return;
+        }
+        handle.removeValue(removed);
+        for (SessionID restrictedID : removed.getRestrictedTokens()) {
+            if (restricted.get(restrictedID) == removed) {
+                restricted.remove(restrictedID);
+            }
+        }
+        if (invalidation && sessionID != null) {
+            String tokenId = toTokenId(sessionID);
+            if (tokenId != null) {
+                tokenSessions.remove(tokenId, sessionID);
+            }
+        }
+    }
+
+    private void invalidate(String tokenId) {
+        SessionID sessionID = tokenSessions.get(tokenId);
+        if (sessionID != null && cache.asMap().remove(sessionID) != null) {
+            invalidations.incrementAndGet();
+            if (debug.messageEnabled()) {
+                debug.message("InternalSessionStorage: removed session changed by another server from the cache");
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        cache.invalidateAll();
+        localChanges.invalidateAll();
+    }
+
+    /**
+     * Whether the CTS notifies the cache of session token changes, starting the continuous query if it is not.
+     */
+    private boolean listen() {
+        if (listenerFailed) {
+            return false;
+        }
+        if (!listening) {
+            synchronized (this) {
+                if (!listening && !listenerFailed) {
+                    try {
+                        coreTokenService.addContinuousQueryListener(listener, getTokenFilter());
+                        listening = true;
+                    } catch (CoreTokenException | RuntimeException e) {
+                        debug.warning("InternalSessionStorage: unable to listen to session token changes, sessions "
+                                + "changed by other servers will not be removed from the cache", e);
+                        listenerFailed = true;
+                    }
+                }
+            }
+        }
+        return listening;
+    }
+
+    private String toTokenId(SessionID sessionID) {
+        try {
+            return tokenIdFactory.toSessionTokenId(sessionID);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static TokenFilter getTokenFilter() {
+        return new TokenFilterBuilder()
+                .returnAttribute(CoreTokenField.TOKEN_ID)
+                .withQuery(equalTo(CoreTokenField.TOKEN_TYPE, TokenType.SESSION))
+                .build();
+    }
+
+    /**
+     * Removes the sessions changed by other servers from the cache.
+     */
+    private final class SessionTokenListener implements ContinuousQueryListener<Object> {
+
+        @Override
+        public void objectChanged(String tokenId, Map<String, Object> changeSet, ChangeType changeType) {
+            if (changeType != ChangeType.DELETE && consumeLocalChange(tokenId)) {
+                // the change was made by this server, including the creation of the token when it was first stored
+                return;
+            }
+            if (changeType == ChangeType.ADD || !tokenSessions.containsKey(tokenId)) {
+                // a new session is not cached yet, and nor is a session which was never read by this server
+                return;
+            }
+            invalidate(tokenId);
+        }
+
+        /**
+         * Counts down the changes made by this server to a token, without going below zero.
+         *
+         * @return Whether a change made by this server was yet to be notified.
+         */
+        private boolean consumeLocalChange(String tokenId) {
+            AtomicInteger pending = localChanges.getIfPresent(tokenId);
+            if (pending == null) {
+                return false;
+            }
+            int count = pending.get();
+            while (count > 0) {
+                if (pending.compareAndSet(count, count - 1)) {
+                    return true;
+                }
+                count = pending.get();
+            }
+            return false;
+        }
+
+        @Override
+        public void objectsChanged(Set<String> tokenIds) {
+            for (String tokenId : tokenIds) {
+                invalidate(tokenId);
+            }
+        }
+
+        @Override
+        public void connectionLost() {
+            debug.warning("InternalSessionStorage: lost connection to the CTS, clearing the session cache");
+            invalidateAll();
+        }
+
+        @Override
+        public void processError(DataLayerException error) {
+            debug.error("InternalSessionStorage: error listening to session token changes", error);
+            invalidateAll();
+        }
+    }
 }
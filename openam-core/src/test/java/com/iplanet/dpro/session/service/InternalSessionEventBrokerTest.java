@@ -0,0 +1,291 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.iplanet.dpro.session.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.forgerock.openam.session.SessionEventType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.share.SessionInfo;
+import com.sun.identity.shared.debug.Debug;
+
+public class InternalSessionEventBrokerTest {
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldNotifyListenersSynchronouslyByDefault() {
+        // Given
+        InternalSessionListener first = mock(InternalSessionListener.class);
+        InternalSessionListener second = mock(InternalSessionListener.class);
+        InternalSessionEventBroker broker = new InternalSessionEventBroker(first, second);
+        InternalSessionEvent event = event("session", SessionEventType.SESSION_CREATION);
+
+        // When
+        broker.onEvent(event);
+
+        // Then
+        verify(first).onEvent(event);
+        verify(second).onEvent(event);
+        assertThat(broker.getListenerStatistics()).isEmpty();
+    }
+
+    @Test
+    public void shouldNotifySynchronousListenersOnCallingThread() throws Exception {
+        // Given
+        RecordingListener synchronous = new SynchronousRecordingListener(1);
+        RecordingListener asynchronous = new RecordingListener(1);
+        InternalSessionEventBroker broker = new InternalSessionEventBroker(executor, 2, 10, mock(Debug.class),
+                synchronous, asynchronous);
+
+        // When
+        broker.onEvent(event("session", SessionEventType.SESSION_CREATION));
+
+        // Then
+        assertThat(asynchronous.await()).isTrue();
+        assertThat(synchronous.threads).containsExactly(Thread.currentThread());
+        assertThat(asynchronous.threads).doesNotContain(Thread.currentThread());
+    }
+
+    @Test
+    public void shouldPreserveEventOrderOfEachSession() throws Exception {
+        // Given
+        RecordingListener listener = new RecordingListener(100);
+        InternalSessionEventBroker broker = new InternalSessionEventBroker(executor, 2, 10, mock(Debug.class),
+                listener);
+        List<InternalSessionEvent> first = new ArrayList<>();
+        List<InternalSessionEvent> second = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            first.add(event("first", SessionEventType.IDLE_TIMEOUT));
+            second.add(event("second", SessionEventType.IDLE_TIMEOUT));
+        }
+
+        // When
+        for (int i = 0; i < 50; i++) {
+            broker.onEvent(first.get(i));
+            broker.onEvent(second.get(i));
+        }
+
+        // Then
+        assertThat(listener.await()).isTrue();
+        List<InternalSessionEvent> received = listener.getEvents();
+        List<InternalSessionEvent> receivedFirst = new ArrayList<>(received);
+        receivedFirst.retainAll(first);
+        List<InternalSessionEvent> receivedSecond = new ArrayList<>(received);
+        receivedSecond.retainAll(second);
+        assertThat(receivedFirst).isEqualTo(first);
+        assertThat(receivedSecond).isEqualTo(second);
+    }
+
+    @Test
+    public void shouldRecordLagOfAsynchronousListeners() throws Exception {
+        // Given
+        RecordingListener listener = new RecordingListener(3);
+        InternalSessionEventBroker broker = new InternalSessionEventBroker(executor, 1, 10, mock(Debug.class),
+                listener);
+
+        // When
+        broker.onEvent(event("session", SessionEventType.SESSION_CREATION));
+        broker.onEvent(event("session", SessionEventType.PROPERTY_CHANGED));
+        broker.onEvent(event("session", SessionEventType.LOGOUT));
+
+        // Then
+        assertThat(listener.await()).isTrue();
+        InternalSessionEventBroker.ListenerStatistics statistics =
+                broker.getListenerStatistics().get(RecordingListener.class.getName());
+        assertThat(statistics.getEventCount()).isEqualTo(3);
+        assertThat(statistics.getMaxLag()).isGreaterThanOrEqualTo(statistics.getAverageLag());
+    }
+
+    @Test
+    public void shouldKeepDispatchingAfterListenerFailure() throws Exception {
+        // Given
+        InternalSessionListener failing = mock(InternalSessionListener.class);
+        InternalSessionEvent failingEvent = event("session", SessionEventType.SESSION_CREATION);
+        doThrow(new IllegalStateException()).when(failing).onEvent(failingEvent);
+        RecordingListener listener = new RecordingListener(2);
+        InternalSessionEventBroker broker = new InternalSessionEventBroker(executor, 1, 10, mock(Debug.class),
+                failing, listener);
+
+        // When
+        broker.onEvent(failingEvent);
+        broker.onEvent(event("session", SessionEventType.LOGOUT));
+
+        // Then
+        assertThat(listener.await()).isTrue();
+    }
+
+    @Test
+    public void shouldCaptureSessionStateWhenQueueingEvent() throws Exception {
+        // Given
+        GatedListener listener = new GatedListener(2);
+        InternalSessionEventBroker broker = new InternalSessionEventBroker(executor, 1, 10, mock(Debug.class),
+                listener);
+        SessionInfo queuedState = new SessionInfo();
+        InternalSession session = mock(InternalSession.class);
+        given(session.getID()).willReturn(new SessionID("session"));
+        given(session.toSessionInfo()).willReturn(queuedState);
+        broker.onEvent(event("gate", SessionEventType.SESSION_CREATION));
+        assertThat(listener.awaitEntered()).isTrue();
+
+        // When
+        broker.onEvent(new InternalSessionEvent(session, SessionEventType.PROPERTY_CHANGED));
+        given(session.toSessionInfo()).willReturn(new SessionInfo());
+        listener.release();
+
+        // Then
+        assertThat(listener.await()).isTrue();
+        assertThat(listener.getEvents().get(1).getSessionInfo()).isSameAs(queuedState);
+    }
+
+    @Test
+    public void shouldQueueEventInOrderWhenInterruptedWhileBlocked() throws Exception {
+        // Given
+        GatedListener listener = new GatedListener(3);
+        final InternalSessionEventBroker broker = new InternalSessionEventBroker(executor, 1, 1, mock(Debug.class),
+                listener);
+        final List<InternalSessionEvent> events = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            events.add(event("session", SessionEventType.PROPERTY_CHANGED));
+        }
+        broker.onEvent(events.get(0));
+        assertThat(listener.awaitEntered()).isTrue();
+        broker.onEvent(events.get(1));
+        final AtomicBoolean stillInterrupted = new AtomicBoolean();
+        Thread raising = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().interrupt();
+                broker.onEvent(events.get(2));
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+
+        // When
+        raising.start();
+        while (broker.getBlockedCount() == 0) {
+            Thread.sleep(10);
+        }
+        listener.release();
+        raising.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Then
+        assertThat(listener.await()).isTrue();
+        assertThat(listener.getEvents()).isEqualTo(events);
+        assertThat(listener.threads).doesNotContain(raising);
+        assertThat(stillInterrupted.get()).isTrue();
+    }
+
+    private static InternalSessionEvent event(String sessionId, SessionEventType type) {
+        InternalSession session = mock(InternalSession.class);
+        given(session.getID()).willReturn(new SessionID(sessionId));
+        return new InternalSessionEvent(session, type);
+    }
+
+    private static class RecordingListener implements InternalSessionListener {
+        private final List<InternalSessionEvent> events = Collections.synchronizedList(
+                new ArrayList<InternalSessionEvent>());
+        private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        private final CountDownLatch latch;
+
+        private RecordingListener(int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onEvent(InternalSessionEvent event) {
+            events.add(event);
+            threads.add(Thread.currentThread());
+            latch.countDown();
+        }
+
+        private boolean await() throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+
+        private List<InternalSessionEvent> getEvents() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+    }
+
+    private static final class SynchronousRecordingListener extends RecordingListener
+            implements SynchronousInternalSessionListener {
+
+        private SynchronousRecordingListener(int expected) {
+            super(expected);
+        }
+    }
+
+    /**
+     * Holds the dispatching thread in the first event until released.
+     */
+    private static final class GatedListener extends RecordingListener {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private GatedListener(int expected) {
+            super(expected);
+        }
+
+        @Override
+        public void onEvent(InternalSessionEvent event) {
+            entered.countDown();
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.onEvent(event);
+        }
+
+        private boolean awaitEntered() throws InterruptedException {
+            return entered.await(10, TimeUnit.SECONDS);
+        }
+
+        private void release() {
+            released.countDown();
+        }
+    }
+}
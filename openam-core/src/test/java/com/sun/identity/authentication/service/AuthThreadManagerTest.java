@@ -0,0 +1,185 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.authentication.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AuthThreadManagerTest {
+
+    private static final long PAGE_TIMEOUT = 60;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> future;
+    private AuthThreadManager manager;
+    private Object login;
+    private CountingHandler handler;
+
+    @BeforeMethod
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        future = mock(ScheduledFuture.class);
+        doReturn(future).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        manager = new AuthThreadManager(scheduler, false);
+        login = new Object();
+        handler = new CountingHandler();
+    }
+
+    @Test
+    public void shouldTimeOutLoginStillParkedWhenTimeoutFires() {
+        // Given
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+
+        // When
+        fireLatestTimeout();
+
+        // Then
+        assertThat(manager.isTimedOut(login)).isTrue();
+        assertThat(handler.runs.get()).isEqualTo(1);
+        assertThat(manager.getTimedOutLoginCount()).isEqualTo(1);
+        assertThat(manager.getParkedLoginCount()).isZero();
+    }
+
+    @Test
+    public void shouldCancelTimeoutWhenLoginResumes() {
+        // Given
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+
+        // When
+        manager.stopPageTimeout(login);
+        fireLatestTimeout();
+
+        // Then
+        verify(future).cancel(false);
+        assertThat(manager.isTimedOut(login)).isFalse();
+        assertThat(handler.runs.get()).isZero();
+        assertThat(manager.getParkedLoginCount()).isZero();
+    }
+
+    @Test
+    public void shouldKeepTimeoutUntilEveryThreadOfLoginResumes() {
+        // Given
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+
+        // When
+        manager.stopPageTimeout(login);
+        fireLatestTimeout();
+
+        // Then
+        assertThat(manager.isTimedOut(login)).isTrue();
+        assertThat(handler.runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldIgnoreTimeoutRescheduledForLaterPage() {
+        // Given
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+
+        // When
+        scheduledTimeouts().get(0).run();
+
+        // Then
+        assertThat(manager.isTimedOut(login)).isFalse();
+        assertThat(handler.runs.get()).isZero();
+    }
+
+    @Test
+    public void shouldOnlyTimeOutLoginWhoseTimeoutFired() {
+        // Given
+        Object otherLogin = new Object();
+        CountingHandler otherHandler = new CountingHandler();
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+        manager.startPageTimeout(otherLogin, PAGE_TIMEOUT, currentTimeMillis(), otherHandler);
+
+        // When
+        scheduledTimeouts().get(0).run();
+
+        // Then
+        assertThat(manager.isTimedOut(login)).isTrue();
+        assertThat(manager.isTimedOut(otherLogin)).isFalse();
+        assertThat(otherHandler.runs.get()).isZero();
+        assertThat(manager.getParkedLoginCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemainTimedOutUntilLoginIsRemoved() {
+        // Given
+        manager.startPageTimeout(login, PAGE_TIMEOUT, currentTimeMillis(), handler);
+        fireLatestTimeout();
+
+        // When
+        manager.stopPageTimeout(login);
+        boolean timedOutAfterResuming = manager.isTimedOut(login);
+        manager.removeLogin(login);
+
+        // Then
+        assertThat(timedOutAfterResuming).isTrue();
+        assertThat(manager.isTimedOut(login)).isFalse();
+    }
+
+    @Test
+    public void shouldScheduleTimeoutFromLastCallbackSent() {
+        // Given
+        long lastCallbackSent = currentTimeMillis() - TimeUnit.SECONDS.toMillis(PAGE_TIMEOUT);
+
+        // When
+        manager.startPageTimeout(login, PAGE_TIMEOUT, lastCallbackSent, handler);
+
+        // Then
+        verify(scheduler).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    private void fireLatestTimeout() {
+        List<Runnable> timeouts = scheduledTimeouts();
+        timeouts.get(timeouts.size() - 1).run();
+    }
+
+    private List<Runnable> scheduledTimeouts() {
+        ArgumentCaptor<Runnable> timeouts = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).schedule(timeouts.capture(), anyLong(), any(TimeUnit.class));
+        return timeouts.getAllValues();
+    }
+
+    private static final class CountingHandler implements Runnable {
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void run() {
+            runs.incrementAndGet();
+        }
+    }
+}
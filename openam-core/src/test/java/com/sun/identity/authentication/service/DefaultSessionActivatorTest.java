@@ -17,9 +17,17 @@
 package com.sun.identity.authentication.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
@@ -28,9 +36,14 @@ import java.util.List;
 
 import javax.security.auth.Subject;
 
+import org.forgerock.openam.session.service.SessionAccessManager;
+import org.forgerock.openam.session.service.SessionAccessManagerTestHelper;
+import org.forgerock.openam.session.service.access.persistence.InternalSessionStore;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -161,4 +174,95 @@ public class DefaultSessionActivatorTest {
         verify(mockState).setSubject(subject);
         assertThat(subject.getPrincipals()).contains(new SSOTokenPrincipal(SID.toString()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldPersistStoredSessionOnceWhenActivatingIt() throws Exception {
+        // Given
+        InternalSessionStore store = mock(InternalSessionStore.class);
+        SessionAccessManager sessionAccessManager = coalescingSessionAccessManager(store);
+        InternalSession storedSession = mock(InternalSession.class);
+        given(storedSession.isStored()).willReturn(true);
+        given(storedSession.getID()).willReturn(SID);
+        notifyOnUpdate(storedSession, sessionAccessManager);
+        given(mockAuthSession.getID()).willReturn(new SessionID());
+        given(mockAuthSession.getPropertyNames()).willReturn(Collections.enumeration(Arrays.asList("one", "two")));
+        given(mockAuthSession.getProperty(anyString())).willReturn("value");
+
+        // When
+        DefaultSessionActivator.INSTANCE.updateSessions(mockNewSession, mockState, storedSession, mockAuthSession,
+                mockSessionService, null);
+
+        // Then
+        verify(storedSession, times(2)).putProperty(anyString(), eq("value"));
+        verify(store, times(1)).store(storedSession);
+        assertThat(sessionAccessManager.getCoalescedUpdateCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotPersistNewSessionUntilItIsPromoted() throws Exception {
+        // Given
+        InternalSessionStore store = mock(InternalSessionStore.class);
+        SessionAccessManager sessionAccessManager = coalescingSessionAccessManager(store);
+        notifyOnUpdate(mockNewSession, sessionAccessManager);
+        given(mockAuthSession.getID()).willReturn(new SessionID());
+        given(mockAuthSession.getPropertyNames()).willReturn(Collections.enumeration(Arrays.asList("one", "two")));
+        given(mockAuthSession.getProperty(anyString())).willReturn("value");
+
+        // When
+        DefaultSessionActivator.INSTANCE.activateSession(mockState, mockSessionService, mockAuthSession, null);
+
+        // Then
+        verify(store, never()).store(any(InternalSession.class));
+    }
+
+    @Test
+    public void shouldEndSessionUpdatesWithoutHidingTheActivationFailure() throws Exception {
+        // Given
+        IllegalStateException failure = new IllegalStateException("activation failed");
+        doThrow(failure).when(mockNewSession).clearAuthContext();
+
+        // When
+        try {
+            DefaultSessionActivator.INSTANCE.activateSession(mockState, mockSessionService, mockAuthSession, null);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Then
+            assertThat(e).isSameAs(failure);
+        }
+        verify(mockSessionService).endSessionUpdatesAfterFailure();
+        verify(mockSessionService, never()).endSessionUpdates();
+    }
+
+    private SessionAccessManager coalescingSessionAccessManager(InternalSessionStore store) {
+        final SessionAccessManager sessionAccessManager =
+                SessionAccessManagerTestHelper.coalescingSessionAccessManager(store);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                sessionAccessManager.beginUnitOfWork();
+                return null;
+            }
+        }).when(mockSessionService).beginSessionUpdates();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                sessionAccessManager.endUnitOfWork();
+                return null;
+            }
+        }).when(mockSessionService).endSessionUpdates();
+        return sessionAccessManager;
+    }
+
+    private void notifyOnUpdate(final InternalSession session, final SessionAccessManager sessionAccessManager)
+            throws Exception {
+        Answer<Boolean> notify = new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                sessionAccessManager.notifyUpdate(session);
+                return true;
+            }
+        };
+        doAnswer(notify).when(session).putProperty(anyString(), anyString());
+        doAnswer(notify).when(session).activate(anyString());
+    }
+}
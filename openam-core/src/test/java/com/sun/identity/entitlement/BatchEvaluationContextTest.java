@@ -0,0 +1,54 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.forgerock.openam.utils.CollectionUtils.asSet;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Set;
+
+import javax.security.auth.Subject;
+
+import org.testng.annotations.Test;
+
+public class BatchEvaluationContextTest {
+
+    private static final String APP_NAME = "testAppName";
+
+    @Test
+    public void shouldRetrieveSubjectSearchIndexesOncePerBatch() throws Exception {
+        // Given
+        SubjectAttributesManager sam = mock(SubjectAttributesManager.class);
+        Subject subject = new Subject();
+        Set<String> indexes = asSet("subject=demo");
+        given(sam.getSubjectSearchFilter(subject, APP_NAME)).willReturn(indexes);
+        BatchEvaluationContext context = new BatchEvaluationContext();
+
+        // When
+        Set<String> first = context.getSubjectSearchFilter(sam, subject, APP_NAME);
+        Set<String> second = context.getSubjectSearchFilter(sam, subject, APP_NAME);
+
+        // Then
+        assertThat(first).isEqualTo(indexes);
+        assertThat(second).isSameAs(first);
+        verify(sam, times(1)).getSubjectSearchFilter(subject, APP_NAME);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.Subject;
+
+import org.forgerock.openam.entitlement.monitoring.EntitlementConfigurationWrapper;
+import org.forgerock.openam.entitlement.monitoring.PolicyMonitor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class EvaluatorTest {
+
+    private static final String APP_NAME = "testAppName";
+    private static final String REALM = "/";
+
+    private ExecutorService executor;
+    private Application application;
+    private PolicyMonitor policyMonitor;
+    private EntitlementConfigurationWrapper configWrapper;
+    private Subject subject;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        application = mock(Application.class);
+        policyMonitor = mock(PolicyMonitor.class);
+        configWrapper = mock(EntitlementConfigurationWrapper.class);
+        subject = new Subject();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReturnResultsInOrderOfResourceNamesWhateverTheOrderTheyComplete() throws Exception {
+        // Given
+        final CountDownLatch secondDone = new CountDownLatch(1);
+        Evaluator evaluator = new TestEvaluator() {
+            @Override
+            List<Entitlement> evaluateResource(String realm, Subject subject, Application application,
+                    String resourceName, Map<String, Set<String>> environment, BatchEvaluationContext batchContext)
+                    throws EntitlementException {
+                if ("first".equals(resourceName)) {
+                    await(secondDone);
+                } else {
+                    secondDone.countDown();
+                }
+                return entitlements(resourceName);
+            }
+        };
+
+        // When
+        List<Entitlement> results = evaluator.evaluateBatch(REALM, subject, resources("first", "second"), null);
+
+        // Then
+        assertThat(resourceNames(results)).containsExactly("first", "second");
+    }
+
+    @Test
+    public void shouldEvaluateResourcesInParallelWithOneBatchContext() throws Exception {
+        // Given
+        final CyclicBarrier allStarted = new CyclicBarrier(3);
+        final Set<BatchEvaluationContext> contexts =
+                Collections.newSetFromMap(new ConcurrentHashMap<BatchEvaluationContext, Boolean>());
+        Evaluator evaluator = new TestEvaluator() {
+            @Override
+            List<Entitlement> evaluateResource(String realm, Subject subject, Application application,
+                    String resourceName, Map<String, Set<String>> environment, BatchEvaluationContext batchContext)
+                    throws EntitlementException {
+                contexts.add(batchContext);
+                try {
+                    // only completes if the three resources are evaluated at the same time
+                    allStarted.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e);
+                }
+                return entitlements(resourceName);
+            }
+        };
+
+        // When
+        List<Entitlement> results = evaluator.evaluateBatch(REALM, subject, resources("a", "b", "c"), null);
+
+        // Then
+        assertThat(resourceNames(results)).containsExactly("a", "b", "c");
+        assertThat(contexts).hasSize(1);
+    }
+
+    @Test
+    public void shouldPropagateEntitlementExceptionOfAResource() throws Exception {
+        // Given
+        final EntitlementException failure = new EntitlementException(EntitlementException.INTERNAL_ERROR);
+        Evaluator evaluator = new TestEvaluator() {
+            @Override
+            List<Entitlement> evaluateResource(String realm, Subject subject, Application application,
+                    String resourceName, Map<String, Set<String>> environment, BatchEvaluationContext batchContext)
+                    throws EntitlementException {
+                if ("failing".equals(resourceName)) {
+                    throw failure;
+                }
+                return entitlements(resourceName);
+            }
+        };
+
+        // When
+        try {
+            evaluator.evaluateBatch(REALM, subject, resources("ok", "failing"), null);
+            fail("Expected EntitlementException");
+        } catch (EntitlementException e) {
+            // Then
+            assertThat(e).isSameAs(failure);
+        }
+    }
+
+    @Test
+    public void shouldWrapOtherExceptionsOfAResource() throws Exception {
+        // Given
+        final RuntimeException failure = new IllegalStateException();
+        Evaluator evaluator = new TestEvaluator() {
+            @Override
+            List<Entitlement> evaluateResource(String realm, Subject subject, Application application,
+                    String resourceName, Map<String, Set<String>> environment, BatchEvaluationContext batchContext) {
+                throw failure;
+            }
+        };
+
+        // When
+        try {
+            evaluator.evaluateBatch(REALM, subject, resources("a", "b"), null);
+            fail("Expected EntitlementException");
+        } catch (EntitlementException e) {
+            // Then
+            assertThat(e.getErrorCode()).isEqualTo(EntitlementException.INTERNAL_ERROR);
+            assertThat(e.getCause()).isSameAs(failure);
+        }
+    }
+
+    @Test
+    public void shouldMonitorBatchEvaluation() throws Exception {
+        // Given
+        given(configWrapper.isMonitoringRunning()).willReturn(true);
+        Evaluator evaluator = new TestEvaluator() {
+            @Override
+            List<Entitlement> evaluateResource(String realm, Subject subject, Application application,
+                    String resourceName, Map<String, Set<String>> environment, BatchEvaluationContext batchContext) {
+                return entitlements(resourceName);
+            }
+        };
+
+        // When
+        evaluator.evaluateBatch(REALM, subject, resources("a", "b"), null);
+
+        // Then
+        verify(policyMonitor).addBatchEvaluation(anyLong(), eq(2), eq(REALM), eq(APP_NAME), eq(subject));
+    }
+
+    private abstract class TestEvaluator extends Evaluator {
+
+        TestEvaluator() {
+            super(new Subject(), APP_NAME, policyMonitor, configWrapper);
+        }
+
+        @Override
+        Application getApplication(String realm) {
+            return application;
+        }
+
+        @Override
+        ExecutorService getBatchExecutor() {
+            return executor;
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws EntitlementException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new EntitlementException(EntitlementException.INTERNAL_ERROR);
+            }
+        } catch (InterruptedException e) {
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e);
+        }
+    }
+
+    private static Set<String> resources(String... names) {
+        return new LinkedHashSet<>(Arrays.asList(names));
+    }
+
+    private static List<Entitlement> entitlements(String resourceName) {
+        return Collections.singletonList(new Entitlement(resourceName, Collections.<String>emptySet()));
+    }
+
+    private static List<String> resourceNames(List<Entitlement> entitlements) {
+        List<String> names = new ArrayList<>();
+        for (Entitlement entitlement : entitlements) {
+            names.add(entitlement.getResourceName());
+        }
+        return names;
+    }
+}
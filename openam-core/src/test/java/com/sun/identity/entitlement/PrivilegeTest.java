@@ -0,0 +1,188 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.auth.Subject;
+
+import org.forgerock.openam.entitlement.PrivilegeEvaluatorContext;
+import org.json.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PrivilegeTest {
+
+    private static final String REALM = "/";
+    private static final String RESOURCE = "http://www.example.com/";
+
+    private PrivilegeEvaluatorContext context;
+
+    @BeforeMethod
+    public void setUp() {
+        context = new PrivilegeEvaluatorContext(REALM, RESOURCE, "testAppName");
+        context.setSubjectDecisionCache(new ConcurrentHashMap<String, SubjectDecision>());
+        PrivilegeEvaluatorContext.setCurrent(context);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        PrivilegeEvaluatorContext.setCurrent(null);
+    }
+
+    @Test
+    public void shouldEvaluateSubjectsOfSameClassAndStateOnce() throws Exception {
+        // Given
+        CountingSubject first = new CountingSubject("role=admin");
+        CountingSubject second = new CountingSubject("role=admin");
+
+        // When
+        SubjectDecision firstDecision = doesSubjectMatch(first);
+        SubjectDecision secondDecision = doesSubjectMatch(second);
+
+        // Then
+        assertThat(first.evaluations).isEqualTo(1);
+        assertThat(second.evaluations).isEqualTo(0);
+        assertThat(secondDecision).isSameAs(firstDecision);
+        assertThat(context.getSubjectDecisionCache())
+                .containsOnlyKeys(CountingSubject.class.getName() + "role=admin");
+    }
+
+    @Test
+    public void shouldEvaluateSubjectsOfDifferentStateSeparately() throws Exception {
+        // Given
+        CountingSubject first = new CountingSubject("role=admin");
+        CountingSubject second = new CountingSubject("role=user");
+
+        // When
+        doesSubjectMatch(first);
+        doesSubjectMatch(second);
+
+        // Then
+        assertThat(first.evaluations).isEqualTo(1);
+        assertThat(second.evaluations).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvaluateSubjectsOfDifferentClassSeparately() throws Exception {
+        // Given
+        CountingSubject first = new CountingSubject("role=admin");
+        CountingSubject second = new OtherCountingSubject("role=admin");
+
+        // When
+        doesSubjectMatch(first);
+        doesSubjectMatch(second);
+
+        // Then
+        assertThat(first.evaluations).isEqualTo(1);
+        assertThat(second.evaluations).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvaluateSubjectEachTimeWithoutDecisionCache() throws Exception {
+        // Given
+        PrivilegeEvaluatorContext.setCurrent(null);
+        CountingSubject subject = new CountingSubject("role=admin");
+
+        // When
+        doesSubjectMatch(subject);
+        doesSubjectMatch(subject);
+
+        // Then
+        assertThat(subject.evaluations).isEqualTo(2);
+    }
+
+    private static SubjectDecision doesSubjectMatch(EntitlementSubject entitlementSubject) throws Exception {
+        Privilege privilege = new Privilege() {
+            @Override
+            public List<Entitlement> evaluate(Subject adminSubject, String realm, Subject subject,
+                    String applicationName, String normalisedResourceName, String requestedResourceName,
+                    Set<String> actionNames, Map<String, Set<String>> environment, boolean recursive,
+                    Object context) {
+                return null;
+            }
+
+            @Override
+            protected void init(JSONObject jo) {
+            }
+
+            @Override
+            SubjectAttributesManager getSubjectAttributesManager(Subject adminSubject, String realm) {
+                return null;
+            }
+        };
+        privilege.setSubject(entitlementSubject);
+        return privilege.doesSubjectMatch(new Subject(), REALM, new Subject(), RESOURCE,
+                Collections.<String, Set<String>>emptyMap());
+    }
+
+    private static class CountingSubject implements EntitlementSubject {
+
+        private String state;
+        private int evaluations;
+
+        CountingSubject(String state) {
+            this.state = state;
+        }
+
+        @Override
+        public void setState(String state) {
+            this.state = state;
+        }
+
+        @Override
+        public String getState() {
+            return state;
+        }
+
+        @Override
+        public Map<String, Set<String>> getSearchIndexAttributes() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Set<String> getRequiredAttributeNames() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public SubjectDecision evaluate(String realm, SubjectAttributesManager mgr, Subject subject,
+                String resourceName, Map<String, Set<String>> environment) {
+            evaluations++;
+            return new SubjectDecision(true, Collections.<String, Set<String>>emptyMap());
+        }
+
+        @Override
+        public boolean isIdentity() {
+            return true;
+        }
+    }
+
+    private static class OtherCountingSubject extends CountingSubject {
+
+        OtherCountingSubject(String state) {
+            super(state);
+        }
+    }
+}
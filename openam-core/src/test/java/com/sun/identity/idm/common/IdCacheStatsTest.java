@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.idm.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for {@link IdCacheStats}.
+ */
+public class IdCacheStatsTest {
+
+    private static final String REALM = "o=test,ou=services,dc=example,dc=com";
+
+    @Test
+    public void realmStatsAreRecordedPerRealm() {
+        IdCacheStats stats = new IdCacheStats("IdCacheStatsTest");
+
+        stats.recordRealmHit(REALM);
+        stats.recordRealmHit(REALM.toUpperCase());
+        stats.recordRealmNegativeHit(REALM);
+        stats.recordRealmMiss(REALM, TimeUnit.MILLISECONDS.toNanos(4));
+        stats.recordRealmMiss(REALM, TimeUnit.MILLISECONDS.toNanos(2));
+        stats.recordRealmMiss("o=other,ou=services,dc=example,dc=com", TimeUnit.MILLISECONDS.toNanos(100));
+
+        IdCacheStats.RealmStats realmStats = stats.getRealmStats(REALM);
+        Assert.assertEquals(realmStats.getHitCount(), 2);
+        Assert.assertEquals(realmStats.getNegativeHitCount(), 1);
+        Assert.assertEquals(realmStats.getMissCount(), 2);
+        Assert.assertEquals(realmStats.getAverageLoadTime(), 3.0, 0.001);
+    }
+
+    @Test
+    public void unknownRealmHasNoStats() {
+        IdCacheStats stats = new IdCacheStats("IdCacheStatsTest");
+
+        IdCacheStats.RealmStats realmStats = stats.getRealmStats(REALM);
+
+        Assert.assertEquals(realmStats.getHitCount(), 0);
+        Assert.assertEquals(realmStats.getAverageLoadTime(), 0.0);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.idm.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IdCacheDNIndexTest {
+
+    private static final String PEOPLE = "ou=people,dc=example,dc=com";
+    private static final String ALICE = "uid=alice,ou=people,dc=example,dc=com";
+    private static final String BOB = "uid=bob,ou=people,dc=example,dc=com";
+    private static final String ADMINS = "cn=admins,ou=groups,dc=example,dc=com";
+
+    private IdCacheDNIndex index;
+
+    @BeforeMethod
+    public void setUp() {
+        index = new IdCacheDNIndex();
+        index.add(ALICE);
+        index.add(BOB);
+        index.add(ADMINS);
+    }
+
+    @Test
+    public void shouldReturnEntriesBelowBaseDN() {
+        // When / Then
+        assertThat(index.getSubTree(PEOPLE)).containsOnly(ALICE, BOB);
+        assertThat(index.getSubTree("dc=example,dc=com")).containsOnly(ALICE, BOB, ADMINS);
+    }
+
+    @Test
+    public void shouldReturnBaseDNItself() {
+        // When / Then
+        assertThat(index.getSubTree(ALICE)).containsOnly(ALICE);
+    }
+
+    @Test
+    public void shouldNotReturnEntriesWhoseLastRDNOnlyEndsWithBaseRDN() {
+        // Given
+        String other = "uid=carol,xou=people,dc=example,dc=com";
+        index.add(other);
+
+        // When / Then
+        assertThat(index.getSubTree(PEOPLE)).containsOnly(ALICE, BOB);
+    }
+
+    @Test
+    public void shouldMatchBaseDNIgnoringCaseAndSpaces() {
+        // When / Then
+        assertThat(index.getSubTree("OU=People, DC=Example, DC=Com")).containsOnly(ALICE, BOB);
+    }
+
+    @Test
+    public void shouldNotReturnRemovedEntries() {
+        // When
+        index.remove(BOB);
+
+        // Then
+        assertThat(index.getSubTree(PEOPLE)).containsOnly(ALICE);
+    }
+
+    @Test
+    public void shouldNotReturnEntriesOnceCleared() {
+        // When
+        index.clear();
+
+        // Then
+        assertThat(index.getSubTree("dc=example,dc=com")).isEmpty();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.idm.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.idm.IdRepoErrorCode;
+import com.sun.identity.idm.IdRepoException;
+
+public class IdNegativeCacheTest {
+
+    private static final String DN = "id=demo,ou=user,dc=openam,dc=forgerock,dc=org";
+
+    private IdNegativeCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new IdNegativeCache(60, 100);
+    }
+
+    @Test
+    public void shouldThrowNewExceptionForEachLookup() {
+        // Given
+        IdRepoException notFound = notFound(IdRepoErrorCode.UNABLE_FIND_ENTRY, "demo");
+        notFound.setLDAPErrorCode("32");
+        cache.put(DN, notFound);
+
+        // When
+        IdRepoException first = cache.get(DN);
+        IdRepoException second = cache.get(DN);
+
+        // Then
+        assertThat(first).isNotSameAs(notFound).isNotSameAs(second);
+        assertThat(first.getErrorCode()).isEqualTo(IdRepoErrorCode.UNABLE_FIND_ENTRY);
+        assertThat(first.getMessageArgs()).containsExactly("demo").isNotSameAs(notFound.getMessageArgs());
+        assertThat(first.getLdapErrorIntCode()).isEqualTo(32);
+        assertThat(first.getMessage()).isEqualTo(notFound.getMessage());
+    }
+
+    @Test
+    public void shouldCacheIdentitiesFoundNotToExist() {
+        // Given
+        cache.put(DN, notFound(IdRepoErrorCode.TYPE_NOT_FOUND, "demo", "user"));
+
+        // When
+        IdRepoException notFound = cache.get(DN);
+
+        // Then
+        assertThat(notFound.getErrorCode()).isEqualTo(IdRepoErrorCode.TYPE_NOT_FOUND);
+        assertThat(notFound.getMessageArgs()).containsExactly("demo", "user");
+    }
+
+    @Test
+    public void shouldNotCacheOtherErrors() {
+        // When
+        cache.put(DN, notFound(IdRepoErrorCode.LDAP_EXCEPTION, "demo"));
+
+        // Then
+        assertThat(cache.get(DN)).isNull();
+    }
+
+    @Test
+    public void shouldForgetIdentityOnceCreated() {
+        // Given
+        cache.put(DN, notFound(IdRepoErrorCode.UNABLE_FIND_ENTRY, "demo"));
+
+        // When
+        cache.invalidate(DN);
+
+        // Then
+        assertThat(cache.get(DN)).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheWhenDisabled() {
+        // Given
+        cache = new IdNegativeCache(0, 100);
+
+        // When
+        cache.put(DN, notFound(IdRepoErrorCode.UNABLE_FIND_ENTRY, "demo"));
+
+        // Then
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get(DN)).isNull();
+    }
+
+    private static IdRepoException notFound(String errorCode, Object... args) {
+        return new IdRepoException(null, errorCode, args);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DBHandlerTest {
+
+    private static final String COLUMNS = "TIME, DATA";
+
+    private Connection connection;
+    private PreparedStatement batchStatement;
+    private PreparedStatement rowStatement;
+    private Formatter formatter;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        batchStatement = mock(PreparedStatement.class);
+        rowStatement = mock(PreparedStatement.class);
+        formatter = mock(Formatter.class);
+        given(connection.createStatement()).willReturn(mock(Statement.class));
+        given(connection.getAutoCommit()).willReturn(true);
+        given(connection.prepareStatement(anyString())).willReturn(batchStatement, rowStatement);
+        given(formatter.getHead(any(Handler.class))).willReturn(COLUMNS);
+        given(formatter.formatMessage(any(LogRecord.class))).willReturn("data");
+    }
+
+    @Test
+    public void shouldInsertRecordsInBatchesOfTheConfiguredSize() throws Exception {
+        // Given
+        DBHandler handler = new DBHandler("amAuthentication_access", connection, formatter, 2);
+        publish(handler, 5);
+
+        // When
+        handler.flush();
+
+        // Then
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(batchStatement, times(5)).addBatch();
+        verify(batchStatement, times(3)).executeBatch();
+        verify(connection, times(3)).commit();
+        verify(connection).setAutoCommit(false);
+        verify(connection).setAutoCommit(true);
+        verify(rowStatement, never()).executeUpdate();
+        assertThat(handler.getBatchCount()).isEqualTo(3);
+        assertThat(handler.getAverageBatchLatency()).isGreaterThanOrEqualTo(0);
+        assertThat(handler.getMaxBatchLatency()).isGreaterThanOrEqualTo(0);
+        assertThat(handler.getBacklog()).isZero();
+    }
+
+    @Test
+    public void shouldInsertRecordsOneAtATimeAfterABatchFails() throws Exception {
+        // Given
+        DBHandler handler = new DBHandler("amAuthentication_access", connection, formatter, 2);
+        given(batchStatement.executeBatch()).willReturn(new int[] {1, 1}).willThrow(new SQLException("full"));
+        publish(handler, 5);
+
+        // When
+        handler.flush();
+
+        // Then
+        verify(connection, times(1)).commit();
+        verify(connection).rollback();
+        verify(batchStatement).close();
+        verify(rowStatement, times(3)).executeUpdate();
+        verify(connection).setAutoCommit(true);
+        assertThat(handler.getBatchCount()).isEqualTo(1);
+        assertThat(handler.getBacklog()).isZero();
+    }
+
+    @Test
+    public void shouldStartANewBatchWhenTheColumnsChange() throws Exception {
+        // Given
+        DBHandler handler = new DBHandler("amAuthentication_access", connection, formatter, 10);
+        PreparedStatement otherBatchStatement = mock(PreparedStatement.class);
+        given(connection.prepareStatement(anyString())).willReturn(batchStatement, otherBatchStatement);
+        given(formatter.getHead(any(Handler.class))).willReturn(COLUMNS, COLUMNS, COLUMNS + ", LOGINID");
+        publish(handler, 3);
+
+        // When
+        handler.flush();
+
+        // Then
+        verify(batchStatement, times(2)).addBatch();
+        verify(batchStatement).executeBatch();
+        verify(batchStatement).close();
+        verify(otherBatchStatement).addBatch();
+        verify(otherBatchStatement).executeBatch();
+        verify(connection, times(2)).commit();
+        assertThat(handler.getBatchCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReuseTheBatchStatementAcrossFlushes() throws Exception {
+        // Given
+        DBHandler handler = new DBHandler("amAuthentication_access", connection, formatter, 10);
+        publish(handler, 2);
+        handler.flush();
+
+        // When
+        publish(handler, 2);
+        handler.flush();
+
+        // Then
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(batchStatement, times(4)).addBatch();
+        verify(batchStatement, times(2)).executeBatch();
+        assertThat(handler.getBatchCount()).isEqualTo(2);
+    }
+
+    private static void publish(DBHandler handler, int count) {
+        for (int i = 0; i < count; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GroupCommitQueueTest {
+
+    private RecordingSink sink;
+    private GroupCommitQueue queue;
+
+    @BeforeMethod
+    public void setUp() {
+        sink = new RecordingSink();
+        queue = new GroupCommitQueue("test", sink, new Object(), 10, 2);
+        queue.start();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    public void shouldWriteRecordsAfterOneFails() throws Exception {
+        // Given
+        queue.enqueue(record("first"));
+        queue.enqueue(record("fail"));
+
+        // When
+        queue.enqueue(record("second"));
+        queue.enqueue(record("third"));
+        awaitWithin(5);
+
+        // Then
+        assertThat(sink.written).containsExactly("first", "second", "third");
+        assertThat(sink.failures).hasSize(1);
+        assertThat(queue.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReleaseWaitingThreadsWhenWriteFails() throws Exception {
+        // Given
+        queue.enqueue(record("fail"));
+
+        // When
+        boolean released = awaitWithin(5);
+
+        // Then
+        assertThat(released).isTrue();
+    }
+
+    @Test
+    public void shouldReleaseWaitingThreadsWhenCommitFails() throws Exception {
+        // Given
+        sink.failCommit = true;
+        queue.enqueue(record("first"));
+
+        // When
+        boolean released = awaitWithin(5);
+        sink.failCommit = false;
+        queue.enqueue(record("second"));
+        awaitWithin(5);
+
+        // Then
+        assertThat(released).isTrue();
+        assertThat(sink.written).containsExactly("first", "second");
+    }
+
+    @Test
+    public void shouldWriteSignatureInSequence() throws Exception {
+        // Given
+        queue.enqueue(record("first"));
+
+        // When
+        queue.requestSignature();
+        queue.enqueue(record("second"));
+        awaitWithin(5);
+
+        // Then
+        assertThat(sink.written).containsExactly("first", "signature", "second");
+    }
+
+    @Test
+    public void shouldSkipSignatureRequestWhileOneIsPending() throws Exception {
+        // Given
+        GroupCommitQueue idle = new GroupCommitQueue("idle", sink, new Object(), 10, 2);
+        boolean first = idle.requestSignature();
+
+        // When
+        boolean second = idle.requestSignature();
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(idle.getQueuedCount()).isEqualTo(1);
+        idle.start();
+        idle.await();
+        assertThat(idle.requestSignature()).isTrue();
+        idle.await();
+        idle.shutdown();
+        assertThat(sink.written).containsExactly("signature", "signature");
+    }
+
+    @Test
+    public void shouldNotWaitForRoomInTheQueueToRequestSignature() throws Exception {
+        // Given
+        GroupCommitQueue full = new GroupCommitQueue("full", sink, new Object(), 1, 1);
+        full.enqueue(record("first"));
+
+        // When
+        boolean requested = full.requestSignature();
+
+        // Then
+        assertThat(requested).isFalse();
+        full.start();
+        full.await();
+        assertThat(full.requestSignature()).isTrue();
+        full.await();
+        full.shutdown();
+        assertThat(sink.written).containsExactly("first", "signature");
+    }
+
+    private boolean awaitWithin(long seconds) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.await();
+                done.countDown();
+            }
+        }).start();
+        return done.await(seconds, TimeUnit.SECONDS);
+    }
+
+    private static LogRecord record(String message) {
+        return new LogRecord(Level.INFO, message);
+    }
+
+    private static final class RecordingSink implements GroupCommitQueue.Sink {
+
+        private final List<String> written = new CopyOnWriteArrayList<>();
+        private final List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+        private volatile boolean failCommit;
+
+        @Override
+        public void write(LogRecord record) {
+            if ("fail".equals(record.getMessage())) {
+                throw new IllegalStateException("formatter failure");
+            }
+            written.add(record.getMessage());
+        }
+
+        @Override
+        public void sign() {
+            written.add("signature");
+        }
+
+        @Override
+        public void commit() {
+            if (failCommit) {
+                throw new IllegalStateException("flush failure");
+            }
+        }
+
+        @Override
+        public void failed(String message, RuntimeException e) {
+            failures.add(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.log.LogQuery;
+import com.sun.identity.log.QueryElement;
+
+public class LogFileScannerTest {
+
+    private static final int RECORDS = 3000;
+
+    private File logFile;
+
+    @BeforeMethod
+    public void writeLog() throws Exception {
+        logFile = File.createTempFile("amAuthentication", ".access");
+        LogFileIndex index = new LogFileIndex(logFile);
+        try (FileOutputStream out = new FileOutputStream(logFile)) {
+            out.write("#Version: 1.0\n#Fields: time\tData\tLoginID\t\n".getBytes());
+            long offset = out.getChannel().position();
+            for (int i = 0; i < RECORDS; i++) {
+                String time = String.format("2016-10-19 %02d:%02d:%02d", i / 3600, i / 60 % 60, i % 60);
+                String message = "\"" + time + "\"\t\"Login Success " + i + "\"\tuser" + (i % 7) + "\t\n";
+                out.write(message.getBytes());
+                long end = out.getChannel().position();
+                index.recordWritten(message, offset, end);
+                offset = end;
+            }
+        }
+        index.close();
+    }
+
+    @AfterMethod
+    public void deleteLog() {
+        LogFileIndex.delete(logFile);
+        logFile.delete();
+    }
+
+    @Test
+    public void shouldSkipIndexedBlocksOutsideTheTimeWindow() {
+        LogQuery query = new LogQuery(LogQuery.ALL_RECORDS, LogQuery.MATCH_ALL_CONDITIONS, null);
+        query.addQuery(new QueryElement("time", "2016-10-19 00:30:00", QueryElement.GE));
+        query.addQuery(new QueryElement("time", "2016-10-19 00:31:00", QueryElement.LT));
+        query.addQuery(new QueryElement("LoginID", "user3", QueryElement.EQ));
+
+        LogFileScanner scanner = new LogFileScanner(Collections.singletonList(logFile), query, true);
+        List<String[]> records = readAll(scanner);
+
+        assertThat(records.get(0)).containsExactly("time", "Data", "LoginID");
+        assertThat(records).hasSize(10);
+        assertThat(records.get(1)).containsExactly("2016-10-19 00:30:02", "Login Success 1802", "user3");
+        assertThat(scanner.getSkippedBytes()).isGreaterThan(logFile.length() / 2);
+    }
+
+    @Test
+    public void shouldReturnSelectedColumnsOfEveryMatchingRecord() {
+        LogQuery query = new LogQuery(LogQuery.ALL_RECORDS, LogQuery.MATCH_ANY_CONDITION, null);
+        query.addQuery(new QueryElement("time", "2016-10-19 00:49", QueryElement.SW));
+        ArrayList<String> columns = new ArrayList<>();
+        columns.add("time");
+        columns.add("LoginID");
+        query.setColumns(columns);
+
+        List<String[]> records = readAll(new LogFileScanner(Collections.singletonList(logFile), query, true));
+
+        assertThat(records).hasSize(61);
+        assertThat(records.get(60)).containsExactly("2016-10-19 00:49:59", "user3");
+    }
+
+    @Test
+    public void shouldScanTheWholeFileWhenTheIndexIsStale() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(logFile)) {
+            out.write("#Version: 1.0\n#Fields: time\tData\tLoginID\t\n\"2016-10-19 00:00:00\"\tx\tuser0\t\n"
+                    .getBytes());
+        }
+        LogQuery query = new LogQuery(LogQuery.ALL_RECORDS);
+        query.addQuery(new QueryElement("time", "2016-10-19 00:00:00", QueryElement.EQ));
+
+        List<String[]> records = readAll(new LogFileScanner(Collections.singletonList(logFile), query, true));
+
+        assertThat(LogFileIndex.read(logFile)).isEmpty();
+        assertThat(records).hasSize(2);
+    }
+
+    private List<String[]> readAll(LogFileScanner scanner) {
+        List<String[]> records = new ArrayList<>();
+        while (scanner.hasNext()) {
+            records.add(scanner.next());
+        }
+        return records;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.log.LogQuery;
+import com.sun.identity.log.QueryElement;
+
+public class LogReadFileHandlerTest {
+
+    private File logFile;
+
+    @BeforeMethod
+    public void writeLog() throws Exception {
+        logFile = File.createTempFile("amAuthentication", ".access");
+        LogFileIndex index = new LogFileIndex(logFile);
+        try (FileOutputStream out = new FileOutputStream(logFile)) {
+            out.write("#Version: 1.0\n#Fields: time\tData\tLoginID\t\n".getBytes());
+            long offset = out.getChannel().position();
+            for (int i = 0; i < 1000; i++) {
+                String time = String.format("2016-10-19 00:%02d:%02d", i / 60, i % 60);
+                String message = "\"" + time + "\"\t\"Login Success " + i + "\"\tuser" + (i % 2) + "\t\n";
+                out.write(message.getBytes());
+                long end = out.getChannel().position();
+                index.recordWritten(message, offset, end);
+                offset = end;
+            }
+        }
+        index.close();
+    }
+
+    @AfterMethod
+    public void deleteLog() {
+        LogFileIndex.delete(logFile);
+        logFile.delete();
+    }
+
+    @Test
+    public void shouldReturnHeaderAndMostRecentMatchingRecords() throws Exception {
+        // Given
+        LogQuery query = new LogQuery(2, LogQuery.MATCH_ALL_CONDITIONS, null);
+        query.addQuery(new QueryElement("time", "2016-10-19 00:05:00", QueryElement.LT));
+        query.addQuery(new QueryElement("LoginID", "user1", QueryElement.EQ));
+
+        // When
+        String[][] records = new LogReadFileHandler().logRecRead(logFile.getPath(), query, true);
+
+        // Then
+        assertThat(records).hasSize(3);
+        assertThat(records[0]).containsExactly("time", "Data", "LoginID");
+        assertThat(records[1]).containsExactly("2016-10-19 00:04:57", "Login Success 297", "user1");
+        assertThat(records[2]).containsExactly("2016-10-19 00:04:59", "Login Success 299", "user1");
+    }
+
+    @Test
+    public void shouldReturnOnlyTheHeaderWhenNoRecordMatches() throws Exception {
+        // Given
+        LogQuery query = new LogQuery(LogQuery.ALL_RECORDS);
+        query.addQuery(new QueryElement("LoginID", "user2", QueryElement.EQ));
+
+        // When
+        String[][] records = new LogReadFileHandler().logRecRead(logFile.getPath(), query, true);
+
+        // Then
+        assertThat(records).hasSize(1);
+        assertThat(records[0]).containsExactly("time", "Data", "LoginID");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldFailToReadMissingFile() throws Exception {
+        // Given
+        logFile.delete();
+
+        // When
+        new LogReadFileHandler().logRecRead(logFile.getPath(), new LogQuery(LogQuery.ALL_RECORDS), true);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.policy.client;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.HashMap;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.policy.interfaces.ResourceName;
+import com.sun.identity.policy.plugins.PrefixResourceName;
+
+/**
+ * Exercises the behaviour of {@link DecisionCache}.
+ */
+public class DecisionCacheTest {
+
+    private static final String SERVICE = "iPlanetAMWebAgentService";
+    private static final String SCOPE = "self";
+
+    private ResourceName comparator;
+    private DecisionCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        comparator = new PrefixResourceName();
+        comparator.initialize(new HashMap<String, String>());
+        cache = new DecisionCache(100, 100);
+    }
+
+    @Test
+    public void invalidationRemovesSubResourcesOnly() {
+        cache.put(SERVICE, "http://a.b.c:80/ab/cd", "token", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/ab/ef", "token", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://x.y.z:80/ab/cd", "token", SCOPE, new Object[4], comparator);
+
+        int removed = cache.invalidate(SERVICE, asList("http://a.b.c:80/ab/*"), comparator);
+
+        assertThat(removed).isEqualTo(2);
+        assertThat(cache.get(SERVICE, "http://a.b.c:80/ab/cd", "token", SCOPE)).isNull();
+        assertThat(cache.get(SERVICE, "http://x.y.z:80/ab/cd", "token", SCOPE)).isNotNull();
+    }
+
+    @Test
+    public void removingTokenOnlyRemovesItsResults() {
+        cache.put(SERVICE, "http://a.b.c:80/ab", "one", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/ab", "two", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/cd", "one", SCOPE, new Object[4], comparator);
+
+        assertThat(cache.removeToken("one")).isEqualTo(2);
+        assertThat(cache.get(SERVICE, "http://a.b.c:80/ab", "one", SCOPE)).isNull();
+        assertThat(cache.get(SERVICE, "http://a.b.c:80/ab", "two", SCOPE)).isNotNull();
+    }
+
+    @Test
+    public void resourcesAreEvictedAboveCapacity() {
+        cache = new DecisionCache(2, 2);
+        cache.put(SERVICE, "http://a.b.c:80/1", "token", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/2", "token", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/3", "token", SCOPE, new Object[4], comparator);
+
+        assertThat(cache.getResourceCount(SERVICE)).isLessThanOrEqualTo(2);
+        assertThat(cache.getEvictionCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void leastRecentlyUsedSessionIsEvicted() {
+        cache = new DecisionCache(100, 2);
+        cache.put(SERVICE, "http://a.b.c:80/ab", "one", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/ab", "two", SCOPE, new Object[4], comparator);
+        cache.get(SERVICE, "http://a.b.c:80/ab", "one", SCOPE);
+        cache.put(SERVICE, "http://a.b.c:80/ab", "three", SCOPE, new Object[4], comparator);
+
+        assertThat(cache.get(SERVICE, "http://a.b.c:80/ab", "one", SCOPE)).isNotNull();
+        assertThat(cache.get(SERVICE, "http://a.b.c:80/ab", "two", SCOPE)).isNull();
+        assertThat(cache.get(SERVICE, "http://a.b.c:80/ab", "three", SCOPE)).isNotNull();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictedSessionsAreRemovedFromTokenIndex() {
+        cache = new DecisionCache(100, 1);
+        cache.put(SERVICE, "http://a.b.c:80/ab", "one", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/ab", "two", SCOPE, new Object[4], comparator);
+
+        assertThat(cache.getSessionCount()).isEqualTo(1);
+        assertThat(cache.removeToken("one")).isEqualTo(0);
+    }
+
+    @Test
+    public void evictedResourcesAreRemovedFromTokenIndex() {
+        cache = new DecisionCache(1, 100);
+        cache.put(SERVICE, "http://a.b.c:80/1", "one", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://a.b.c:80/2", "two", SCOPE, new Object[4], comparator);
+
+        assertThat(cache.getSessionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidatedResourcesAreRemovedFromTokenIndex() {
+        cache.put(SERVICE, "http://a.b.c:80/ab/cd", "one", SCOPE, new Object[4], comparator);
+        cache.put(SERVICE, "http://x.y.z:80/ab/cd", "two", SCOPE, new Object[4], comparator);
+
+        cache.invalidate(SERVICE, asList("http://a.b.c:80/ab/*"), comparator);
+
+        assertThat(cache.getSessionCount()).isEqualTo(1);
+        assertThat(cache.removeToken("two")).isEqualTo(1);
+        assertThat(cache.getSessionCount()).isEqualTo(0);
+    }
+}
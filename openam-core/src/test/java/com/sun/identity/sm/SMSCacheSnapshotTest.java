@@ -0,0 +1,156 @@
+/*
+* The contents of this file are subject to the terms of the Common Development and
+* Distribution License (the License). You may not use this file except in compliance with the
+* License.
+*
+* You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+* specific language governing permission and limitations under the License.
+*
+* When distributing Covered Software, include this CDDL Header Notice in each file and include
+* the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+* Header, with the fields enclosed by brackets [] replaced by your own identifying
+* information: "Portions copyright [year] [name of copyright owner]".
+*
+* Copyright 2016 ForgeRock AS.
+*/
+package com.sun.identity.sm;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.utils.CollectionUtils;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+import org.forgerock.util.thread.listener.ShutdownManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.common.CaseInsensitiveHashMap;
+
+public class SMSCacheSnapshotTest {
+
+    private static final String DN = "ou=default,ou=organizationconfig,ou=1.0,ou=iplanetamauthservice,"
+            + "ou=services,dc=openam,dc=forgerock,dc=org";
+    private static final String STORE = "dc=openam,dc=forgerock,dc=org";
+
+    private ScheduledExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = new ExecutorServiceFactory(mock(ShutdownManager.class)).createScheduledService(1);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCompareAttributeNamesIgnoringCase() {
+        Map<String, Set<String>> current = new CaseInsensitiveHashMap<>();
+        current.put("sunKeyValue", CollectionUtils.asSet("a=b", "c=d"));
+        Map<String, Set<String>> cached = new HashMap<>();
+        cached.put("sunkeyvalue", CollectionUtils.asSet("c=d", "a=b"));
+
+        assertThat(SMSCacheSnapshot.sameAttributes(current, cached)).isTrue();
+    }
+
+    @Test
+    public void shouldDetectChangedAttributes() {
+        Map<String, Set<String>> current = new HashMap<>();
+        current.put("sunKeyValue", CollectionUtils.asSet("a=b"));
+        Map<String, Set<String>> cached = new HashMap<>();
+        cached.put("sunKeyValue", CollectionUtils.asSet("a=c"));
+
+        assertThat(SMSCacheSnapshot.sameAttributes(current, cached)).isFalse();
+        assertThat(SMSCacheSnapshot.sameAttributes(null, cached)).isFalse();
+        assertThat(SMSCacheSnapshot.sameAttributes(current, Collections.<String, Set<String>>emptyMap()))
+                .isFalse();
+    }
+
+    @Test
+    public void shouldDiscardSnapshotWrittenByAnotherVersion() throws Exception {
+        File file = File.createTempFile("smsCacheSnapshot", null);
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(1);
+            writeString(out, "OpenAM 0.0.0");
+            writeString(out, "dc=openam,dc=forgerock,dc=org");
+            out.writeInt(1);
+            writeString(out, DN);
+            out.writeInt(0);
+        }
+        SMSCacheSnapshot snapshot = new SMSCacheSnapshot(file, "dc=openam,dc=forgerock,dc=org", executor);
+
+        snapshot.load();
+
+        assertThat(snapshot.take(DN)).isNull();
+        assertThat(snapshot.getServedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldServeWrittenEntryOnceAndRefreshItIfStale() throws Exception {
+        File file = File.createTempFile("smsCacheSnapshot", null);
+        file.deleteOnExit();
+        Map<String, Set<String>> attributes = new HashMap<>();
+        attributes.put("sunKeyValue", CollectionUtils.asSet("a=b"));
+        new SMSCacheSnapshot(file, STORE, executor).write(Collections.singletonMap(DN, attributes));
+        final Map<String, Set<String>> current = new HashMap<>();
+        current.put("sunKeyValue", CollectionUtils.asSet("a=c"));
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        SMSCacheSnapshot snapshot = new SMSCacheSnapshot(file, STORE, executor) {
+            @Override
+            Map<String, Set<String>> read(String normalizedDN) {
+                return current;
+            }
+
+            @Override
+            void refresh(String normalizedDN) {
+                refreshed.countDown();
+            }
+        };
+
+        snapshot.load();
+        Map<String, Set<String>> served = snapshot.take(DN);
+
+        assertThat(served.get("sunkeyvalue")).containsOnly("a=b");
+        assertThat(snapshot.take(DN)).isNull();
+        assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(snapshot.getServedCount()).isEqualTo(1);
+        assertThat(snapshot.getStaleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWriteSnapshotReadableByOwnerOnly() throws Exception {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        File file = File.createTempFile("smsCacheSnapshot", null);
+        file.deleteOnExit();
+
+        new SMSCacheSnapshot(file, STORE, executor).write(Collections.<String, Map<String, Set<String>>>emptyMap());
+
+        assertThat(Files.getPosixFilePermissions(file.toPath()))
+                .containsOnly(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws Exception {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -16,6 +16,7 @@
 package org.forgerock.openam.authentication.callbacks.helpers;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.concurrent.Future;
@@ -141,6 +142,52 @@ public class PollingWaitAssistantTest {
                 .isEqualTo(PollingWaitAssistant.PollingWaitState.TIMEOUT);
     }
 
+    @Test
+    public void checkThatAwaitCompletionReturnsWhenTheFutureCompletes() throws Exception {
+        // given
+        PollingWaitAssistant assistant = new PollingWaitAssistant(TIMEOUT, SHORT_POLL, MEDIUM_POLL, LONG_POLL);
+        Future future = Mockito.mock(Future.class);
+        when(future.isDone()).thenReturn(false, true);
+        assistant.start(future);
+
+        // when
+        boolean complete = assistant.awaitCompletion(LONG_POLL);
+
+        // then
+        assertThat(complete).isTrue();
+        verify(future).get(LONG_POLL, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void checkThatAwaitCompletionDoesNotWaitPastTheTimeout() throws Exception {
+        // given
+        PollingWaitAssistant assistant = new PollingWaitAssistant(TIMEOUT, SHORT_POLL, MEDIUM_POLL, LONG_POLL);
+        Future future = Mockito.mock(Future.class);
+        when(future.isDone()).thenReturn(false);
+        assistant.start(future);
+
+        FastForwardTimeService.INSTANCE.fastForward(TIMEOUT - 1000, TimeUnit.MILLISECONDS);
+
+        // when
+        boolean complete = assistant.awaitCompletion(LONG_POLL);
+
+        // then
+        assertThat(complete).isFalse();
+        verify(future).get(1000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void checkThatAwaitCompletionDoesNotWaitWhenNotStarted() {
+        // given
+        PollingWaitAssistant assistant = new PollingWaitAssistant(TIMEOUT, SHORT_POLL, MEDIUM_POLL, LONG_POLL);
+
+        // when
+        boolean complete = assistant.awaitCompletion(LONG_POLL);
+
+        // then
+        assertThat(complete).isFalse();
+    }
+
     @DataProvider
     public  Object[][] expectedWaitPeriods() {
         long mediumElapsedThreshold = TIMEOUT / 4;
@@ -73,6 +73,30 @@ public class CoreTokenAdapterTest {
         verify(mockTaskDispatcher).create(eq(token), any(ResultHandler.class));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldNotifyHandlerOfAsynchronousCreate() throws Exception {
+        // Given
+        Token token = new Token("badger", TokenType.SESSION);
+        ResultHandler<Token, CoreTokenException> mockCreateHandler = mock(ResultHandler.class);
+        given(mockResultHandlerFactory.getCreateHandler()).willReturn(mockCreateHandler);
+        ResultHandler<Token, CoreTokenException> mockHandler = mock(ResultHandler.class);
+        CoreTokenException error = new CoreTokenException("weasel");
+
+        // When
+        adapter.create(token, mockHandler);
+        ArgumentCaptor<ResultHandler> captor = ArgumentCaptor.forClass(ResultHandler.class);
+        verify(mockTaskDispatcher).create(eq(token), captor.capture());
+        captor.getValue().processResults(token);
+        captor.getValue().processError(error);
+
+        // Then
+        verify(mockCreateHandler).processResults(token);
+        verify(mockHandler).processResults(token);
+        verify(mockCreateHandler).processError(error);
+        verify(mockHandler).processError(error);
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void shouldReadToken() throws Exception {
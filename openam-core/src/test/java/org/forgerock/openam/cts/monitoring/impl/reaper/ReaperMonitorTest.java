@@ -16,6 +16,8 @@
 
 package org.forgerock.openam.cts.monitoring.impl.reaper;
 
+import java.util.Map;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -45,6 +47,22 @@ public class ReaperMonitorTest {
         assertEquals(reaperMonitor.getRateOfDeletion(), 234D);
     }
 
+    @Test
+    public void shouldGetThroughputOfEachShard() {
+
+        //Given
+        reaperMonitor.addShardRun(0, 1000, 100);
+        reaperMonitor.addShardRun(0, 3000, 300);
+        reaperMonitor.addShardRun(1, 2000, 100);
+
+        //When
+        Map<Integer, Double> throughput = reaperMonitor.getShardThroughput();
+
+        //Then
+        assertEquals(throughput.get(0), 100D);
+        assertEquals(throughput.get(1), 50D);
+    }
+
     @Test
     public void shouldGetZeroWhenNoRunsAdded() {
 
@@ -47,6 +47,7 @@ public class CTSWorkerInitTest {
 
         ctsWorkerInit = new CTSWorkerInit(
                 mockTaskProvider,
+                mock(CTSWorkerShard.class),
                 mockMonitor,
                 mock(CoreTokenConfig.class),
                 mock(ScheduledExecutorService.class),
@@ -74,6 +75,7 @@ public class CTSWorkerInitTest {
     public void shouldStartMultiple() {
         ctsWorkerInit = new CTSWorkerInit(
                 new CTSWorkerTestTaskProvider(),
+                mock(CTSWorkerShard.class),
                 mockMonitor,
                 mock(CoreTokenConfig.class),
                 mock(ScheduledExecutorService.class),
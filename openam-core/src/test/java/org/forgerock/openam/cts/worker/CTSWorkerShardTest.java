@@ -0,0 +1,218 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.worker;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.utils.TimeTravelUtil;
+import org.forgerock.openam.utils.TimeTravelUtil.FrozenTimeService;
+import org.forgerock.openam.utils.TimeUtils;
+import org.forgerock.util.time.TimeService;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class CTSWorkerShardTest {
+
+    private static final long NOW = 1000000000L;
+    private static final int LEASE_DURATION = 30000;
+    private static final String SERVER_ONE = "01";
+    private static final String SERVER_TWO = "02";
+
+    private CTSPersistentStore store;
+    private CoreTokenConfig config;
+
+    @BeforeMethod
+    public void setUp() {
+        TimeTravelUtil.setBackingTimeService(FrozenTimeService.INSTANCE);
+        FrozenTimeService.INSTANCE.setCurrentTimeMillis(NOW);
+        store = mock(CTSPersistentStore.class);
+        config = mock(CoreTokenConfig.class);
+        given(config.isReaperCoordinationEnabled()).willReturn(true);
+        given(config.getReaperLeaseDuration()).willReturn(LEASE_DURATION);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        TimeTravelUtil.setBackingTimeService(TimeService.SYSTEM);
+    }
+
+    @Test
+    public void shouldProcessEveryTokenWhenCoordinationIsDisabled() {
+        // Given
+        given(config.isReaperCoordinationEnabled()).willReturn(false);
+        CTSWorkerShard shard = shard(SERVER_ONE);
+
+        // When
+        shard.run();
+
+        // Then
+        verifyZeroInteractions(store);
+        assertThat(shard.getShardCount()).isEqualTo(1);
+        assertThat(ownedTokens(shard)).isEqualTo(tokenIds());
+    }
+
+    @Test
+    public void shouldRenewLeaseToExpireAfterLeaseDuration() throws Exception {
+        // Given
+        CTSWorkerShard shard = shard(SERVER_ONE);
+
+        // When
+        shard.run();
+
+        // Then
+        ArgumentCaptor<Token> lease = ArgumentCaptor.forClass(Token.class);
+        verify(store).update(lease.capture());
+        assertThat(lease.getValue().getTokenId()).isEqualTo("ctsReaperLease-" + SERVER_ONE);
+        assertThat(lease.getValue().<String>getAttribute(CoreTokenField.STRING_ONE))
+                .isEqualTo(CTSWorkerShard.LEASE_MARKER);
+        assertThat(lease.getValue().<String>getAttribute(CoreTokenField.STRING_TWO)).isEqualTo(SERVER_ONE);
+        assertThat(lease.getValue().getExpiryTimestamp().getTimeInMillis()).isEqualTo(NOW + LEASE_DURATION);
+    }
+
+    @Test
+    public void shouldShareTokensOutBetweenServersWithLiveLeases() throws Exception {
+        // Given
+        given(store.attributeQuery(any(TokenFilter.class)))
+                .willReturn(leases(lease(SERVER_TWO, NOW + LEASE_DURATION), lease(SERVER_ONE, NOW + LEASE_DURATION)));
+        CTSWorkerShard one = shard(SERVER_ONE);
+        CTSWorkerShard two = shard(SERVER_TWO);
+
+        // When
+        one.run();
+        two.run();
+
+        // Then
+        assertThat(one.getShardIndex()).isEqualTo(0);
+        assertThat(two.getShardIndex()).isEqualTo(1);
+        assertThat(one.getShardCount()).isEqualTo(2);
+        List<String> owned = ownedTokens(one);
+        owned.addAll(ownedTokens(two));
+        assertThat(owned).hasSameElementsAs(tokenIds()).hasSameSizeAs(tokenIds());
+        assertThat(ownedTokens(one)).isNotEmpty();
+        assertThat(ownedTokens(two)).isNotEmpty();
+    }
+
+    @Test
+    public void shouldTakePartBeforeItsOwnLeaseIsVisible() throws Exception {
+        // Given
+        given(store.attributeQuery(any(TokenFilter.class)))
+                .willReturn(leases(lease(SERVER_TWO, NOW + LEASE_DURATION)));
+        CTSWorkerShard shard = shard(SERVER_ONE);
+
+        // When
+        shard.run();
+
+        // Then
+        assertThat(shard.getShardIndex()).isEqualTo(0);
+        assertThat(shard.getShardCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldTakeOverTokensOfServerWhoseLeaseHasExpired() throws Exception {
+        // Given
+        given(store.attributeQuery(any(TokenFilter.class)))
+                .willReturn(leases(lease(SERVER_ONE, NOW + 2 * LEASE_DURATION), lease(SERVER_TWO, NOW + 1000)));
+        CTSWorkerShard shard = shard(SERVER_ONE);
+        shard.run();
+
+        // When
+        FrozenTimeService.INSTANCE.fastForward(1000, MILLISECONDS);
+        shard.run();
+
+        // Then
+        assertThat(shard.getShardCount()).isEqualTo(1);
+        assertThat(ownedTokens(shard)).isEqualTo(tokenIds());
+    }
+
+    @Test
+    public void shouldProcessEveryTokenWhenLeasesCannotBeRead() throws Exception {
+        // Given
+        given(store.attributeQuery(any(TokenFilter.class)))
+                .willReturn(leases(lease(SERVER_ONE, NOW + LEASE_DURATION), lease(SERVER_TWO, NOW + LEASE_DURATION)))
+                .willThrow(new CoreTokenException("unavailable"));
+        CTSWorkerShard shard = shard(SERVER_ONE);
+        shard.run();
+
+        // When
+        shard.run();
+
+        // Then
+        assertThat(shard.getShardCount()).isEqualTo(1);
+        assertThat(ownedTokens(shard)).isEqualTo(tokenIds());
+    }
+
+    private CTSWorkerShard shard(final String serverId) {
+        return new CTSWorkerShard(store, config, mock(Debug.class)) {
+            @Override
+            String getServerId() {
+                return serverId;
+            }
+        };
+    }
+
+    private static List<String> ownedTokens(CTSWorkerShard shard) {
+        List<String> owned = new ArrayList<>();
+        for (String tokenId : tokenIds()) {
+            if (shard.isOwned(tokenId)) {
+                owned.add(tokenId);
+            }
+        }
+        return owned;
+    }
+
+    private static List<String> tokenIds() {
+        List<String> tokenIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tokenIds.add("token-" + i);
+        }
+        return tokenIds;
+    }
+
+    private static Collection<PartialToken> leases(PartialToken... leases) {
+        return Arrays.asList(leases);
+    }
+
+    private static PartialToken lease(String serverId, long expiry) {
+        Map<CoreTokenField, Object> entry = new HashMap<>();
+        entry.put(CoreTokenField.STRING_TWO, serverId);
+        entry.put(CoreTokenField.EXPIRY_DATE, TimeUtils.fromUnixTime(expiry, MILLISECONDS));
+        return new PartialToken(entry);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.worker.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.forgerock.openam.cts.worker.CTSWorkerShard;
+import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CTSWorkerShardFilterTest {
+
+    private CTSWorkerShard shard;
+    private CTSWorkerShardFilter filter;
+
+    @BeforeMethod
+    public void setUp() {
+        shard = mock(CTSWorkerShard.class);
+        filter = new CTSWorkerShardFilter(shard);
+    }
+
+    @Test
+    public void shouldReturnEveryTokenWhenCoordinationIsDisabled() {
+        // Given
+        given(shard.isEnabled()).willReturn(false);
+        Collection<PartialToken> tokens = Arrays.asList(partialToken("one"), partialToken("two"));
+
+        // When
+        Collection<PartialToken> result = filter.filter(tokens);
+
+        // Then
+        assertThat(result).containsExactlyElementsOf(tokens);
+        verify(shard, never()).isOwned(anyString());
+    }
+
+    @Test
+    public void shouldOnlyReturnTokensOwnedByThisServer() {
+        // Given
+        given(shard.isEnabled()).willReturn(true);
+        given(shard.isOwned("one")).willReturn(false);
+        given(shard.isOwned("two")).willReturn(true);
+        PartialToken two = partialToken("two");
+
+        // When
+        Collection<PartialToken> result = filter.filter(Arrays.asList(partialToken("one"), two));
+
+        // Then
+        assertThat(result).containsExactly(two);
+    }
+
+    private static PartialToken partialToken(String tokenId) {
+        return new PartialToken(Collections.<CoreTokenField, Object>singletonMap(CoreTokenField.TOKEN_ID, tokenId));
+    }
+}
@@ -18,6 +18,7 @@ package org.forgerock.openam.cts.worker.process;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.verify;
 import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 
@@ -25,10 +26,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 
+import org.apache.commons.lang.time.StopWatch;
 import org.forgerock.openam.cts.exceptions.CoreTokenException;
 import org.forgerock.openam.cts.impl.query.worker.CTSWorkerQuery;
 import org.forgerock.openam.cts.worker.CTSWorkerFilter;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.mockito.InOrder;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -85,6 +88,60 @@ public class CTSWorkerBaseProcessTest {
         verify(three).await();
     }
 
+    @Test
+    public void shouldFetchNextPageWhilePreviousPageIsProcessed() throws Exception {
+        // Given
+        CTSWorkerThrottle throttle = mock(CTSWorkerThrottle.class);
+        given(throttle.getPagesInFlight()).willReturn(1);
+        final CountDownLatch one = mock(CountDownLatch.class);
+        final CountDownLatch two = mock(CountDownLatch.class);
+        CTSWorkerBaseProcess process = new TestProcess(throttle, one, two);
+
+        Collection<PartialToken> tokens = Arrays.asList(partialToken(), partialToken());
+        given(mockFilter.filter(anyCollection())).willReturn(tokens);
+        given(mockQuery.nextPage()).willReturn(tokens).willReturn(tokens).willReturn(null);
+
+        // When
+        process.handle(mockQuery, mockFilter);
+
+        // Then
+        InOrder inOrder = inOrder(mockQuery, throttle, one, two);
+        inOrder.verify(mockQuery).nextPage();
+        inOrder.verify(throttle).acquire(2);
+        inOrder.verify(mockQuery).nextPage();
+        inOrder.verify(throttle).acquire(2);
+        inOrder.verify(one).await();
+        inOrder.verify(mockQuery).nextPage();
+        inOrder.verify(two).await();
+    }
+
+    @Test
+    public void shouldProcessEachPageBeforeFetchingNextWithoutPagesInFlight() throws Exception {
+        // Given
+        CTSWorkerThrottle throttle = mock(CTSWorkerThrottle.class);
+        given(throttle.getPagesInFlight()).willReturn(0);
+        CountDownLatch one = mock(CountDownLatch.class);
+        CountDownLatch two = mock(CountDownLatch.class);
+        CTSWorkerBaseProcess process = new TestProcess(throttle, one, two);
+
+        Collection<PartialToken> tokens = Arrays.asList(partialToken(), partialToken());
+        given(mockFilter.filter(anyCollection())).willReturn(tokens);
+        given(mockQuery.nextPage()).willReturn(tokens).willReturn(tokens).willReturn(null);
+
+        // When
+        process.handle(mockQuery, mockFilter);
+
+        // Then
+        InOrder inOrder = inOrder(mockQuery, throttle, one, two);
+        inOrder.verify(mockQuery).nextPage();
+        inOrder.verify(throttle).acquire(2);
+        inOrder.verify(one).await();
+        inOrder.verify(mockQuery).nextPage();
+        inOrder.verify(throttle).acquire(2);
+        inOrder.verify(two).await();
+        inOrder.verify(mockQuery).nextPage();
+    }
+
     @Test
     public void shouldRespondToInterruptSignal() throws CoreTokenException {
         // Given
@@ -103,4 +160,27 @@ public class CTSWorkerBaseProcessTest {
     private PartialToken partialToken() {
         return mock(PartialToken.class);
     }
+
+    private static final class TestProcess extends CTSWorkerBaseProcess {
+        private final CountDownLatch[] latches;
+        private int batches;
+
+        private TestProcess(CTSWorkerThrottle throttle, CountDownLatch... latches) {
+            super(throttle);
+            this.latches = latches;
+        }
+
+        @Override
+        protected CountDownLatch handleBatch(Collection<PartialToken> batch) {
+            return latches[batches++];
+        }
+
+        @Override
+        protected void handleSucceeded(StopWatch queryStopWatch, StopWatch waitingStopWatch, long total) {
+        }
+
+        @Override
+        protected void handleFailed(Exception exception) {
+        }
+    }
 }
@@ -29,6 +29,7 @@ import org.forgerock.openam.cts.exceptions.CoreTokenException;
 import org.forgerock.openam.cts.impl.query.worker.CTSWorkerQuery;
 import org.forgerock.openam.cts.monitoring.CTSReaperMonitoringStore;
 import org.forgerock.openam.cts.worker.CTSWorkerFilter;
+import org.forgerock.openam.cts.worker.CTSWorkerShard;
 import org.forgerock.openam.cts.worker.process.CTSWorkerDeleteProcess.TokenDeletion;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
 import org.testng.annotations.AfterMethod;
@@ -51,7 +52,8 @@ public class CTSWorkerDeleteProcessTest {
         monitoringStore = mock(CTSReaperMonitoringStore.class);
         mockQuery = mock(CTSWorkerQuery.class);
 
-        process = new CTSWorkerDeleteProcess(mockTokenDeletion, monitoringStore, mock(Debug.class));
+        process = new CTSWorkerDeleteProcess(mockTokenDeletion, monitoringStore, mock(CTSWorkerShard.class),
+                mock(CTSWorkerThrottle.class), mock(Debug.class));
     }
 
     @AfterMethod
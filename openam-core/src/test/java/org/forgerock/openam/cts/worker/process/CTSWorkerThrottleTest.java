@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.worker.process;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CTSWorkerThrottleTest {
+
+    private CoreTokenConfig config;
+
+    @BeforeMethod
+    public void setUp() {
+        config = mock(CoreTokenConfig.class);
+    }
+
+    @Test
+    public void shouldNotWaitWithoutRateLimit() throws Exception {
+        // Given
+        CTSWorkerThrottle throttle = new CTSWorkerThrottle(config);
+
+        // When
+        long elapsed = timeToAcquire(throttle, 1000000);
+
+        // Then
+        assertThat(NANOSECONDS.toMillis(elapsed)).isLessThan(500);
+    }
+
+    @Test
+    public void shouldHoldBackTokensBeyondRateLimit() throws Exception {
+        // Given
+        given(config.getReaperRateLimit()).willReturn(10);
+        CTSWorkerThrottle throttle = new CTSWorkerThrottle(config);
+        throttle.acquire(5);
+
+        // When
+        long elapsed = timeToAcquire(throttle, 5);
+
+        // Then
+        assertThat(NANOSECONDS.toMillis(elapsed)).isGreaterThanOrEqualTo(400);
+    }
+
+    @Test
+    public void shouldShareRateLimitBetweenProcesses() throws Exception {
+        // Given
+        given(config.getReaperRateLimit()).willReturn(10);
+        final CTSWorkerThrottle throttle = new CTSWorkerThrottle(config);
+        Thread otherProcess = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    throttle.acquire(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        otherProcess.start();
+        otherProcess.join();
+
+        // When
+        long elapsed = timeToAcquire(throttle, 1);
+
+        // Then
+        assertThat(NANOSECONDS.toMillis(elapsed)).isGreaterThanOrEqualTo(400);
+    }
+
+    @Test
+    public void shouldNotAllowNegativePagesInFlight() {
+        // Given
+        given(config.getReaperPagesInFlight()).willReturn(-1);
+
+        // When
+        CTSWorkerThrottle throttle = new CTSWorkerThrottle(config);
+
+        // Then
+        assertThat(throttle.getPagesInFlight()).isZero();
+    }
+
+    private static long timeToAcquire(CTSWorkerThrottle throttle, int tokens) throws InterruptedException {
+        long start = System.nanoTime();
+        throttle.acquire(tokens);
+        return System.nanoTime() - start;
+    }
+}
@@ -19,13 +19,18 @@ package org.forgerock.openam.session.service;
 import static org.mockito.BDDMockito.any;
 import static org.mockito.BDDMockito.*;
 import static org.mockito.BDDMockito.verify;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.openam.session.SessionCache;
 import org.forgerock.openam.session.service.access.persistence.InternalSessionStore;
 import org.forgerock.openam.shared.concurrency.ThreadMonitor;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
@@ -94,4 +99,80 @@ public class SessionAccessManagerTest {
         // Then
         verify(sessionStore).remove(mockSessionID);
     }
+
+    @Test
+    public void shouldPersistUpdatesImmediatelyByDefault() throws Exception {
+        // Given
+        given(mockInternalSession.isStored()).willReturn(true);
+
+        // When
+        sessionAccessManager.beginUnitOfWork();
+        sessionAccessManager.notifyUpdate(mockInternalSession);
+        sessionAccessManager.notifyUpdate(mockInternalSession);
+        sessionAccessManager.endUnitOfWork();
+
+        // Then
+        verify(sessionStore, times(2)).store(mockInternalSession);
+        assertThat(sessionAccessManager.getCoalescedUpdateCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldPersistUpdatesOnceAtEndOfUnitOfWork() throws Exception {
+        // Given
+        SessionAccessManager coalescing = coalescingSessionAccessManager();
+        given(mockInternalSession.isStored()).willReturn(true);
+
+        // When
+        coalescing.beginUnitOfWork();
+        coalescing.beginUnitOfWork();
+        coalescing.notifyUpdate(mockInternalSession);
+        coalescing.notifyUpdate(mockInternalSession);
+        coalescing.endUnitOfWork();
+        verify(sessionStore, never()).store(any(InternalSession.class));
+        coalescing.notifyUpdate(mockInternalSession);
+        coalescing.endUnitOfWork();
+
+        // Then
+        verify(sessionStore, times(1)).store(mockInternalSession);
+        assertThat(coalescing.getCoalescedUpdateCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldPersistUpdatesOutsideUnitOfWorkImmediately() throws Exception {
+        // Given
+        SessionAccessManager coalescing = coalescingSessionAccessManager();
+        given(mockInternalSession.isStored()).willReturn(true);
+
+        // When
+        coalescing.notifyUpdate(mockInternalSession);
+
+        // Then
+        verify(sessionStore).store(mockInternalSession);
+    }
+
+    @Test
+    public void shouldPersistDelayedUpdatesFromTimer() throws Exception {
+        // Given
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        SessionAccessManager coalescing = new SessionAccessManager(mockDebug, mock(SessionCache.class),
+                mock(MonitoringOperations.class), scheduler, mock(ThreadMonitor.class), sessionStore, true, 0);
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(timer.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        given(mockInternalSession.isStored()).willReturn(true);
+        coalescing.beginUnitOfWork();
+        coalescing.notifyUpdate(mockInternalSession);
+
+        // When
+        timer.getValue().run();
+        coalescing.endUnitOfWork();
+
+        // Then
+        verify(sessionStore, times(1)).store(mockInternalSession);
+        assertThat(coalescing.getDelayedUpdateCount()).isEqualTo(1);
+    }
+
+    private SessionAccessManager coalescingSessionAccessManager() {
+        return new SessionAccessManager(mockDebug, mock(SessionCache.class), mock(MonitoringOperations.class),
+                mock(ScheduledExecutorService.class), mock(ThreadMonitor.class), sessionStore, true, 1000);
+    }
 }
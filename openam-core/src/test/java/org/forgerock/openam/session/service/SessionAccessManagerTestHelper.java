@@ -0,0 +1,52 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.session.service;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.forgerock.openam.session.SessionCache;
+import org.forgerock.openam.session.service.access.persistence.InternalSessionStore;
+import org.forgerock.openam.shared.concurrency.ThreadMonitor;
+
+import com.iplanet.dpro.session.service.MonitoringOperations;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Test helper class creating {@link SessionAccessManager} instances for the tests of other packages, without opening
+ * up its constructors.
+ *
+ * @since 14.0.0
+ */
+public final class SessionAccessManagerTestHelper {
+
+    private SessionAccessManagerTestHelper() {
+    }
+
+    /**
+     * Creates a session access manager which coalesces the session updates made during a unit of work, with mocked
+     * collaborators and a timer which never runs.
+     *
+     * @param store The store the sessions are persisted to.
+     * @return The session access manager.
+     */
+    public static SessionAccessManager coalescingSessionAccessManager(InternalSessionStore store) {
+        return new SessionAccessManager(mock(Debug.class), mock(SessionCache.class), mock(MonitoringOperations.class),
+                mock(ScheduledExecutorService.class), mock(ThreadMonitor.class), store, true, 1000);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.session.service.access;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.api.fields.SessionTokenField;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.continuous.ChangeType;
+import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.session.SessionEventType;
+import org.forgerock.openam.session.service.access.persistence.SessionPersistenceStore;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.utils.Time;
+import org.forgerock.openam.utils.TimeUtils;
+import org.forgerock.opendj.ldap.GeneralizedTime;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.iplanet.dpro.session.SessionException;
+import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.service.InternalSession;
+import com.iplanet.dpro.session.service.InternalSessionEvent;
+import com.sun.identity.shared.debug.Debug;
+
+public class SessionCountIndexTest {
+
+    private static final String UUID = "id=demo,ou=user,dc=openam,dc=forgerock,dc=org";
+
+    @Mock
+    private Debug debug;
+    @Mock
+    private SessionPersistenceStore sessionPersistenceStore;
+    @Mock
+    private CTSPersistentStore coreTokenService;
+    @Mock
+    private TokenIdFactory tokenIdFactory;
+    @Mock
+    private CoreTokenConfig coreTokenConfig;
+
+    private SessionCountIndex index;
+
+    @BeforeMethod
+    public void setup() throws SessionException {
+        MockitoAnnotations.initMocks(this);
+        Map<String, Long> sessions = new HashMap<>();
+        sessions.put("existing", Long.MAX_VALUE);
+        given(sessionPersistenceStore.getAllSessionsByUUID(UUID)).willReturn(sessions);
+        given(tokenIdFactory.toSessionTokenId(any(SessionID.class))).willAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return "token-" + invocation.getArguments()[0];
+            }
+        });
+        index = new SessionCountIndex(debug, sessionPersistenceStore, coreTokenService, tokenIdFactory,
+                coreTokenConfig, true, 100, 60);
+    }
+
+    @Test
+    public void shouldOnlySearchTheCTSOnceForAUser() throws SessionException {
+        assertThat(index.getSessionCount(UUID)).isEqualTo(1);
+        assertThat(index.getSessionCount(UUID)).isEqualTo(1);
+
+        verify(sessionPersistenceStore, times(1)).getAllSessionsByUUID(UUID);
+        assertThat(index.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldApplyLocalSessionEventsToTheIndex() throws SessionException {
+        index.getAllSessionsByUUID(UUID);
+
+        index.onEvent(new InternalSessionEvent(session("created"), SessionEventType.SESSION_CREATION));
+        assertThat(index.getAllSessionsByUUID(UUID)).containsKeys("existing", "created");
+
+        index.onEvent(new InternalSessionEvent(session("existing"), SessionEventType.DESTROY));
+        assertThat(index.getAllSessionsByUUID(UUID)).containsOnlyKeys("created");
+        verify(sessionPersistenceStore, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldSearchTheCTSWhenTheIndexCannotBeNotified() throws Exception {
+        Mockito.doThrow(new CoreTokenException("unsupported")).when(coreTokenService)
+                .addContinuousQueryListener(any(ContinuousQueryListener.class), any(TokenFilter.class));
+
+        index.getAllSessionsByUUID(UUID);
+        index.getAllSessionsByUUID(UUID);
+
+        verify(sessionPersistenceStore, times(2)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldNotIndexSessionsWhenDisabled() throws SessionException {
+        index = new SessionCountIndex(debug, sessionPersistenceStore, coreTokenService, tokenIdFactory,
+                coreTokenConfig, false, 100, 60);
+
+        index.getAllSessionsByUUID(UUID);
+        index.getAllSessionsByUUID(UUID);
+
+        verify(sessionPersistenceStore, times(2)).getAllSessionsByUUID(UUID);
+        assertThat(index.getIndexedUserCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountSessionRefreshedAfterItsIdleDeadline() throws SessionException {
+        index.getAllSessionsByUUID(UUID);
+        InternalSession session = session("refreshed");
+        given(session.getExpirationTime(MILLISECONDS)).willReturn(Time.currentTimeMillis() - 1000);
+
+        // the idle deadline known when the session was created has passed, but the session has since been refreshed
+        // and its token is only deleted once it has expired
+        index.onEvent(new InternalSessionEvent(session, SessionEventType.SESSION_CREATION));
+
+        assertThat(index.getSessionCount(UUID)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRefreshExpirationTimeWhenSessionTokenIsModified() throws Exception {
+        index.getAllSessionsByUUID(UUID);
+        index.onEvent(new InternalSessionEvent(session("created"), SessionEventType.SESSION_CREATION));
+        long expiry = MILLISECONDS.toSeconds(Time.currentTimeMillis()) + 600;
+        Map<String, Object> changeSet = new HashMap<>();
+        changeSet.put(CoreTokenField.USER_ID.toString(), UUID);
+        changeSet.put(SessionTokenField.SESSION_ID.getField().toString(), "created");
+        changeSet.put(CoreTokenField.EXPIRY_DATE.toString(),
+                GeneralizedTime.valueOf(TimeUtils.fromUnixTime(expiry)).toString());
+
+        captureListener().objectChanged("token-created", changeSet, ChangeType.MODIFY);
+
+        assertThat(index.getAllSessionsByUUID(UUID)).containsEntry("created", expiry);
+        assertThat(index.getInvalidationCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRemoveSessionWhoseTokenIsDeleted() throws Exception {
+        index.getAllSessionsByUUID(UUID);
+        index.onEvent(new InternalSessionEvent(session("created"), SessionEventType.SESSION_CREATION));
+
+        captureListener().objectChanged("token-created", null, ChangeType.DELETE);
+
+        assertThat(index.getAllSessionsByUUID(UUID)).containsOnlyKeys("existing");
+        verify(sessionPersistenceStore, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldCountTimedOutSessionUntilItsTokenIsDeleted() throws Exception {
+        index.getAllSessionsByUUID(UUID);
+        index.onEvent(new InternalSessionEvent(session("idle"), SessionEventType.SESSION_CREATION));
+        index.onEvent(new InternalSessionEvent(session("max"), SessionEventType.SESSION_CREATION));
+
+        index.onEvent(new InternalSessionEvent(session("idle"), SessionEventType.IDLE_TIMEOUT));
+        index.onEvent(new InternalSessionEvent(session("max"), SessionEventType.MAX_TIMEOUT));
+        assertThat(index.getAllSessionsByUUID(UUID)).containsOnlyKeys("existing", "idle", "max");
+
+        captureListener().objectChanged("token-idle", null, ChangeType.DELETE);
+        captureListener().objectChanged("token-max", null, ChangeType.DELETE);
+        assertThat(index.getAllSessionsByUUID(UUID)).containsOnlyKeys("existing");
+        verify(sessionPersistenceStore, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ContinuousQueryListener<Object> captureListener() throws Exception {
+        ArgumentCaptor<ContinuousQueryListener> captor = ArgumentCaptor.forClass(ContinuousQueryListener.class);
+        verify(coreTokenService).addContinuousQueryListener(captor.capture(), any(TokenFilter.class));
+        return captor.getValue();
+    }
+
+    private InternalSession session(String sessionId) {
+        InternalSession session = Mockito.mock(InternalSession.class);
+        given(session.getUUID()).willReturn(UUID);
+        given(session.getID()).willReturn(new SessionID(sessionId));
+        given(session.getExpirationTime(MILLISECONDS)).willReturn(Long.MAX_VALUE / 2);
+        return session;
+    }
+}
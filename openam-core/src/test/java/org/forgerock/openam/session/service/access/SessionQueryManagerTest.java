@@ -55,6 +55,8 @@ public class SessionQueryManagerTest {
     private InternalSession internalSession;
     @Mock
     private SessionID sessionID;
+    @Mock
+    private SessionCountIndex sessionCountIndex;
 
 
     private SessionQueryManager sessionQueryManager;
@@ -64,7 +66,7 @@ public class SessionQueryManagerTest {
         MockitoAnnotations.initMocks(this);
         given(actingSession.getState(false)).willReturn(VALID);
         sessionQueryManager = new SessionQueryManager(debug, sessionPersistenceStore,
-                sessionChangeAuthorizer, serviceConfig);
+                sessionChangeAuthorizer, serviceConfig, sessionCountIndex);
     }
 
     @Test
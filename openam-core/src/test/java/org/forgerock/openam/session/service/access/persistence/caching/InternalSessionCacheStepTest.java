@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.session.service.access.persistence.caching;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.session.service.access.persistence.InternalSessionStore;
+import org.forgerock.openam.session.service.access.persistence.SessionPersistenceException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.service.InternalSession;
+
+public class InternalSessionCacheStepTest {
+
+    private InternalSessionCache mockCache;
+    private InternalSessionStore mockNext;
+    private InternalSessionCacheStep step;
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        mockCache = mock(InternalSessionCache.class);
+        mockNext = mock(InternalSessionStore.class);
+        step = new InternalSessionCacheStep(mockCache);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReturnCachedSessionWithoutLoading() throws Exception {
+        // Given
+        SessionID sessionID = new SessionID("session");
+        InternalSession session = mock(InternalSession.class);
+        given(mockCache.getBySessionID(sessionID)).willReturn(session);
+
+        // When
+        InternalSession result = step.getBySessionID(sessionID, mockNext);
+
+        // Then
+        assertThat(result).isSameAs(session);
+        assertThat(step.getLoadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldLoadSessionOnceForConcurrentRequests() throws Exception {
+        // Given
+        final SessionID sessionID = new SessionID("session");
+        final InternalSession session = mock(InternalSession.class);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        given(mockNext.getBySessionID(sessionID)).willAnswer(new Answer<InternalSession>() {
+            @Override
+            public InternalSession answer(InvocationOnMock invocation) throws Throwable {
+                loading.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return session;
+            }
+        });
+        Callable<InternalSession> get = new Callable<InternalSession>() {
+            @Override
+            public InternalSession call() throws Exception {
+                return step.getBySessionID(sessionID, mockNext);
+            }
+        };
+
+        // When
+        Future<InternalSession> first = executor.submit(get);
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        Future<InternalSession> second = executor.submit(get);
+        while (step.getCoalescedLoadCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        // Then
+        assertThat(first.get(10, TimeUnit.SECONDS)).isSameAs(session);
+        assertThat(second.get(10, TimeUnit.SECONDS)).isSameAs(session);
+        verify(mockNext, times(1)).getBySessionID(sessionID);
+        verify(mockCache, times(1)).put(session);
+        assertThat(step.getLoadCount()).isEqualTo(1);
+    }
+
+    @Test(expectedExceptions = SessionPersistenceException.class)
+    public void shouldPropagateLoadFailure() throws Exception {
+        // Given
+        SessionID sessionID = new SessionID("session");
+        given(mockNext.getBySessionID(sessionID)).willThrow(new SessionPersistenceException("failed", null));
+
+        // When
+        step.getBySessionID(sessionID, mockNext);
+    }
+
+    @Test
+    public void shouldRecordSessionsStoredByThisServer() throws Exception {
+        // Given
+        InternalSession session = mock(InternalSession.class);
+
+        // When
+        step.store(session, mockNext);
+
+        // Then
+        verify(mockCache).put(session);
+        verify(mockCache).stored(session);
+        verify(mockNext).store(session);
+    }
+}
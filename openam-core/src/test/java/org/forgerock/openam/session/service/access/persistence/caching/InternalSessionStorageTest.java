@@ -17,10 +17,18 @@
 package org.forgerock.openam.session.service.access.persistence.caching;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
 import java.util.HashSet;
 
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.continuous.ChangeType;
+import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
@@ -29,11 +37,13 @@ import org.testng.annotations.Test;
 import com.iplanet.dpro.session.SessionID;
 import com.iplanet.dpro.session.service.InternalSession;
 import com.iplanet.dpro.session.service.SessionServiceConfig;
+import com.sun.identity.shared.debug.Debug;
 
 public class InternalSessionStorageTest {
     private InternalSession session;
     private SessionID sessionId;
     private InternalSessionStorage cache;
+    private SessionServiceConfig mockConfig;
 
     @BeforeMethod
     public void setup() {
@@ -41,7 +51,7 @@ public class InternalSessionStorageTest {
         sessionId = Mockito.mock(SessionID.class);
         BDDMockito.given(session.getID()).willReturn(sessionId);
 
-        SessionServiceConfig mockConfig = Mockito.mock(SessionServiceConfig.class);
+        mockConfig = Mockito.mock(SessionServiceConfig.class);
         BDDMockito.given(mockConfig.getMaxSessions()).willReturn(10);
         cache = new InternalSessionStorage(mockConfig);
     }
@@ -140,4 +150,115 @@ public class InternalSessionStorageTest {
         assertThat(cache.getByRestrictedID(oldRestriction)).isNull();
         assertThat(cache.getByRestrictedID(newRestriction)).isEqualTo(session);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedSessionWhenBounded() {
+        // Given
+        InternalSessionStorage bounded = new InternalSessionStorage(mockConfig, null, null, null, true, 1, 600, false);
+        BDDMockito.given(session.getSessionHandle()).willReturn("badger");
+        InternalSession other = Mockito.mock(InternalSession.class);
+        SessionID otherId = Mockito.mock(SessionID.class);
+        BDDMockito.given(other.getID()).willReturn(otherId);
+        bounded.put(session);
+
+        // When
+        bounded.put(other);
+
+        // Then
+        assertThat(bounded.getBySessionID(sessionId)).isNull();
+        assertThat(bounded.getByHandle("badger")).isNull();
+        assertThat(bounded.getBySessionID(otherId)).isEqualTo(other);
+        assertThat(bounded.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemoveSessionChangedByAnotherServer() throws Exception {
+        // Given
+        CTSPersistentStore mockCTS = Mockito.mock(CTSPersistentStore.class);
+        InternalSessionStorage coherent = coherentStorage(mockCTS);
+        coherent.put(session);
+        ContinuousQueryListener<Object> listener = captureListener(mockCTS);
+
+        // When
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+
+        // Then
+        assertThat(coherent.getBySessionID(sessionId)).isNull();
+        assertThat(coherent.getInvalidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepSessionChangedByThisServer() throws Exception {
+        // Given
+        CTSPersistentStore mockCTS = Mockito.mock(CTSPersistentStore.class);
+        InternalSessionStorage coherent = coherentStorage(mockCTS);
+        coherent.put(session);
+        ContinuousQueryListener<Object> listener = captureListener(mockCTS);
+        coherent.stored(session);
+
+        // When
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+
+        // Then
+        assertThat(coherent.getBySessionID(sessionId)).isEqualTo(session);
+
+        // When
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+
+        // Then
+        assertThat(coherent.getBySessionID(sessionId)).isNull();
+    }
+
+    @Test
+    public void shouldRemoveSessionChangedByAnotherServerAfterItWasCreated() throws Exception {
+        // Given
+        CTSPersistentStore mockCTS = Mockito.mock(CTSPersistentStore.class);
+        InternalSessionStorage coherent = coherentStorage(mockCTS);
+        coherent.put(session);
+        ContinuousQueryListener<Object> listener = captureListener(mockCTS);
+        coherent.stored(session);
+        listener.objectChanged("token", null, ChangeType.ADD);
+
+        // When
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+
+        // Then
+        assertThat(coherent.getBySessionID(sessionId)).isNull();
+        assertThat(coherent.getInvalidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCountMoreNotificationsThanChangesMadeByThisServer() throws Exception {
+        // Given
+        CTSPersistentStore mockCTS = Mockito.mock(CTSPersistentStore.class);
+        InternalSessionStorage coherent = coherentStorage(mockCTS);
+        coherent.put(session);
+        ContinuousQueryListener<Object> listener = captureListener(mockCTS);
+        coherent.stored(session);
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+        coherent.put(session);
+        coherent.stored(session);
+
+        // When
+        listener.objectChanged("token", null, ChangeType.MODIFY);
+
+        // Then
+        assertThat(coherent.getBySessionID(sessionId)).isEqualTo(session);
+        assertThat(coherent.getInvalidationCount()).isEqualTo(1);
+    }
+
+    private InternalSessionStorage coherentStorage(CTSPersistentStore mockCTS) {
+        TokenIdFactory mockTokenIdFactory = Mockito.mock(TokenIdFactory.class);
+        BDDMockito.given(mockTokenIdFactory.toSessionTokenId(sessionId)).willReturn("token");
+        return new InternalSessionStorage(mockConfig, mockCTS, mockTokenIdFactory, Mockito.mock(Debug.class), false,
+                0, 0, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ContinuousQueryListener<Object> captureListener(CTSPersistentStore mockCTS) throws Exception {
+        ArgumentCaptor<ContinuousQueryListener> captor = ArgumentCaptor.forClass(ContinuousQueryListener.class);
+        verify(mockCTS).addContinuousQueryListener(captor.capture(), any(TokenFilter.class));
+        return captor.getValue();
+    }
+}
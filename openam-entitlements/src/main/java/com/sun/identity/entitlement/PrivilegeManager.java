@@ -374,6 +374,23 @@ public abstract class PrivilegeManager implements IPrivilegeManager<Privilege> {
     protected abstract void notifyPrivilegeChanged(String realm, Privilege previous, Privilege current,
             PolicyEventType eventType) throws EntitlementException;
 
+    /**
+     * Starts a batch of changes, during which the notifications sent to the privilege change listeners are held back
+     * and combined, until the batch is ended with {@link #endBatch()}. The default implementation does not hold back
+     * notifications.
+     */
+    public void beginBatch() {
+    }
+
+    /**
+     * Ends the batch of changes started by {@link #beginBatch()}, sending the notifications held back whilst it was
+     * in progress.
+     *
+     * @throws EntitlementException if the notifications cannot be sent.
+     */
+    public void endBatch() throws EntitlementException {
+    }
+
     public static boolean isNameValid(String target) {
         return PRIVILEGE_NAME_PATTERN.matcher(target).matches();
     }
@@ -31,13 +31,16 @@ package com.sun.identity.entitlement.opensso;
 import static org.forgerock.json.JsonValue.field;
 import static org.forgerock.json.JsonValue.json;
 import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.openam.utils.CollectionUtils.asSet;
 import static org.forgerock.openam.utils.Time.newDate;
 
 import java.security.AccessController;
 import java.security.Principal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -75,6 +78,9 @@ public class PolicyPrivilegeManager extends PrivilegeManager {
     private final NotificationBroker broker;
     private final NotificationsConfig notificationsConfig;
 
+    private Map<String, Set<String>> batchedResourceNames;
+    private Map<String, Set<String>> batchedPrivilegeNames;
+
     static {
         SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
         dsameUserSubject = SubjectUtils.createSubject(adminToken);
@@ -309,7 +315,64 @@ public class PolicyPrivilegeManager extends PrivilegeManager {
             broker.publish(Topic.of("/agent/policy"), json);
         }
 
+        if (batchedResourceNames != null) {
+            addToBatch(batchedResourceNames, applicationName, resourceNames);
+            addToBatch(batchedPrivilegeNames, applicationName, asSet(current.getName()));
+            return;
+        }
+
         PrivilegeChangeNotifier.getInstance().notify(getAdminSubject(), realm,
                 applicationName, current.getName(), resourceNames);
     }
+
+    /**
+     * Starts a batch of changes, during which the notifications sent to the privilege change listeners are combined
+     * into a single notification per application.
+     */
+    @Override
+    public void beginBatch() {
+        if (batchedResourceNames == null) {
+            batchedResourceNames = new HashMap<String, Set<String>>();
+            batchedPrivilegeNames = new HashMap<String, Set<String>>();
+        }
+    }
+
+    /**
+     * Ends the batch of changes, sending a single notification per application to the privilege change listeners.
+     * The policy name is only given when a single policy of the application was changed.
+     */
+    @Override
+    public void endBatch() throws EntitlementException {
+        Map<String, Set<String>> resourceNames = batchedResourceNames;
+        Map<String, Set<String>> privilegeNames = batchedPrivilegeNames;
+        batchedResourceNames = null;
+        batchedPrivilegeNames = null;
+
+        if (resourceNames == null) {
+            return;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : resourceNames.entrySet()) {
+            String applicationName = entry.getKey();
+            Set<String> names = privilegeNames.get(applicationName);
+            String privilegeName = names.size() == 1 ? names.iterator().next() : null;
+
+            if (PrivilegeManager.debug.messageEnabled()) {
+                PrivilegeManager.debug.message("PolicyPrivilegeManager.endBatch():"
+                        + "applicationName=" + applicationName + ", policies=" + names.size());
+            }
+
+            PrivilegeChangeNotifier.getInstance().notify(getAdminSubject(), getRealm(),
+                    applicationName, privilegeName, entry.getValue());
+        }
+    }
+
+    private void addToBatch(Map<String, Set<String>> batch, String applicationName, Set<String> values) {
+        Set<String> batched = batch.get(applicationName);
+        if (batched == null) {
+            batched = new HashSet<String>();
+            batch.put(applicationName, batched);
+        }
+        batched.addAll(values);
+    }
 }
@@ -24,18 +24,23 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.security.auth.Subject;
 
+import org.forgerock.guice.core.InjectorHolder;
 import org.forgerock.openam.entitlement.service.ApplicationService;
 import org.forgerock.openam.entitlement.service.ApplicationServiceFactory;
+import org.forgerock.openam.entitlement.indextree.IndexTreeService;
 import org.forgerock.openam.entitlement.service.ResourceTypeService;
 import org.forgerock.openam.xacml.v3.ImportStep;
 import org.forgerock.openam.xacml.v3.PersistableImportStep;
 import org.forgerock.openam.xacml.v3.ImportStepGenerator;
+import org.forgerock.util.thread.ExecutorServiceFactory;
 
+import com.iplanet.am.util.SystemProperties;
 import com.sun.identity.entitlement.EntitlementException;
 import com.sun.identity.entitlement.Privilege;
 import com.sun.identity.entitlement.PrivilegeManager;
@@ -54,6 +59,18 @@ public class XACMLExportImport {
 
     public static final String PREFIX = XACMLExportImport.class.getSimpleName();
 
+    /**
+     * System property defining the number of threads validating the policies of a bulk import.
+     */
+    public static final String BULK_IMPORT_THREADS = "org.forgerock.openam.xacml.import.bulk.threads";
+    /**
+     * System property defining the number of import steps applied by a bulk import between change notifications.
+     */
+    public static final String BULK_IMPORT_BATCH_SIZE = "org.forgerock.openam.xacml.import.bulk.batch.size";
+
+    private static final int DEFAULT_BULK_IMPORT_BATCH_SIZE = 100;
+    private static final String BULK_IMPORT_THREAD_POOL_NAME = "XACMLBulkImport";
+
     // Injected
     private final XACMLReaderWriter xacmlReaderWriter;
     private final SearchFilterFactory searchFilterFactory;
@@ -62,6 +79,32 @@ public class XACMLExportImport {
     private final PrivilegeManagerFactory privilegeManagerFactory;
     private final ApplicationServiceFactory applicationServiceFactory;
     private final ResourceTypeService resourceTypeService;
+    private final IndexTreeService indexTreeService;
+    private final ExecutorServiceFactory executorServiceFactory;
+
+    /**
+     * Creates an instance of the XACMLExportImport with dependencies provided, for use where the policy index tree is
+     * not held, such as the command line tools.
+     *
+     * @param privilegeManagerFactory Non null, required to create PrivilegeManager instances.
+     * @param xacmlReaderWriter Non null, required for translating privileges to/from XACML XML.
+     * @param privilegeValidator Non null, required for validation of imported privileges.
+     * @param searchFilterFactory Non null, required for SearchFilter operations.
+     * @param debug Non null.
+     * @param applicationServiceFactory Application service factory responsible for creating the application service.
+     * @param resourceTypeService Resource type service responsible for creating resource types.
+     */
+    public XACMLExportImport(PrivilegeManagerFactory privilegeManagerFactory,
+            XACMLReaderWriter xacmlReaderWriter,
+            PrivilegeValidator privilegeValidator,
+            SearchFilterFactory searchFilterFactory,
+            Debug debug,
+            ApplicationServiceFactory applicationServiceFactory,
+            ResourceTypeService resourceTypeService) {
+        this(privilegeManagerFactory, xacmlReaderWriter, privilegeValidator, searchFilterFactory, debug,
+                applicationServiceFactory, resourceTypeService, null,
+                InjectorHolder.getInstance(ExecutorServiceFactory.class));
+    }
 
     /**
      * Creates an instance of the XACMLExportImport with dependencies provided.
@@ -73,6 +116,8 @@ public class XACMLExportImport {
      * @param debug Non null.
      * @param applicationServiceFactory Application service factory responsible for creating the application service.
      * @param resourceTypeService Resource type service responsible for creating resource types.
+     * @param indexTreeService Policy index tree, rebuilt once at the end of a bulk import. May be null.
+     * @param executorServiceFactory Non null, creates the threads validating the policies of a bulk import.
      */
     @Inject
     public XACMLExportImport(PrivilegeManagerFactory privilegeManagerFactory,
@@ -81,7 +126,9 @@ public class XACMLExportImport {
             SearchFilterFactory searchFilterFactory,
             @Named(XACMLConstants.DEBUG) Debug debug,
             ApplicationServiceFactory applicationServiceFactory,
-            ResourceTypeService resourceTypeService) {
+            ResourceTypeService resourceTypeService,
+            IndexTreeService indexTreeService,
+            ExecutorServiceFactory executorServiceFactory) {
         this.privilegeManagerFactory = privilegeManagerFactory;
         this.xacmlReaderWriter = xacmlReaderWriter;
         this.searchFilterFactory = searchFilterFactory;
@@ -89,6 +136,8 @@ public class XACMLExportImport {
         this.debug = debug;
         this.applicationServiceFactory = applicationServiceFactory;
         this.resourceTypeService = resourceTypeService;
+        this.indexTreeService = indexTreeService;
+        this.executorServiceFactory = executorServiceFactory;
     }
 
     /**
@@ -103,9 +152,47 @@ public class XACMLExportImport {
      */
     public List<ImportStep> importXacml(String realm, InputStream xacml, Subject admin, boolean dryRun)
             throws EntitlementException {
+        return importXacml(realm, xacml, admin, dryRun, false);
+    }
+
+    /**
+     * Performs the Import based on the given Stream. The stream must contain XML in XACML.
+     * <p>
+     * A bulk import validates the policies in parallel, and applies the import steps in batches: the notifications
+     * sent to the privilege change listeners are combined per batch, and the policy index tree of the realm is not
+     * updated for each policy but rebuilt once the import is complete.
+     *
+     * @param realm Non null Realm to populate with the Policies.
+     * @param xacml Non null stream to read.
+     * @param admin Non null admin Subject.
+     * @param dryRun boolean flag, indicating import steps should be reported but not applied.
+     * @param bulk boolean flag, indicating the import should be carried out as a bulk import.
+     * @return The sequence steps that could or have been used to carry out the import.
+     * @throws EntitlementException If there was any unexpected error.
+     */
+    public List<ImportStep> importXacml(String realm, InputStream xacml, Subject admin, boolean dryRun,
+            boolean bulk) throws EntitlementException {
         PrivilegeSet privilegeSet = xacmlToPrivilegeSet(xacml);
-        List<PersistableImportStep> importSteps = generateImportSteps(realm, privilegeSet, admin);
-        applyIfRequired(dryRun, importSteps);
+        PrivilegeManager privilegeManager = privilegeManagerFactory.createReferralPrivilegeManager(realm, admin);
+        List<PersistableImportStep> importSteps;
+
+        if (bulk) {
+            ExecutorService validationExecutor = executorServiceFactory.createFixedThreadPool(
+                    Math.max(1, SystemProperties.getAsInt(BULK_IMPORT_THREADS,
+                            Runtime.getRuntime().availableProcessors())),
+                    BULK_IMPORT_THREAD_POOL_NAME);
+            try {
+                importSteps = generateImportSteps(realm, privilegeSet, admin, privilegeManager, validationExecutor);
+            } finally {
+                validationExecutor.shutdownNow();
+            }
+            if (!dryRun) {
+                applyInBatches(realm, privilegeManager, importSteps);
+            }
+        } else {
+            importSteps = generateImportSteps(realm, privilegeSet, admin, privilegeManager, null);
+            applyIfRequired(dryRun, importSteps);
+        }
 
         return new ArrayList<ImportStep>(importSteps);
     }
@@ -120,20 +207,21 @@ public class XACMLExportImport {
      * @param realm Non null Realm to populate with the Policies.
      * @param privilegeSet Non null, collection of Privileges, ReferralPrivileges etc. to import.
      * @param admin Non null admin Subject.
+     * @param privilegeManager Non null, the manager the privileges are imported through.
+     * @param validationExecutor Executor validating the privileges in parallel, or null to validate them in turn.
      * @return The sequence steps that can be used to carry out the import.
      * @throws EntitlementException If there was any unexpected error.
      */
-    private List<PersistableImportStep> generateImportSteps(String realm, PrivilegeSet privilegeSet, Subject admin)
-            throws EntitlementException {
+    private List<PersistableImportStep> generateImportSteps(String realm, PrivilegeSet privilegeSet, Subject admin,
+            PrivilegeManager privilegeManager, ExecutorService validationExecutor) throws EntitlementException {
         ApplicationService applicationService = applicationServiceFactory.create(admin, realm);
-        PrivilegeManager privilegeManager = privilegeManagerFactory.createReferralPrivilegeManager(realm, admin);
         ApplicationTypeService applicationTypeService = new ApplicationTypeService();
 
         ImportStepGenerator importStepGenerator = new ImportStepGenerator(applicationService,
                 resourceTypeService, privilegeManager, privilegeValidator, applicationTypeService,
                 realm, admin, privilegeSet);
 
-        importStepGenerator.generateImportSteps();
+        importStepGenerator.generateImportSteps(validationExecutor);
 
         return importStepGenerator.getAllImportSteps();
     }
@@ -152,6 +240,85 @@ public class XACMLExportImport {
         }
     }
 
+    private void applyInBatches(String realm, PrivilegeManager privilegeManager,
+            List<PersistableImportStep> importSteps) throws EntitlementException {
+        int batchSize = Math.max(1, SystemProperties.getAsInt(BULK_IMPORT_BATCH_SIZE, DEFAULT_BULK_IMPORT_BATCH_SIZE));
+        long start = System.currentTimeMillis();
+        message("Import: Policies to Import {0} in batches of {1}", importSteps.size(), batchSize);
+
+        if (indexTreeService != null) {
+            indexTreeService.suspendUpdates(realm);
+        }
+        boolean imported = false;
+        try {
+            int applied = 0;
+            boolean allApplied = false;
+            privilegeManager.beginBatch();
+            try {
+                for (PersistableImportStep importStep : importSteps) {
+                    importStep.apply();
+                    applied++;
+
+                    if (applied % batchSize == 0) {
+                        privilegeManager.endBatch();
+                        progress(applied, importSteps.size(), start);
+                        privilegeManager.beginBatch();
+                    }
+                }
+                allApplied = true;
+            } finally {
+                // Notify the listeners of whatever was applied, even if the import failed part way through.
+                if (allApplied) {
+                    privilegeManager.endBatch();
+                } else {
+                    endBatchAfterFailure(privilegeManager);
+                }
+            }
+            progress(applied, importSteps.size(), start);
+            imported = true;
+        } finally {
+            if (indexTreeService != null) {
+                if (imported) {
+                    indexTreeService.resumeUpdates(realm);
+                } else {
+                    resumeUpdatesAfterFailure(realm);
+                }
+            }
+        }
+
+        message("Import: Complete in {0}ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Ends the batch of a failed import, logging rather than throwing any failure so that the failure of the import
+     * is the one reported.
+     */
+    private void endBatchAfterFailure(PrivilegeManager privilegeManager) {
+        try {
+            privilegeManager.endBatch();
+        } catch (EntitlementException | RuntimeException e) {
+            debug.error(PREFIX + "Import: Unable to notify the changes applied before the import failed", e);
+        }
+    }
+
+    /**
+     * Resumes the index updates of the realm of a failed import, logging rather than throwing any failure so that the
+     * failure of the import is the one reported.
+     */
+    private void resumeUpdatesAfterFailure(String realm) {
+        try {
+            indexTreeService.resumeUpdates(realm);
+        } catch (EntitlementException | RuntimeException e) {
+            debug.error(PREFIX + "Import: Unable to rebuild the policy index tree of realm " + realm
+                    + " after the import failed", e);
+        }
+    }
+
+    private void progress(int applied, int total, long start) {
+        message("Import: Applied {0} of {1} steps ({2}%) in {3}ms", applied, total,
+                total == 0 ? 100 : applied * 100 / total, System.currentTimeMillis() - start);
+    }
+
     /**
      * Performs an export of all Policies found in the Privilege Manager that match the
      * provided filters.
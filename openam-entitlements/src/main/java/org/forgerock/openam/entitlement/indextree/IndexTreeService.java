@@ -12,6 +12,7 @@
  * information: "Portions copyright [year] [name of copyright owner]".
  *
  * Copyright 2013 ForgeRock Inc.
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 package org.forgerock.openam.entitlement.indextree;
 
@@ -39,4 +40,26 @@ public interface IndexTreeService {
      */
     public Set<String> searchTree(String resource, String realm) throws EntitlementException;
 
+    /**
+     * Stops applying policy path index changes to the tree of the specified realm, for example whilst a large number
+     * of policies are imported. Calls may be nested, the tree is updated again once each call has been matched with a
+     * call to {@link #resumeUpdates(String)}.
+     *
+     * @param realm
+     *         The realm whose tree is no longer to be updated.
+     */
+    public void suspendUpdates(String realm);
+
+    /**
+     * Resumes applying policy path index changes to the tree of the specified realm, rebuilding the tree once from the
+     * policy path indexes held against the realm so that the changes made whilst suspended are taken into account.
+     * Changes notified before the tree is rebuilt are not applied to the rebuilt tree.
+     *
+     * @param realm
+     *         The realm whose tree is to be updated again.
+     * @throws EntitlementException
+     *         When an error occurs reading policy data.
+     */
+    public void resumeUpdates(String realm) throws EntitlementException;
+
 }
@@ -59,6 +59,8 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
             "ou=default,ou=OrganizationConfig,ou=1.0,ou=sunEntitlementIndexes,ou=services,%s";
 
     private final ConcurrentMap<String, IndexRuleTree> indexTreeCache;
+    private final ConcurrentMap<String, Integer> suspendedRealms;
+    private final ConcurrentMap<String, Long> rebuildSequences;
 
     private final IndexChangeManager manager;
     private final PrivilegedAction<SSOToken> adminAction;
@@ -76,6 +78,8 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
         this.dnMapper = dnMapper;
 
         indexTreeCache = new ConcurrentHashMap<String, IndexRuleTree>();
+        suspendedRealms = new ConcurrentHashMap<String, Integer>();
+        rebuildSequences = new ConcurrentHashMap<String, Long>();
 
         // Register to the shutdown to clean up appropriate resources.
         shutdownManager.addShutdownListener(this);
@@ -102,6 +106,57 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
         return results;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void suspendUpdates(String realm) {
+        synchronized (suspendedRealms) {
+            Integer suspensions = suspendedRealms.get(realm);
+            suspendedRealms.put(realm, suspensions == null ? 1 : suspensions + 1);
+        }
+
+        if (DEBUG.messageEnabled()) {
+            DEBUG.message(String.format("Policy path index updates suspended for realm '%s'.", realm));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void resumeUpdates(String realm) throws EntitlementException {
+        synchronized (suspendedRealms) {
+            Integer suspensions = suspendedRealms.get(realm);
+
+            if (suspensions == null) {
+                return;
+            }
+
+            if (suspensions > 1) {
+                suspendedRealms.put(realm, suspensions - 1);
+                return;
+            }
+
+            suspendedRealms.remove(realm);
+        }
+
+        synchronized (indexTreeCache) {
+            // Changes made whilst suspended have not been applied, replace the tree with one read afresh.
+            // Changes notified before the tree is read are part of it, and must not be applied to it again.
+            long rebuildSequence = IndexChangeEvent.currentSequence();
+            indexTreeCache.remove(realm);
+            IndexRuleTree indexTree = createAndPopulateTree(realm);
+
+            if (indexTree != null) {
+                rebuildSequences.put(realm, rebuildSequence);
+                indexTreeCache.put(realm, indexTree);
+            }
+        }
+
+        if (DEBUG.messageEnabled()) {
+            DEBUG.message(String.format("Policy path index updates resumed, tree rebuilt for realm '%s'.", realm));
+        }
+    }
+
     /**
      * Retrieves the index rule tree for the given realm.
      *
@@ -197,6 +252,19 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
             ModificationEvent modification = (ModificationEvent)event;
 
             String realm = modification.getRealm();
+
+            if (suspendedRealms.containsKey(realm)) {
+                // The tree is rebuilt once updates are resumed.
+                return;
+            }
+
+            Long rebuildSequence = rebuildSequences.get(realm);
+
+            if (rebuildSequence != null && modification.getSequence() <= rebuildSequence) {
+                // Notified before the tree was rebuilt, the change has been read with the tree.
+                return;
+            }
+
             IndexRuleTree tree = indexTreeCache.get(realm);
 
             if (tree != null) {
@@ -11,10 +11,12 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013 ForgeRock Inc.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.entitlement.indextree.events;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents an event that has occurred as a result of some attempted index change.
  *
@@ -22,10 +24,21 @@ package org.forgerock.openam.entitlement.indextree.events;
  */
 public class IndexChangeEvent {
 
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
     private final EventType type;
+    private final long sequence;
 
     protected IndexChangeEvent(EventType type) {
         this.type = type;
+        this.sequence = SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * @return The sequence of the most recently created event.
+     */
+    public static long currentSequence() {
+        return SEQUENCE.get();
     }
 
     /**
@@ -35,4 +48,11 @@ public class IndexChangeEvent {
         return type;
     }
 
+    /**
+     * @return The order in which the event was created, events created later having a greater sequence.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
 }
@@ -26,6 +26,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.security.auth.Subject;
 
@@ -169,6 +173,19 @@ public class ImportStepGenerator {
      *         when any exceptional case occurs.
      */
     public void generateImportSteps() throws EntitlementException {
+        generateImportSteps(null);
+    }
+
+    /**
+     * Generates Import Steps for Application, ResourceType and Privilege, validating the privileges and looking up
+     * whether they already exist in parallel using the given executor.
+     *
+     * @param validationExecutor
+     *         Executor used to validate the privileges, or null to validate them one by one on the calling thread.
+     * @throws EntitlementException
+     *         when any exceptional case occurs.
+     */
+    public void generateImportSteps(ExecutorService validationExecutor) throws EntitlementException {
         // Resource Types which are not associated with any Applications are not imported.
 
         indexingApplicationsExisting();
@@ -180,7 +197,11 @@ public class ImportStepGenerator {
         generateResourceTypeImportSteps();
         resolveResourceTypeDependencies();
 
-        generatePrivilegeImportSteps();
+        if (validationExecutor == null) {
+            generatePrivilegeImportSteps();
+        } else {
+            generatePrivilegeImportSteps(validationExecutor);
+        }
 
         generateApplicationImportSteps();
     }
@@ -387,6 +408,38 @@ public class ImportStepGenerator {
         }
     }
 
+    private void generatePrivilegeImportSteps(ExecutorService validationExecutor) throws EntitlementException {
+        List<Future<PersistableImportStep>> results = new ArrayList<>();
+        for (final Privilege privilege : privilegeSet.getPrivileges()) {
+            results.add(validationExecutor.submit(new Callable<PersistableImportStep>() {
+                @Override
+                public PersistableImportStep call() throws EntitlementException {
+                    validate(privilege, privilegeValidator);
+                    return newPrivilegeImportStep(privilege, privilegeManager);
+                }
+            }));
+        }
+
+        try {
+            // Steps are collected in the order of the privileges read from the file.
+            for (Future<PersistableImportStep> result : results) {
+                importStepsPrivilege.add(result.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EntitlementException) {
+                throw (EntitlementException) e.getCause();
+            }
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e);
+        } finally {
+            for (Future<PersistableImportStep> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
     private PersistableImportStep newPrivilegeImportStep(Privilege privilege, PrivilegeManager privilegeManager)
             throws EntitlementException {
         if (privilegeManager.canFindByName(privilege.getName())) {
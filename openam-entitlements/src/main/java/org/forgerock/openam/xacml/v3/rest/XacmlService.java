@@ -118,11 +118,13 @@ public class XacmlService extends ServerResource {
     }
 
     /**
-     * Expects to receive XACML formatted XML which will be read and imported.
+     * Expects to receive XACML formatted XML which will be read and imported. Large policy sets can be imported
+     * with the {@code bulk} query parameter set to {@code true}.
      */
     @Post
     public Representation importXACML(Representation entity) {
         boolean dryRun = "true".equalsIgnoreCase(getQuery().getFirstValue("dryrun"));
+        boolean bulk = "true".equalsIgnoreCase(getQuery().getFirstValue("bulk"));
         List<ImportStep> steps;
 
         try {
@@ -132,7 +134,11 @@ public class XacmlService extends ServerResource {
             }
 
             String realm = RestletRealmRouter.getRealmFromRequest(getRequest());
-            steps = importExport.importXacml(realm, entity.getStream(), getAdminToken(), dryRun);
+            if (bulk) {
+                steps = importExport.importXacml(realm, entity.getStream(), getAdminToken(), dryRun, true);
+            } else {
+                steps = importExport.importXacml(realm, entity.getStream(), getAdminToken(), dryRun);
+            }
 
             if (steps.isEmpty()) {
                 throw new ResourceException(new Status(BAD_REQUEST,
@@ -27,6 +27,7 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -39,12 +40,16 @@ import java.util.List;
 import javax.security.auth.Subject;
 
 import org.forgerock.openam.entitlement.ResourceType;
+import org.forgerock.openam.entitlement.indextree.IndexTreeService;
 import org.forgerock.openam.entitlement.service.ApplicationService;
 import org.forgerock.openam.entitlement.service.ApplicationServiceFactory;
 import org.forgerock.openam.entitlement.service.ResourceTypeService;
 import org.forgerock.openam.xacml.v3.DiffStatus;
 import org.forgerock.openam.xacml.v3.ImportStep;
 import org.forgerock.openam.xacml.v3.PersistableImportStep;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+import org.forgerock.util.thread.listener.ShutdownManager;
+import org.mockito.InOrder;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -75,6 +80,7 @@ public class XACMLExportImportTest {
     private ApplicationService applicationService;
     private ApplicationServiceFactory applicationServiceFactory;
     private ResourceTypeService resourceTypeService;
+    private IndexTreeService indexTreeService;
 
     private XACMLExportImport xacmlExportImport;
 
@@ -92,6 +98,7 @@ public class XACMLExportImportTest {
         applicationServiceFactory = mock(ApplicationServiceFactory.class);
         applicationService = mock(ApplicationService.class);
         resourceTypeService = mock(ResourceTypeService.class);
+        indexTreeService = mock(IndexTreeService.class);
         when(applicationServiceFactory.create(any(Subject.class), anyString())).thenReturn(applicationService);
 
         Application application = mock(Application.class);
@@ -104,7 +111,8 @@ public class XACMLExportImportTest {
         // Class under test
 
         xacmlExportImport = new XACMLExportImport(pmFactory, xacmlReaderWriter, validator, searchFilterFactory, debug,
-                applicationServiceFactory, resourceTypeService);
+                applicationServiceFactory, resourceTypeService, indexTreeService,
+                new ExecutorServiceFactory(mock(ShutdownManager.class)));
 
         // Given (shared test state)
 
@@ -173,6 +181,104 @@ public class XACMLExportImportTest {
         verify(pm, times(0)).modify(any(Privilege.class));
     }
 
+    @Test
+    public void canPerformABulkImport() throws Exception {
+        // Given
+        // shared test state
+        Privilege privilegeToUpdate = existing(valid(privilege("p1")));
+        Privilege privilegeToAdd = notExisting(valid(privilege("p2")));
+
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        privilegeSet.addPrivilege(privilegeToUpdate);
+        privilegeSet.addPrivilege(privilegeToAdd);
+
+        given(xacmlReaderWriter.read(eq(NULL_INPUT))).willReturn(privilegeSet);
+
+        // When
+        List<ImportStep> importSteps = xacmlExportImport.importXacml(ROOT_REALM, NULL_INPUT, NULL_SUBJECT, false,
+                true);
+
+        // Then
+        assertThat(importSteps).hasSize(2);
+        assertImportStep(importSteps.get(0), DiffStatus.UPDATE, privilegeToUpdate);
+        assertImportStep(importSteps.get(1), DiffStatus.ADD, privilegeToAdd);
+
+        InOrder inOrder = inOrder(indexTreeService, pm);
+        inOrder.verify(indexTreeService).suspendUpdates(ROOT_REALM);
+        inOrder.verify(pm).beginBatch();
+        inOrder.verify(pm).modify(privilegeToUpdate);
+        inOrder.verify(pm).add(privilegeToAdd);
+        inOrder.verify(pm).endBatch();
+        inOrder.verify(indexTreeService).resumeUpdates(ROOT_REALM);
+    }
+
+    @Test
+    public void resumesIndexUpdatesIfABulkImportFails() throws Exception {
+        // Given
+        // shared test state
+        Privilege privilegeToAdd = notExisting(valid(privilege("p1")));
+
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        privilegeSet.addPrivilege(privilegeToAdd);
+
+        given(xacmlReaderWriter.read(eq(NULL_INPUT))).willReturn(privilegeSet);
+        doThrow(new EntitlementException(EntitlementException.UNABLE_TO_CREATE_POLICY)).when(pm).add(privilegeToAdd);
+
+        // When
+        try {
+            xacmlExportImport.importXacml(ROOT_REALM, NULL_INPUT, NULL_SUBJECT, false, true);
+            fail("Expected import exception");
+        } catch (EntitlementException e) {
+            // Then
+            verify(pm).endBatch();
+            verify(indexTreeService).resumeUpdates(ROOT_REALM);
+        }
+    }
+
+    @Test
+    public void reportsTheImportFailureIfEndingTheBatchAndResumingIndexUpdatesAlsoFail() throws Exception {
+        // Given
+        // shared test state
+        Privilege privilegeToAdd = notExisting(valid(privilege("p1")));
+
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        privilegeSet.addPrivilege(privilegeToAdd);
+
+        given(xacmlReaderWriter.read(eq(NULL_INPUT))).willReturn(privilegeSet);
+        EntitlementException importFailure = new EntitlementException(EntitlementException.UNABLE_TO_CREATE_POLICY);
+        doThrow(importFailure).when(pm).add(privilegeToAdd);
+        doThrow(new EntitlementException(EntitlementException.UNABLE_TO_CREATE_POLICY)).when(pm).endBatch();
+        doThrow(new EntitlementException(52)).when(indexTreeService).resumeUpdates(ROOT_REALM);
+
+        // When
+        try {
+            xacmlExportImport.importXacml(ROOT_REALM, NULL_INPUT, NULL_SUBJECT, false, true);
+            fail("Expected import exception");
+        } catch (EntitlementException e) {
+            // Then
+            assertThat(e).isSameAs(importFailure);
+            verify(pm).endBatch();
+            verify(indexTreeService).resumeUpdates(ROOT_REALM);
+        }
+    }
+
+    @Test(expectedExceptions = EntitlementException.class)
+    public void throwsAnExceptionIfBulkPrivilegeValidationFails() throws EntitlementException {
+        // Given
+        // shared test state
+        Privilege invalidPrivilege = invalid(privilege("p1"));
+        PrivilegeSet set = new PrivilegeSet();
+        set.addPrivilege(invalidPrivilege);
+
+        given(xacmlReaderWriter.read(eq(NULL_INPUT))).willReturn(set);
+
+        // When
+        xacmlExportImport.importXacml(ROOT_REALM, NULL_INPUT, NULL_SUBJECT, true, true);
+
+        // Then
+        fail("Expected validation exception");
+    }
+
     @Test(expectedExceptions = EntitlementException.class)
     public void throwsAnExceptionIfPrivilegeValidationFails() throws EntitlementException {
         // Given
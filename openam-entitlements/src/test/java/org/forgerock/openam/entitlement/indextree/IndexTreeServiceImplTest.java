@@ -29,6 +29,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import org.forgerock.openam.core.DNWrapper;
+import org.forgerock.openam.entitlement.indextree.events.IndexChangeEvent;
+import org.forgerock.openam.entitlement.indextree.events.ModificationEventType;
 import org.forgerock.opendj.ldap.LdapException;
 import org.forgerock.util.thread.listener.ShutdownManager;
 import org.testng.annotations.BeforeMethod;
@@ -255,6 +257,70 @@ public class IndexTreeServiceImplTest {
         assertTrue(results.isEmpty());
     }
 
+    /**
+     * Verifies that changes are not applied to the tree whilst updates are suspended, and that the tree is rebuilt
+     * once when updates are resumed.
+     */
+    @Test
+    public void suspendedUpdatesRebuildTreeOnResume() throws Exception {
+        List<SMSDataEntry> pathIndexes = new ArrayList<SMSDataEntry>();
+        pathIndexes.add(new SMSDataEntry("{dn:somedn,attributeValues:{pathindex:[\"http://www.test.com\"]}}"));
+        List<SMSDataEntry> importedIndexes = new ArrayList<SMSDataEntry>(pathIndexes);
+        importedIndexes.add(new SMSDataEntry("{dn:somedn,attributeValues:{pathindex:[\"http://*.test.com\"]}}"));
+
+        when(dnMapper.orgNameToDN(REALM)).thenReturn(REALM_DN);
+        when(privilegedAction.run()).thenReturn(ssoToken);
+        when(serviceManagementDAO.checkIfEntryExists(SERVICE_DN, ssoToken)).thenReturn(true);
+        when(serviceManagementDAO.search(ssoToken, SERVICE_DN, FILTER, 0, 0, false, false, excludes))
+                .thenReturn(pathIndexes.iterator(), importedIndexes.iterator());
+
+        treeService.searchTree("http://www.test.com", REALM);
+
+        // Changes made whilst suspended are ignored.
+        treeService.suspendUpdates(REALM);
+        treeService.update(ModificationEventType.ADD.createEvent("http://*.test.com", REALM));
+        assertEquals(Collections.singleton("http://www.test.com"), treeService.searchTree("http://www.test.com", REALM));
+
+        // Resuming reads the tree afresh.
+        treeService.resumeUpdates(REALM);
+        verify(serviceManagementDAO, times(2)).search(ssoToken, SERVICE_DN, FILTER, 0, 0, false, false, excludes);
+
+        Set<String> expectedResults = new HashSet<String>();
+        expectedResults.add("http://www.test.com");
+        expectedResults.add("http://*.test.com");
+        assertEquals(expectedResults, treeService.searchTree("http://www.test.com", REALM));
+    }
+
+    /**
+     * Verifies that a change notified before the tree was rebuilt is not applied to the rebuilt tree, whereas a change
+     * notified afterwards is.
+     */
+    @Test
+    public void changesNotifiedBeforeRebuildAreNotAppliedAgain() throws Exception {
+        List<SMSDataEntry> importedIndexes = new ArrayList<SMSDataEntry>();
+        importedIndexes.add(new SMSDataEntry("{dn:somedn,attributeValues:{pathindex:[\"http://*.test.com\"]}}"));
+
+        when(dnMapper.orgNameToDN(REALM)).thenReturn(REALM_DN);
+        when(privilegedAction.run()).thenReturn(ssoToken);
+        when(serviceManagementDAO.checkIfEntryExists(SERVICE_DN, ssoToken)).thenReturn(true);
+        when(serviceManagementDAO.search(ssoToken, SERVICE_DN, FILTER, 0, 0, false, false, excludes))
+                .thenReturn(importedIndexes.iterator());
+
+        treeService.suspendUpdates(REALM);
+        IndexChangeEvent notifiedBeforeRebuild = ModificationEventType.DELETE.createEvent("http://*.test.com", REALM);
+        treeService.resumeUpdates(REALM);
+
+        // The change was read with the rebuilt tree, deleting the index again would drop the imported rule.
+        treeService.update(notifiedBeforeRebuild);
+        assertEquals(Collections.singleton("http://*.test.com"), treeService.searchTree("http://www.test.com", REALM));
+
+        // Later changes are applied.
+        treeService.update(ModificationEventType.ADD.createEvent("http://www.test.com", REALM));
+        Set<String> expectedResults = new HashSet<String>();
+        expectedResults.add("http://www.test.com");
+        expectedResults.add("http://*.test.com");
+        assertEquals(expectedResults, treeService.searchTree("http://www.test.com", REALM));
+    }
 
     /**
      * Verify that shutdown causes any clean up, including the connection being closed.
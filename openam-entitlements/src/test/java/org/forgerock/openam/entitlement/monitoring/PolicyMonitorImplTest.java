@@ -11,7 +11,7 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.entitlement.monitoring;
 
@@ -39,6 +39,8 @@ public class PolicyMonitorImplTest {
     private EvaluationTimingStore selfEvaluationTimingStore;
     private EvaluationTimingStore subtreeEvaluationTimingStore;
     private InternalEvaluationTimingStore internalEvaluationTimingStore;
+    private EvaluationMonitoringStore batchEvaluationMonitoringStore;
+    private EvaluationTimingStore batchEvaluationTimingStore;
 
     private EntitlementConfigurationWrapper mockWrapper = mock(EntitlementConfigurationWrapper.class);
     private Subject mockSubject = new Subject();
@@ -50,10 +52,12 @@ public class PolicyMonitorImplTest {
         selfEvaluationTimingStore = new EvaluationTimingStore(mockWrapper);
         subtreeEvaluationTimingStore = new EvaluationTimingStore(mockWrapper);
         internalEvaluationTimingStore = new InternalEvaluationTimingStore(mockWrapper);
+        batchEvaluationMonitoringStore = new EvaluationMonitoringStore(new RateTimer());
+        batchEvaluationTimingStore = new EvaluationTimingStore(mockWrapper);
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, selfEvaluationMonitoringStore,
                 selfEvaluationTimingStore, subtreeEvaluationMonitoringStore, subtreeEvaluationTimingStore,
-                internalEvaluationTimingStore);
+                internalEvaluationTimingStore, batchEvaluationMonitoringStore, batchEvaluationTimingStore);
     }
 
     @Test
@@ -64,7 +68,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, selfEvaluationMonitoringStore,
                 selfEvaluationTimingStore, mockSubtreeEvaluationMonitoringStore, mockSubtreeEvaluationTimingStore,
-                internalEvaluationTimingStore);
+                internalEvaluationTimingStore, batchEvaluationMonitoringStore, batchEvaluationTimingStore);
 
         //when
         testPolicyMonitor.addEvaluation(1l, null, null, null, mockSubject, PolicyMonitoringType.SUBTREE);
@@ -82,7 +86,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, mockSelfEvaluationMonitoringStore,
                 mockSelfEvaluationTimingStore, subtreeEvaluationMonitoringStore, subtreeEvaluationTimingStore,
-                internalEvaluationTimingStore);
+                internalEvaluationTimingStore, batchEvaluationMonitoringStore, batchEvaluationTimingStore);
 
         //when
         testPolicyMonitor.addEvaluation(1l, null, null, null, mockSubject, PolicyMonitoringType.SELF);
@@ -99,7 +103,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, selfEvaluationMonitoringStore,
                 selfEvaluationTimingStore, subtreeEvaluationMonitoringStore, subtreeEvaluationTimingStore,
-                mockInternalEvaluationTimingStore);
+                mockInternalEvaluationTimingStore, batchEvaluationMonitoringStore, batchEvaluationTimingStore);
 
         //when
         testPolicyMonitor.addEvaluation(null, 1l, null, null, null, mockSubject);
@@ -139,6 +143,21 @@ public class PolicyMonitorImplTest {
         assertEquals(slowest, 100l);
     }
 
+    @Test
+    public void testBatchEvaluationsAreRecordedSeparately() {
+        //given
+        testPolicyMonitor.addEvaluation(5l, null, null, null, mockSubject, PolicyMonitoringType.SELF);
+
+        //when
+        testPolicyMonitor.addBatchEvaluation(40l, 20, null, null, mockSubject);
+        testPolicyMonitor.addBatchEvaluation(20l, 10, null, null, mockSubject);
+
+        //then
+        assertEquals(testPolicyMonitor.getBatchEvaluationCumulativeCount(), 2l);
+        assertEquals(testPolicyMonitor.getAverageBatchEvaluationTime(), 30l);
+        assertEquals(testPolicyMonitor.getEvaluationCumulativeCount(PolicyMonitoringType.SELF), 1l);
+    }
+
     // Executor that runs everything in the calling thread without a pool
     private class CallerRunsExecutor extends AbstractExecutorService {
 
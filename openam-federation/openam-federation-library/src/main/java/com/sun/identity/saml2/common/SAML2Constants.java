@@ -953,6 +953,15 @@ public interface SAML2Constants {
          "com.sun.identity.saml.xmlsig.xmlSigAlgorithm";
     public String DIGEST_ALGORITHM =
          "com.sun.identity.saml.xmlsig.digestAlgorithm";
+    /**
+     * Property name for the maximum number of successfully verified XML signatures remembered, so that a message
+     * received again is not verified twice. The cache is disabled when zero, which is the default.
+     */
+    public String VERIFIED_SIGNATURE_CACHE_SIZE = "org.forgerock.openam.saml2.xmlsig.verifiedSignatureCache.size";
+    /**
+     * Property name for the number of seconds a successfully verified XML signature is remembered for.
+     */
+    public String VERIFIED_SIGNATURE_CACHE_TTL = "org.forgerock.openam.saml2.xmlsig.verifiedSignatureCache.ttl";
     /**
      * Property name for the global default query signature algorithm for RSA keys.
      */
@@ -29,6 +29,7 @@
 package com.sun.identity.saml2.key;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.List;
@@ -40,6 +41,8 @@ import java.security.PublicKey;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.sun.identity.saml2.common.SAML2Utils;
 import org.apache.xml.security.encryption.XMLCipher;
@@ -58,6 +61,8 @@ import com.sun.identity.saml.common.SAMLConstants;
 import com.sun.identity.saml.xmlsig.KeyProvider;
 import com.sun.identity.saml2.jaxb.metadata.XACMLAuthzDecisionQueryDescriptorElement;
 import com.sun.identity.saml2.jaxb.metadata.XACMLPDPDescriptorElement;
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
 import org.forgerock.openam.utils.CollectionUtils;
 import org.forgerock.openam.utils.StringUtils;
 
@@ -75,9 +80,21 @@ public class KeyUtil {
     // value is EncInfo
     protected static Hashtable encHash = new Hashtable();
 
-    // key is EntityID|Role
-    // value is X509Certificate
+    /**
+     * Verification certificates used to be cached here by EntityID|Role.
+     *
+     * @deprecated No longer read nor written: verification certificates are now cached per role descriptor, so that
+     * they are dropped with the metadata they were read from. Kept for the subclasses which refer to it, and still
+     * cleared by {@link #clear()}.
+     */
+    @Deprecated
     protected static Map<String, Set<X509Certificate>> sigHash = new Hashtable<>();
+
+    // key is the partner's RoleDescriptorType, compared by identity. Descriptors are cached per realm and entity by
+    // the metadata cache, and are replaced when the metadata changes, so stale entries are dropped with them.
+    // value is a map of EntityID|Role|Use to the decoded verification X509Certificates
+    private static final Cache<RoleDescriptorType, ConcurrentMap<String, Set<X509Certificate>>> sigCache =
+            CacheBuilder.newBuilder().weakKeys().build();
     
     static {
         try {
@@ -207,15 +224,6 @@ public class KeyUtil {
             String role) {
         String classMethod = "KeyUtil.getVerificationCerts: ";
 
-        // first try to get it from cache
-        String index = entityID.trim() + "|" + role;
-        Set<X509Certificate> certificates = sigHash.get(index);
-        if (certificates != null) {
-            return certificates;
-        }
-
-        certificates = new LinkedHashSet<>(3);
-        // else get it from meta
         if (roleDescriptor == null) {
             SAML2SDKUtils.debug.error(
                 classMethod+
@@ -224,6 +232,25 @@ public class KeyUtil {
             );
             return null;
         }
+
+        // first try to get it from cache
+        String index = entityID.trim() + "|" + role + "|" + SAML2Constants.SIGNING;
+        ConcurrentMap<String, Set<X509Certificate>> descriptorCerts = sigCache.getIfPresent(roleDescriptor);
+        if (descriptorCerts == null) {
+            descriptorCerts = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Set<X509Certificate>> existing =
+                    sigCache.asMap().putIfAbsent(roleDescriptor, descriptorCerts);
+            if (existing != null) {
+                descriptorCerts = existing;
+            }
+        }
+        Set<X509Certificate> certificates = descriptorCerts.get(index);
+        if (certificates != null) {
+            return certificates;
+        }
+
+        certificates = new LinkedHashSet<>(3);
+        // else get it from meta
         List<KeyDescriptorType> keyDescriptors = getKeyDescriptors(roleDescriptor, SAML2Constants.SIGNING);
         if (keyDescriptors.isEmpty()) {
             SAML2SDKUtils.debug.error(
@@ -245,7 +272,8 @@ public class KeyUtil {
             );
             return null;
         }
-        sigHash.put(index, certificates);
+        certificates = Collections.unmodifiableSet(certificates);
+        descriptorCerts.put(index, certificates);
         return certificates;
     }
 
@@ -593,6 +621,7 @@ public class KeyUtil {
      * Clears the cache. This method is called when metadata is updated.
      */
     public static void clear() {
+        sigCache.invalidateAll();
         sigHash.clear();
         encHash.clear();
     }
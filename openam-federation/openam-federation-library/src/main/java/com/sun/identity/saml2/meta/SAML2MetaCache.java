@@ -28,29 +28,63 @@
 
  /*
  * Portions Copyrighted [2010] [ForgeRock AS]
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.saml2.meta;
 
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.openam.ldap.LDAPUtils;
+import org.forgerock.opendj.ldap.DN;
 
 import com.sun.identity.shared.debug.Debug;
 
 import com.sun.identity.saml2.jaxb.entityconfig.EntityConfigElement;
 import com.sun.identity.saml2.jaxb.metadata.EntityDescriptorElement;
-import com.sun.identity.saml2.jaxb.metadataattr.EntityAttributesType;
-import com.sun.identity.saml2.jaxb.metadataattr.EntityAttributesElement;
-import com.sun.identity.saml2.jaxb.metadataattr.ObjectFactory;
 
 /**
  * The <code>SAML2MetaCache</code> provides metadata cache.
+ * <p>
+ * The cached metadata of each realm is held in an immutable snapshot. A change builds a new snapshot of the realm
+ * without holding any lock, and publishes it with a single write, so lookups never lock and see either none or all of
+ * a change. Many entities can be published in a single change with {@link #putAll}, which is used when preloading
+ * metadata.
+ * <p>
+ * Publishing is synchronized with invalidations and with clearing the cache, so that a snapshot built from metadata
+ * read before a change is never published after it: it is built again if another snapshot of the realm was published
+ * meanwhile, and discarded if the realm was invalidated since its metadata was read.
+ * <p>
+ * A change made by another server invalidates only the metadata of the entity or realm which changed, see
+ * {@link #invalidate(String, String)}.
  */
 class SAML2MetaCache
 {
     private static Debug debug = SAML2MetaUtils.debug;
 
-    private static Hashtable descriptorCache = new Hashtable();
-    private static Hashtable configCache = new Hashtable();
+    /** The maximum number of entities whose load time is recorded. */
+    private static final int MAX_LOAD_TIMES = 1000;
+    /** Generation passed to {@link #publish} by changes which are not discarded when their realm is invalidated. */
+    private static final long ANY_GENERATION = -1;
+
+    private static final Object publishLock = new Object();
+    private static final ConcurrentMap<String, RealmEntries> realms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> realmGenerations = new ConcurrentHashMap<>();
+    private static final AtomicLong generation = new AtomicLong();
+    private static final Map<String, Long> loadTimes = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_LOAD_TIMES;
+                }
+            });
 
     private SAML2MetaCache() {
     }
@@ -59,19 +93,19 @@ class SAML2MetaCache
      * Returns the standard metadata entity descriptor under the realm from
      * cache.
      * @param realm The realm under which the entity resides.
-     * @param entityId ID of the entity to be retrieved. 
+     * @param entityId ID of the entity to be retrieved.
      * @return <code>EntityDescriptorElement</code> for the entity or null
-     *         if not found. 
+     *         if not found.
      */
     static EntityDescriptorElement getEntityDescriptor(
             String realm, String entityId) 
     {
-        String cacheKey = buildCacheKey(realm, entityId);
+        RealmEntries entries = realms.get(realm);
         EntityDescriptorElement descriptor =
-	    (EntityDescriptorElement)descriptorCache.get(cacheKey);
+            entries == null ? null : entries.descriptors.get(entityId);
         if (debug.messageEnabled()) {
             debug.message("SAML2MetaCache.getEntityDescriptor: cacheKey = " +
-                          cacheKey + ", found = " + (descriptor != null));
+                          buildCacheKey(realm, entityId) + ", found = " + (descriptor != null));
         }
         return descriptor;
     }
@@ -79,28 +113,32 @@ class SAML2MetaCache
     /**
      * Adds the standard metadata entity descriptor under the realm to cache.
      * @param realm The realm under which the entity resides.
-     * @param entityId ID of the entity to be retrieved. 
-     * @param descriptor <code>EntityDescriptorElement</code> for the entity. 
+     * @param entityId ID of the entity to be added.
+     * @param descriptor <code>EntityDescriptorElement</code> for the entity.
      */
     static void putEntityDescriptor(String realm, String entityId,
             EntityDescriptorElement descriptor)
     {
-        String cacheKey = buildCacheKey(realm, entityId);
         if (descriptor != null) {
             if (debug.messageEnabled()) {
                 debug.message("SAML2MetaCache.putEntityDescriptor: cacheKey = " +
-                    cacheKey);
+                    buildCacheKey(realm, entityId));
             }
-            descriptorCache.put(cacheKey, descriptor);
         } else {
             if (debug.messageEnabled()) {
                 debug.message(
                     "SAML2MetaCache.putEntityDescriptor: delete cacheEey = " +
-                    cacheKey);
+                    buildCacheKey(realm, entityId));
             }
-            descriptorCache.remove(cacheKey);
-            configCache.remove(cacheKey);
         }
+        RealmEntries current;
+        RealmEntries updated;
+        do {
+            current = realms.get(realm);
+            updated = descriptor != null
+                ? RealmEntries.of(current).withDescriptor(entityId, descriptor)
+                : RealmEntries.of(current).without(entityId);
+        } while (!publish(realm, current, updated, ANY_GENERATION));
     }
 
     /**
@@ -113,12 +151,12 @@ class SAML2MetaCache
     static EntityConfigElement getEntityConfig(
             String realm, String entityId)
     {
-        String cacheKey = buildCacheKey(realm, entityId);
+        RealmEntries entries = realms.get(realm);
         EntityConfigElement config =
-	    (EntityConfigElement)configCache.get(cacheKey);
+            entries == null ? null : entries.configs.get(entityId);
         if (debug.messageEnabled()) {
             debug.message("SAML2MetaCache.getEntityConfig: cacheKey = " +
-			  cacheKey + ", found = " + (config != null));
+			  buildCacheKey(realm, entityId) + ", found = " + (config != null));
         }
         return config;
     }
@@ -126,47 +164,339 @@ class SAML2MetaCache
     /**
      * Adds extended entity configuration under the realm to cache.
      * @param realm The realm under which the entity resides.
-     * @param entityId ID of the entity to be retrieved.
+     * @param entityId ID of the entity to be added.
      * @param config <code>EntityConfigElement</code> object for the entity.
      */
     static void putEntityConfig(String realm, String entityId,
         EntityConfigElement config) {
-        String cacheKey = buildCacheKey(realm, entityId);
         if (config != null) {
             if (debug.messageEnabled()) {
                 debug.message("SAML2MetaCache.putEntityConfig: cacheKey = " +
-                    cacheKey);
+                    buildCacheKey(realm, entityId));
             }
-            configCache.put(cacheKey, config);
         } else {
             if (debug.messageEnabled()) {
                 debug.message(
                     "SAML2MetaCache.putEntityConfig: delete cacheKey = " +
-                    cacheKey);
+                    buildCacheKey(realm, entityId));
+            }
+        }
+        RealmEntries current;
+        RealmEntries updated;
+        do {
+            current = realms.get(realm);
+            updated = RealmEntries.of(current).withConfig(entityId, config);
+        } while (!publish(realm, current, updated, ANY_GENERATION));
+    }
+
+    /**
+     * Adds the descriptors and configurations of many entities under the realm to cache in a single change, so that
+     * readers see either none or all of them. Nothing is added if the realm has been invalidated since the metadata
+     * was read, as it may then be stale.
+     * @param realm The realm under which the entities reside.
+     * @param descriptors <code>EntityDescriptorElement</code>s keyed by entity ID.
+     * @param configs <code>EntityConfigElement</code>s keyed by entity ID.
+     * @param readGeneration The value of {@link #getGeneration(String)} before the metadata was read.
+     * @return true if the entities were added.
+     */
+    static boolean putAll(String realm, Map<String, EntityDescriptorElement> descriptors,
+            Map<String, EntityConfigElement> configs, long readGeneration) {
+        RealmEntries current;
+        RealmEntries updated;
+        do {
+            if (getGeneration(realm) != readGeneration) {
+                if (debug.messageEnabled()) {
+                    debug.message("SAML2MetaCache.putAll: realm " + realm + " invalidated while reading it, "
+                            + "discarding " + descriptors.size() + " entities");
+                }
+                return false;
             }
-            configCache.remove(cacheKey);
+            current = realms.get(realm);
+            updated = RealmEntries.of(current).withAll(descriptors, configs);
+        } while (!publish(realm, current, updated, readGeneration));
+        if (debug.messageEnabled()) {
+            debug.message("SAML2MetaCache.putAll: realm = " + realm + ", descriptors = " + descriptors.size()
+                    + ", configs = " + configs.size());
         }
+        return true;
     }
 
     /**
-     * Clears cache completely.
+     * Returns a counter which changes every time the metadata of the realm is invalidated, or the cache is cleared.
+     * @param realm The realm.
+     * @return The current generation of the realm.
+     */
+    static long getGeneration(String realm) {
+        AtomicLong realmGeneration = realmGenerations.get(generationKey(realm));
+        return generation.get() + (realmGeneration == null ? 0 : realmGeneration.get());
+    }
+
+    /**
+     * Records how long the entity took to be read from the configuration store and unmarshalled. Only the most
+     * recently loaded entities are kept.
+     * @param realm The realm under which the entity resides.
+     * @param entityId ID of the entity.
+     * @param millis Load time in milliseconds.
+     */
+    static void recordLoadTime(String realm, String entityId, long millis) {
+        loadTimes.put(buildCacheKey(realm, entityId), millis);
+    }
+
+    /**
+     * Returns the most recent load time, in milliseconds, of the entities most recently read from the configuration
+     * store.
+     * @return Load times keyed by <code>realm//entityId</code>.
+     */
+    static Map<String, Long> getLoadTimes() {
+        synchronized (loadTimes) {
+            return Collections.unmodifiableMap(new HashMap<>(loadTimes));
+        }
+    }
+
+    /**
+     * Removes from the cache the metadata changed by a configuration change event. Only the entity is removed if it
+     * can be identified, or else the whole realm. The whole cache is cleared if the realm cannot be identified.
+     * @param realm The realm, or the DN of the organization, whose metadata changed.
+     * @param configName The name of the changed configuration, which is the ID of the entity if a single entity
+     *                   changed.
+     */
+    static void invalidate(String realm, String configName) {
+        String realmName = toRealmName(realm);
+        if (realmName == null) {
+            clear();
+            return;
+        }
+        synchronized (publishLock) {
+            // discards the preloads of the realm which may have read the metadata before it changed
+            nextGeneration(realmName);
+        }
+        String entityId = configName == null ? null : configName.startsWith("/") ? configName.substring(1) : configName;
+        for (String cachedRealm : realms.keySet()) {
+            if (!isSameRealm(realmName, cachedRealm)) {
+                continue;
+            }
+            RealmEntries current;
+            RealmEntries updated;
+            String cachedEntityId;
+            do {
+                current = realms.get(cachedRealm);
+                cachedEntityId = current == null ? null : current.findEntityId(entityId);
+                updated = cachedEntityId == null ? null : current.without(cachedEntityId);
+            } while (current != null && !publish(cachedRealm, current, updated, ANY_GENERATION));
+            if (cachedEntityId != null) {
+                if (debug.messageEnabled()) {
+                    debug.message("SAML2MetaCache.invalidate: cacheKey = " + buildCacheKey(cachedRealm, cachedEntityId));
+                }
+                loadTimes.remove(buildCacheKey(cachedRealm, cachedEntityId));
+            } else {
+                if (debug.messageEnabled()) {
+                    debug.message("SAML2MetaCache.invalidate: realm = " + cachedRealm);
+                }
+                removeLoadTimes(cachedRealm);
+            }
+        }
+    }
+
+    /**
+     * Clears the cache.
      */
     static void clear() {
         if (debug.messageEnabled()) {
             debug.message("SAML2MetaCache.clear() called");
         }
-	descriptorCache.clear();
-	configCache.clear();
+        synchronized (publishLock) {
+            generation.incrementAndGet();
+            realms.clear();
+        }
+        loadTimes.clear();
+    }
+
+    /**
+     * Publishes the snapshot of the realm, unless another snapshot was published since the current one was read, or
+     * the realm was invalidated since the metadata of the snapshot was read.
+     * @param realm The realm.
+     * @param current The snapshot the updated snapshot was built from, or null if the realm was not cached.
+     * @param updated The snapshot to publish, or null to remove the realm from the cache.
+     * @param readGeneration The generation of the realm when its metadata was read, or {@link #ANY_GENERATION}.
+     * @return false if the snapshot must be built again from the current one, true otherwise.
+     */
+    private static boolean publish(String realm, RealmEntries current, RealmEntries updated, long readGeneration) {
+        synchronized (publishLock) {
+            if (readGeneration != ANY_GENERATION && getGeneration(realm) != readGeneration) {
+                // the caller discards the snapshot once it sees the generation changed
+                return false;
+            }
+            if (realms.get(realm) != current) {
+                return false;
+            }
+            if (updated == null || updated.isEmpty()) {
+                realms.remove(realm);
+            } else {
+                realms.put(realm, updated);
+            }
+            return true;
+        }
+    }
+
+    private static void nextGeneration(String realm) {
+        String key = generationKey(realm);
+        AtomicLong realmGeneration = realmGenerations.get(key);
+        if (realmGeneration == null) {
+            realmGenerations.putIfAbsent(key, new AtomicLong());
+            realmGeneration = realmGenerations.get(key);
+        }
+        realmGeneration.incrementAndGet();
+    }
+
+    private static void removeLoadTimes(String realm) {
+        String prefix = realm + "//";
+        synchronized (loadTimes) {
+            Iterator<String> keys = loadTimes.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(prefix)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the realm name, such as <code>/sub</code>, of a realm name or organization DN.
+     * @param realm The realm name or organization DN.
+     * @return The realm name, or null if it could not be determined.
+     */
+    static String toRealmName(String realm) {
+        if (realm == null || realm.isEmpty()) {
+            return null;
+        }
+        if (!realm.contains("=")) {
+            return realm;
+        }
+        try {
+            DN dn = LDAPUtils.newDN(realm);
+            StringBuilder realmName = new StringBuilder();
+            while (dn != null && !dn.isRootDN() && "o".equalsIgnoreCase(LDAPUtils.rdnType(dn.rdn()))) {
+                realmName.insert(0, LDAPUtils.rdnValue(dn.rdn())).insert(0, '/');
+                dn = dn.parent();
+            }
+            return realmName.length() == 0 ? "/" : realmName.toString();
+        } catch (RuntimeException e) {
+            debug.warning("SAML2MetaCache.toRealmName: unable to parse " + realm, e);
+            return null;
+        }
     }
 
     /**
-     * Build cache key for descriptorCache and configCache based on realm and
-     * entity ID.
+     * Returns whether two realm names identify the same realm, whatever their case and leading or trailing slashes.
+     * @param realm A realm name.
+     * @param other Another realm name.
+     * @return true if the realm names identify the same realm.
+     */
+    static boolean isSameRealm(String realm, String other) {
+        return generationKey(realm).equals(generationKey(other));
+    }
+
+    /**
+     * Returns the key identifying the realm whatever its case and leading or trailing slashes.
+     */
+    private static String generationKey(String realm) {
+        int start = 0;
+        int end = realm.length();
+        while (start < end && realm.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && realm.charAt(end - 1) == '/') {
+            end--;
+        }
+        return realm.substring(start, end).toLowerCase();
+    }
+
+    /**
+     * Returns the cache key for the entity under the realm.
      * @param realm The realm under which the entity resides.
-     * @param entityID The entity ID or the name of circle of trust.
+     * @param entityId The ID of the entity.
      * @return The cache key.
      */
     private static String buildCacheKey(String realm, String entityId) {
         return realm + "//" + entityId;
     }
+
+    /**
+     * An immutable snapshot of the cached metadata of one realm. Every change returns a new snapshot.
+     */
+    private static final class RealmEntries {
+        private static final RealmEntries EMPTY = new RealmEntries(
+                Collections.<String, EntityDescriptorElement>emptyMap(),
+                Collections.<String, EntityConfigElement>emptyMap());
+
+        private final Map<String, EntityDescriptorElement> descriptors;
+        private final Map<String, EntityConfigElement> configs;
+
+        private RealmEntries(Map<String, EntityDescriptorElement> descriptors,
+                Map<String, EntityConfigElement> configs) {
+            this.descriptors = Collections.unmodifiableMap(descriptors);
+            this.configs = Collections.unmodifiableMap(configs);
+        }
+
+        private static RealmEntries of(RealmEntries entries) {
+            return entries == null ? EMPTY : entries;
+        }
+
+        private boolean isEmpty() {
+            return descriptors.isEmpty() && configs.isEmpty();
+        }
+
+        private RealmEntries withDescriptor(String entityId, EntityDescriptorElement descriptor) {
+            Map<String, EntityDescriptorElement> updated = new HashMap<>(descriptors);
+            updated.put(entityId, descriptor);
+            return new RealmEntries(updated, configs);
+        }
+
+        private RealmEntries withConfig(String entityId, EntityConfigElement config) {
+            Map<String, EntityConfigElement> updated = new HashMap<>(configs);
+            if (config == null) {
+                updated.remove(entityId);
+            } else {
+                updated.put(entityId, config);
+            }
+            return new RealmEntries(descriptors, updated);
+        }
+
+        private RealmEntries withAll(Map<String, EntityDescriptorElement> addedDescriptors,
+                Map<String, EntityConfigElement> addedConfigs) {
+            Map<String, EntityDescriptorElement> updatedDescriptors = new HashMap<>(descriptors);
+            updatedDescriptors.putAll(addedDescriptors);
+            Map<String, EntityConfigElement> updatedConfigs = new HashMap<>(configs);
+            updatedConfigs.putAll(addedConfigs);
+            return new RealmEntries(updatedDescriptors, updatedConfigs);
+        }
+
+        private RealmEntries without(String entityId) {
+            Map<String, EntityDescriptorElement> updatedDescriptors = new HashMap<>(descriptors);
+            updatedDescriptors.remove(entityId);
+            Map<String, EntityConfigElement> updatedConfigs = new HashMap<>(configs);
+            updatedConfigs.remove(entityId);
+            return new RealmEntries(updatedDescriptors, updatedConfigs);
+        }
+
+        /**
+         * Returns the ID of the cached entity, whatever its case, or null if it is not cached.
+         */
+        private String findEntityId(String entityId) {
+            if (entityId == null || entityId.isEmpty()) {
+                return null;
+            }
+            for (String cachedEntityId : descriptors.keySet()) {
+                if (cachedEntityId.equalsIgnoreCase(entityId)) {
+                    return cachedEntityId;
+                }
+            }
+            for (String cachedEntityId : configs.keySet()) {
+                if (cachedEntityId.equalsIgnoreCase(entityId)) {
+                    return cachedEntityId;
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -29,6 +29,8 @@
 
 package com.sun.identity.saml2.meta;
 
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -76,8 +78,8 @@ import com.sun.identity.shared.debug.Debug;
  * standard entity descriptor and the extended entity configuration.
  */
 public class SAML2MetaManager {
-    private static final String ATTR_METADATA = "sun-fm-saml2-metadata";
-    private static final String ATTR_ENTITY_CONFIG =
+    static final String ATTR_METADATA = "sun-fm-saml2-metadata";
+    static final String ATTR_ENTITY_CONFIG =
         "sun-fm-saml2-entityconfig";
     private static final String SUBCONFIG_ID = "EntityDescriptor";
     private static final int SUBCONFIG_PRIORITY = 0;
@@ -118,6 +120,9 @@ public class SAML2MetaManager {
         } catch (COTException se) {
             debug.error("SAML2MetaManager constructor:", se);
         }
+        if (configInstStatic != null && cotmStatic != null) {
+            SAML2MetaPreloader.start(configInstStatic, cotmStatic);
+        }
     }
 
     /**
@@ -188,6 +193,7 @@ public class SAML2MetaManager {
         }
 
         try {
+            long start = currentTimeMillis();
             Map attrs = configInst.getConfiguration(realm, entityId);
             if (attrs == null) {
                 return null;
@@ -202,6 +208,7 @@ public class SAML2MetaManager {
             if (obj instanceof EntityDescriptorElement) {
                 descriptor = (EntityDescriptorElement)obj;
                 SAML2MetaCache.putEntityDescriptor(realm, entityId, descriptor);
+                SAML2MetaCache.recordLoadTime(realm, entityId, currentTimeMillis() - start);
                 if (debug.messageEnabled()) {
                     debug.message("SAML2MetaManager.getEntityDescriptor: got "
                         + "descriptor from SMS " + entityId);
@@ -748,6 +755,7 @@ public class SAML2MetaManager {
         }
 
         try {
+            long start = currentTimeMillis();
             Map attrs = configInst.getConfiguration(realm, entityId);
             if (attrs == null) {
                 return null;
@@ -769,6 +777,7 @@ public class SAML2MetaManager {
                 } 
                 SAML2MetaCache.putEntityConfig(
                     realm, entityId, config);
+                SAML2MetaCache.recordLoadTime(realm, entityId, currentTimeMillis() - start);
                 LogUtil.access(Level.FINE,
                                LogUtil.GOT_ENTITY_CONFIG,
                                objs,
@@ -1218,6 +1227,16 @@ public class SAML2MetaManager {
         }
     }
 
+    /**
+     * Returns the time, in milliseconds, it last took to read and unmarshal
+     * the metadata of each entity from the configuration store.
+     * @return Load times keyed by realm and entity ID, separated by
+     *         <code>//</code>.
+     */
+    public static Map<String, Long> getEntityLoadTimes() {
+        return SAML2MetaCache.getLoadTimes();
+    }
+
     /**
      * Returns all hosted entities under the realm.
      * @param realm The realm under which the hosted entities reside.
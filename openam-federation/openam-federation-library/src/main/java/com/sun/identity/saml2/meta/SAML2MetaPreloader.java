@@ -0,0 +1,403 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.meta;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.xml.bind.JAXBException;
+
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.utils.StringUtils;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+
+import com.sun.identity.cot.COTConstants;
+import com.sun.identity.cot.COTException;
+import com.sun.identity.cot.CircleOfTrustManager;
+import com.sun.identity.plugin.configuration.ConfigurationActionEvent;
+import com.sun.identity.plugin.configuration.ConfigurationException;
+import com.sun.identity.plugin.configuration.ConfigurationInstance;
+import com.sun.identity.plugin.configuration.ConfigurationListener;
+import com.sun.identity.plugin.configuration.ConfigurationManager;
+import com.sun.identity.saml2.jaxb.entityconfig.EntityConfigElement;
+import com.sun.identity.saml2.jaxb.metadata.EntityDescriptorElement;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Reads the metadata of the SAML2 members of circles of trust from the configuration store in parallel and publishes
+ * it to the {@link SAML2MetaCache} in a single change, so that the first request for each partner does not pay for
+ * reading and unmarshalling its metadata.
+ * <p>
+ * The circles of trust listed in {@link #PRELOAD_COTS} are preloaded in the background when the metadata manager is
+ * first used. When the metadata of one of their members changes, that member is preloaded again, and when a circle of
+ * trust changes, all of its members are. Preloads wait {@link #PRELOAD_DELAY} milliseconds, so that a burst of changes
+ * causes a single preload. The preloads run on long-lived thread pools, which are stopped when the server shuts down.
+ */
+final class SAML2MetaPreloader {
+
+    /**
+     * Comma separated list of circles of trust whose members are preloaded in the background. Each circle of trust is
+     * named <code>realm|name</code>, or only by its name if it is in the top level realm.
+     */
+    static final String PRELOAD_COTS = "org.forgerock.openam.saml2.meta.preload.cots";
+    /**
+     * Maximum number of entities read and unmarshalled in parallel.
+     */
+    static final String PRELOAD_THREADS = "org.forgerock.openam.saml2.meta.preload.threads";
+    /**
+     * How long, in milliseconds, to wait after a change before preloading again.
+     */
+    static final String PRELOAD_DELAY = "org.forgerock.openam.saml2.meta.preload.delay";
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_DELAY = 1000;
+    private static final String THREAD_POOL_NAME = "SAML2MetaPreloader";
+    private static final Debug debug = SAML2MetaUtils.debug;
+
+    private static volatile SAML2MetaPreloader instance;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService loader;
+    private final ConfigurationInstance configInst;
+    private final CircleOfTrustManager cotManager;
+    private final List<CircleOfTrust> circlesOfTrust;
+    private final long delay;
+    /** The preloads of each circle of trust waiting to run. */
+    private final Map<CircleOfTrust, PendingPreload> pending = new HashMap<>();
+
+    /**
+     * Creates a preloader.
+     * @param scheduler Runs the delayed preloads.
+     * @param loader Reads and unmarshals the entities.
+     * @param configInst The configuration instance to read metadata from.
+     * @param cotManager Lists the members of the circles of trust.
+     * @param circlesOfTrust The circles of trust preloaded in the background, as listed in {@link #PRELOAD_COTS}.
+     * @param delay How long, in milliseconds, to wait after a change before preloading again.
+     */
+    SAML2MetaPreloader(ScheduledExecutorService scheduler, ExecutorService loader, ConfigurationInstance configInst,
+            CircleOfTrustManager cotManager, Collection<String> circlesOfTrust, long delay) {
+        this.scheduler = scheduler;
+        this.loader = loader;
+        this.configInst = configInst;
+        this.cotManager = cotManager;
+        this.circlesOfTrust = new ArrayList<>(circlesOfTrust.size());
+        for (String circleOfTrust : circlesOfTrust) {
+            this.circlesOfTrust.add(CircleOfTrust.parse(circleOfTrust));
+        }
+        this.delay = delay;
+    }
+
+    /**
+     * Preloads, in the background, every configured circle of trust, and preloads them again when they change.
+     * @param configInst The configuration instance to read metadata from.
+     * @param cotManager Lists the members of the circles of trust.
+     */
+    static void start(ConfigurationInstance configInst, CircleOfTrustManager cotManager) {
+        Set<String> circlesOfTrust = getConfiguredCirclesOfTrust();
+        if (circlesOfTrust.isEmpty()) {
+            return;
+        }
+        ExecutorServiceFactory executorServiceFactory = InjectorHolder.getInstance(ExecutorServiceFactory.class);
+        int threads = Math.max(1, SystemPropertiesManager.getAsInt(PRELOAD_THREADS, DEFAULT_THREADS));
+        final SAML2MetaPreloader preloader = new SAML2MetaPreloader(executorServiceFactory.createScheduledService(1),
+                executorServiceFactory.createFixedThreadPool(threads, THREAD_POOL_NAME), configInst, cotManager,
+                circlesOfTrust, Math.max(0, SystemPropertiesManager.getAsInt(PRELOAD_DELAY, DEFAULT_DELAY)));
+        try {
+            ConfigurationManager.getConfigurationInstance(COTConstants.COT_CONFIG_NAME).addListener(
+                    new ConfigurationListener() {
+                        @Override
+                        public void configChanged(ConfigurationActionEvent e) {
+                            preloader.circleOfTrustChanged(e.getRealm(), e.getConfigurationName());
+                        }
+                    });
+        } catch (ConfigurationException e) {
+            debug.error("SAML2MetaPreloader.start: unable to add ConfigurationListener for COT service", e);
+        }
+        instance = preloader;
+        preloader.preloadCirclesOfTrust();
+    }
+
+    /**
+     * Preloads again, in the background, the changed metadata if it belongs to a configured circle of trust.
+     * @param realm The realm, or the DN of the organization, whose metadata has changed.
+     * @param configName The name of the changed configuration, which is the ID of the entity if a single entity
+     *                   changed.
+     */
+    static void realmChanged(String realm, String configName) {
+        SAML2MetaPreloader preloader = instance;
+        if (preloader != null) {
+            preloader.metadataChanged(realm, configName);
+        }
+    }
+
+    /**
+     * Schedules the preload of every circle of trust of this preloader.
+     */
+    void preloadCirclesOfTrust() {
+        for (CircleOfTrust circleOfTrust : circlesOfTrust) {
+            schedule(circleOfTrust, null, 0);
+        }
+    }
+
+    /**
+     * Schedules the preload of the changed metadata in every circle of trust of its realm, of which it is preloaded
+     * if it is a member.
+     * @param realm The realm, or the DN of the organization, whose metadata has changed.
+     * @param configName The name of the changed configuration.
+     */
+    void metadataChanged(String realm, String configName) {
+        String realmName = SAML2MetaCache.toRealmName(realm);
+        if (realmName == null) {
+            return;
+        }
+        String entityId = toName(configName);
+        for (CircleOfTrust circleOfTrust : circlesOfTrust) {
+            if (SAML2MetaCache.isSameRealm(realmName, circleOfTrust.realm)) {
+                schedule(circleOfTrust, entityId, delay);
+            }
+        }
+    }
+
+    /**
+     * Schedules the preload of every member of the changed circle of trust, if it is preloaded by this preloader.
+     * @param realm The realm, or the DN of the organization, of the circle of trust.
+     * @param configName The name of the changed circle of trust, or null if it is not known.
+     */
+    void circleOfTrustChanged(String realm, String configName) {
+        String realmName = SAML2MetaCache.toRealmName(realm);
+        if (realmName == null) {
+            return;
+        }
+        String name = toName(configName);
+        for (CircleOfTrust circleOfTrust : circlesOfTrust) {
+            if (SAML2MetaCache.isSameRealm(realmName, circleOfTrust.realm)
+                    && (name == null || name.equalsIgnoreCase(circleOfTrust.name))) {
+                schedule(circleOfTrust, null, delay);
+            }
+        }
+    }
+
+    /**
+     * Reads the entities in parallel and caches them in a single change.
+     * @param realm The realm under which the entities reside.
+     * @param entityIds The IDs of the entities to load.
+     * @return The number of entities loaded.
+     */
+    int load(final String realm, Collection<String> entityIds) {
+        long generation = SAML2MetaCache.getGeneration(realm);
+        long start = currentTimeMillis();
+        final Map<String, EntityDescriptorElement> descriptors = new ConcurrentHashMap<>();
+        final Map<String, EntityConfigElement> configs = new ConcurrentHashMap<>();
+        List<Future<Void>> results = new ArrayList<>(entityIds.size());
+        try {
+            for (final String entityId : entityIds) {
+                results.add(loader.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        load(realm, entityId, descriptors, configs);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    debug.warning("SAML2MetaPreloader.load: unable to load entity in realm " + realm, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<Void> result : results) {
+                result.cancel(true);
+            }
+            return 0;
+        }
+        if (!SAML2MetaCache.putAll(realm, descriptors, configs, generation)) {
+            return 0;
+        }
+        if (debug.messageEnabled()) {
+            debug.message("SAML2MetaPreloader.load: loaded " + descriptors.size() + " entities of realm " + realm
+                    + " in " + (currentTimeMillis() - start) + "ms");
+        }
+        return descriptors.size();
+    }
+
+    private void schedule(final CircleOfTrust circleOfTrust, String entityId, long delayMillis) {
+        synchronized (pending) {
+            PendingPreload preload = pending.get(circleOfTrust);
+            if (preload != null) {
+                preload.add(entityId);
+                return;
+            }
+            preload = new PendingPreload();
+            preload.add(entityId);
+            pending.put(circleOfTrust, preload);
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                PendingPreload preload;
+                synchronized (pending) {
+                    preload = pending.remove(circleOfTrust);
+                }
+                try {
+                    Set<String> entityIds = preload.getEntityIds(circleOfTrust);
+                    if (!entityIds.isEmpty()) {
+                        load(circleOfTrust.realm, entityIds);
+                    }
+                } catch (COTException | RuntimeException e) {
+                    debug.error("SAML2MetaPreloader: unable to preload circle of trust " + circleOfTrust, e);
+                }
+            }
+        }, delayMillis, MILLISECONDS);
+    }
+
+    private void load(String realm, String entityId, Map<String, EntityDescriptorElement> descriptors,
+            Map<String, EntityConfigElement> configs) throws ConfigurationException, JAXBException {
+        long start = currentTimeMillis();
+        Map attrs = configInst.getConfiguration(realm, entityId);
+        if (attrs == null) {
+            return;
+        }
+        Object descriptor = unmarshal(attrs, SAML2MetaManager.ATTR_METADATA);
+        if (descriptor instanceof EntityDescriptorElement) {
+            descriptors.put(entityId, (EntityDescriptorElement) descriptor);
+        }
+        Object config = unmarshal(attrs, SAML2MetaManager.ATTR_ENTITY_CONFIG);
+        if (config instanceof EntityConfigElement) {
+            configs.put(entityId, (EntityConfigElement) config);
+        }
+        SAML2MetaCache.recordLoadTime(realm, entityId, currentTimeMillis() - start);
+    }
+
+    private static Object unmarshal(Map attrs, String attributeName) throws JAXBException {
+        Set values = (Set) attrs.get(attributeName);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return SAML2MetaUtils.convertStringToJAXB((String) values.iterator().next());
+    }
+
+    /**
+     * Returns the name of the entity or circle of trust of a configuration change event, or null if the whole realm
+     * changed.
+     */
+    private static String toName(String configName) {
+        if (configName == null) {
+            return null;
+        }
+        String name = configName.startsWith("/") ? configName.substring(1) : configName;
+        return name.isEmpty() ? null : name;
+    }
+
+    private static Set<String> getConfiguredCirclesOfTrust() {
+        String circlesOfTrust = SystemPropertiesManager.get(PRELOAD_COTS);
+        if (StringUtils.isBlank(circlesOfTrust)) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String circleOfTrust : circlesOfTrust.split(",")) {
+            if (StringUtils.isNotBlank(circleOfTrust)) {
+                result.add(circleOfTrust.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A circle of trust whose members are preloaded.
+     */
+    private static final class CircleOfTrust {
+        private final String realm;
+        private final String name;
+
+        private CircleOfTrust(String realm, String name) {
+            this.realm = realm;
+            this.name = name;
+        }
+
+        private static CircleOfTrust parse(String circleOfTrust) {
+            int separator = circleOfTrust.lastIndexOf('|');
+            if (separator < 0) {
+                return new CircleOfTrust("/", circleOfTrust.trim());
+            }
+            String realm = circleOfTrust.substring(0, separator).trim();
+            return new CircleOfTrust(realm.isEmpty() ? "/" : realm, circleOfTrust.substring(separator + 1).trim());
+        }
+
+        @Override
+        public String toString() {
+            return realm + "|" + name;
+        }
+    }
+
+    /**
+     * The members of a circle of trust waiting to be preloaded, or all of them.
+     */
+    private final class PendingPreload {
+        private final Set<String> entityIds = new LinkedHashSet<>();
+        private boolean allMembers;
+
+        private void add(String entityId) {
+            if (entityId == null) {
+                allMembers = true;
+            } else {
+                entityIds.add(entityId);
+            }
+        }
+
+        /**
+         * Returns the IDs of the members of the circle of trust to preload.
+         */
+        @SuppressWarnings("unchecked")
+        private Set<String> getEntityIds(CircleOfTrust circleOfTrust) throws COTException {
+            Set<String> members = cotManager.listCircleOfTrustMember(circleOfTrust.realm, circleOfTrust.name,
+                    COTConstants.SAML2);
+            if (members == null) {
+                return Collections.emptySet();
+            }
+            if (allMembers) {
+                return members;
+            }
+            Set<String> result = new LinkedHashSet<>();
+            for (String member : members) {
+                for (String entityId : entityIds) {
+                    if (member.equalsIgnoreCase(entityId)) {
+                        result.add(member);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -24,6 +24,7 @@
  *
  * $Id: SAML2MetaServiceListener.java,v 1.5 2009/08/28 23:42:14 exu Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 
@@ -31,6 +32,7 @@ package com.sun.identity.saml2.meta;
 
 import com.sun.identity.shared.debug.Debug;
 import com.sun.identity.saml2.key.KeyUtil;
+import com.sun.identity.saml2.xmlsig.VerifiedSignatureCache;
 import com.sun.identity.saml2.profile.IDPCache;
 import com.sun.identity.saml2.profile.SPCache;
 import com.sun.identity.plugin.configuration.ConfigurationListener;
@@ -60,10 +62,12 @@ class SAML2MetaServiceListener implements ConfigurationListener
                 e.getConfigurationName() + ", component=" + 
                 e.getComponentName());
         }
-        SAML2MetaCache.clear();
         String realm = e.getRealm();
+        SAML2MetaCache.invalidate(realm, e.getConfigurationName());
         SPCache.clear(realm);
         IDPCache.clear(realm);
         KeyUtil.clear();
+        VerifiedSignatureCache.clear();
+        SAML2MetaPreloader.realmChanged(realm, e.getConfigurationName());
     }
 }
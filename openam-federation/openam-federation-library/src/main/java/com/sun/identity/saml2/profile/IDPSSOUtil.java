@@ -96,6 +96,7 @@ import com.sun.identity.saml2.protocol.ProtocolFactory;
 import com.sun.identity.saml2.protocol.Response;
 import com.sun.identity.saml2.protocol.Status;
 import com.sun.identity.saml2.protocol.StatusCode;
+import com.sun.identity.saml2.xmlsig.SAML2ResponseDocument;
 import com.sun.identity.plugin.monitoring.FedMonAgent;
 import com.sun.identity.plugin.monitoring.FedMonSAML2Svc;
 import com.sun.identity.plugin.monitoring.MonitorManager;
@@ -106,12 +107,14 @@ import com.sun.identity.saml2.plugins.SAML2IdentityProviderAdapter;
 import org.forgerock.openam.federation.saml2.SAML2TokenRepositoryException;
 import org.forgerock.openam.saml2.audit.SAML2EventLogger;
 import org.forgerock.openam.utils.ClientUtils;
+import org.forgerock.openam.utils.CollectionUtils;
 import org.forgerock.openam.utils.StringUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
 import java.util.LinkedHashSet;
 import java.util.logging.Level;
 import java.util.ArrayList;
@@ -731,12 +734,19 @@ public class IDPSSOUtil {
             if (signResponse) {
                 signAssertion = wantAssertionsSigned(spEntityID, realm);
             }
-            signAndEncryptResponseComponents(realm, spEntityID, idpEntityID, res, signAssertion);
-            if (signResponse) {
-                signResponse(realm, idpEntityID, res);
+            boolean encryptAssertion = isEncryptionWanted(realm, spEntityID,
+                    SAML2Constants.WANT_ASSERTION_ENCRYPTED);
+            String resMsg;
+            if ((signAssertion || signResponse || encryptAssertion) && SAML2ResponseDocument.isSupported()) {
+                resMsg = signAndEncryptResponseDocument(realm, spEntityID, idpEntityID, res, signAssertion,
+                        encryptAssertion, signResponse);
+            } else {
+                signAndEncryptResponseComponents(realm, spEntityID, idpEntityID, res, signAssertion);
+                if (signResponse) {
+                    signResponse(realm, idpEntityID, res);
+                }
+                resMsg = res.toXMLString(true, true);
             }
-
-            String resMsg = res.toXMLString(true, true);
             if (SAML2Utils.debug.messageEnabled()) {
                 SAML2Utils.debug.message(classMethod +
                         "SAML Response content :\n" + resMsg);
@@ -2449,6 +2459,85 @@ public class IDPSSOUtil {
             throws SAML2Exception {
         String classMethod = "IDPSSOUtil.signAssertion: ";
 
+        KeyProvider kp = getKeyProvider(classMethod);
+        String idpSignCertAlias = getIDPSigningCertAlias(realm, idpEntityID, classMethod);
+        assertion.sign(getIDPSigningKey(kp, realm, idpEntityID, idpSignCertAlias),
+                kp.getX509Certificate(idpSignCertAlias));
+    }
+
+    /**
+     * Signs and encrypts the components of a <code>SAML Response</code> as per
+     * {@link #signAndEncryptResponseComponents(String, String, String, Response, boolean)}, and signs the response
+     * itself if required. The response and its assertions are assembled, signed and encrypted as a single DOM
+     * document, which is serialised once. As with the object model, only the first assertion is kept when
+     * assertions are signed or encrypted.
+     *
+     * @param realm            the realm name of the identity provider
+     * @param spEntityID       the entity id of the service provider
+     * @param idpEntityID      the entity id of the identity provider
+     * @param res              The unsigned <code>Response</code>
+     * @param signAssertion    A flag to indicate if <code>Assertion</code> signing is required
+     * @param encryptAssertion A flag to indicate if <code>Assertion</code> encryption is required
+     * @param signResponse     A flag to indicate if <code>Response</code> signing is required
+     * @return the XML representation of the signed and encrypted response.
+     * @throws SAML2Exception if the response could not be signed or encrypted.
+     * @see SAML2ResponseDocument
+     */
+    static String signAndEncryptResponseDocument(String realm,
+                                                 String spEntityID,
+                                                 String idpEntityID,
+                                                 Response res,
+                                                 boolean signAssertion,
+                                                 boolean encryptAssertion,
+                                                 boolean signResponse)
+            throws SAML2Exception {
+        String classMethod = "IDPSSOUtil.signAndEncryptResponseDocument: ";
+
+        if (!encryptAssertion) {
+            // NameID and Attribute encryption are applied to the assertion objects, before the document is built
+            signAndEncryptResponseComponents(realm, spEntityID, idpEntityID, res, false);
+        }
+        List assertions = res.getAssertion();
+        if ((signAssertion || encryptAssertion) && assertions != null && assertions.size() > 1) {
+            List assertionList = new ArrayList();
+            assertionList.add(assertions.get(0));
+            res.setAssertion(assertionList);
+        }
+
+        SAML2ResponseDocument document = new SAML2ResponseDocument(res);
+        PrivateKey key = null;
+        X509Certificate cert = null;
+        if (signAssertion || signResponse) {
+            KeyProvider kp = getKeyProvider(classMethod);
+            String idpSignCertAlias = getIDPSigningCertAlias(realm, idpEntityID, classMethod);
+            key = getIDPSigningKey(kp, realm, idpEntityID, idpSignCertAlias);
+            cert = kp.getX509Certificate(idpSignCertAlias);
+        }
+        if (signAssertion) {
+            document.signAssertions(key, cert);
+        }
+        if (encryptAssertion && !CollectionUtils.isEmpty(res.getAssertion())) {
+            SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(realm, spEntityID, classMethod);
+            EncInfo encInfo = KeyUtil.getEncInfo(spSSODescriptorElement, spEntityID, SAML2Constants.SP_ROLE);
+            if (encInfo == null) {
+                SAML2Utils.debug.error(classMethod + "failed to get service provider encryption key info.");
+                throw new SAML2Exception(SAML2Utils.bundle.getString("UnableToFindEncryptKeyInfo"));
+            }
+            document.encryptAssertions(encInfo.getWrappingKey(), encInfo.getDataEncAlgorithm(),
+                    encInfo.getDataEncStrength(), spEntityID);
+        }
+        if (signResponse) {
+            document.signResponse(key, cert);
+        }
+        return document.toXMLString();
+    }
+
+    private static boolean isEncryptionWanted(String realm, String spEntityID, String attributeName) {
+        return SAML2Constants.TRUE.equals(SAML2Utils.getAttributeValueFromSSOConfig(realm, spEntityID,
+                SAML2Constants.SP_ROLE, attributeName));
+    }
+
+    private static KeyProvider getKeyProvider(String classMethod) throws SAML2Exception {
         KeyProvider kp = KeyUtil.getKeyProviderInstance();
         if (kp == null) {
             SAML2Utils.debug.error(classMethod +
@@ -2456,6 +2545,11 @@ public class IDPSSOUtil {
             throw new SAML2Exception(
                     SAML2Utils.bundle.getString("nullKeyProvider"));
         }
+        return kp;
+    }
+
+    private static String getIDPSigningCertAlias(String realm, String idpEntityID, String classMethod)
+            throws SAML2Exception {
         String idpSignCertAlias = SAML2Utils.getSigningCertAlias(
                 realm, idpEntityID, SAML2Constants.IDP_ROLE);
         if (idpSignCertAlias == null) {
@@ -2464,17 +2558,18 @@ public class IDPSSOUtil {
             throw new SAML2Exception(
                     SAML2Utils.bundle.getString("missingSigningCertAlias"));
         }
+        return idpSignCertAlias;
+    }
 
+    private static PrivateKey getIDPSigningKey(KeyProvider kp, String realm, String idpEntityID,
+                                               String idpSignCertAlias) {
         String encryptedKeyPass =
                 SAML2Utils.getSigningCertEncryptedKeyPass(realm, idpEntityID, SAML2Constants.IDP_ROLE);
-        PrivateKey key;
         if (encryptedKeyPass == null || encryptedKeyPass.isEmpty()) {
-            key = kp.getPrivateKey(idpSignCertAlias);
+            return kp.getPrivateKey(idpSignCertAlias);
         } else {
-            key = kp.getPrivateKey(idpSignCertAlias, encryptedKeyPass);
+            return kp.getPrivateKey(idpSignCertAlias, encryptedKeyPass);
         }
-
-        assertion.sign(key, kp.getX509Certificate(idpSignCertAlias));
     }
 
     /**
@@ -2892,34 +2987,10 @@ public class IDPSSOUtil {
     private static void signResponse(String realm, String idpEntityID,
                                      Response response) throws SAML2Exception {
         String classMethod = "IDPSSOUtil:signResponse";
-        KeyProvider kp = KeyUtil.getKeyProviderInstance();
-        if (kp == null) {
-            SAML2Utils.debug.error(classMethod
-                    + "Unable to get a key provider instance.");
-            throw new SAML2Exception(
-                    SAML2Utils.bundle.getString("nullKeyProvider"));
-
-        }
-        String idpSignCertAlias = SAML2Utils.getSigningCertAlias(
-                realm, idpEntityID, SAML2Constants.IDP_ROLE);
-        if (idpSignCertAlias == null) {
-            SAML2Utils.debug.error(classMethod +
-                    "Unable to get the hosted IDP signing certificate alias.");
-            throw new SAML2Exception(
-                    SAML2Utils.bundle.getString("missingSigningCertAlias"));
-
-        }
-
-        String encryptedKeyPass =
-                SAML2Utils.getSigningCertEncryptedKeyPass(realm, idpEntityID, SAML2Constants.IDP_ROLE);
-        PrivateKey key;
-        if (encryptedKeyPass == null || encryptedKeyPass.isEmpty()) {
-            key = kp.getPrivateKey(idpSignCertAlias);
-        } else {
-            key = kp.getPrivateKey(idpSignCertAlias, encryptedKeyPass);
-        }
-
-        response.sign(key, kp.getX509Certificate(idpSignCertAlias));
+        KeyProvider kp = getKeyProvider(classMethod);
+        String idpSignCertAlias = getIDPSigningCertAlias(realm, idpEntityID, classMethod);
+        response.sign(getIDPSigningKey(kp, realm, idpEntityID, idpSignCertAlias),
+                kp.getX509Certificate(idpSignCertAlias));
     }
 
     /**
@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.xmlsig;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import org.w3c.dom.Element;
+
+import com.sun.identity.saml2.common.SAML2Exception;
+
+/**
+ * A {@link SigProvider} which is also able to sign an element of an existing DOM document in place, so that callers
+ * assembling a larger document do not need to serialise and re-parse it for every signature.
+ *
+ * @see SAML2ResponseDocument
+ */
+public interface DOMSigProvider extends SigProvider {
+
+    /**
+     * Signs the provided element in place using an enveloped signature. The signature is inserted after the
+     * <code>Issuer</code> child of the element, as for {@link SigProvider#sign(String, String, PrivateKey,
+     * X509Certificate)}.
+     *
+     * @param element The element to sign. It may be the document element or any element within the document.
+     * @param idValue The ID attribute value of the element.
+     * @param privateKey Signing key.
+     * @param cert Certificate which contains the public key correlated to the signing key; if it is not null then the
+     *             signature will include the certificate.
+     * @return Element representing the signature element.
+     * @throws SAML2Exception If the element could not be signed.
+     */
+    Element sign(Element element, String idValue, PrivateKey privateKey, X509Certificate cert) throws SAML2Exception;
+
+    /**
+     * Indicates whether signatures produced by {@link #sign(Element, String, PrivateKey, X509Certificate)} over an
+     * element nested in a larger document remain valid once that element is extracted from the document. This is the
+     * case for exclusive canonicalization, but not for inclusive canonicalization, which captures the namespace
+     * context of the enclosing document.
+     *
+     * @return true if nested elements may be signed in place.
+     */
+    boolean isNestedSigningSupported();
+}
@@ -67,7 +67,7 @@ import com.sun.identity.saml2.common.SAML2Utils;
  * and verifying XML documents, it implements <code>SigProvider</code>
  */
 
-public final class FMSigProvider implements SigProvider {
+public final class FMSigProvider implements DOMSigProvider {
 
     private static String c14nMethod = null;
     private static String transformAlg = null;
@@ -144,7 +144,40 @@ public final class FMSigProvider implements SigProvider {
         if (doc == null) {
             throw new SAML2Exception(SAML2SDKUtils.bundle.getString("errorObtainingElement"));
         }
-	Element root = doc.getDocumentElement();
+        return sign(doc.getDocumentElement(), idValue, privateKey, cert);
+    }
+
+    /**
+     * Sign the supplied element in place, using enveloped signatures and exclusive xml canonicalization. The element
+     * may be nested within a larger document, in which case the rest of the document is left untouched. The resulting
+     * signature is inserted after the first Issuer child node of the element.
+     * @param root the element to be signed
+     * @param idValue id attribute value of the element to be signed
+     * @param privateKey Signing key
+     * @param cert Certificate which contain the public key correlated to
+     *             the signing key; It if is not null, then the signature
+     *             will include the certificate; Otherwise, the signature
+     *             will not include any certificate
+     * @return Element representing the signature element
+     * @throws SAML2Exception if the element could not be signed
+     */
+    public Element sign(Element root, String idValue, PrivateKey privateKey, X509Certificate cert)
+            throws SAML2Exception {
+
+        String classMethod = "FMSigProvider.sign: ";
+        if (root == null) {
+            SAML2SDKUtils.debug.error(classMethod + "The element to sign was null.");
+            throw new SAML2Exception(SAML2SDKUtils.BUNDLE_NAME, "nullInputMessage", new String[]{"element"});
+        }
+        if (StringUtils.isEmpty(idValue)) {
+            SAML2SDKUtils.debug.error(classMethod + "The idValue was empty.");
+            throw new SAML2Exception(SAML2SDKUtils.BUNDLE_NAME, "emptyInputMessage", new String[]{"idValue"});
+        }
+        if (privateKey == null) {
+            SAML2SDKUtils.debug.error(classMethod + "The private key was null.");
+            throw new SAML2Exception(SAML2SDKUtils.BUNDLE_NAME, "nullInputMessage", new String[]{"private key"});
+        }
+        Document doc = root.getOwnerDocument();
 	XMLSignature sig = null;
 	try {
         ElementProxy.setDefaultPrefix(Constants.SignatureSpecNS, SAMLConstants.PREFIX_DS);
@@ -226,7 +259,17 @@ public final class FMSigProvider implements SigProvider {
 		classMethod +
 		"Signing is successful.");
 	}
-        return sig.getElement();   
+        return sig.getElement();
+    }
+
+    @Override
+    public boolean isNestedSigningSupported() {
+        return isExclusive(c14nMethod) && isExclusive(transformAlg);
+    }
+
+    private static boolean isExclusive(String algorithm) {
+        return Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS.equals(algorithm)
+                || Canonicalizer.ALGO_ID_C14N_EXCL_WITH_COMMENTS.equals(algorithm);
     }
 
     public boolean verify(
@@ -247,6 +290,13 @@ public final class FMSigProvider implements SigProvider {
             throw new SAML2Exception(
                     SAML2SDKUtils.bundle.getString("nullInput"));
         }
+        String verifiedKey = VerifiedSignatureCache.getKey(xmlString, idValue, verificationCerts);
+        if (VerifiedSignatureCache.isVerified(verifiedKey)) {
+            if (SAML2SDKUtils.debug.messageEnabled()) {
+                SAML2SDKUtils.debug.message(classMethod + "Signature of " + idValue + " already verified.");
+            }
+            return true;
+        }
         Document doc =
                 XMLUtils.toDOMDocument(xmlString, SAML2SDKUtils.debug);
         if (doc == null) {
@@ -331,6 +381,7 @@ public final class FMSigProvider implements SigProvider {
         if (SAML2SDKUtils.debug.messageEnabled()) {
             SAML2SDKUtils.debug.message(classMethod + "Signature verification successful.");
         }
+        VerifiedSignatureCache.markVerified(verifiedKey);
         return true;
     }
 
@@ -0,0 +1,156 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.xmlsig;
+
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.sun.identity.saml2.common.SAML2Constants;
+import com.sun.identity.saml2.common.SAML2Exception;
+import com.sun.identity.saml2.common.SAML2SDKUtils;
+import com.sun.identity.saml2.protocol.Response;
+import com.sun.identity.saml2.xmlenc.EncManager;
+import com.sun.identity.shared.xml.XMLUtils;
+
+/**
+ * Assembles a SAML2 <code>Response</code> and its <code>Assertion</code>s as a single DOM document, signs and
+ * encrypts the assertions and the response in place, and serialises the result once.
+ * <p>
+ * Signing an <code>Assertion</code> and then its enclosing <code>Response</code> through the object model serialises
+ * and re-parses the assertion and the response several times. This class parses the unsigned response once and
+ * performs every subsequent operation on the resulting DOM. Only the encryption of an assertion needs the signed
+ * assertion as a string, as the {@link com.sun.identity.saml2.xmlenc.EncProvider} API is string based.
+ * <p>
+ * Operations must be invoked in protocol order: {@link #signAssertions}, then optionally {@link #encryptAssertions},
+ * then optionally {@link #signResponse}, and finally {@link #toXMLString()}.
+ */
+public final class SAML2ResponseDocument {
+
+    private static final String ASSERTION = "Assertion";
+    private static final String ENCRYPTED_ASSERTION = "EncryptedAssertion";
+
+    private final DOMSigProvider sigProvider;
+    private final Element responseElement;
+
+    /**
+     * Creates the DOM representation of the provided, not yet signed, response.
+     *
+     * @param response The response, whose assertions must not have been signed or encrypted yet.
+     * @throws SAML2Exception If the configured signature provider cannot sign in place, or the response could not be
+     * converted to a DOM document.
+     */
+    public SAML2ResponseDocument(Response response) throws SAML2Exception {
+        if (!isSupported()) {
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("errorObtainingElement"));
+        }
+        this.sigProvider = (DOMSigProvider) SigManager.getSigInstance();
+        Document document = XMLUtils.toDOMDocument(response.toXMLString(true, true), SAML2SDKUtils.debug);
+        if (document == null) {
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("errorObtainingElement"));
+        }
+        this.responseElement = document.getDocumentElement();
+    }
+
+    /**
+     * Whether responses can be assembled by this class with the configured signature provider. When false callers
+     * should fall back to signing through the SAML2 object model.
+     *
+     * @return true if the configured {@link SigProvider} can sign nested elements in place.
+     */
+    public static boolean isSupported() {
+        SigProvider sigProvider = SigManager.getSigInstance();
+        return sigProvider instanceof DOMSigProvider && ((DOMSigProvider) sigProvider).isNestedSigningSupported();
+    }
+
+    /**
+     * Signs every <code>Assertion</code> of the response in place.
+     *
+     * @param privateKey Signing key.
+     * @param cert Certificate to include in the signature, may be null.
+     * @throws SAML2Exception If an assertion could not be signed.
+     */
+    public void signAssertions(PrivateKey privateKey, X509Certificate cert) throws SAML2Exception {
+        for (Element assertion : getAssertionElements()) {
+            // declare the assertion namespace on the assertion itself, as when it is signed standalone
+            assertion.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:saml",
+                    SAML2Constants.ASSERTION_NAMESPACE_URI);
+            sigProvider.sign(assertion, assertion.getAttribute(SAML2Constants.ID), privateKey, cert);
+        }
+    }
+
+    /**
+     * Replaces every <code>Assertion</code> of the response with its <code>EncryptedAssertion</code>.
+     *
+     * @param recipientPublicKey Public key used to encrypt the data encryption (secret) key.
+     * @param dataEncAlgorithm Data encryption algorithm.
+     * @param dataEncStrength Data encryption strength.
+     * @param recipientEntityID Unique identifier of the recipient, used as the index of the cached secret key.
+     * @throws SAML2Exception If an assertion could not be encrypted.
+     */
+    public void encryptAssertions(Key recipientPublicKey, String dataEncAlgorithm, int dataEncStrength,
+            String recipientEntityID) throws SAML2Exception {
+        Document document = responseElement.getOwnerDocument();
+        for (Element assertion : getAssertionElements()) {
+            Element encrypted = EncManager.getEncInstance().encrypt(XMLUtils.print(assertion, "UTF-8"),
+                    recipientPublicKey, dataEncAlgorithm, dataEncStrength, recipientEntityID, ENCRYPTED_ASSERTION);
+            if (encrypted == null) {
+                throw new SAML2Exception(SAML2SDKUtils.bundle.getString("failedEncryptingData"));
+            }
+            responseElement.replaceChild(document.importNode(encrypted, true), assertion);
+        }
+    }
+
+    /**
+     * Signs the response element in place.
+     *
+     * @param privateKey Signing key.
+     * @param cert Certificate to include in the signature, may be null.
+     * @throws SAML2Exception If the response could not be signed.
+     */
+    public void signResponse(PrivateKey privateKey, X509Certificate cert) throws SAML2Exception {
+        sigProvider.sign(responseElement, responseElement.getAttribute(SAML2Constants.ID), privateKey, cert);
+    }
+
+    /**
+     * Serialises the assembled response.
+     *
+     * @return The XML representation of the response.
+     */
+    public String toXMLString() {
+        return XMLUtils.print(responseElement, "UTF-8");
+    }
+
+    private List<Element> getAssertionElements() {
+        List<Element> assertions = new ArrayList<>();
+        for (Node child = responseElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && ASSERTION.equals(child.getLocalName())
+                    && SAML2Constants.ASSERTION_NAMESPACE_URI.equals(child.getNamespaceURI())) {
+                assertions.add((Element) child);
+            }
+        }
+        return assertions;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.xmlsig;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.guava.common.base.Ticker;
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.encode.Base64;
+
+import com.sun.identity.saml2.common.SAML2Constants;
+import com.sun.identity.saml2.common.SAML2SDKUtils;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
+
+/**
+ * Remembers the digests of recently verified signed XML messages, so that a message which is received again, for
+ * example a retried artifact resolution or a re-posted response, is not parsed and verified a second time.
+ * <p>
+ * Only successful verifications are remembered, and the digest covers the exact message, the signed element ID and
+ * every trusted verification certificate. A hit therefore only occurs for a message that has already been verified
+ * against the same trust anchors. The cache says nothing about whether a message is fresh: replay detection based
+ * on message and assertion IDs is performed by the callers, independently of signature verification, and is not
+ * affected by this cache. Entries are dropped when the SAML2 metadata changes.
+ * <p>
+ * The cache is disabled unless {@link SAML2Constants#VERIFIED_SIGNATURE_CACHE_SIZE} is set to a positive value.
+ */
+public final class VerifiedSignatureCache {
+
+    private static final int DEFAULT_TTL_SECONDS = 60;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static volatile Cache<String, Boolean> verified = newCache(
+            getIntProperty(SAML2Constants.VERIFIED_SIGNATURE_CACHE_SIZE, 0),
+            getIntProperty(SAML2Constants.VERIFIED_SIGNATURE_CACHE_TTL, DEFAULT_TTL_SECONDS),
+            Ticker.systemTicker());
+
+    private VerifiedSignatureCache() {
+    }
+
+    /**
+     * Replaces the cache, forgetting every verified signature.
+     *
+     * @param size The maximum number of verified signatures remembered, the cache being disabled if not positive.
+     * @param ttlSeconds How long a verified signature is remembered for, the cache being disabled if not positive.
+     * @param ticker The source of time of the cache.
+     */
+    @VisibleForTesting
+    static void configure(int size, int ttlSeconds, Ticker ticker) {
+        verified = newCache(size, ttlSeconds, ticker);
+    }
+
+    private static Cache<String, Boolean> newCache(int size, int ttlSeconds, Ticker ticker) {
+        if (size <= 0 || ttlSeconds <= 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * @return true if verified signatures are remembered.
+     */
+    public static boolean isEnabled() {
+        return verified != null;
+    }
+
+    /**
+     * Computes the cache key of a signed message.
+     *
+     * @param xmlString The signed message.
+     * @param idValue The ID of the signed element.
+     * @param verificationCerts The certificates trusted to verify the message.
+     * @return The key, or null if the cache is disabled or the key could not be computed.
+     */
+    public static String getKey(String xmlString, String idValue, Set<X509Certificate> verificationCerts) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(idValue.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(xmlString.getBytes(StandardCharsets.UTF_8));
+            if (verificationCerts != null) {
+                for (X509Certificate cert : verificationCerts) {
+                    digest.update((byte) 0);
+                    digest.update(cert.getEncoded());
+                }
+            }
+            return Base64.encode(digest.digest());
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            SAML2SDKUtils.debug.warning("VerifiedSignatureCache.getKey: unable to digest the message", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param key A key returned by {@link #getKey}, may be null.
+     * @return true if the message identified by the key was verified successfully within the cache lifetime.
+     */
+    public static boolean isVerified(String key) {
+        Cache<String, Boolean> cache = verified;
+        return key != null && cache != null && cache.getIfPresent(key) != null;
+    }
+
+    /**
+     * Records the successful verification of the message identified by the key.
+     *
+     * @param key A key returned by {@link #getKey}, may be null.
+     */
+    public static void markVerified(String key) {
+        Cache<String, Boolean> cache = verified;
+        if (key != null && cache != null) {
+            cache.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Forgets every verified signature. Called when the SAML2 metadata, and so the trusted certificates, change.
+     */
+    public static void clear() {
+        Cache<String, Boolean> cache = verified;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = SystemPropertiesManager.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            SAML2SDKUtils.debug.error("VerifiedSignatureCache: invalid value " + value + " for " + name);
+            return defaultValue;
+        }
+    }
+}
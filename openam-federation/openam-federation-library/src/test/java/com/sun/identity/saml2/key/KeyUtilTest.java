@@ -16,12 +16,15 @@
 
 package com.sun.identity.saml2.key;
 
+import com.sun.identity.saml2.common.SAML2Constants;
 import com.sun.identity.saml2.common.SAML2Utils;
 import com.sun.identity.saml2.meta.SAML2MetaException;
 import com.sun.identity.saml2.meta.SAML2MetaUtils;
 import com.sun.identity.saml2.jaxb.metadata.*;
 import com.sun.identity.shared.xml.XMLUtils;
+import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.Set;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -52,4 +55,32 @@ public class KeyUtilTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testVerificationCertsAreCachedPerDescriptor() throws SAML2MetaException, JAXBException {
+
+        IDPSSODescriptorElement first = loadIDPSSODescriptor();
+        IDPSSODescriptorElement second = loadIDPSSODescriptor();
+
+        Set<X509Certificate> certs = KeyUtil.getVerificationCerts(first, "idp", SAML2Constants.IDP_ROLE);
+        Assert.assertFalse(certs.isEmpty());
+        Assert.assertSame(KeyUtil.getVerificationCerts(first, "idp", SAML2Constants.IDP_ROLE), certs);
+        // the same entity loaded again, as for another realm, must not share the cached entry
+        Set<X509Certificate> otherCerts = KeyUtil.getVerificationCerts(second, "idp", SAML2Constants.IDP_ROLE);
+        Assert.assertNotSame(otherCerts, certs);
+        Assert.assertEquals(otherCerts, certs);
+    }
+
+    private IDPSSODescriptorElement loadIDPSSODescriptor() throws SAML2MetaException, JAXBException {
+        String idpMetadata = XMLUtils.print(
+                XMLUtils.toDOMDocument(ClassLoader.getSystemResourceAsStream(XML_DOCUMENT_TO_LOAD),
+                    SAML2Utils.debug), "UTF-8");
+        EntityDescriptorElement element = SAML2MetaUtils.getEntityDescriptorElement(idpMetadata);
+        for (Object descriptor : element.getRoleDescriptorOrIDPSSODescriptorOrSPSSODescriptor()) {
+            if (descriptor instanceof IDPSSODescriptorElement) {
+                return (IDPSSODescriptorElement) descriptor;
+            }
+        }
+        throw new AssertionError("No IDPSSODescriptor in " + XML_DOCUMENT_TO_LOAD);
+    }
+}
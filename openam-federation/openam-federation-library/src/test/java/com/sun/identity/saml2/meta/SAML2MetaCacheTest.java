@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.meta;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.saml2.jaxb.entityconfig.EntityConfigElement;
+import com.sun.identity.saml2.jaxb.metadata.EntityDescriptorElement;
+
+public class SAML2MetaCacheTest {
+
+    private static final String SUB_REALM_DN = "o=sub,ou=services,dc=openam,dc=forgerock,dc=org";
+
+    @BeforeMethod
+    public void setUp() {
+        SAML2MetaCache.clear();
+        SAML2MetaCache.putEntityDescriptor("/", "root-entity", mock(EntityDescriptorElement.class));
+        SAML2MetaCache.putEntityDescriptor("/sub", "changed", mock(EntityDescriptorElement.class));
+        SAML2MetaCache.putEntityConfig("/sub", "changed", mock(EntityConfigElement.class));
+        SAML2MetaCache.putEntityDescriptor("/sub", "unchanged", mock(EntityDescriptorElement.class));
+    }
+
+    @Test
+    public void shouldInvalidateOnlyTheChangedEntity() {
+        // When
+        SAML2MetaCache.invalidate(SUB_REALM_DN, "/changed");
+
+        // Then
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "changed")).isNull();
+        assertThat(SAML2MetaCache.getEntityConfig("/sub", "changed")).isNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "unchanged")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "root-entity")).isNotNull();
+    }
+
+    @Test
+    public void shouldInvalidateOnlyTheChangedRealmWhenTheEntityIsNotKnown() {
+        // When
+        SAML2MetaCache.invalidate(SUB_REALM_DN, null);
+
+        // Then
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "changed")).isNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "unchanged")).isNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "root-entity")).isNotNull();
+    }
+
+    @Test
+    public void shouldDiscardPreloadOfInvalidatedRealmOnly() {
+        // Given
+        long subGeneration = SAML2MetaCache.getGeneration("/sub");
+        long rootGeneration = SAML2MetaCache.getGeneration("/");
+        EntityDescriptorElement stale = mock(EntityDescriptorElement.class);
+
+        // When
+        SAML2MetaCache.invalidate(SUB_REALM_DN, "/changed");
+        boolean subPublished = SAML2MetaCache.putAll("/sub", Collections.singletonMap("changed", stale),
+                Collections.<String, EntityConfigElement>emptyMap(), subGeneration);
+        boolean rootPublished = SAML2MetaCache.putAll("/", Collections.singletonMap("preloaded", stale),
+                Collections.<String, EntityConfigElement>emptyMap(), rootGeneration);
+
+        // Then
+        assertThat(subPublished).isFalse();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "changed")).isNull();
+        assertThat(rootPublished).isTrue();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "preloaded")).isSameAs(stale);
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "root-entity")).isNotNull();
+    }
+
+    @Test
+    public void shouldKeepCachedEntitiesWhenPublishingAPreload() {
+        // Given
+        long generation = SAML2MetaCache.getGeneration("/sub");
+        EntityDescriptorElement preloaded = mock(EntityDescriptorElement.class);
+
+        // When
+        boolean published = SAML2MetaCache.putAll("/sub", Collections.singletonMap("preloaded", preloaded),
+                Collections.<String, EntityConfigElement>emptyMap(), generation);
+
+        // Then
+        assertThat(published).isTrue();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "preloaded")).isSameAs(preloaded);
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "changed")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityConfig("/sub", "changed")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/sub", "unchanged")).isNotNull();
+    }
+
+    @Test
+    public void shouldRemoveLoadTimesOfInvalidatedEntities() {
+        // Given
+        SAML2MetaCache.recordLoadTime("/sub", "changed", 10);
+        SAML2MetaCache.recordLoadTime("/", "root-entity", 10);
+
+        // When
+        SAML2MetaCache.invalidate(SUB_REALM_DN, "/changed");
+
+        // Then
+        assertThat(SAML2MetaCache.getLoadTimes()).containsOnlyKeys("///root-entity");
+    }
+
+    @Test
+    public void shouldConvertOrganizationDNToRealmName() {
+        assertThat(SAML2MetaCache.toRealmName("o=child,o=sub,ou=services,dc=openam,dc=forgerock,dc=org"))
+                .isEqualTo("/sub/child");
+        assertThat(SAML2MetaCache.toRealmName("dc=openam,dc=forgerock,dc=org")).isEqualTo("/");
+        assertThat(SAML2MetaCache.toRealmName("/sub")).isEqualTo("/sub");
+        assertThat(SAML2MetaCache.toRealmName(null)).isNull();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.meta;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.cot.COTConstants;
+import com.sun.identity.cot.CircleOfTrustManager;
+import com.sun.identity.plugin.configuration.ConfigurationInstance;
+
+public class SAML2MetaPreloaderTest {
+
+    private static final String ROOT_REALM_DN = "dc=openam,dc=forgerock,dc=org";
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService loader;
+    private ConfigurationInstance configInst;
+    private CircleOfTrustManager cotManager;
+    private SAML2MetaPreloader preloader;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        SAML2MetaCache.clear();
+        scheduler = mock(ScheduledExecutorService.class);
+        loader = Executors.newFixedThreadPool(2);
+        configInst = mock(ConfigurationInstance.class);
+        given(configInst.getConfiguration("/", "idp")).willReturn(metadata("idp"));
+        given(configInst.getConfiguration("/", "sp")).willReturn(metadata("sp"));
+        cotManager = mock(CircleOfTrustManager.class);
+        given(cotManager.listCircleOfTrustMember("/", "cot", COTConstants.SAML2))
+                .willReturn(new LinkedHashSet<>(Arrays.asList("idp", "sp")));
+        preloader = new SAML2MetaPreloader(scheduler, loader, configInst, cotManager, Collections.singleton("/|cot"),
+                1000);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        loader.shutdownNow();
+    }
+
+    @Test
+    public void shouldLoadEntitiesIntoTheCache() {
+        // When
+        int loaded = preloader.load("/", Arrays.asList("idp", "sp"));
+
+        // Then
+        assertThat(loaded).isEqualTo(2);
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "idp")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "sp")).isNotNull();
+        assertThat(SAML2MetaCache.getLoadTimes()).containsKeys("///idp", "///sp");
+    }
+
+    @Test
+    public void shouldPreloadOnlyTheChangedMemberOnceForABurstOfChanges() throws Exception {
+        // When
+        preloader.metadataChanged(ROOT_REALM_DN, "/idp");
+        preloader.metadataChanged(ROOT_REALM_DN, "/IDP");
+        runScheduledPreload(1000);
+
+        // Then
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "idp")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "sp")).isNull();
+        verify(configInst, times(1)).getConfiguration("/", "idp");
+        verify(configInst, never()).getConfiguration("/", "sp");
+    }
+
+    @Test
+    public void shouldNotPreloadChangedEntitiesWhichAreNotMembers() throws Exception {
+        // When
+        preloader.metadataChanged(ROOT_REALM_DN, "/other");
+        runScheduledPreload(1000);
+
+        // Then
+        verify(configInst, never()).getConfiguration(eq("/"), any(String.class));
+    }
+
+    @Test
+    public void shouldPreloadAllMembersWhenTheEntityIsNotKnown() throws Exception {
+        // When
+        preloader.metadataChanged(ROOT_REALM_DN, "/idp");
+        preloader.metadataChanged(ROOT_REALM_DN, null);
+        runScheduledPreload(1000);
+
+        // Then
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "idp")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "sp")).isNotNull();
+    }
+
+    @Test
+    public void shouldPreloadAllMembersWhenTheCircleOfTrustChanges() throws Exception {
+        // When
+        preloader.circleOfTrustChanged(ROOT_REALM_DN, "COT");
+        runScheduledPreload(1000);
+
+        // Then
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "idp")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "sp")).isNotNull();
+    }
+
+    @Test
+    public void shouldNotPreloadCirclesOfTrustWhichAreNotConfigured() {
+        // When
+        preloader.metadataChanged("o=other," + ROOT_REALM_DN, null);
+        preloader.circleOfTrustChanged(ROOT_REALM_DN, "other");
+
+        // Then
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void shouldScheduleConfiguredCirclesOfTrustImmediately() throws Exception {
+        // When
+        preloader.preloadCirclesOfTrust();
+        runScheduledPreload(0);
+
+        // Then
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "idp")).isNotNull();
+        assertThat(SAML2MetaCache.getEntityDescriptor("/", "sp")).isNotNull();
+    }
+
+    private void runScheduledPreload(long delay) {
+        ArgumentCaptor<Runnable> preload = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(preload.capture(), eq(delay), eq(TimeUnit.MILLISECONDS));
+        preload.getValue().run();
+    }
+
+    private static Map<String, Set<String>> metadata(String entityId) {
+        Map<String, Set<String>> attributes = new HashMap<>();
+        attributes.put(SAML2MetaManager.ATTR_METADATA, new HashSet<>(Collections.singleton(
+                "<EntityDescriptor xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"" + entityId + "\"/>")));
+        return attributes;
+    }
+}
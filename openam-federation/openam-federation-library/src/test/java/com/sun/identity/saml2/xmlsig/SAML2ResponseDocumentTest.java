@@ -0,0 +1,134 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.xmlsig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.xml.security.encryption.XMLCipher;
+import org.forgerock.openam.utils.AMKeyProvider;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.sun.identity.saml.xmlsig.KeyProvider;
+import com.sun.identity.saml2.common.SAML2Constants;
+import com.sun.identity.saml2.common.SAML2Utils;
+import com.sun.identity.saml2.protocol.ProtocolFactory;
+import com.sun.identity.saml2.protocol.Response;
+import com.sun.identity.saml2.xmlenc.EncManager;
+import com.sun.identity.shared.xml.XMLUtils;
+
+public class SAML2ResponseDocumentTest {
+
+    private static final String PRIVATE_KEY_ALIAS = "defaultkey";
+    private static final String RESPONSE_ID = "response-id";
+    private static final String ASSERTION_ID = "assertion-id";
+    private static final String RESPONSE =
+            "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"" + RESPONSE_ID + "\""
+            + " Version=\"2.0\" IssueInstant=\"2016-01-01T00:00:00Z\">"
+            + "<saml:Issuer xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">idp</saml:Issuer>"
+            + "<samlp:Status><samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></samlp:Status>"
+            + "<saml:Assertion xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"" + ASSERTION_ID + "\""
+            + " Version=\"2.0\" IssueInstant=\"2016-01-01T00:00:00Z\">"
+            + "<saml:Issuer>idp</saml:Issuer>"
+            + "</saml:Assertion>"
+            + "</samlp:Response>";
+
+    private PrivateKey privateKey;
+    private X509Certificate certificate;
+    private Set<X509Certificate> certificates;
+
+    @BeforeClass
+    public void setUp() {
+        // The keystore properties required to bootstrap this class are setup in the POM
+        KeyProvider keyProvider = new AMKeyProvider();
+        privateKey = keyProvider.getPrivateKey(PRIVATE_KEY_ALIAS);
+        certificate = keyProvider.getX509Certificate(PRIVATE_KEY_ALIAS);
+        certificates = Collections.singleton(certificate);
+    }
+
+    @Test
+    public void shouldSignAssertionAndResponseWithIndependentlyValidSignatures() throws Exception {
+        // Given
+        SAML2ResponseDocument document = new SAML2ResponseDocument(createResponse());
+
+        // When
+        document.signAssertions(privateKey, certificate);
+        document.signResponse(privateKey, certificate);
+        String xml = document.toXMLString();
+
+        // Then
+        SigProvider sigProvider = SigManager.getSigInstance();
+        assertThat(sigProvider.verify(xml, RESPONSE_ID, certificates)).isTrue();
+        Element assertion = getElement(XMLUtils.toDOMDocument(xml, SAML2Utils.debug), "Assertion");
+        assertThat(sigProvider.verify(XMLUtils.print(assertion, "UTF-8"), ASSERTION_ID, certificates)).isTrue();
+    }
+
+    @Test
+    public void shouldEncryptSignedAssertionWhichCanBeDecryptedAndVerified() throws Exception {
+        // Given
+        SAML2ResponseDocument document = new SAML2ResponseDocument(createResponse());
+
+        // When
+        document.signAssertions(privateKey, certificate);
+        document.encryptAssertions(certificate.getPublicKey(), XMLCipher.AES_128, 128, "sp");
+        document.signResponse(privateKey, certificate);
+        String xml = document.toXMLString();
+
+        // Then
+        SigProvider sigProvider = SigManager.getSigInstance();
+        assertThat(sigProvider.verify(xml, RESPONSE_ID, certificates)).isTrue();
+        Document response = XMLUtils.toDOMDocument(xml, SAML2Utils.debug);
+        assertThat(getElement(response, "Assertion")).isNull();
+        Element encryptedAssertion = getElement(response, "EncryptedAssertion");
+        assertThat(encryptedAssertion).isNotNull();
+        Element assertion = EncManager.getEncInstance().decrypt(XMLUtils.print(encryptedAssertion, "UTF-8"),
+                Collections.singleton(privateKey));
+        assertThat(assertion.getAttribute(SAML2Constants.ID)).isEqualTo(ASSERTION_ID);
+        assertThat(sigProvider.verify(XMLUtils.print(assertion, "UTF-8"), ASSERTION_ID, certificates)).isTrue();
+    }
+
+    @Test
+    public void shouldOnlySignResponseWhenAssertionsAreNotSigned() throws Exception {
+        // Given
+        SAML2ResponseDocument document = new SAML2ResponseDocument(createResponse());
+
+        // When
+        document.signResponse(privateKey, certificate);
+        String xml = document.toXMLString();
+
+        // Then
+        assertThat(SigManager.getSigInstance().verify(xml, RESPONSE_ID, certificates)).isTrue();
+        Element assertion = getElement(XMLUtils.toDOMDocument(xml, SAML2Utils.debug), "Assertion");
+        assertThat(assertion.getElementsByTagNameNS(SAML2Constants.NS_XMLSIG, "Signature").getLength()).isZero();
+    }
+
+    private static Response createResponse() throws Exception {
+        return ProtocolFactory.getInstance().createResponse(RESPONSE);
+    }
+
+    private static Element getElement(Document document, String localName) {
+        NodeList elements = document.getElementsByTagNameNS(SAML2Constants.ASSERTION_NAMESPACE_URI, localName);
+        return elements.getLength() == 0 ? null : (Element) elements.item(0);
+    }
+}
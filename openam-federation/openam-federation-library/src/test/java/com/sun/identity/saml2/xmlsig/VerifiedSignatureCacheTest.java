@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.xmlsig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.guava.common.base.Ticker;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class VerifiedSignatureCacheTest {
+
+    private static final String MESSAGE = "<samlp:Response ID=\"response-id\"/>";
+    private static final String ID = "response-id";
+
+    private final FakeTicker ticker = new FakeTicker();
+    private Set<X509Certificate> certificates;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        VerifiedSignatureCache.configure(10, 60, ticker);
+        certificates = Collections.singleton(certificate(1));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        VerifiedSignatureCache.configure(0, 0, Ticker.systemTicker());
+    }
+
+    @Test
+    public void shouldRememberVerifiedMessage() {
+        // Given
+        String key = VerifiedSignatureCache.getKey(MESSAGE, ID, certificates);
+
+        // When
+        VerifiedSignatureCache.markVerified(key);
+
+        // Then
+        assertThat(VerifiedSignatureCache.isVerified(VerifiedSignatureCache.getKey(MESSAGE, ID, certificates)))
+                .isTrue();
+        assertThat(VerifiedSignatureCache.isVerified(VerifiedSignatureCache.getKey(MESSAGE + " ", ID, certificates)))
+                .isFalse();
+        assertThat(VerifiedSignatureCache.isVerified(VerifiedSignatureCache.getKey(MESSAGE, "other-id", certificates)))
+                .isFalse();
+    }
+
+    @Test
+    public void shouldForgetVerifiedMessageOnceExpired() {
+        // Given
+        String key = VerifiedSignatureCache.getKey(MESSAGE, ID, certificates);
+        VerifiedSignatureCache.markVerified(key);
+
+        // When
+        ticker.advance(61, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(VerifiedSignatureCache.isVerified(key)).isFalse();
+    }
+
+    @Test
+    public void shouldNotTrustMessageVerifiedWithRotatedCertificate() throws Exception {
+        // Given
+        VerifiedSignatureCache.markVerified(VerifiedSignatureCache.getKey(MESSAGE, ID, certificates));
+
+        // When
+        Set<X509Certificate> rotated = Collections.singleton(certificate(2));
+
+        // Then
+        assertThat(VerifiedSignatureCache.isVerified(VerifiedSignatureCache.getKey(MESSAGE, ID, rotated))).isFalse();
+    }
+
+    @Test
+    public void shouldForgetVerifiedMessagesWhenMetadataChanges() {
+        // Given
+        String key = VerifiedSignatureCache.getKey(MESSAGE, ID, certificates);
+        VerifiedSignatureCache.markVerified(key);
+
+        // When
+        VerifiedSignatureCache.clear();
+
+        // Then
+        assertThat(VerifiedSignatureCache.isVerified(key)).isFalse();
+    }
+
+    @Test
+    public void shouldNotRememberAnythingWhenDisabled() {
+        // Given
+        VerifiedSignatureCache.configure(0, 60, ticker);
+
+        // When
+        String key = VerifiedSignatureCache.getKey(MESSAGE, ID, certificates);
+        VerifiedSignatureCache.markVerified(key);
+
+        // Then
+        assertThat(VerifiedSignatureCache.isEnabled()).isFalse();
+        assertThat(key).isNull();
+        assertThat(VerifiedSignatureCache.isVerified(key)).isFalse();
+    }
+
+    private static X509Certificate certificate(int encoding) throws Exception {
+        X509Certificate certificate = mock(X509Certificate.class);
+        given(certificate.getEncoded()).willReturn(new byte[] {(byte) encoding});
+        return certificate;
+    }
+
+    private static final class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.http.client;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.forgerock.http.Client;
+import org.forgerock.http.client.request.HttpClientRequest;
+import org.forgerock.http.client.request.HttpClientRequestCookie;
+import org.forgerock.http.client.response.HttpClientResponse;
+import org.forgerock.http.client.response.SimpleHttpClientResponse;
+import org.forgerock.http.header.SetCookieHeader;
+import org.forgerock.http.protocol.Cookie;
+import org.forgerock.http.protocol.Header;
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+
+/**
+ * Sends {@link HttpClientRequest}s through a shared {@link Client}, whose connections are pooled, rather than
+ * through a Restlet client created for each request.
+ */
+final class PooledHttpClientSender {
+
+    private PooledHttpClientSender() {
+    }
+
+    /**
+     * Sends the request and waits for its response.
+     *
+     * @param client The shared client.
+     * @param httpClientRequest The request.
+     * @param uri The URI of the request, including its query parameters.
+     * @return The response.
+     * @throws URISyntaxException If the URI cannot be parsed.
+     */
+    static HttpClientResponse send(Client client, HttpClientRequest httpClientRequest, String uri)
+            throws URISyntaxException {
+        Request request = new Request();
+        request.setMethod(httpClientRequest.getMethod());
+        request.setUri(uri);
+        if (httpClientRequest.getEntity() != null && !httpClientRequest.getEntity().isEmpty()) {
+            request.setEntity(httpClientRequest.getEntity());
+        }
+        if (httpClientRequest.getHeaders() != null) {
+            for (Map.Entry<String, String> header : httpClientRequest.getHeaders().entrySet()) {
+                request.getHeaders().put(header.getKey(), header.getValue());
+            }
+        }
+        if (httpClientRequest.getCookies() != null && !httpClientRequest.getCookies().isEmpty()) {
+            StringBuilder cookies = new StringBuilder();
+            for (HttpClientRequestCookie cookie : httpClientRequest.getCookies()) {
+                if (cookies.length() > 0) {
+                    cookies.append("; ");
+                }
+                cookies.append(cookie.getField()).append('=').append(cookie.getValue());
+            }
+            request.getHeaders().put("Cookie", cookies.toString());
+        }
+
+        Response response = client.send(request).getOrThrowUninterruptibly();
+        try {
+            return createHttpClientResponse(response);
+        } finally {
+            // returns the connection to the pool
+            response.close();
+        }
+    }
+
+    private static HttpClientResponse createHttpClientResponse(Response response) {
+        Integer statusCode = null;
+        String reasonPhrase = null;
+        if (response.getStatus() != null) {
+            statusCode = response.getStatus().getCode();
+            reasonPhrase = response.getStatus().getReasonPhrase();
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, Header> header : response.getHeaders().asMapOfHeaders().entrySet()) {
+            if (!header.getValue().getValues().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().getValues().get(0));
+            }
+        }
+
+        Map<String, String> cookies = new HashMap<>();
+        SetCookieHeader setCookies = SetCookieHeader.valueOf(response);
+        if (setCookies != null) {
+            for (Cookie cookie : setCookies.getCookies()) {
+                if (cookie != null && cookie.getName() != null) {
+                    cookies.put(cookie.getName(), cookie.getValue());
+                }
+            }
+        }
+
+        String messageBody;
+        try {
+            messageBody = response.getEntity().getString();
+        } catch (IOException e) {
+            messageBody = null;
+        }
+
+        return new SimpleHttpClientResponse(statusCode, reasonPhrase, headers, messageBody, cookies);
+    }
+}
@@ -29,6 +29,7 @@ import org.restlet.engine.header.HeaderConstants;
 import org.restlet.util.Series;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.*;
 
@@ -73,7 +74,27 @@ public abstract class RestletHttpClient {
         return perform(httpClientRequest);
     }
 
+    /**
+     * Returns the shared client through which requests are sent, keeping their connections alive between requests.
+     * When this returns null, or the URI of a request cannot be handled by the shared client, the request is sent
+     * through a new Restlet client.
+     *
+     * @return The shared client, or null.
+     */
+    protected org.forgerock.http.Client getPooledClient() {
+        return null;
+    }
+
     private HttpClientResponse perform(HttpClientRequest httpClientRequest) throws UnsupportedEncodingException {
+        org.forgerock.http.Client pooledClient = getPooledClient();
+        if (pooledClient != null) {
+            try {
+                return PooledHttpClientSender.send(pooledClient, httpClientRequest, getUri(httpClientRequest));
+            } catch (URISyntaxException e) {
+                // left to the Restlet client, which is lenient in the URIs it accepts
+            }
+        }
+
         Request request = createRequest(httpClientRequest);
 
         Client client = new Client(Protocol.HTTP);
@@ -138,6 +159,13 @@ public abstract class RestletHttpClient {
     }
 
     private void addQueryParametersToRequest(HttpClientRequest httpClientRequest, Request request) throws UnsupportedEncodingException {
+        request.setResourceRef(getUri(httpClientRequest));
+    }
+
+    private String getUri(HttpClientRequest httpClientRequest) throws UnsupportedEncodingException {
+        if (!hasQueryParameters(httpClientRequest)) {
+            return httpClientRequest.getUri();
+        }
         String queryParameterString = "?";
         for (String field : httpClientRequest.getQueryParameters().keySet()) {
             String encodedField = "";
@@ -148,9 +176,7 @@ public abstract class RestletHttpClient {
         }
         queryParameterString = queryParameterString.substring(0, queryParameterString.length() - 1);
         String uri = httpClientRequest.getUri();
-        String uriWithQueryParameters = uri + queryParameterString;
-
-        request.setResourceRef(uriWithQueryParameters);
+        return uri + queryParameterString;
     }
 
     private void addCookiesToRequest(HttpClientRequest httpClientRequest, Request request) {
@@ -0,0 +1,245 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.services.push.dispatch;
+
+import static org.forgerock.openam.services.push.PushNotificationConstants.JWT;
+import static org.forgerock.util.query.QueryFilter.equalTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.filter.TokenFilterBuilder;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.continuous.ChangeType;
+import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.sm.datalayer.api.DataLayerException;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
+import org.forgerock.openam.utils.JsonValueBuilder;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Completes the promises of the {@link MessageDispatcher}s of this server with responses received by other servers
+ * in the cluster.
+ * <p>
+ * A response delivered to a server which did not send the message is stored in the CTS token of the message by
+ * {@link org.forgerock.openam.services.push.sns.SnsMessageResource}. This listener is told of changes to push
+ * tokens by a CTS continuous query, and completes the local promise as soon as the token of a message it expects
+ * holds a response, so that the module waiting on the promise does not have to read the CTS on each poll.
+ * <p>
+ * The listener is disabled by default, and is enabled with the {@link #ENABLED} system property. While the
+ * connection to the CTS is lost, {@link #isNotifying()} returns false and the waiting modules should fall back to
+ * reading the CTS.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class ClusterMessageListener {
+
+    /**
+     * System property enabling the completion of promises from the CTS notifications.
+     */
+    public static final String ENABLED = "org.forgerock.openam.push.cluster.notification.enabled";
+
+    private final CTSPersistentStore coreTokenService;
+    private final Debug debug;
+    private final boolean enabled;
+    /** The dispatchers of the delegates, held weakly so that replaced delegates can be collected. */
+    private final Set<MessageDispatcher> dispatchers =
+            Collections.newSetFromMap(new WeakHashMap<MessageDispatcher, Boolean>());
+    private final PushTokenListener listener = new PushTokenListener();
+    private final AtomicLong completions = new AtomicLong();
+
+    private volatile boolean listening;
+    private volatile boolean listenerFailed;
+    private volatile boolean connected;
+
+    /**
+     * Creates the listener, enabled according to the {@link #ENABLED} system property.
+     *
+     * @param coreTokenService The CTS, which notifies the listener of push token changes.
+     * @param debug For writing debug messages.
+     */
+    @Inject
+    public ClusterMessageListener(CTSPersistentStore coreTokenService, @Named("frPush") Debug debug) {
+        this(coreTokenService, debug, SystemProperties.getAsBoolean(ENABLED, false));
+    }
+
+    ClusterMessageListener(CTSPersistentStore coreTokenService, Debug debug, boolean enabled) {
+        this.coreTokenService = coreTokenService;
+        this.debug = debug;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Adds a dispatcher whose promises are to be completed from the CTS, starting the continuous query if this is
+     * the first.
+     *
+     * @param dispatcher The dispatcher.
+     * @return Whether the promises of the dispatcher will be completed from the CTS.
+     */
+    boolean register(MessageDispatcher dispatcher) {
+        if (!enabled || listenerFailed) {
+            return false;
+        }
+        synchronized (dispatchers) {
+            dispatchers.add(dispatcher);
+        }
+        if (!listening) {
+            synchronized (this) {
+                if (!listening && !listenerFailed) {
+                    try {
+                        coreTokenService.addContinuousQueryListener(listener, getTokenFilter());
+                        listening = true;
+                        connected = true;
+                    } catch (CoreTokenException | RuntimeException e) {
+                        debug.warning("ClusterMessageListener: unable to listen to push token changes, responses "
+                                + "received by other servers will be read from the CTS", e);
+                        listenerFailed = true;
+                    }
+                }
+            }
+        }
+        return listening;
+    }
+
+    /**
+     * Whether responses received by other servers are currently being delivered to the registered dispatchers.
+     *
+     * @return True if the continuous query is running and connected.
+     */
+    public boolean isNotifying() {
+        return listening && connected;
+    }
+
+    /**
+     * @return The number of promises completed with a response received by another server.
+     */
+    public long getCompletedCount() {
+        return completions.get();
+    }
+
+    private void tokenChanged(String tokenId) {
+        MessageDispatcher expecting = null;
+        for (MessageDispatcher dispatcher : snapshot()) {
+            if (dispatcher.isExpecting(tokenId)) {
+                expecting = dispatcher;
+                break;
+            }
+        }
+        if (expecting == null) {
+            return;
+        }
+        try {
+            Token token = coreTokenService.read(tokenId);
+            if (token == null || token.getAttribute(CoreTokenField.INTEGER_ONE) == null || token.getBlob() == null) {
+                // no response yet, the token only holds the predicates of the message
+                return;
+            }
+            JsonValue content = JsonValueBuilder.toJsonValue(token.getBlob());
+            if (!content.isDefined(JWT)) {
+                // written by a server which does not store the response itself, leave it to be polled for
+                return;
+            }
+            if (expecting.completeFromCluster(tokenId, content)) {
+                completions.incrementAndGet();
+            }
+        } catch (CoreTokenException | RuntimeException e) {
+            debug.warning("ClusterMessageListener: unable to read push token {}", tokenId, e);
+        }
+    }
+
+    /**
+     * Checks the token of every expected message, as any response received while disconnected has been missed.
+     */
+    private void resynchronise() {
+        for (MessageDispatcher dispatcher : snapshot()) {
+            for (String messageId : dispatcher.getExpectedMessageIds()) {
+                tokenChanged(messageId);
+            }
+        }
+    }
+
+    private void reconnected() {
+        if (!connected) {
+            connected = true;
+            resynchronise();
+        }
+    }
+
+    private List<MessageDispatcher> snapshot() {
+        synchronized (dispatchers) {
+            return new ArrayList<>(dispatchers);
+        }
+    }
+
+    private static TokenFilter getTokenFilter() {
+        return new TokenFilterBuilder()
+                .returnAttribute(CoreTokenField.INTEGER_ONE)
+                .withQuery(equalTo(CoreTokenField.TOKEN_TYPE, TokenType.PUSH))
+                .build();
+    }
+
+    /**
+     * Completes the promises of messages whose tokens have been updated with a response.
+     */
+    private final class PushTokenListener implements ContinuousQueryListener<Object> {
+
+        @Override
+        public void objectChanged(String tokenId, Map<String, Object> changeSet, ChangeType changeType) {
+            reconnected();
+            if (changeType == ChangeType.MODIFY) {
+                tokenChanged(tokenId);
+            }
+        }
+
+        @Override
+        public void objectsChanged(Set<String> tokenIds) {
+            reconnected();
+            for (String tokenId : tokenIds) {
+                tokenChanged(tokenId);
+            }
+        }
+
+        @Override
+        public void connectionLost() {
+            debug.warning("ClusterMessageListener: lost connection to the CTS, responses received by other servers "
+                    + "will be read from the CTS until it is restored");
+            connected = false;
+        }
+
+        @Override
+        public void processError(DataLayerException error) {
+            debug.error("ClusterMessageListener: error listening to push token changes", error);
+            connected = false;
+        }
+    }
+}
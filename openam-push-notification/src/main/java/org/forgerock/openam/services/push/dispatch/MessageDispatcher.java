@@ -17,6 +17,7 @@ package org.forgerock.openam.services.push.dispatch;
 
 import com.google.inject.name.Named;
 import com.sun.identity.shared.debug.Debug;
+import java.util.HashSet;
 import java.util.Set;
 import javax.inject.Inject;
 import org.forgerock.guava.common.cache.Cache;
@@ -42,11 +43,15 @@ import org.forgerock.util.promise.PromiseImpl;
  *  -   If it does, then all the predicates will be run - one at a time, and if any of them return boolean false
  *          then the MessagePromise will NOT be completed, and the MessageDispatcher will continue to await
  *          a valid message in response to that messageId.
+ *
+ * When built with a {@link ClusterMessageListener}, promises are also completed with responses received by other
+ * servers in the cluster, which have already checked the predicates of the message.
  */
 public class MessageDispatcher {
 
     private final Cache<String, MessagePromise> cache;
     private final Debug debug;
+    private final ClusterMessageListener clusterListener;
 
     /**
      * A message dispatcher which holds a Cache (a timeout-based Map) which contains the
@@ -57,8 +62,21 @@ public class MessageDispatcher {
      */
     @Inject
     public MessageDispatcher(Cache<String, MessagePromise> dispatch, @Named("frPush") Debug debug) {
+        this(dispatch, debug, null);
+    }
+
+    /**
+     * A message dispatcher whose promises are also completed with the responses received by other servers.
+     *
+     * @param dispatch A cache to store messages which will shortly be dispatched.
+     * @param debug for writing debug messages.
+     * @param clusterListener Delivers the responses received by other servers. May be null.
+     */
+    public MessageDispatcher(Cache<String, MessagePromise> dispatch, Debug debug,
+            ClusterMessageListener clusterListener) {
         this.cache = dispatch;
         this.debug = debug;
+        this.clusterListener = clusterListener;
     }
 
     /**
@@ -101,9 +119,22 @@ public class MessageDispatcher {
         Reject.ifNull(predicates);
         MessagePromise mp = new MessagePromise(PromiseImpl.<JsonValue, Exception>create(), predicates);
         cache.put(messageId, mp);
+        if (clusterListener != null) {
+            clusterListener.register(this);
+        }
         return mp;
     }
 
+    /**
+     * Whether the promises returned by this dispatcher are completed as soon as another server in the cluster
+     * receives the response. If not, the caller should check the CTS for responses received by other servers.
+     *
+     * @return True if responses received by other servers are being delivered to this dispatcher.
+     */
+    public boolean isClusterNotified() {
+        return clusterListener != null && clusterListener.isNotifying();
+    }
+
     /**
      * Forgets any promise returned by this cache for the provided messageId. Removes the promise from
      * the cache. Returns true if all of this occurred, false if the provided messageId was not found.
@@ -120,4 +151,30 @@ public class MessageDispatcher {
         }
         return false;
     }
+
+    /**
+     * Completes the promise for the given messageId with a response received by another server, whose predicates
+     * have already been checked.
+     *
+     * @param messageId The messageId of the promise to complete.
+     * @param content The contents of the response.
+     * @return True if the promise was completed, false if the message was not expected.
+     */
+    boolean completeFromCluster(String messageId, JsonValue content) {
+        MessagePromise messagePromise = cache.getIfPresent(messageId);
+        if (messagePromise == null) {
+            return false;
+        }
+        messagePromise.getPromise().tryHandleResult(content);
+        cache.invalidate(messageId);
+        return true;
+    }
+
+    boolean isExpecting(String messageId) {
+        return cache.getIfPresent(messageId) != null;
+    }
+
+    Set<String> getExpectedMessageIds() {
+        return new HashSet<>(cache.asMap().keySet());
+    }
 }
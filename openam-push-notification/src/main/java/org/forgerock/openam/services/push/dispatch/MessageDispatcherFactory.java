@@ -17,6 +17,7 @@ package org.forgerock.openam.services.push.dispatch;
 
 import com.sun.identity.shared.debug.Debug;
 import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.forgerock.guava.common.cache.Cache;
 import org.forgerock.guava.common.cache.CacheBuilder;
@@ -27,6 +28,18 @@ import org.forgerock.guava.common.cache.CacheBuilder;
 @Singleton
 public class MessageDispatcherFactory {
 
+    private final ClusterMessageListener clusterListener;
+
+    /**
+     * Creates the factory.
+     *
+     * @param clusterListener Delivers responses received by other servers to the dispatchers built.
+     */
+    @Inject
+    public MessageDispatcherFactory(ClusterMessageListener clusterListener) {
+        this.clusterListener = clusterListener;
+    }
+
     /**
      * Generate a new MessageDispatcher configured with the appropriate settings.
      *
@@ -44,7 +57,7 @@ public class MessageDispatcherFactory {
                 .expireAfterWrite(expireAfter, TimeUnit.SECONDS)
                 .build();
 
-        return new MessageDispatcher(cache, debug);
+        return new MessageDispatcher(cache, debug, clusterListener);
     }
 
 }
@@ -249,6 +249,8 @@ public class SnsMessageResource {
             coreToken.setAttribute(CoreTokenField.INTEGER_ONE, ACCEPT_VALUE);
         }
 
+        // the response replaces the predicates, so that the sending server can complete its promise with it
+        coreToken.setBlob(jsonSerialisation.serialise(actionContent.getObject()).getBytes());
     }
 
     private enum RequestType {
@@ -0,0 +1,152 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.services.push.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.continuous.ChangeType;
+import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class ClusterMessageListenerTest {
+
+    private CTSPersistentStore mockCTS;
+    private MessageDispatcher messageDispatcher;
+    private ClusterMessageListener clusterListener;
+
+    @BeforeMethod
+    public void theSetUp() {
+        mockCTS = mock(CTSPersistentStore.class);
+        Debug mockDebug = mock(Debug.class);
+        clusterListener = new ClusterMessageListener(mockCTS, mockDebug, true);
+        messageDispatcher = new MessageDispatcher(CacheBuilder.newBuilder().<String, MessagePromise>build(),
+                mockDebug, clusterListener);
+    }
+
+    @Test
+    public void shouldCompletePromiseWhenTokenHoldsResponse() throws Exception {
+        //given
+        MessagePromise promise = messageDispatcher.expect("messageId", new HashSet<Predicate>());
+        ContinuousQueryListener<Object> listener = captureListener();
+        given(mockCTS.read("messageId")).willReturn(respondedToken("messageId"));
+
+        //when
+        listener.objectChanged("messageId", null, ChangeType.MODIFY);
+
+        //then
+        assertThat(promise.getPromise().isDone()).isTrue();
+        assertThat(promise.getPromise().get().get("jwt").asString()).isEqualTo("response");
+        assertThat(messageDispatcher.isExpecting("messageId")).isFalse();
+        assertThat(clusterListener.getCompletedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCompletePromiseBeforeResponse() throws Exception {
+        //given
+        MessagePromise promise = messageDispatcher.expect("messageId", new HashSet<Predicate>());
+        ContinuousQueryListener<Object> listener = captureListener();
+        Token token = new Token("messageId", TokenType.PUSH);
+        token.setBlob("{ \"org.forgerock.Predicate\" : \"{}\" }".getBytes());
+        given(mockCTS.read("messageId")).willReturn(token);
+
+        //when
+        listener.objectChanged("messageId", null, ChangeType.MODIFY);
+
+        //then
+        assertThat(promise.getPromise().isDone()).isFalse();
+    }
+
+    @Test
+    public void shouldIgnoreTokensNotExpected() throws Exception {
+        //given
+        messageDispatcher.expect("messageId", new HashSet<Predicate>());
+        ContinuousQueryListener<Object> listener = captureListener();
+
+        //when
+        listener.objectChanged("otherId", null, ChangeType.MODIFY);
+        listener.objectChanged("messageId", null, ChangeType.ADD);
+
+        //then
+        verify(mockCTS, never()).read(any(String.class));
+    }
+
+    @Test
+    public void shouldCheckExpectedMessagesOnceReconnected() throws Exception {
+        //given
+        MessagePromise promise = messageDispatcher.expect("messageId", new HashSet<Predicate>());
+        ContinuousQueryListener<Object> listener = captureListener();
+        given(mockCTS.read("messageId")).willReturn(respondedToken("messageId"));
+
+        //when
+        listener.connectionLost();
+        boolean notifiedWhileDisconnected = messageDispatcher.isClusterNotified();
+        listener.objectsChanged(Collections.singleton("otherId"));
+
+        //then
+        assertThat(notifiedWhileDisconnected).isFalse();
+        assertThat(messageDispatcher.isClusterNotified()).isTrue();
+        assertThat(promise.getPromise().isDone()).isTrue();
+    }
+
+    @Test
+    public void shouldNotListenWhenDisabled() throws Exception {
+        //given
+        ClusterMessageListener disabled = new ClusterMessageListener(mockCTS, mock(Debug.class), false);
+        MessageDispatcher dispatcher = new MessageDispatcher(CacheBuilder.newBuilder().<String, MessagePromise>build(),
+                mock(Debug.class), disabled);
+
+        //when
+        dispatcher.expect("messageId", new HashSet<Predicate>());
+
+        //then
+        assertThat(dispatcher.isClusterNotified()).isFalse();
+        verify(mockCTS, never()).addContinuousQueryListener(any(ContinuousQueryListener.class),
+                any(TokenFilter.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ContinuousQueryListener<Object> captureListener() throws Exception {
+        ArgumentCaptor<ContinuousQueryListener> captor = ArgumentCaptor.forClass(ContinuousQueryListener.class);
+        verify(mockCTS, times(1)).addContinuousQueryListener(captor.capture(), any(TokenFilter.class));
+        return captor.getValue();
+    }
+
+    private Token respondedToken(String messageId) {
+        Token token = new Token(messageId, TokenType.PUSH);
+        token.setAttribute(CoreTokenField.INTEGER_ONE, 1);
+        token.setBlob("{ \"messageId\" : \"messageId\", \"jwt\" : \"response\" }".getBytes());
+        return token;
+    }
+}
@@ -170,6 +170,7 @@ public class SnsMessageResourceTest {
         //then
         assertThat(result.get()).isNotNull();
         verify(mockToken, times(1)).setAttribute(CoreTokenField.INTEGER_ONE, ACCEPT_VALUE);
+        verify(mockToken, times(1)).setBlob((byte[]) any());
         verify(mockCTS, times(1)).update(mockToken);
     }
 
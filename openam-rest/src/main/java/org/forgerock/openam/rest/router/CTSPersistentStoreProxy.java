@@ -26,6 +26,7 @@ import org.forgerock.openam.cts.api.filter.TokenFilter;
 import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.continuous.ContinuousQueryListener;
 import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
 import org.forgerock.openam.tokens.CoreTokenField;
 
@@ -68,6 +69,12 @@ public class CTSPersistentStoreProxy implements CTSPersistentStore {
         CTSHolder.get().createAsync(token);
     }
 
+    @Override
+    public void createAsync(Token token, ResultHandler<Token, CoreTokenException> handler)
+            throws CoreTokenException {
+        CTSHolder.get().createAsync(token, handler);
+    }
+
     @Override
     public Token read(String tokenId) throws CoreTokenException {
         return CTSHolder.get().read(tokenId);
@@ -26,6 +26,8 @@ import org.mozilla.javascript.ClassShutter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.iplanet.am.util.SystemProperties;
+
 import javax.inject.Inject;
 import javax.script.ScriptEngineManager;
 import java.util.Collections;
@@ -43,6 +45,12 @@ import java.util.regex.Pattern;
 public final class StandardScriptEngineManager extends ScriptEngineManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(StandardScriptEngineManager.class);
 
+    /**
+     * System property enabling a sealed standard scope shared by every JavaScript evaluation, rather than the standard
+     * objects being initialised for each evaluation.
+     */
+    public static final String JAVASCRIPT_SHARED_SCOPE = "org.forgerock.openam.scripting.javascript.sharedScope";
+
     /**
      * Default configuration. Uses system security manager, no script timeouts, and a sandbox configuration that
      * disallows access to all Java classes.
@@ -75,6 +83,7 @@ public final class StandardScriptEngineManager extends ScriptEngineManager {
         // Configure Rhino JS and Groovy script engine factories with sandboxing
         final RhinoScriptEngineFactory rhino = new RhinoScriptEngineFactory(new ObservedContextFactory(this));
         rhino.setOptimisationLevel(RhinoScriptEngineFactory.INTERPRETED);
+        rhino.setSharedStandardScope(SystemProperties.getAsBoolean(JAVASCRIPT_SHARED_SCOPE, false));
         // Set an empty sandbox for now - will deny access to everything. App will set correct configuration before use.
         final ClassShutter sandbox = new RhinoSandboxClassShutter(System.getSecurityManager(),
                 Collections.<Pattern>emptyList(), Collections.<Pattern>emptyList());
@@ -87,4 +87,9 @@ public class GroovyHttpClient extends RestletHttpClient {
     public Promise<Response, NeverThrowsException> send(final Request request) {
         return client.send(request);
     }
+
+    @Override
+    protected Client getPooledClient() {
+        return client;
+    }
 }
@@ -0,0 +1,408 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.scripting.api.http;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.http.Handler;
+import org.forgerock.http.MutableUri;
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+import org.forgerock.http.protocol.Status;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.forgerock.util.promise.ResultHandler;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+
+import com.iplanet.am.util.SystemProperties;
+
+/**
+ * Limits the number of requests which scripts may have in flight to each host, and records the latency and usage of
+ * the connections to each host.
+ * <p>
+ * A request over the limit for its host is queued, without blocking the calling thread, and is sent when a request in
+ * flight to the host completes. A request which finds the queue for its host full, or which is still queued
+ * {@link #ACQUIRE_TIMEOUT} milliseconds later, is not sent and completes with a 503 Service Unavailable response,
+ * even if no request in flight to the host ever completes.
+ * <p>
+ * The statistics of at most {@link #MAX_HOSTS} hosts are kept, and those of hosts not requested for an hour are
+ * discarded.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class HostConnectionLimiter {
+
+    /**
+     * System property defining the maximum number of requests in flight to any one host.
+     */
+    public static final String MAX_CONNECTIONS_PER_HOST = "org.forgerock.openam.scripting.http.maxConnectionsPerHost";
+    /**
+     * System property defining the maximum number of requests queued for any one host, once the requests in flight to
+     * the host have reached the limit.
+     */
+    public static final String MAX_QUEUED_PER_HOST = "org.forgerock.openam.scripting.http.maxQueuedPerHost";
+    /**
+     * System property defining how long, in milliseconds, a request may be queued for the number of requests in
+     * flight to its host to drop below the limit.
+     */
+    public static final String ACQUIRE_TIMEOUT = "org.forgerock.openam.scripting.http.acquireTimeout";
+    /**
+     * System property defining the maximum number of hosts whose statistics are kept.
+     */
+    public static final String MAX_HOSTS = "org.forgerock.openam.scripting.http.maxHosts";
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 64;
+    private static final int DEFAULT_MAX_QUEUED_PER_HOST = 256;
+    private static final int DEFAULT_ACQUIRE_TIMEOUT = 10000;
+    private static final int DEFAULT_MAX_HOSTS = 1000;
+    private static final long HOST_IDLE_TIMEOUT_MINUTES = 60;
+
+    private final int maxConnectionsPerHost;
+    private final int maxQueuedPerHost;
+    private final long acquireTimeoutNanos;
+    private final Cache<String, HostStatistics> hosts;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates the limiter, configured from the system properties.
+     *
+     * @param executorServiceFactory Creates the scheduler expiring the queued requests.
+     */
+    @Inject
+    public HostConnectionLimiter(ExecutorServiceFactory executorServiceFactory) {
+        this(SystemProperties.getAsInt(MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                SystemProperties.getAsInt(MAX_QUEUED_PER_HOST, DEFAULT_MAX_QUEUED_PER_HOST),
+                SystemProperties.getAsInt(ACQUIRE_TIMEOUT, DEFAULT_ACQUIRE_TIMEOUT),
+                SystemProperties.getAsInt(MAX_HOSTS, DEFAULT_MAX_HOSTS),
+                executorServiceFactory.createScheduledService(1));
+    }
+
+    HostConnectionLimiter(int maxConnectionsPerHost, int maxQueuedPerHost, long acquireTimeout, int maxHosts,
+            ScheduledExecutorService scheduler) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxQueuedPerHost = maxQueuedPerHost;
+        this.acquireTimeoutNanos = MILLISECONDS.toNanos(acquireTimeout);
+        this.scheduler = scheduler;
+        this.hosts = CacheBuilder.newBuilder()
+                .maximumSize(maxHosts)
+                .expireAfterAccess(HOST_IDLE_TIMEOUT_MINUTES, MINUTES)
+                .build();
+    }
+
+    /**
+     * Wraps the handler sending requests, so that the requests it is given are limited per host.
+     *
+     * @param next The handler sending the requests.
+     * @return The limiting handler.
+     */
+    public Handler limit(final Handler next) {
+        return new Handler() {
+            @Override
+            public Promise<Response, NeverThrowsException> handle(Context context, Request request) {
+                return send(next, context, request);
+            }
+        };
+    }
+
+    /**
+     * Returns the statistics of each host recently requested.
+     *
+     * @return The statistics, keyed by scheme, host and port.
+     */
+    public Map<String, HostStatistics> getHostStatistics() {
+        return Collections.unmodifiableMap(hosts.asMap());
+    }
+
+    private Promise<Response, NeverThrowsException> send(Handler next, Context context, Request request) {
+        HostStatistics host = getHost(request.getUri());
+        PendingRequest pending = new PendingRequest(next, context, request);
+        switch (host.admit(pending)) {
+        case SEND:
+            dispatch(host, pending);
+            break;
+        case REJECT:
+            reject(host, pending);
+            break;
+        default:
+            // sent once a request in flight to the host completes, unless it expires first
+            expire(host, pending);
+            break;
+        }
+        return pending.response;
+    }
+
+    /**
+     * Schedules the queued request to be rejected once it has waited for the acquire timeout, so that it does not
+     * wait for a request in flight to the host to complete.
+     */
+    private void expire(final HostStatistics host, final PendingRequest pending) {
+        try {
+            pending.expiry = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (host.remove(pending)) {
+                        reject(host, pending);
+                    }
+                }
+            }, acquireTimeoutNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the request is rejected when its turn comes if it has waited too long
+        }
+    }
+
+    private void dispatch(final HostStatistics host, final PendingRequest pending) {
+        host.started();
+        final long start = System.nanoTime();
+        Promise<Response, NeverThrowsException> response;
+        try {
+            response = pending.next.handle(pending.context, pending.request);
+        } catch (RuntimeException e) {
+            Response error = new Response(Status.INTERNAL_SERVER_ERROR);
+            error.setCause(e);
+            completed(host, pending, error, System.nanoTime() - start);
+            return;
+        }
+        response.thenOnResult(new ResultHandler<Response>() {
+            @Override
+            public void handleResult(Response result) {
+                completed(host, pending, result, System.nanoTime() - start);
+            }
+        });
+    }
+
+    private void completed(HostStatistics host, PendingRequest pending, Response result, long latencyNanos) {
+        host.completed(result.getCause() != null || result.getStatus().isServerError(), latencyNanos);
+        try {
+            pending.response.handleResult(result);
+        } finally {
+            release(host);
+        }
+    }
+
+    /**
+     * Hands the connection released by a completed request over to the next queued request which may still be sent.
+     */
+    private void release(HostStatistics host) {
+        PendingRequest next;
+        while ((next = host.release()) != null) {
+            ScheduledFuture<?> expiry = next.expiry;
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            if (System.nanoTime() - next.queued <= acquireTimeoutNanos) {
+                dispatch(host, next);
+                return;
+            }
+            reject(host, next);
+        }
+    }
+
+    private static void reject(HostStatistics host, PendingRequest pending) {
+        host.rejected.incrementAndGet();
+        Response response = new Response(Status.SERVICE_UNAVAILABLE);
+        response.setCause(new Exception("Too many requests in flight to the host"));
+        pending.response.handleResult(response);
+    }
+
+    private HostStatistics getHost(MutableUri uri) {
+        String key = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        HostStatistics host = hosts.getIfPresent(key);
+        if (host == null) {
+            HostStatistics created = new HostStatistics(maxConnectionsPerHost, maxQueuedPerHost);
+            host = hosts.asMap().putIfAbsent(key, created);
+            if (host == null) {
+                host = created;
+            }
+        }
+        return host;
+    }
+
+    private enum Admission {
+        SEND, QUEUE, REJECT
+    }
+
+    /**
+     * A request to send, with the response returned to the script.
+     */
+    private static final class PendingRequest {
+        private final Handler next;
+        private final Context context;
+        private final Request request;
+        private final PromiseImpl<Response, NeverThrowsException> response = PromiseImpl.create();
+        private final long queued = System.nanoTime();
+        private volatile ScheduledFuture<?> expiry;
+
+        private PendingRequest(Handler next, Context context, Request request) {
+            this.next = next;
+            this.context = context;
+            this.request = request;
+        }
+    }
+
+    /**
+     * The usage of the connections to a host, and the latency of the requests sent to it.
+     */
+    public static final class HostStatistics {
+        private final int maxQueued;
+        // guarded by this
+        private final Queue<PendingRequest> queue = new ArrayDeque<>();
+        private int available;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong peakInFlight = new AtomicLong();
+
+        private HostStatistics(int maxConnections, int maxQueued) {
+            this.available = maxConnections;
+            this.maxQueued = maxQueued;
+        }
+
+        private synchronized Admission admit(PendingRequest pending) {
+            if (available > 0) {
+                available--;
+                return Admission.SEND;
+            }
+            if (queue.size() < maxQueued) {
+                queue.add(pending);
+                return Admission.QUEUE;
+            }
+            return Admission.REJECT;
+        }
+
+        /**
+         * Releases a connection, or hands it over to the next queued request.
+         *
+         * @return The request now holding the connection, or null if it was released.
+         */
+        private synchronized PendingRequest release() {
+            PendingRequest next = queue.poll();
+            if (next == null) {
+                available++;
+            }
+            return next;
+        }
+
+        /**
+         * Removes a request from the queue.
+         *
+         * @return true if the request was still queued.
+         */
+        private synchronized boolean remove(PendingRequest pending) {
+            return queue.remove(pending);
+        }
+
+        private void started() {
+            long current = inFlight.incrementAndGet();
+            long peak = peakInFlight.get();
+            while (current > peak && !peakInFlight.compareAndSet(peak, current)) {
+                peak = peakInFlight.get();
+            }
+        }
+
+        private void completed(boolean failed, long latencyNanos) {
+            inFlight.decrementAndGet();
+            requests.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            long latency = NANOSECONDS.toMillis(latencyNanos);
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+                max = maxLatency.get();
+            }
+        }
+
+        /**
+         * @return The number of requests queued for a connection to the host.
+         */
+        public synchronized int getQueuedCount() {
+            return queue.size();
+        }
+
+        /**
+         * @return The number of requests completed.
+         */
+        public long getRequestCount() {
+            return requests.get();
+        }
+
+        /**
+         * @return The number of requests which failed to connect, or received a server error response.
+         */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * @return The number of requests not sent as the queue was full, or they were queued for too long.
+         */
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+        /**
+         * @return The average time taken to complete a request, in milliseconds.
+         */
+        public long getAverageLatency() {
+            long count = requests.get();
+            return count == 0 ? 0 : totalLatency.get() / count;
+        }
+
+        /**
+         * @return The longest time taken to complete a request, in milliseconds.
+         */
+        public long getMaxLatency() {
+            return maxLatency.get();
+        }
+
+        /**
+         * @return The number of requests currently in flight.
+         */
+        public long getInFlightCount() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return The largest number of requests in flight at once.
+         */
+        public long getPeakInFlightCount() {
+            return peakInFlight.get();
+        }
+    }
+}
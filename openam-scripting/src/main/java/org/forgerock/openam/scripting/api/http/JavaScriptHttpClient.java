@@ -88,6 +88,11 @@ public class JavaScriptHttpClient extends RestletHttpClient {
         return client.send(request);
     }
 
+    @Override
+    protected Client getPooledClient() {
+        return client;
+    }
+
     private Map convertRequestData(NativeObject requestData) {
         HashMap<String, ArrayList<HashMap>> convertedRequestData = new HashMap<String, ArrayList<HashMap>>();
 
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.factories;
@@ -187,8 +187,9 @@ class RhinoScriptEngine extends AbstractScriptEngine implements Compilable {
 
     /**
      * Builds a Rhino variable scope that includes all of the scopes defined in the given script context as well as
-     * the standard Rhino top-level environment. Also binds the variable {@code context} to point to the JSR 223
-     * ScriptContext object, as per the JSR 223 spec.
+     * the standard Rhino top-level environment, which may be shared between evaluations (see
+     * {@link RhinoScriptEngineFactory#getStandardScope(Context)}). Also binds the variable {@code context} to point to
+     * the JSR 223 ScriptContext object, as per the JSR 223 spec.
      *
      * @param context the Rhino context to build the scope for.
      * @param scriptContext the JSR 223 script context.
@@ -196,7 +197,7 @@ class RhinoScriptEngine extends AbstractScriptEngine implements Compilable {
      */
     private Scriptable getScope(final Context context, final ScriptContext scriptContext) {
         final Scriptable scope = new ScriptContextScope(scriptContext);
-        final ScriptableObject topLevel = context.initStandardObjects();
+        final ScriptableObject topLevel = factory.getStandardScope(context);
         scope.setPrototype(topLevel);
         scope.put("context", scope, scriptContext);
         return scope;
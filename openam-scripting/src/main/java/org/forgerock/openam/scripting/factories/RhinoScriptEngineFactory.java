@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.factories;
@@ -21,6 +21,7 @@ import org.forgerock.util.Reject;
 import org.mozilla.javascript.ClassShutter;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ScriptableObject;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -42,6 +43,10 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
      * Optimisation level constant indicating that scripts should be fully interpreted and not compiled.
      */
     public static final int INTERPRETED = -1;
+    /**
+     * Standard objects which Rhino loads lazily, loaded before the shared scope is sealed.
+     */
+    private static final String LAZILY_LOADED = "RegExp; getClass; java; Packages; JavaAdapter;";
     private final ContextFactory contextFactory;
 
     private final String version;
@@ -49,6 +54,8 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
 
     private volatile ClassShutter classShutter;
     private volatile int optimisationLevel = INTERPRETED;
+    private volatile boolean sharedStandardScope;
+    private volatile ScriptableObject standardScope;
 
     /**
      * Constructs a script engine factory using the given context factory and class-shutter. If non-null, the given
@@ -225,6 +232,46 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
         Context.exit();
     }
 
+    /**
+     * Returns the standard Rhino top-level objects (Object, Array, JSON, RegExp, ...) to use as the prototype of the
+     * scope of a script evaluation. If the shared standard scope is enabled, this is a sealed scope built once for
+     * the current configuration of this factory and shared by every evaluation; otherwise a fresh scope is built for
+     * each call.
+     *
+     * @param context the context of the evaluation, as returned by {@link #getContext()}.
+     * @return the standard top-level scope.
+     */
+    ScriptableObject getStandardScope(Context context) {
+        if (!sharedStandardScope) {
+            return context.initStandardObjects();
+        }
+        ScriptableObject scope = standardScope;
+        if (scope == null) {
+            synchronized (this) {
+                scope = standardScope;
+                if (scope == null) {
+                    scope = context.initStandardObjects(null, true);
+                    context.evaluateString(scope, LAZILY_LOADED, "lazyLoad", 1, null);
+                    scope.sealObject();
+                    standardScope = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * Sets whether scripts are evaluated against a sealed standard scope shared by every evaluation, rather than a
+     * standard scope built for each evaluation. Scripts are then unable to modify the standard objects, for example to
+     * add functions to {@code Array.prototype}.
+     *
+     * @param sharedStandardScope true to share a sealed standard scope between evaluations.
+     */
+    public void setSharedStandardScope(final boolean sharedStandardScope) {
+        this.sharedStandardScope = sharedStandardScope;
+        this.standardScope = null;
+    }
+
     /**
      * Sets the optimisation level to use for context objects created by this script engine. Use
      * {@link #INTERPRETED} to disable all optimisations and use a purely interpreted script engine.
@@ -233,6 +280,7 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
      */
     public void setOptimisationLevel(final int optimisationLevel) {
         this.optimisationLevel = optimisationLevel;
+        this.standardScope = null;
     }
 
     /**
@@ -242,6 +290,7 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
      */
     public void setClassShutter(final ClassShutter classShutter) {
         this.classShutter = classShutter;
+        this.standardScope = null;
     }
 
     @Override
@@ -252,6 +301,7 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
                 ", languageVersion='" + languageVersion + '\'' +
                 ", classShutter=" + classShutter +
                 ", optimisationLevel=" + optimisationLevel +
+                ", sharedStandardScope=" + sharedStandardScope +
                 '}';
     }
 }
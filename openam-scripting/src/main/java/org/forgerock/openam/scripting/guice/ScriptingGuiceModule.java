@@ -46,7 +46,6 @@ import org.forgerock.openam.scripting.ThreadPoolScriptEvaluator;
 import org.forgerock.openam.scripting.api.http.GroovyHttpClient;
 import org.forgerock.openam.scripting.api.http.JavaScriptHttpClient;
 import org.forgerock.openam.shared.concurrency.ResizableLinkedBlockingQueue;
-import org.forgerock.openam.shared.guice.CloseableHttpClientProvider;
 import org.forgerock.util.thread.ExecutorServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -94,7 +93,7 @@ public class ScriptingGuiceModule extends AbstractModule {
 
         bind(Client.class)
                 .annotatedWith(Names.named(SCRIPTING_HTTP_CLIENT_NAME))
-                .toProvider(CloseableHttpClientProvider.class).in(Scopes.SINGLETON);
+                .toProvider(ScriptingHttpClientProvider.class).in(Scopes.SINGLETON);
     }
 
     /**
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.scripting.guice;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.util.time.Duration.duration;
+
+import javax.inject.Inject;
+
+import org.forgerock.http.Client;
+import org.forgerock.http.HttpApplicationException;
+import org.forgerock.http.handler.HttpClientHandler;
+import org.forgerock.openam.scripting.api.http.HostConnectionLimiter;
+import org.forgerock.openam.shared.guice.CloseableHttpClientProvider;
+import org.forgerock.util.Option;
+import org.forgerock.util.Options;
+import org.forgerock.util.thread.listener.ShutdownManager;
+import org.forgerock.util.time.Duration;
+
+import com.iplanet.am.util.SystemProperties;
+
+/**
+ * Provides the client shared by every script, which keeps its connections alive in a bounded pool, applies the
+ * configured timeouts, and limits the requests in flight to each host through a {@link HostConnectionLimiter}.
+ * The timeouts which are not configured are those of a default {@link HttpClientHandler}.
+ *
+ * @since 14.0.0
+ */
+public class ScriptingHttpClientProvider extends CloseableHttpClientProvider {
+
+    /**
+     * System property defining the maximum number of pooled connections, across all hosts.
+     */
+    public static final String MAX_CONNECTIONS = "org.forgerock.openam.scripting.http.maxConnections";
+    /**
+     * System property defining the connection timeout, in milliseconds. Not set by default.
+     */
+    public static final String CONNECT_TIMEOUT = "org.forgerock.openam.scripting.http.connectTimeout";
+    /**
+     * System property defining the read timeout, in milliseconds. Not set by default.
+     */
+    public static final String READ_TIMEOUT = "org.forgerock.openam.scripting.http.readTimeout";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    private final HostConnectionLimiter hostConnectionLimiter;
+
+    /**
+     * Creates the provider.
+     *
+     * @param shutdownManager The commons shutdown manager implementation.
+     * @param hostConnectionLimiter Limits the requests in flight to each host.
+     */
+    @Inject
+    public ScriptingHttpClientProvider(ShutdownManager shutdownManager, HostConnectionLimiter hostConnectionLimiter) {
+        super(shutdownManager);
+        this.hostConnectionLimiter = hostConnectionLimiter;
+    }
+
+    @Override
+    protected HttpClientHandler newHttpClientHandler() throws HttpApplicationException {
+        Options options = Options.defaultOptions()
+                .set(HttpClientHandler.OPTION_REUSE_CONNECTIONS, true)
+                .set(HttpClientHandler.OPTION_MAX_CONNECTIONS,
+                        SystemProperties.getAsInt(MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+        setTimeout(options, HttpClientHandler.OPTION_CONNECT_TIMEOUT, CONNECT_TIMEOUT);
+        setTimeout(options, HttpClientHandler.OPTION_SO_TIMEOUT, READ_TIMEOUT);
+        return new HttpClientHandler(options);
+    }
+
+    private static void setTimeout(Options options, Option<Duration> option, String property) {
+        if (SystemProperties.get(property) != null) {
+            options.set(option, duration(SystemProperties.getAsInt(property, 0), MILLISECONDS));
+        }
+    }
+
+    @Override
+    protected Client newClient(HttpClientHandler httpClientHandler) {
+        return new Client(hostConnectionLimiter.limit(httpClientHandler));
+    }
+}
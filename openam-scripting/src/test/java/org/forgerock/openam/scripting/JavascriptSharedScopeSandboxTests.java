@@ -0,0 +1,34 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.scripting;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import org.forgerock.openam.scripting.factories.RhinoScriptEngineFactory;
+
+/**
+ * Runs the sandbox tests against Javascript evaluated with the shared standard scope.
+ */
+public class JavascriptSharedScopeSandboxTests extends AbstractSandboxTests {
+    @Override
+    protected ScriptEngine getEngine(final ScriptEngineManager manager) {
+        ScriptEngine engine = manager.getEngineByName(SupportedScriptingLanguage.JAVASCRIPT_ENGINE_NAME);
+        ((RhinoScriptEngineFactory) engine.getFactory()).setSharedStandardScope(true);
+        return engine;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.scripting.api.http;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.forgerock.http.Handler;
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+import org.forgerock.http.protocol.Status;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.forgerock.util.thread.ExecutorServiceFactory;
+import org.forgerock.util.thread.listener.ShutdownManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class HostConnectionLimiterTest {
+
+    private List<PromiseImpl<Response, NeverThrowsException>> pending;
+    private HostConnectionLimiter limiter;
+    private Handler handler;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        pending = new ArrayList<>();
+        scheduler = new ExecutorServiceFactory(mock(ShutdownManager.class)).createScheduledService(1);
+        limit(new HostConnectionLimiter(1, 0, 0, 100, scheduler));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private void limit(HostConnectionLimiter limiter) {
+        this.limiter = limiter;
+        handler = limiter.limit(new Handler() {
+            @Override
+            public Promise<Response, NeverThrowsException> handle(Context context, Request request) {
+                PromiseImpl<Response, NeverThrowsException> response = PromiseImpl.create();
+                pending.add(response);
+                return response;
+            }
+        });
+    }
+
+    @Test
+    public void shouldRejectRequestsOverTheLimitForTheHostWhenTheQueueIsFull() throws Exception {
+        //given
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+
+        //when
+        Response rejected = handler.handle(new RootContext(), request("http://risk.example.com/score"))
+                .getOrThrow();
+        handler.handle(new RootContext(), request("http://other.example.com/"));
+
+        //then
+        assertThat(rejected.getStatus()).isEqualTo(Status.SERVICE_UNAVAILABLE);
+        assertThat(pending).hasSize(2);
+        HostConnectionLimiter.HostStatistics statistics =
+                limiter.getHostStatistics().get("http://risk.example.com:-1");
+        assertThat(statistics.getRejectedCount()).isEqualTo(1);
+        assertThat(statistics.getInFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReleaseTheHostWhenTheResponseArrives() throws Exception {
+        //given
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+
+        //when
+        pending.get(0).handleResult(new Response(Status.INTERNAL_SERVER_ERROR));
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+
+        //then
+        assertThat(pending).hasSize(2);
+        HostConnectionLimiter.HostStatistics statistics =
+                limiter.getHostStatistics().get("http://risk.example.com:-1");
+        assertThat(statistics.getRequestCount()).isEqualTo(1);
+        assertThat(statistics.getFailureCount()).isEqualTo(1);
+        assertThat(statistics.getRejectedCount()).isEqualTo(0);
+        assertThat(statistics.getPeakInFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSendQueuedRequestWhenAConnectionIsReleased() throws Exception {
+        //given
+        limit(new HostConnectionLimiter(1, 1, 10000, 100, scheduler));
+        Promise<Response, NeverThrowsException> first =
+                handler.handle(new RootContext(), request("http://risk.example.com/score"));
+        Promise<Response, NeverThrowsException> queued =
+                handler.handle(new RootContext(), request("http://risk.example.com/score"));
+        Response rejected = handler.handle(new RootContext(), request("http://risk.example.com/score"))
+                .getOrThrow();
+        HostConnectionLimiter.HostStatistics statistics =
+                limiter.getHostStatistics().get("http://risk.example.com:-1");
+        assertThat(pending).hasSize(1);
+        assertThat(queued.isDone()).isFalse();
+        assertThat(statistics.getQueuedCount()).isEqualTo(1);
+
+        //when
+        pending.get(0).handleResult(new Response(Status.OK));
+
+        //then
+        assertThat(first.getOrThrow().getStatus()).isEqualTo(Status.OK);
+        assertThat(rejected.getStatus()).isEqualTo(Status.SERVICE_UNAVAILABLE);
+        assertThat(pending).hasSize(2);
+        assertThat(statistics.getQueuedCount()).isEqualTo(0);
+        assertThat(statistics.getInFlightCount()).isEqualTo(1);
+        pending.get(1).handleResult(new Response(Status.CREATED));
+        assertThat(queued.getOrThrow().getStatus()).isEqualTo(Status.CREATED);
+    }
+
+    @Test
+    public void shouldRejectQueuedRequestWhichWaitedTooLong() throws Exception {
+        //given
+        limit(new HostConnectionLimiter(1, 1, 1, 100, scheduler));
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+        Promise<Response, NeverThrowsException> queued =
+                handler.handle(new RootContext(), request("http://risk.example.com/score"));
+        Thread.sleep(10);
+
+        //when
+        pending.get(0).handleResult(new Response(Status.OK));
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+
+        //then
+        assertThat(queued.getOrThrow().getStatus()).isEqualTo(Status.SERVICE_UNAVAILABLE);
+        assertThat(pending).hasSize(2);
+        HostConnectionLimiter.HostStatistics statistics =
+                limiter.getHostStatistics().get("http://risk.example.com:-1");
+        assertThat(statistics.getRejectedCount()).isEqualTo(1);
+        assertThat(statistics.getInFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectQueuedRequestOnceTheAcquireTimeoutExpiresWithoutAConnectionBeingReleased()
+            throws Exception {
+        //given
+        limit(new HostConnectionLimiter(1, 1, 50, 100, scheduler));
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+
+        //when
+        Response queued = handler.handle(new RootContext(), request("http://risk.example.com/score"))
+                .getOrThrow(5, SECONDS);
+
+        //then
+        assertThat(queued.getStatus()).isEqualTo(Status.SERVICE_UNAVAILABLE);
+        HostConnectionLimiter.HostStatistics statistics =
+                limiter.getHostStatistics().get("http://risk.example.com:-1");
+        assertThat(statistics.getQueuedCount()).isEqualTo(0);
+        assertThat(statistics.getRejectedCount()).isEqualTo(1);
+        pending.get(0).handleResult(new Response(Status.OK));
+        handler.handle(new RootContext(), request("http://risk.example.com/score"));
+        assertThat(pending).hasSize(2);
+        assertThat(statistics.getInFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldBoundTheNumberOfHostsKept() throws Exception {
+        //given
+        limit(new HostConnectionLimiter(1, 0, 0, 10, scheduler));
+
+        //when
+        for (int i = 0; i < 100; i++) {
+            handler.handle(new RootContext(), request("http://host" + i + ".example.com/"));
+        }
+
+        //then
+        assertThat(limiter.getHostStatistics().size()).isLessThanOrEqualTo(10);
+    }
+
+    private static Request request(String uri) throws Exception {
+        Request request = new Request();
+        request.setMethod("GET");
+        request.setUri(uri);
+        return request;
+    }
+}
@@ -11,18 +11,28 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.factories;
 
+import org.forgerock.openam.scripting.ScriptEngineConfiguration;
+import org.forgerock.openam.scripting.StandardScriptEngineManager;
+import org.forgerock.openam.scripting.SupportedScriptingLanguage;
+import org.forgerock.openam.scripting.sandbox.RhinoSandboxClassShutter;
+import org.mozilla.javascript.ClassShutter;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.testng.Assert.fail;
 
 /**
  * Basic tests of the rhino script engine. The engine is more fully tested by the
@@ -100,4 +110,167 @@ public class RhinoScriptEngineTest {
         // Then
         assertThat(result).isEqualTo(12);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReuseStandardObjectsWhenScopeIsShared() throws Exception {
+        // Given
+        RhinoScriptEngineFactory factory = new RhinoScriptEngineFactory();
+        factory.setSharedStandardScope(true);
+        RhinoScriptEngine engine = new RhinoScriptEngine(factory);
+
+        // When
+        Object first = engine.eval("Array");
+        Object second = engine.eval("Array");
+
+        // Then
+        assertThat(first).isSameAs(second);
+    }
+
+    @Test
+    public void shouldNotReuseStandardObjectsByDefault() throws Exception {
+        // When
+        Object first = testEngine.eval("Array");
+        Object second = testEngine.eval("Array");
+
+        // Then
+        assertThat(first).isNotSameAs(second);
+    }
+
+    @Test(expectedExceptions = ScriptException.class)
+    public void shouldPreventScriptsModifyingSharedStandardObjects() throws Exception {
+        // Given
+        RhinoScriptEngineFactory factory = new RhinoScriptEngineFactory();
+        factory.setSharedStandardScope(true);
+        RhinoScriptEngine engine = new RhinoScriptEngine(factory);
+
+        // When
+        engine.eval("Array.prototype.leaked = 1;");
+    }
+
+    @Test
+    public void shouldKeepVariablesInBindingsWhenScopeIsShared() throws Exception {
+        // Given
+        RhinoScriptEngineFactory factory = new RhinoScriptEngineFactory();
+        factory.setSharedStandardScope(true);
+        RhinoScriptEngine engine = new RhinoScriptEngine(factory);
+
+        // When
+        engine.eval("var x = [1, 2, 3].length;");
+        Object undefinedInNewBindings = engine.eval("typeof x", engine.createBindings());
+
+        // Then
+        assertThat(((Number) engine.get("x")).intValue()).isEqualTo(3);
+        assertThat(undefinedInNewBindings).isEqualTo("undefined");
+    }
+
+    @Test
+    public void shouldRebuildSharedScopeWhenConfigurationChanges() throws Exception {
+        // Given
+        RhinoScriptEngineFactory factory = new RhinoScriptEngineFactory();
+        factory.setSharedStandardScope(true);
+        RhinoScriptEngine engine = new RhinoScriptEngine(factory);
+        Object first = engine.eval("Array");
+
+        // When
+        factory.setOptimisationLevel(RhinoScriptEngineFactory.INTERPRETED);
+        Object second = engine.eval("Array");
+
+        // Then
+        assertThat(first).isNotSameAs(second);
+    }
+
+    @Test
+    public void shouldAccessAllowedJavaClassesWhenScopeIsShared() throws Exception {
+        // Given
+        RhinoScriptEngine engine = sharedScopeEngine(allowOnly("java.util.HashMap"));
+
+        // When
+        Object first = engine.eval("var map = new java.util.HashMap(); map.put('a', 'b'); map.size()");
+        Object second = engine.eval("new Packages.java.util.HashMap().size()");
+        Object third = engine.eval("new java.util.HashMap().isEmpty()");
+
+        // Then
+        assertThat(((Number) first).intValue()).isEqualTo(1);
+        assertThat(((Number) second).intValue()).isEqualTo(0);
+        assertThat(third).isEqualTo(true);
+    }
+
+    @Test
+    public void shouldBlockDeniedJavaClassesWhenScopeIsShared() throws Exception {
+        // Given
+        RhinoScriptEngine engine = sharedScopeEngine(allowOnly("java.util.HashMap"));
+        engine.eval("new java.util.HashMap()");
+
+        // When / Then
+        assertDenied(engine, "new java.util.ArrayList()");
+        assertDenied(engine, "new Packages.java.util.ArrayList()");
+        assertDenied(engine, "java.lang.System.getProperty('user.dir')");
+    }
+
+    @Test
+    public void shouldApplyNewClassShutterToSharedScope() throws Exception {
+        // Given
+        RhinoScriptEngineFactory factory = new RhinoScriptEngineFactory();
+        factory.setSharedStandardScope(true);
+        factory.setClassShutter(allowOnly("java.util.HashMap"));
+        RhinoScriptEngine engine = new RhinoScriptEngine(factory);
+        engine.eval("new java.util.HashMap()");
+        assertDenied(engine, "new java.util.ArrayList()");
+
+        // When
+        factory.setClassShutter(allowOnly("java.util.ArrayList"));
+
+        // Then
+        assertDenied(engine, "new java.util.HashMap()");
+        assertDenied(engine, "new Packages.java.util.HashMap()");
+        assertThat(((Number) engine.eval("new java.util.ArrayList().size()")).intValue()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldApplySandboxConfigurationChangesToSharedScope() throws Exception {
+        // Given
+        StandardScriptEngineManager manager = new StandardScriptEngineManager();
+        manager.setConfiguration(configuration("java\\.util\\.HashMap"));
+        ScriptEngine engine = manager.getEngineByName(SupportedScriptingLanguage.JAVASCRIPT_ENGINE_NAME);
+        ((RhinoScriptEngineFactory) engine.getFactory()).setSharedStandardScope(true);
+        engine.eval("new java.util.HashMap()");
+
+        // When
+        manager.setConfiguration(configuration("java\\.util\\.ArrayList"));
+
+        // Then
+        assertDenied(engine, "new java.util.HashMap()");
+        engine.eval("new java.util.ArrayList()");
+    }
+
+    private static RhinoScriptEngine sharedScopeEngine(ClassShutter classShutter) {
+        RhinoScriptEngineFactory factory = new RhinoScriptEngineFactory();
+        factory.setSharedStandardScope(true);
+        factory.setClassShutter(classShutter);
+        return new RhinoScriptEngine(factory);
+    }
+
+    private static ClassShutter allowOnly(String... classNames) {
+        List<Pattern> whiteList = new ArrayList<Pattern>();
+        for (String className : classNames) {
+            whiteList.add(Pattern.compile(Pattern.quote(className)));
+        }
+        return new RhinoSandboxClassShutter(null, whiteList, Collections.<Pattern>emptyList());
+    }
+
+    private static ScriptEngineConfiguration configuration(String whiteList) {
+        return ScriptEngineConfiguration.builder()
+                .withWhiteList(Collections.singletonList(Pattern.compile(whiteList)))
+                .withBlackList(Collections.<Pattern>emptyList())
+                .build();
+    }
+
+    private static void assertDenied(ScriptEngine engine, String script) {
+        try {
+            engine.eval(script);
+            fail("Expected the class shutter to deny: " + script);
+        } catch (ScriptException e) {
+            // expected
+        }
+    }
+}
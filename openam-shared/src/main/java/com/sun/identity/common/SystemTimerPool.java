@@ -35,6 +35,10 @@ import org.forgerock.util.thread.listener.ShutdownListener;
 
 /**
  * SystemTimerPool is a TimerPool which shared in the system.
+ * <p>
+ * When the {@link Constants#SYSTEM_TIMERPOOL_TIMING_WHEEL} property is true,
+ * the shared pool is a {@link TimingWheelTimerPool}, whose tick duration is
+ * set by the {@link Constants#SYSTEM_TIMERPOOL_TIMING_WHEEL_TICK} property.
  */
 public class SystemTimerPool {
 
@@ -45,6 +49,8 @@ public class SystemTimerPool {
     protected static TimerPool instance;
     public static final int DEFAULT_POOL_SIZE = 3;
     private static int poolSize;
+    private static boolean timingWheel;
+    private static long tickDuration;
 
     static {
         poolSize = DEFAULT_POOL_SIZE;
@@ -61,6 +67,24 @@ public class SystemTimerPool {
                     + size + " defaulting to " + DEFAULT_POOL_SIZE);
             }
         }
+        timingWheel = Boolean.parseBoolean(SystemPropertiesManager.get(
+            Constants.SYSTEM_TIMERPOOL_TIMING_WHEEL));
+        tickDuration = TimingWheelTimerPool.DEFAULT_TICK_DURATION;
+        String tick = SystemPropertiesManager.get(
+            Constants.SYSTEM_TIMERPOOL_TIMING_WHEEL_TICK);
+        if (tick != null) {
+            try {
+                tickDuration = Long.parseLong(tick);
+            } catch (NumberFormatException ex) {
+                Debug debug = Debug.getInstance(TIMER_NAME);
+                debug.error("SystemTimerPool.<init>: incorrect tick duration "
+                    + tick + " defaulting to "
+                    + TimingWheelTimerPool.DEFAULT_TICK_DURATION);
+            }
+        }
+        if (tickDuration < 1) {
+            tickDuration = TimingWheelTimerPool.DEFAULT_TICK_DURATION;
+        }
     }
     
     /**
@@ -73,7 +97,12 @@ public class SystemTimerPool {
 
             // Don't load the Debug object in static block as it can
             // cause issues when doing a container restart.
-            instance = new TimerPool(TIMER_NAME, poolSize, false, Debug.getInstance(TIMER_NAME));
+            if (timingWheel) {
+                instance = new TimingWheelTimerPool(TIMER_NAME, poolSize, false, tickDuration,
+                        Debug.getInstance(TIMER_NAME));
+            } else {
+                instance = new TimerPool(TIMER_NAME, poolSize, false, Debug.getInstance(TIMER_NAME));
+            }
 
             try {
                 shutdownMan.addShutdownListener(new ShutdownListener() {
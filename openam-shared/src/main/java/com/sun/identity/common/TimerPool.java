@@ -86,7 +86,20 @@ public class TimerPool implements Triggerable {
             createThreads(poolSize);
         }
     }
-    
+
+    /**
+     * Constructor for subclasses which schedule and run the tasks themselves,
+     * no thread is started and the subclass must override every public
+     * method.
+     *
+     * @param name The name of the TimerPool
+     * @param debug Debug object to send debugging message to.
+     */
+    TimerPool(String name, Debug debug) {
+        this.name = name;
+        this.debug = debug;
+    }
+
     /**
      * Creates threads to the TimerPool.
      *
@@ -0,0 +1,541 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.common;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * A {@link TimerPool} which keeps its scheduled tasks in a hierarchical timing wheel rather than in a sorted map
+ * guarded by a single lock.
+ * <p>
+ * Scheduling a task for a time at which no other task is scheduled only adds its {@link HeadTaskRunnable} to a
+ * concurrent map and to a lock-free queue, so threads scheduling and cancelling tasks do not contend with each other
+ * or with the scheduler thread. The scheduler thread moves the queued heads into the wheel, and advances the wheel
+ * once per tick, handing the heads which are due to a fixed pool of worker threads. Each level of the wheel has
+ * {@link #WHEEL_SIZE} slots; a slot of the first level spans one tick and a slot of each further level spans a whole
+ * turn of the level below, into which its heads are moved as the wheel turns. Scheduling and firing a task therefore
+ * take constant time however many tasks are pending. A task never runs before its scheduled time, but may run up to
+ * one tick after it.
+ * <p>
+ * Tasks scheduled for the same time are linked to the same head, and are run, rescheduled and cancelled exactly as
+ * by {@link TimerPool}.
+ *
+ * @since 14.0.0
+ */
+public class TimingWheelTimerPool extends TimerPool {
+
+    /** The default duration of a tick of the wheel, in milliseconds. */
+    public static final long DEFAULT_TICK_DURATION = 10;
+    /** The number of slots in each level of the wheel. */
+    static final int WHEEL_SIZE = 256;
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    /** The number of cancelled heads left in the wheel above which they are purged. */
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private final String name;
+    private final Debug debug;
+    private final long tickDuration;
+    private final ConcurrentMap<Long, HeadTaskRunnable> heads = new ConcurrentHashMap<>();
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final ThreadPoolExecutor workers;
+    /** Waits on its own monitor, which is notified when the scheduled tasks or the time change. */
+    private final Scheduler scheduler;
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong totalLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+    private volatile boolean schedulerIdle;
+    private volatile boolean shutdownThePool;
+
+    /**
+     * Constructor of TimingWheelTimerPool.
+     *
+     * @param name The name of the TimerPool.
+     * @param poolSize The number of threads running the tasks.
+     * @param daemon Whether the threads running the tasks are daemon threads.
+     * @param tickDuration The duration of a tick of the wheel, in milliseconds.
+     * @param debug Debug object to send debugging message to.
+     */
+    public TimingWheelTimerPool(String name, int poolSize, final boolean daemon, long tickDuration, Debug debug) {
+        super(name, debug);
+        if (tickDuration < 1) {
+            throw new IllegalArgumentException("The tick duration must be at least 1ms");
+        }
+        this.name = name;
+        this.debug = debug;
+        this.tickDuration = tickDuration;
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, TimingWheelTimerPool.this.name);
+                        thread.setDaemon(daemon);
+                        return thread;
+                    }
+                });
+        this.scheduler = new Scheduler();
+        this.scheduler.start();
+    }
+
+    /**
+     * Schedules a TaskRunnable to the TimerPool.
+     *
+     * @param task The TaskRunnable to be scheduled.
+     * @param time The time to run the TaskRunnable.
+     * @throws IllegalArgumentException If the task or the time is null.
+     * @throws IllegalStateException If the pool has been shut down, or the task is already scheduled at another
+     * time.
+     */
+    @Override
+    public void schedule(TaskRunnable task, Date time) throws IllegalArgumentException, IllegalStateException {
+        if (shutdownThePool) {
+            throw new IllegalStateException("The timers have been shut down!");
+        }
+        if (task == null || time == null) {
+            throw new IllegalArgumentException();
+        }
+        HeadTaskRunnable head;
+        do {
+            head = task.getHeadTask();
+            if (head != null && head.acquireValidLock()) {
+                try {
+                    if (head == task.getHeadTask()) {
+                        if (head.scheduledExecutionTime() == time.getTime()) {
+                            return;
+                        } else if (!head.isTimedOut()) {
+                            throw new IllegalStateException("The task has been scheduled!");
+                        }
+                    }
+                } finally {
+                    head.releaseLockAndNotify();
+                }
+            }
+        } while (head != task.getHeadTask());
+
+        Long when = time.getTime();
+        while (true) {
+            head = heads.get(when);
+            if (head == null) {
+                task.setNext(null);
+                HeadTaskRunnable created = new HeadTaskRunnable(this, task, time);
+                head = heads.putIfAbsent(when, created);
+                if (head == null) {
+                    newTimeouts.add(new Timeout(created, when, (when + tickDuration - 1) / tickDuration));
+                    wakeScheduler();
+                    return;
+                }
+                // another thread created the head for this time first, link the task to it instead
+                task.setHeadTask(null);
+            }
+            if (append(head, task, when)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the head scheduled at the given time, when all its tasks have been cancelled.
+     *
+     * @param time The time the head was scheduled at.
+     */
+    @Override
+    public void trigger(Date time) {
+        Long when = time.getTime();
+        HeadTaskRunnable head = heads.get(when);
+        // only remove the head which was created with this time, not a later one scheduled for the same time
+        if (head != null && head.time == time && heads.remove(when, head)) {
+            cancelled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Shuts down the TimerPool, waiting for the tasks which are running to complete.
+     */
+    @Override
+    public synchronized void shutdown() {
+        synchronized (scheduler) {
+            if (shutdownThePool) {
+                return;
+            }
+            shutdownThePool = true;
+            scheduler.notifyAll();
+        }
+        workers.shutdown();
+        boolean interrupted = false;
+        while (!workers.isTerminated()) {
+            try {
+                workers.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of times for which tasks are scheduled and have not yet run, each of which may have several
+     * tasks.
+     */
+    public int getPendingCount() {
+        return heads.size();
+    }
+
+    /**
+     * @return The number of times for which tasks are due, waiting for a thread to run them.
+     */
+    public int getQueuedCount() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return The number of times for which tasks have been run.
+     */
+    public long getFiredCount() {
+        return fired.get();
+    }
+
+    /**
+     * @return The average time between the time tasks were scheduled for and the time they started to run, in
+     * milliseconds.
+     */
+    public long getAverageFiringLag() {
+        long count = fired.get();
+        return count == 0 ? 0 : totalLag.get() / count;
+    }
+
+    /**
+     * @return The longest time between the time tasks were scheduled for and the time they started to run, in
+     * milliseconds.
+     */
+    public long getMaxFiringLag() {
+        return maxLag.get();
+    }
+
+    /**
+     * Links the task to the tail of the tasks of a head which has not yet started to run.
+     *
+     * @return Whether the task was linked, or false if the head has started to run or has been cancelled.
+     */
+    private boolean append(HeadTaskRunnable head, TaskRunnable task, Long when) {
+        if (!head.acquireValidLock()) {
+            return false;
+        }
+        try {
+            // heads are removed from the map under their lock before they run, or when cancelled
+            if (heads.get(when) != head) {
+                return false;
+            }
+            task.setHeadTask(head);
+            TaskRunnable tailTask = head.tail();
+            task.setPrevious(tailTask);
+            tailTask.setNext(task);
+            task.setNext(null);
+            head.setTail(task);
+            return true;
+        } finally {
+            head.releaseLockAndNotify();
+        }
+    }
+
+    private void wakeScheduler() {
+        if (schedulerIdle) {
+            synchronized (scheduler) {
+                scheduler.notifyAll();
+            }
+        }
+    }
+
+    private void dispatch(final HeadTaskRunnable head, final long when) {
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                runTasks(head, when);
+            }
+        });
+    }
+
+    /**
+     * Runs the tasks linked to the head, rescheduling the periodic ones, as done by the worker threads of
+     * {@link TimerPool}.
+     */
+    private void runTasks(HeadTaskRunnable head, long when) {
+        if (shutdownThePool) {
+            return;
+        }
+        recordLag(Math.max(0, currentTimeMillis() - when));
+        if (!head.acquireValidLock()) {
+            return;
+        }
+        boolean resubmit = false;
+        try {
+            head.timeout();
+            heads.remove(when, head);
+            TaskRunnable localTask = head.next();
+            while (localTask != null) {
+                TaskRunnable runTask = localTask;
+                localTask = localTask.next();
+                // cut the connection before run the task.
+                runTask.setNext(null);
+                try {
+                    runTask.run();
+                } catch (RuntimeException ex) {
+                    if (debug != null) {
+                        debug.error("TimingWheelTimerPool.runTasks() " + name, ex);
+                    }
+                } catch (Error e) {
+                    if (localTask != null) {
+                        // leave the remaining tasks to another thread
+                        head.setNext(localTask);
+                        localTask.setPrevious(head);
+                        resubmit = true;
+                    }
+                    throw e;
+                } finally {
+                    reschedule(head, runTask, when);
+                }
+            }
+        } finally {
+            if (!resubmit) {
+                head.expire();
+            }
+            head.releaseLockAndNotify();
+            if (resubmit && !shutdownThePool) {
+                dispatch(head, when);
+            }
+        }
+    }
+
+    private void reschedule(HeadTaskRunnable head, TaskRunnable task, long when) {
+        if (task.getRunPeriod() >= 0) {
+            try {
+                schedule(task, new Date(when + task.getRunPeriod()));
+            } catch (IllegalStateException ex) {
+                // This exception will be thrown only if the Timer has been shutdown already.
+                if (debug != null) {
+                    debug.message("TimingWheelTimerPool.reschedule() " + name, ex);
+                }
+            }
+        }
+    }
+
+    private void recordLag(long lag) {
+        fired.incrementAndGet();
+        totalLag.addAndGet(lag);
+        long max = maxLag.get();
+        while (lag > max && !maxLag.compareAndSet(max, lag)) {
+            max = maxLag.get();
+        }
+    }
+
+    /**
+     * A head and the tick at which it is due.
+     */
+    private static final class Timeout {
+        private final HeadTaskRunnable head;
+        private final Long time;
+        private final long tick;
+
+        private Timeout(HeadTaskRunnable head, Long time, long tick) {
+            this.head = head;
+            this.time = time;
+            this.tick = tick;
+        }
+    }
+
+    /**
+     * Owns the wheel, which is only read and changed by this thread.
+     */
+    private final class Scheduler extends Thread {
+
+        private final List<List<Timeout>> slots = new ArrayList<>(LEVELS * WHEEL_SIZE);
+        private long currentTick;
+        private int wheelCount;
+
+        private Scheduler() {
+            setName(name + SCHEDULER_SUFFIX);
+            for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) {
+                slots.add(null);
+            }
+        }
+
+        @Override
+        public void run() {
+            currentTick = currentTimeMillis() / tickDuration;
+            while (!shutdownThePool) {
+                try {
+                    long now = currentTimeMillis();
+                    long nowTick = now / tickDuration;
+                    if (wheelCount == 0 && currentTick < nowTick) {
+                        // nothing to cascade, skip the ticks which have passed while idle
+                        currentTick = nowTick;
+                    }
+                    Timeout timeout;
+                    while ((timeout = newTimeouts.poll()) != null) {
+                        if (timeout.time <= now) {
+                            fire(timeout);
+                        } else {
+                            insert(timeout);
+                        }
+                    }
+                    while (currentTick < nowTick) {
+                        advance(++currentTick);
+                    }
+                    if (cancelled.get() > PURGE_THRESHOLD && cancelled.get() > wheelCount / 2) {
+                        cancelled.set(0);
+                        purge();
+                    }
+                    waitForNextTick();
+                } catch (InterruptedException ex) {
+                    // checks whether the pool has been shut down
+                } catch (RuntimeException ex) {
+                    if (debug != null && !shutdownThePool) {
+                        debug.error("TimingWheelTimerPool$Scheduler.run() " + name, ex);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits on this thread's monitor, as {@link TimerPool}'s scheduler does, so that a change of the time
+         * notifying the scheduler threads wakes this one too.
+         */
+        private void waitForNextTick() throws InterruptedException {
+            synchronized (this) {
+                if (shutdownThePool) {
+                    return;
+                }
+                if (wheelCount == 0) {
+                    schedulerIdle = true;
+                    try {
+                        if (newTimeouts.isEmpty()) {
+                            wait();
+                        }
+                    } finally {
+                        schedulerIdle = false;
+                    }
+                } else {
+                    long delay = (currentTick + 1) * tickDuration - currentTimeMillis();
+                    if (delay > 0) {
+                        wait(delay);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves the heads of the higher levels which are due within the next turn of the level below, then fires
+         * the heads of the first level which are due at this tick.
+         */
+        private void advance(long tick) {
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * WHEEL_BITS;
+                if ((tick & ((1L << shift) - 1)) == 0) {
+                    for (Timeout timeout : take(level, (int) ((tick >>> shift) & WHEEL_MASK))) {
+                        insert(timeout);
+                    }
+                }
+            }
+            for (Timeout timeout : take(0, (int) (tick & WHEEL_MASK))) {
+                fire(timeout);
+            }
+        }
+
+        private void insert(Timeout timeout) {
+            if (heads.get(timeout.time) != timeout.head) {
+                // cancelled
+                return;
+            }
+            long delta = timeout.tick - currentTick;
+            if (delta <= 0) {
+                fire(timeout);
+                return;
+            }
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * WHEEL_BITS)) {
+                level++;
+            }
+            long tick = timeout.tick;
+            if (delta >= 1L << (LEVELS * WHEEL_BITS)) {
+                // beyond the last level, it is placed again when this slot is reached
+                tick = currentTick + (1L << (LEVELS * WHEEL_BITS)) - 1;
+            }
+            int index = level * WHEEL_SIZE + (int) ((tick >>> (level * WHEEL_BITS)) & WHEEL_MASK);
+            List<Timeout> slot = slots.get(index);
+            if (slot == null) {
+                slot = new ArrayList<>();
+                slots.set(index, slot);
+            }
+            slot.add(timeout);
+            wheelCount++;
+        }
+
+        private List<Timeout> take(int level, int slot) {
+            int index = level * WHEEL_SIZE + slot;
+            List<Timeout> timeouts = slots.get(index);
+            if (timeouts == null) {
+                return new ArrayList<>(0);
+            }
+            slots.set(index, null);
+            wheelCount -= timeouts.size();
+            return timeouts;
+        }
+
+        private void fire(Timeout timeout) {
+            if (heads.get(timeout.time) == timeout.head) {
+                dispatch(timeout.head, timeout.time);
+            }
+        }
+
+        /**
+         * Removes the heads which have been cancelled, rather than keeping them until their time.
+         */
+        private void purge() {
+            for (List<Timeout> slot : slots) {
+                if (slot != null) {
+                    Iterator<Timeout> iterator = slot.iterator();
+                    while (iterator.hasNext()) {
+                        Timeout timeout = iterator.next();
+                        if (heads.get(timeout.time) != timeout.head) {
+                            iterator.remove();
+                            wheelCount--;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -994,6 +994,20 @@ public interface Constants {
     static final String SYSTEM_TIMERPOOL_SIZE =
             "com.sun.identity.common.systemtimerpool.size";
 
+    /**
+     * property string to enable the timing wheel implementation of
+     * SystemTimerPool
+     */
+    static final String SYSTEM_TIMERPOOL_TIMING_WHEEL =
+            "com.sun.identity.common.systemtimerpool.timingwheel.enabled";
+
+    /**
+     * property string to the tick duration, in milliseconds, of the timing
+     * wheel implementation of SystemTimerPool
+     */
+    static final String SYSTEM_TIMERPOOL_TIMING_WHEEL_TICK =
+            "com.sun.identity.common.systemtimerpool.timingwheel.tick";
+
     /**
      * property string for Distributed Authentication cluster
      */
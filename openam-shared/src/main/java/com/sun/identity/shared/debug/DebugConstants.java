@@ -51,6 +51,25 @@ public final class DebugConstants {
 
     public static final String CONFIG_DEBUG_DIRECTORY = "com.iplanet.services.debug.directory";
 
+    /**
+     * Whether debug files are written by a background thread rather than by the thread logging the message.
+     */
+    public static final String CONFIG_DEBUG_ASYNC_ENABLED = "org.forgerock.openam.debug.async.enabled";
+
+    /**
+     * The number of messages a debug file buffers for its background thread.
+     */
+    public static final String CONFIG_DEBUG_ASYNC_CAPACITY = "org.forgerock.openam.debug.async.capacity";
+
+    public static final int DEFAULT_DEBUG_ASYNC_CAPACITY = 8192;
+
+    /**
+     * How long, in milliseconds, a thread waits for space in a full buffer before its message is dropped.
+     */
+    public static final String CONFIG_DEBUG_ASYNC_MAX_WAIT = "org.forgerock.openam.debug.async.maxWait";
+
+    public static final int DEFAULT_DEBUG_ASYNC_MAX_WAIT = 10;
+
     /**
      * Constant string used as property key to look up the debug provider class
      * name.
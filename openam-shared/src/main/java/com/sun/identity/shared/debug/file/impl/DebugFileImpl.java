@@ -31,6 +31,7 @@
  */
 package com.sun.identity.shared.debug.file.impl;
 
+import com.sun.identity.common.ShutdownManager;
 import com.sun.identity.shared.configuration.SystemPropertiesManager;
 import com.sun.identity.shared.debug.DebugConstants;
 import com.sun.identity.shared.debug.file.DebugConfiguration;
@@ -38,13 +39,19 @@ import com.sun.identity.shared.debug.file.DebugFile;
 import com.sun.identity.shared.locale.Locale;
 import org.forgerock.openam.utils.IOUtils;
 import org.forgerock.openam.utils.StringUtils;
+import org.forgerock.openam.utils.file.AsyncFileAppender;
+import org.forgerock.util.thread.listener.ShutdownListener;
+import org.forgerock.util.thread.listener.ShutdownPriority;
 import org.forgerock.util.time.TimeService;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -58,9 +65,15 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * - compute its complete name
  * - create log directory
  * - manage the log rotation
+ *
+ * If {@link DebugConstants#CONFIG_DEBUG_ASYNC_ENABLED} is set, messages are handed to an {@link AsyncFileAppender}
+ * and the file is opened, rotated and written by its background thread. The appender is closed on shutdown, writing
+ * the messages still pending, and later messages are printed to the standard output.
  */
 public class DebugFileImpl implements DebugFile {
 
+    private static final long ASYNC_CLOSE_TIMEOUT = 10000L;
+
     private final TimeService clock;
 
     private final String debugName;
@@ -81,6 +94,10 @@ public class DebugFileImpl implements DebugFile {
 
     private File currentFile;
 
+    private final AsyncFileAppender appender;
+
+    private FileChannel debugChannel;
+
     /**
      * Constructor
      *
@@ -117,6 +134,42 @@ public class DebugFileImpl implements DebugFile {
             }
         }
         this.suffixDateFormat = tmpSuffixDateFormat;
+
+        if (SystemPropertiesManager.getAsBoolean(DebugConstants.CONFIG_DEBUG_ASYNC_ENABLED, false)) {
+            appender = createAppender();
+        } else {
+            appender = null;
+        }
+    }
+
+    /**
+     * Creates the appender writing the messages on a background thread, and closes it on shutdown.
+     *
+     * @return the appender, or null if the server is already shutting down and messages are written synchronously.
+     */
+    private AsyncFileAppender createAppender() {
+        final AsyncFileAppender asyncAppender = new AsyncFileAppender(debugName, new DebugFileDestination(),
+                SystemPropertiesManager.getAsInt(DebugConstants.CONFIG_DEBUG_ASYNC_CAPACITY,
+                        DebugConstants.DEFAULT_DEBUG_ASYNC_CAPACITY),
+                SystemPropertiesManager.getAsInt(DebugConstants.CONFIG_DEBUG_ASYNC_MAX_WAIT,
+                        DebugConstants.DEFAULT_DEBUG_ASYNC_MAX_WAIT));
+        try {
+            ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdown() {
+                    asyncAppender.close(ASYNC_CLOSE_TIMEOUT);
+                    fileLock.writeLock().lock();
+                    try {
+                        close();
+                    } finally {
+                        fileLock.writeLock().unlock();
+                    }
+                }
+            }, ShutdownPriority.LOWEST);
+        } catch (IllegalMonitorStateException e) {
+            return null;
+        }
+        return asyncAppender;
     }
 
     private boolean isConfigChanged() throws IOException {
@@ -155,6 +208,16 @@ public class DebugFileImpl implements DebugFile {
             buf.append(stBuf.toString());
         }
 
+        if (appender != null) {
+            if (appender.isClosed()) {
+                StdDebugFile.printError(prefix, msg, th);
+                return;
+            }
+            buf.append(System.lineSeparator());
+            appender.append(buf.toString().getBytes(Charset.defaultCharset()));
+            return;
+        }
+
         if (isConfigChanged() || !isConfigFileInitialized()) {
             initialize();
         }
@@ -181,7 +244,9 @@ public class DebugFileImpl implements DebugFile {
      */
     private void close() {
         IOUtils.closeIfNotNull(debugWriter);
+        IOUtils.closeIfNotNull(debugChannel);
         this.debugWriter = null;
+        this.debugChannel = null;
         this.currentFile = null;
     }
 
@@ -260,8 +325,11 @@ public class DebugFileImpl implements DebugFile {
 
             try {
                 this.currentFile = new File(debugFilePath);
-                this.debugWriter = new PrintWriter(new FileWriter(currentFile, true), true);
-                debugWriter = new PrintWriter(new FileWriter(debugFilePath, true), true);
+                if (appender != null) {
+                    this.debugChannel = new FileOutputStream(currentFile, true).getChannel();
+                } else {
+                    this.debugWriter = new PrintWriter(new FileWriter(currentFile, true), true);
+                }
             } catch (IOException ioex) {
                 close();
                 ResourceBundle bundle = Locale.getInstallResourceBundle("amUtilMsgs");
@@ -314,6 +382,51 @@ public class DebugFileImpl implements DebugFile {
         }
     }
 
+    /**
+     * @return The number of messages dropped because the background thread could not keep up, or 0 if messages
+     * are written synchronously.
+     */
+    public long getDroppedCount() {
+        return appender == null ? 0 : appender.getDroppedCount();
+    }
+
+    /**
+     * @return The number of messages waiting for the background thread, or 0 if messages are written synchronously.
+     */
+    public long getWriterLag() {
+        return appender == null ? 0 : appender.getLag();
+    }
+
+    /**
+     * Opens and rotates the file on the background thread of the {@link AsyncFileAppender}.
+     */
+    private final class DebugFileDestination implements AsyncFileAppender.Destination {
+
+        @Override
+        public FileChannel getChannel(int batchBytes) throws IOException {
+            if (isConfigChanged() || !isConfigFileInitialized()) {
+                initialize();
+            }
+            if (needsTimeRotation() || needsSizeRotation()) {
+                rotate();
+            }
+            FileChannel channel = debugChannel;
+            if (channel == null) {
+                throw new IOException("Debug file not open : " + DebugFileImpl.this);
+            }
+            return channel;
+        }
+
+        @Override
+        public void written(int records) {
+        }
+
+        @Override
+        public void failed(int records, IOException e) {
+            StdDebugFile.printError(debugName, "Unable to write " + records + " debug messages", e);
+        }
+    }
+
     @Override
     public String toString() {
         DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss:SSS a zzz");
@@ -58,7 +58,7 @@ public class CloseableHttpClientProvider implements Provider<Client> {
     @Override
     public Client get() {
         try {
-            final HttpClientHandler httpClientHandler = new HttpClientHandler();
+            final HttpClientHandler httpClientHandler = newHttpClientHandler();
 
             // Let the underlying HttpClientHandler clean up it's threads upon shutdown
             shutdownManager.addShutdownListener(new ShutdownListener() {
@@ -73,11 +73,31 @@ public class CloseableHttpClientProvider implements Provider<Client> {
                 }
             });
 
-            return new Client(httpClientHandler);
+            return newClient(httpClientHandler);
         } catch (HttpApplicationException e) {
             // Whether this ultimately results in an error is in the hands of the caller
             DEBUG.message("Unable to create HttpClientHandler", e);
             return null;
         }
     }
+
+    /**
+     * Creates the HttpClientHandler that sends the requests of the client.
+     *
+     * @return A new HttpClientHandler, with the default options.
+     * @throws HttpApplicationException If the HttpClientHandler could not be created.
+     */
+    protected HttpClientHandler newHttpClientHandler() throws HttpApplicationException {
+        return new HttpClientHandler();
+    }
+
+    /**
+     * Creates the client sending its requests through the given handler.
+     *
+     * @param httpClientHandler The handler created by {@link #newHttpClientHandler()}.
+     * @return A new Client.
+     */
+    protected Client newClient(HttpClientHandler httpClientHandler) {
+        return new Client(httpClientHandler);
+    }
 }
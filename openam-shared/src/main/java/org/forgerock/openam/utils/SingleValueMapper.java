@@ -100,4 +100,22 @@ public class SingleValueMapper<K, V> {
         reverse.remove(remove);
         return remove;
     }
+
+    /**
+     * Removes the mapping of the given value, unless its key has since been mapped to another value.
+     *
+     * Synchronized: to ensure both maps are updated in an atomic way.
+     *
+     * @param v The value to remove the mapping for. May not be null.
+     * @return The key the value was mapped against, or null if there was none.
+     */
+    public synchronized K removeValue(V v) {
+        Reject.ifNull(v);
+
+        K k = reverse.remove(v);
+        if (k != null && v.equals(map.get(k))) {
+            map.remove(k);
+        }
+        return k;
+    }
 }
@@ -0,0 +1,311 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.utils.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends records to a file from a single writer thread, so that the threads producing the records do not wait for
+ * the disk.
+ * <p>
+ * Records are published into a bounded ring buffer without taking a lock. The writer thread drains the ring in
+ * batches of up to {@link #MAX_BATCH_BYTES} bytes and writes each batch to the {@link FileChannel} provided by the
+ * {@link Destination} with a single gathering write. When the ring is full a producer waits up to the configured
+ * time for space and then drops its record, which is counted in {@link #getDroppedCount()}.
+ *
+ * @since 14.0.0
+ */
+public final class AsyncFileAppender {
+
+    /**
+     * The largest number of bytes written to the file in one batch.
+     */
+    public static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    private static final int MAX_BATCH_RECORDS = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Provides the file the records are written to. All of the methods are called from the writer thread only.
+     */
+    public interface Destination {
+
+        /**
+         * Returns the channel the next batch is written to, opening or rotating the file as required.
+         *
+         * @param batchBytes The number of bytes about to be written.
+         * @return The channel to write the batch to.
+         * @throws IOException If the file cannot be opened.
+         */
+        FileChannel getChannel(int batchBytes) throws IOException;
+
+        /**
+         * Called once a batch has been written.
+         *
+         * @param records The number of records in the batch.
+         */
+        void written(int records);
+
+        /**
+         * Called when a batch could not be written. The records of the batch are lost.
+         *
+         * @param records The number of records in the batch.
+         * @param e The cause of the failure.
+         */
+        void failed(int records, IOException e);
+    }
+
+    private final String name;
+    private final Destination destination;
+    private final AtomicReferenceArray<byte[]> ring;
+    private final int mask;
+    private final long maxWaitNanos;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+    private volatile Thread writer;
+
+    /**
+     * Creates an appender. The writer thread is started when the first record is appended.
+     *
+     * @param name The name of the file, used to name the writer thread.
+     * @param destination Provides the file the records are written to.
+     * @param capacity The number of records the ring holds, rounded up to a power of two.
+     * @param maxWaitMillis How long a producer waits for space in a full ring before dropping its record.
+     */
+    public AsyncFileAppender(String name, Destination destination, int capacity, long maxWaitMillis) {
+        int size = Integer.highestOneBit(Math.max(2, Math.min(capacity, 1 << 20)) - 1) << 1;
+        this.name = name;
+        this.destination = destination;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+    }
+
+    /**
+     * Publishes a record to be written to the file.
+     *
+     * @param record The bytes of the record.
+     * @return {@code false} if the record was dropped because the ring stayed full or the appender is closed.
+     */
+    public boolean append(byte[] record) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        startWriter();
+        long deadline = 0;
+        while (true) {
+            long sequence = claimed.get();
+            long lag = sequence - consumed.get();
+            if (lag < ring.length()) {
+                if (claimed.compareAndSet(sequence, sequence + 1)) {
+                    ring.set((int) sequence & mask, record);
+                    updateMaxLag(lag + 1);
+                    if (writerParked) {
+                        LockSupport.unpark(writer);
+                    }
+                    return true;
+                }
+                continue;
+            }
+            long now = System.nanoTime();
+            if (deadline == 0) {
+                deadline = now + maxWaitNanos;
+                LockSupport.unpark(writer);
+            }
+            if (now - deadline >= 0 || closed) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Waits until the writer thread has handled the records appended before this call, or the given time has passed.
+     *
+     * @param timeoutMillis The longest time to wait.
+     * @return {@code true} if the records were handled.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (processed.get() < target) {
+            Thread current = writer;
+            if (current == null || !current.isAlive() || System.nanoTime() - deadline >= 0) {
+                return processed.get() >= target;
+            }
+            LockSupport.unpark(current);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the pending records and stops the writer thread. Records appended afterwards are dropped.
+     *
+     * @param timeoutMillis The longest time to wait for the pending records.
+     */
+    public void close(long timeoutMillis) {
+        flush(timeoutMillis);
+        closed = true;
+        Thread current = writer;
+        if (current != null) {
+            LockSupport.unpark(current);
+            try {
+                current.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} once the appender has been closed, and drops the records appended.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return The number of records dropped because the ring was full or the appender closed.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of records written to the file.
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * @return The number of records appended but not yet taken by the writer thread.
+     */
+    public long getLag() {
+        return claimed.get() - consumed.get();
+    }
+
+    /**
+     * @return The largest number of records that have been waiting for the writer thread at once.
+     */
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    private void updateMaxLag(long lag) {
+        long max = maxLag.get();
+        while (lag > max && !maxLag.compareAndSet(max, lag)) {
+            max = maxLag.get();
+        }
+    }
+
+    private void startWriter() {
+        if (writer == null) {
+            synchronized (this) {
+                if (writer == null && !closed) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            drain();
+                        }
+                    }, "AsyncFileAppender-" + name);
+                    thread.setDaemon(true);
+                    writer = thread;
+                    thread.start();
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        ByteBuffer[] batch = new ByteBuffer[MAX_BATCH_RECORDS];
+        while (true) {
+            int records = 0;
+            int bytes = 0;
+            long sequence = consumed.get();
+            while (records < MAX_BATCH_RECORDS && bytes < MAX_BATCH_BYTES && sequence < claimed.get()) {
+                int index = (int) sequence & mask;
+                byte[] record = ring.get(index);
+                if (record == null) {
+                    // claimed but not yet published by its producer
+                    if (records > 0) {
+                        break;
+                    }
+                    Thread.yield();
+                    continue;
+                }
+                ring.lazySet(index, null);
+                batch[records++] = ByteBuffer.wrap(record);
+                bytes += record.length;
+                consumed.lazySet(++sequence);
+            }
+            if (records > 0) {
+                write(batch, records, bytes);
+            } else if (closed) {
+                return;
+            } else {
+                writerParked = true;
+                if (consumed.get() == claimed.get()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+            }
+        }
+    }
+
+    private void write(ByteBuffer[] batch, int records, int bytes) {
+        try {
+            FileChannel channel = destination.getChannel(bytes);
+            long remaining = bytes;
+            while (remaining > 0) {
+                remaining -= channel.write(batch, 0, records);
+            }
+            written.addAndGet(records);
+            destination.written(records);
+        } catch (IOException | RuntimeException e) {
+            dropped.addAndGet(records);
+            destination.failed(records, e instanceof IOException ? (IOException) e : new IOException(e));
+        } finally {
+            processed.addAndGet(records);
+            for (int i = 0; i < records; i++) {
+                batch[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncFileAppender{name='" + name + "', lag=" + getLag() + ", written=" + written.get()
+                + ", dropped=" + dropped.get() + '}';
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class TimingWheelTimerPoolTest {
+
+    private TimingWheelTimerPool pool;
+
+    @BeforeMethod
+    public void setUp() {
+        pool = new TimingWheelTimerPool("test", 2, true, 5, mock(Debug.class));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldRunTaskNoEarlierThanScheduledTime() throws Exception {
+        // Given
+        CountingTask task = new CountingTask(1, -1);
+        long scheduled = System.currentTimeMillis() + 50;
+
+        // When
+        pool.schedule(task, new Date(scheduled));
+
+        // Then
+        assertThat(task.await()).isTrue();
+        assertThat(task.lastRun).isGreaterThanOrEqualTo(scheduled);
+        assertThat(pool.getFiredCount()).isEqualTo(1);
+        assertThat(pool.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void shouldRunTasksScheduledForTheSameTime() throws Exception {
+        // Given
+        CountingTask first = new CountingTask(1, -1);
+        CountingTask second = new CountingTask(1, -1);
+        Date time = new Date(System.currentTimeMillis() + 20);
+
+        // When
+        pool.schedule(first, time);
+        pool.schedule(second, time);
+
+        // Then
+        assertThat(first.await()).isTrue();
+        assertThat(second.await()).isTrue();
+        assertThat(pool.getFiredCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRunTaskScheduledBeyondTheFirstLevel() throws Exception {
+        // Given
+        CountingTask task = new CountingTask(1, -1);
+        long scheduled = System.currentTimeMillis() + 5 * TimingWheelTimerPool.WHEEL_SIZE + 100;
+
+        // When
+        pool.schedule(task, new Date(scheduled));
+
+        // Then
+        assertThat(task.await()).isTrue();
+        assertThat(task.lastRun).isGreaterThanOrEqualTo(scheduled);
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() throws Exception {
+        // Given
+        CountingTask cancelled = new CountingTask(1, -1);
+        CountingTask other = new CountingTask(1, -1);
+        pool.schedule(cancelled, 30);
+        pool.schedule(other, 60);
+
+        // When
+        cancelled.cancel();
+
+        // Then
+        assertThat(other.await()).isTrue();
+        assertThat(cancelled.latch.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRescheduleRepeatingTask() throws Exception {
+        // Given
+        CountingTask task = new CountingTask(3, 10);
+
+        // When
+        pool.schedule(task, 10);
+
+        // Then
+        assertThat(task.await()).isTrue();
+        task.cancel();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldNotScheduleAfterShutdown() {
+        // Given
+        pool.shutdown();
+
+        // When
+        pool.schedule(new CountingTask(1, -1), 10);
+    }
+
+    @Test
+    public void shouldWaitOnTheSchedulerThreadSoThatATimeChangeWakesIt() throws Exception {
+        // Given
+        TimingWheelTimerPool idle = new TimingWheelTimerPool("idle", 1, true, 5, mock(Debug.class));
+        try {
+            Thread scheduler = null;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("idle" + TimerPool.SCHEDULER_SUFFIX)) {
+                    scheduler = thread;
+                }
+            }
+            assertThat(scheduler).isNotNull();
+
+            // When
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Then
+            ThreadInfo info = ManagementFactory.getThreadMXBean().getThreadInfo(scheduler.getId());
+            assertThat(info.getLockInfo()).isNotNull();
+            assertThat(info.getLockInfo().getIdentityHashCode()).isEqualTo(System.identityHashCode(scheduler));
+        } finally {
+            idle.shutdown();
+        }
+    }
+
+    private static final class CountingTask extends GeneralTaskRunnable {
+
+        private final CountDownLatch latch;
+        private final long runPeriod;
+        private volatile long lastRun;
+
+        private CountingTask(int runs, long runPeriod) {
+            this.latch = new CountDownLatch(runs);
+            this.runPeriod = runPeriod;
+        }
+
+        private boolean await() throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public boolean addElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return runPeriod;
+        }
+
+        @Override
+        public void run() {
+            lastRun = System.currentTimeMillis();
+            latch.countDown();
+        }
+    }
+}
@@ -72,6 +72,28 @@ public class SingleValueMapperTest {
         assertThat(map.get(key)).isNull();
     }
 
+    @Test
+    public void shouldRemoveMappingOfValue() {
+        String key = "badger";
+
+        map.put(key, 1);
+        map.removeValue(1);
+
+        assertThat(map.get(key)).isNull();
+        assertThat(map.getValue(1)).isNull();
+    }
+
+    @Test
+    public void shouldNotRemoveKeyMappedToAnotherValue() {
+        String key = "badger";
+
+        map.put(key, 1);
+        map.put(key, 2);
+        map.removeValue(1);
+
+        assertThat(map.get(key)).isEqualTo(2);
+    }
+
     @Test (expectedExceptions = NullPointerException.class)
     public void shouldNotAllowNullToBeStored() {
         map.put(null, null);
@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.utils.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+
+public class AsyncFileAppenderTest {
+
+    @Test
+    public void shouldWriteRecordsInOrder() throws Exception {
+        File file = File.createTempFile("asyncFileAppender", ".log");
+        file.deleteOnExit();
+        FileChannelDestination destination = new FileChannelDestination(file);
+        AsyncFileAppender appender = new AsyncFileAppender("test", destination, 16, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(appender.append(("record " + i + "\n").getBytes(StandardCharsets.UTF_8))).isTrue();
+        }
+        appender.close(10000);
+        destination.channel.close();
+
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)).hasSize(100)
+                .startsWith("record 0", "record 1").endsWith("record 99");
+        assertThat(appender.getWrittenCount()).isEqualTo(100);
+        assertThat(appender.getDroppedCount()).isEqualTo(0);
+        assertThat(appender.getLag()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDropRecordsAppendedAfterClose() throws Exception {
+        File file = File.createTempFile("asyncFileAppender", ".log");
+        file.deleteOnExit();
+        FileChannelDestination destination = new FileChannelDestination(file);
+        AsyncFileAppender appender = new AsyncFileAppender("closed", destination, 16, 1000);
+        appender.append("before\n".getBytes(StandardCharsets.UTF_8));
+
+        appender.close(10000);
+        boolean appended = appender.append("after\n".getBytes(StandardCharsets.UTF_8));
+        destination.channel.close();
+
+        assertThat(appender.isClosed()).isTrue();
+        assertThat(appended).isFalse();
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)).containsExactly("before");
+        assertThat(appender.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDropRecordsWhenTheRingStaysFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        AsyncFileAppender appender = new AsyncFileAppender("blocked", new AsyncFileAppender.Destination() {
+            @Override
+            public FileChannel getChannel(int batchBytes) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                throw new IOException("closed");
+            }
+
+            @Override
+            public void written(int records) {
+            }
+
+            @Override
+            public void failed(int records, IOException e) {
+            }
+        }, 2, 0);
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (appender.append(new byte[] { 'x' })) {
+                accepted++;
+            }
+        }
+        release.countDown();
+        appender.close(10000);
+
+        assertThat(accepted).isLessThan(10);
+        assertThat(appender.getDroppedCount()).isEqualTo(10);
+        assertThat(appender.getWrittenCount()).isEqualTo(0);
+    }
+
+    private static final class FileChannelDestination implements AsyncFileAppender.Destination {
+
+        private final FileChannel channel;
+
+        private FileChannelDestination(File file) throws IOException {
+            this.channel = new FileOutputStream(file, true).getChannel();
+        }
+
+        @Override
+        public FileChannel getChannel(int batchBytes) {
+            return channel;
+        }
+
+        @Override
+        public void written(int records) {
+        }
+
+        @Override
+        public void failed(int records, IOException e) {
+        }
+    }
+}
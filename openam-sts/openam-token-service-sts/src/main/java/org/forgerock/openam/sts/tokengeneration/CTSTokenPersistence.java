@@ -27,6 +27,10 @@ import java.util.List;
 /**
  * An interface to encapsulate the concerns of persisting issued tokens to the CTS, and of retrieving persisted instances
  * (performed during token validate), and of removing persisted instances (performed during token cancellation).
+ *
+ * When asynchronous persistence is enabled via {@link CTSTokenPersistenceQueue#ASYNC_ENABLED},
+ * {@link #persistToken} returns once the token has been handed to the CTS asynchronous task queue, rather than once
+ * it has been written to the CTS.
  */
 public interface CTSTokenPersistence {
     CoreTokenField CTS_TOKEN_FIELD_STS_ID = CoreTokenField.STRING_ONE;
@@ -44,6 +48,21 @@ public interface CTSTokenPersistence {
     void persistToken(String stsId, TokenType tokenType, String tokenString, String subjectId, long issueInstantMillis,
                       long tokenLifetimeSeconds) throws CTSTokenPersistenceException;
 
+    /**
+     * Persists the token as per {@link #persistToken}, but always waits for the CTS to confirm the write, even when
+     * asynchronous persistence is enabled. To be used by callers which must not return the token before it is durable.
+     * @param stsId The id of the sts instance persisting the token.
+     * @param tokenType The type of to-be-persisted token
+     * @param tokenString The token to be persisted
+     * @param subjectId The subject which this token asserts
+     * @param issueInstantMillis millisecond time at which token is issued
+     * @param tokenLifetimeSeconds token lifetime in seconds
+     * @throws CTSTokenPersistenceException thrown if the underlying CTSPersistentStore throws a CoreTokenException during
+     * the presistence operation
+     */
+    void persistTokenAndWait(String stsId, TokenType tokenType, String tokenString, String subjectId,
+                             long issueInstantMillis, long tokenLifetimeSeconds) throws CTSTokenPersistenceException;
+
     /**
      * Called during token validation
      * @param tokenId the id of the token to be retrieved
@@ -52,22 +52,43 @@ import java.util.TimeZone;
 public class CTSTokenPersistenceImpl implements CTSTokenPersistence {
     private final CTSPersistentStore ctsPersistentStore;
     private final CTSTokenIdGenerator ctsTokenIdGenerator;
+    private final CTSTokenPersistenceQueue persistenceQueue;
 
     @Inject
     CTSTokenPersistenceImpl(CTSPersistentStore ctsPersistentStore,
-                            CTSTokenIdGenerator ctsTokenIdGenerator) {
+                            CTSTokenIdGenerator ctsTokenIdGenerator,
+                            CTSTokenPersistenceQueue persistenceQueue) {
         this.ctsPersistentStore = ctsPersistentStore;
         this.ctsTokenIdGenerator = ctsTokenIdGenerator;
+        this.persistenceQueue = persistenceQueue;
     }
 
     @Override
     public void persistToken(String stsId, TokenType tokenType, String tokenString, String subjectId,
                              long issueInstantMillis, long tokenLifetimeSeconds) throws CTSTokenPersistenceException {
+        persistToken(stsId, tokenType, tokenString, subjectId, issueInstantMillis, tokenLifetimeSeconds,
+                persistenceQueue.isEnabled());
+    }
+
+    @Override
+    public void persistTokenAndWait(String stsId, TokenType tokenType, String tokenString, String subjectId,
+                                    long issueInstantMillis, long tokenLifetimeSeconds)
+            throws CTSTokenPersistenceException {
+        persistToken(stsId, tokenType, tokenString, subjectId, issueInstantMillis, tokenLifetimeSeconds, false);
+    }
+
+    private void persistToken(String stsId, TokenType tokenType, String tokenString, String subjectId,
+                              long issueInstantMillis, long tokenLifetimeSeconds, boolean queued)
+            throws CTSTokenPersistenceException {
         try {
             final String tokenId = ctsTokenIdGenerator.generateTokenId(tokenType, tokenString);
             final Token ctsToken = generateToken(stsId, tokenString.getBytes(AMSTSConstants.UTF_8_CHARSET_ID),
                     tokenId, subjectId, issueInstantMillis, tokenLifetimeSeconds, tokenType);
-            ctsPersistentStore.create(ctsToken);
+            if (queued) {
+                persistenceQueue.enqueue(ctsToken);
+            } else {
+                ctsPersistentStore.create(ctsToken);
+            }
         } catch (TokenIdGenerationException e) {
             throw new CTSTokenPersistenceException(e.getCode(), "Exception caught generating id for CTS-persisted " +
                     tokenType + "  token: " + e.getMessage(), e);
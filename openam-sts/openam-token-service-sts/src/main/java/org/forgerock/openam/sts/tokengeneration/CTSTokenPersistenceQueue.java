@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.sts.tokengeneration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
+import org.slf4j.Logger;
+
+import com.iplanet.am.util.SystemProperties;
+
+/**
+ * Decouples the issuing of STS tokens from their persistence in the CTS.
+ *
+ * When enabled, tokens are handed straight to the CTS asynchronous task queue with
+ * {@link CTSPersistentStore#createAsync(Token, ResultHandler)}, which already bounds the pending writes and runs them
+ * on its own connections, so token issuance no longer pays for a CTS round trip. The outcome of each write is reported
+ * back to this class, which counts the tokens persisted and logs and counts those which failed.
+ *
+ * Back-pressure is applied by the CTS task queue: if the token cannot be queued there, it is persisted synchronously
+ * on the calling thread.
+ *
+ * Callers which must know that a token is durable before returning it should use
+ * {@link CTSTokenPersistence#persistTokenAndWait}, which bypasses the asynchronous path.
+ */
+public class CTSTokenPersistenceQueue {
+    /**
+     * System property enabling asynchronous persistence of STS-issued tokens. Defaults to false.
+     */
+    public static final String ASYNC_ENABLED = "org.forgerock.openam.sts.cts.async.enabled";
+
+    private final CTSPersistentStore ctsPersistentStore;
+    private final Logger logger;
+    private final boolean enabled;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong persistedCount = new AtomicLong();
+    private final AtomicLong callerPersistedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    @Inject
+    CTSTokenPersistenceQueue(CTSPersistentStore ctsPersistentStore, Logger logger) {
+        this(ctsPersistentStore, logger, SystemProperties.getAsBoolean(ASYNC_ENABLED, false));
+    }
+
+    CTSTokenPersistenceQueue(CTSPersistentStore ctsPersistentStore, Logger logger, boolean enabled) {
+        this.ctsPersistentStore = ctsPersistentStore;
+        this.logger = logger;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true if STS-issued tokens should be persisted asynchronously.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands the token to the CTS asynchronous task queue. If the CTS cannot queue the operation, the token is persisted
+     * synchronously on the calling thread.
+     *
+     * @param token The fully populated CTS token to persist.
+     * @throws CoreTokenException If the token had to be persisted synchronously, and that persistence failed.
+     */
+    public void enqueue(final Token token) throws CoreTokenException {
+        try {
+            ctsPersistentStore.createAsync(token, new ResultHandler<Token, CoreTokenException>() {
+                @Override
+                public Token getResults() throws CoreTokenException {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void processResults(Token result) {
+                    persistedCount.incrementAndGet();
+                }
+
+                @Override
+                public void processError(Exception error) {
+                    failedCount.incrementAndGet();
+                    logger.error("Exception caught persisting STS token " + token.getTokenId() + " in the CTS: "
+                            + error.getMessage(), error);
+                }
+            });
+            submittedCount.incrementAndGet();
+        } catch (CoreTokenException e) {
+            logger.debug("CTS could not queue the creation of token " + token.getTokenId()
+                    + ", persisting it on the calling thread: " + e.getMessage());
+            ctsPersistentStore.create(token);
+            callerPersistedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of submitted tokens whose persistence has not yet completed.
+     */
+    public long getPendingCount() {
+        return submittedCount.get() - persistedCount.get() - failedCount.get();
+    }
+
+    /**
+     * @return the total number of tokens handed to the CTS asynchronous task queue.
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return the number of submitted tokens the CTS reported as persisted.
+     */
+    public long getPersistedCount() {
+        return persistedCount.get();
+    }
+
+    /**
+     * @return the number of tokens persisted synchronously because the CTS could not queue them.
+     */
+    public long getCallerPersistedCount() {
+        return callerPersistedCount.get();
+    }
+
+    /**
+     * @return the number of submitted tokens the CTS reported as failing to persist.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
@@ -42,6 +42,7 @@ import org.forgerock.openam.sts.token.CTSTokenIdGenerator;
 import org.forgerock.openam.sts.token.CTSTokenIdGeneratorImpl;
 import org.forgerock.openam.sts.tokengeneration.CTSTokenPersistence;
 import org.forgerock.openam.sts.tokengeneration.CTSTokenPersistenceImpl;
+import org.forgerock.openam.sts.tokengeneration.CTSTokenPersistenceQueue;
 import org.forgerock.openam.sts.tokengeneration.oidc.OpenIdConnectTokenClaimMapperProvider;
 import org.forgerock.openam.sts.tokengeneration.oidc.OpenIdConnectTokenClaimMapperProviderImpl;
 import org.forgerock.openam.sts.tokengeneration.oidc.OpenIdConnectTokenGeneration;
@@ -157,6 +158,11 @@ public class TokenGenerationModule extends AbstractModule {
         Bind the interface/impl which encapsulates CTS persistence.
          */
         bind(CTSTokenPersistence.class).to(CTSTokenPersistenceImpl.class).in(Scopes.SINGLETON);
+
+        /*
+        Bind the class which hands tokens to the CTS asynchronous task queue when asynchronous persistence is enabled.
+         */
+        bind(CTSTokenPersistenceQueue.class).in(Scopes.SINGLETON);
     }
 
     @Provides
@@ -0,0 +1,97 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.sts.tokengeneration;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
+import org.forgerock.openam.tokens.TokenType;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CTSTokenPersistenceQueueTest {
+    private CTSPersistentStore mockStore;
+    private Logger mockLogger;
+    private CTSTokenPersistenceQueue queue;
+
+    @BeforeMethod
+    public void setUp() {
+        mockStore = mock(CTSPersistentStore.class);
+        mockLogger = mock(Logger.class);
+        queue = new CTSTokenPersistenceQueue(mockStore, mockLogger, true);
+    }
+
+    @Test
+    public void testTokensAreHandedToTheCTSAsynchronousTaskQueue() throws Exception {
+        Token token = new Token("one", TokenType.STS);
+
+        queue.enqueue(token);
+
+        verify(mockStore).createAsync(eq(token), any(ResultHandler.class));
+        verify(mockStore, never()).create(any(Token.class));
+        assertEquals(queue.getSubmittedCount(), 1);
+        assertEquals(queue.getPendingCount(), 1);
+    }
+
+    @Test
+    public void testAsynchronousResultsAreCounted() throws Exception {
+        Token persisted = new Token("one", TokenType.STS);
+        Token failed = new Token("two", TokenType.STS);
+        queue.enqueue(persisted);
+        queue.enqueue(failed);
+
+        handlerFor(persisted).processResults(persisted);
+        CoreTokenException error = new CoreTokenException("failed");
+        handlerFor(failed).processError(error);
+
+        assertEquals(queue.getPersistedCount(), 1);
+        assertEquals(queue.getFailedCount(), 1);
+        assertEquals(queue.getPendingCount(), 0);
+        verify(mockLogger).error(any(String.class), eq(error));
+    }
+
+    @Test
+    public void testTokenIsPersistedOnCallingThreadWhenTheCTSCannotQueueIt() throws Exception {
+        Token token = new Token("one", TokenType.STS);
+        doThrow(new CoreTokenException("queue full")).when(mockStore)
+                .createAsync(eq(token), any(ResultHandler.class));
+
+        queue.enqueue(token);
+
+        verify(mockStore).create(token);
+        assertEquals(queue.getCallerPersistedCount(), 1);
+        assertEquals(queue.getSubmittedCount(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResultHandler<Token, CoreTokenException> handlerFor(Token token) throws CoreTokenException {
+        ArgumentCaptor<ResultHandler> captor = ArgumentCaptor.forClass(ResultHandler.class);
+        verify(mockStore).createAsync(eq(token), captor.capture());
+        return captor.getValue();
+    }
+}
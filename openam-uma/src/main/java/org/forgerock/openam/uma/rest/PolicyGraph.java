@@ -57,6 +57,11 @@ import org.jgrapht.graph.DirectedMultigraph;
  * <p>
  * Clients should construct the object with the Resource representation of the policies, then
  * call the {@link #computeGraph()} method before using the other public methods.
+ * <p>
+ * Once computed, the graph can be kept up to date with {@link #policyCreated(ResourceResponse)} and
+ * {@link #policyDeleted(String)}, which apply the change to the affected edges only. The next call to
+ * {@link #computeGraph()} then recomputes the rights of the users only if the changed edges are reachable from the
+ * resource owner, and otherwise only revalidates the users whose incoming edges changed.
  */
 public class PolicyGraph implements QueryResourceHandler, ExceptionHandler<ResourceException>,
         ResultHandler<QueryResponse> {
@@ -69,6 +74,9 @@ public class PolicyGraph implements QueryResourceHandler, ExceptionHandler<Resou
     private final ResourceSetDescription resourceSet;
     private final DirectedMultigraph<Object, PolicyEdge> graph;
     private final Map<String, PolicyScopes> policyRights;
+    private final Map<String, JsonValue> policies;
+    private final Set<String> changedOwners;
+    private final Set<String> changedSubjects;
     private Map<String, Set<String>> rights;
     private Set<String> invalidUsers;
     private Boolean complete = null;
@@ -83,6 +91,9 @@ public class PolicyGraph implements QueryResourceHandler, ExceptionHandler<Resou
         this.resourceSet = resourceSet;
         this.graph = new DirectedMultigraph<>(PolicyEdge.class);
         this.policyRights = new HashMap<>();
+        this.policies = new HashMap<>();
+        this.changedOwners = new HashSet<>();
+        this.changedSubjects = new HashSet<>();
     }
 
     @Override
@@ -94,6 +105,9 @@ public class PolicyGraph implements QueryResourceHandler, ExceptionHandler<Resou
             if (!policyRights.containsKey(subject)) {
                 policyRights.put(subject, new PolicyScopes(subject));
             }
+            if (policy.getId() != null) {
+                policies.put(policy.getId(), policyContent);
+            }
         }
 
         final PolicyScopes policyScopes = policyRights.get(subject);
@@ -103,6 +117,50 @@ public class PolicyGraph implements QueryResourceHandler, ExceptionHandler<Resou
         return true;
     }
 
+    /**
+     * Adds a newly created policy to the graph. The graph must be recomputed before it is used again.
+     * @param policy The created policy.
+     * @return {@code false} if the policy does not identify its owner and subject, and so cannot be added.
+     */
+    public boolean policyCreated(ResourceResponse policy) {
+        JsonValue policyContent = policy.getContent();
+        String owner = policyContent.get(OWNER_KEY).asString();
+        String subject = UmaPolicyUtils.getPolicySubject(policyContent);
+        if (policy.getId() == null || owner == null || subject == null) {
+            return false;
+        }
+        policyDeleted(policy.getId());
+        handleResource(policy);
+        changedOwners.add(owner);
+        changedSubjects.add(subject);
+        return true;
+    }
+
+    /**
+     * Removes a deleted policy from the graph. The graph must be recomputed before it is used again.
+     * @param policyId The ID of the deleted policy.
+     */
+    public void policyDeleted(String policyId) {
+        JsonValue removed = policies.remove(policyId);
+        if (removed == null) {
+            return;
+        }
+        String subject = UmaPolicyUtils.getPolicySubject(removed);
+        PolicyScopes oldScopes = policyRights.remove(subject);
+        for (PolicyEdge edge : oldScopes.incomingEdges.values()) {
+            graph.removeEdge(edge);
+        }
+        PolicyScopes newScopes = new PolicyScopes(subject);
+        policyRights.put(subject, newScopes);
+        for (JsonValue policy : policies.values()) {
+            if (subject.equals(UmaPolicyUtils.getPolicySubject(policy))) {
+                newScopes.addScopes(policy.get(OWNER_KEY).asString(), policy);
+            }
+        }
+        changedOwners.add(removed.get(OWNER_KEY).asString());
+        changedSubjects.add(subject);
+    }
+
     /**
      * Computes the graph of rights contained within the policy engine policies.
      */
@@ -111,18 +169,45 @@ public class PolicyGraph implements QueryResourceHandler, ExceptionHandler<Resou
             throw new IllegalStateException("Policies not fully loaded");
         }
 
-        rights = findRights();
+        if (rights != null && !isReachable(changedOwners)) {
+            // The changed edges cannot carry any rights, so only the validity of their subjects can have changed
+            for (String subject : changedSubjects) {
+                invalidUsers.remove(subject);
+                if (rights.containsKey(subject) && !hasValidPolicies(subject, rights.get(subject))) {
+                    invalidUsers.add(subject);
+                }
+            }
+        } else {
+            rights = findRights();
 
-        invalidUsers = new HashSet<>();
-        for (Map.Entry<String, Set<String>> userRights : rights.entrySet()) {
-            Set<String> grantedRights = userRights.getValue();
-            PolicyScopes policyScopes = policyRights.get(userRights.getKey());
-            Set<String> resharedRights = policyScopes.activeScopePolicies.keySet();
-            Set<String> disabledRights = policyScopes.inactiveScopePolicies.keySet();
-            if (!grantedRights.equals(resharedRights) || !Sets.intersection(disabledRights, grantedRights).isEmpty()) {
-                invalidUsers.add(userRights.getKey());
+            invalidUsers = new HashSet<>();
+            for (Map.Entry<String, Set<String>> userRights : rights.entrySet()) {
+                if (!hasValidPolicies(userRights.getKey(), userRights.getValue())) {
+                    invalidUsers.add(userRights.getKey());
+                }
             }
         }
+        changedOwners.clear();
+        changedSubjects.clear();
+    }
+
+    private boolean isReachable(Set<String> owners) {
+        for (String owner : owners) {
+            if (resourceOwner.equals(owner) || rights.containsKey(owner)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasValidPolicies(String user, Set<String> grantedRights) {
+        PolicyScopes policyScopes = policyRights.get(user);
+        if (policyScopes == null) {
+            return grantedRights.isEmpty();
+        }
+        Set<String> resharedRights = policyScopes.activeScopePolicies.keySet();
+        Set<String> disabledRights = policyScopes.inactiveScopePolicies.keySet();
+        return grantedRights.equals(resharedRights) && Sets.intersection(disabledRights, grantedRights).isEmpty();
     }
 
     /**
@@ -0,0 +1,343 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.uma.rest;
+
+import static org.forgerock.openam.uma.UmaConstants.UMA_POLICY_SCHEME;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openam.entitlement.indextree.IndexChangeManager;
+import org.forgerock.openam.entitlement.indextree.events.ErrorEventType;
+import org.forgerock.openam.entitlement.indextree.events.IndexChangeEvent;
+import org.forgerock.openam.entitlement.indextree.events.IndexChangeObserver;
+import org.forgerock.openam.entitlement.indextree.events.ModificationEvent;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Cache of computed {@link PolicyGraph}s, one per resource set, which are kept up to date with the policies created
+ * and deleted by the UMA policy service rather than being rebuilt from every policy of the resource set.
+ * <p>
+ * Only graphs which correctly reflect the policy engine are cached. A graph is evicted as soon as a change cannot be
+ * applied incrementally, or the policy engine needs updating to match it. Graphs are also evicted when the policy
+ * store notifies a change to the policies of their resource set made by other servers or directly through the policy
+ * engine, and expire after a configurable time in case a notification is missed. The notifications of the changes
+ * applied through {@link #policiesCreated} and {@link #policiesDeleted} are expected, and do not evict the graph they
+ * were applied to.
+ * <p>
+ * Caching is enabled by default, and is disabled with the {@link #CACHE_ENABLED} system property.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class PolicyGraphCache implements IndexChangeObserver {
+
+    /**
+     * System property enabling the policy graph cache.
+     */
+    public static final String CACHE_ENABLED = "org.forgerock.openam.uma.policyGraph.cache.enabled";
+    /**
+     * System property defining the maximum number of resource sets whose graph is cached.
+     */
+    public static final String CACHE_SIZE = "org.forgerock.openam.uma.policyGraph.cache.size";
+    /**
+     * System property defining how long, in seconds, a graph is cached for.
+     */
+    public static final String CACHE_TTL = "org.forgerock.openam.uma.policyGraph.cache.ttl";
+
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int DEFAULT_CACHE_TTL = 60;
+    /** How long, in seconds, the policy store is expected to take at most to notify this server of its own change. */
+    private static final int LOCAL_CHANGE_TIMEOUT = 60;
+
+    private final Debug debug;
+    private final boolean enabled;
+    private final Cache<String, PolicyGraph> graphs;
+    /** The number of changes made by this server to the policies of each resource set yet to be notified. */
+    private final Cache<String, AtomicInteger> localChanges;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong incrementalUpdates = new AtomicLong();
+    private final AtomicLong fullComputations = new AtomicLong();
+    private final AtomicLong incrementalUpdateTime = new AtomicLong();
+    private final AtomicLong fullComputationTime = new AtomicLong();
+
+    /**
+     * Creates an instance of the {@code PolicyGraphCache} configured from the system properties.
+     *
+     * @param debug An instance of the REST {@code Debug}.
+     * @param indexChangeManager Notifies the changes made to the policy store.
+     */
+    @Inject
+    public PolicyGraphCache(@Named("frRest") Debug debug, IndexChangeManager indexChangeManager) {
+        this(debug, SystemProperties.getAsBoolean(CACHE_ENABLED, true),
+                SystemProperties.getAsInt(CACHE_SIZE, DEFAULT_CACHE_SIZE),
+                SystemProperties.getAsInt(CACHE_TTL, DEFAULT_CACHE_TTL));
+        if (enabled) {
+            indexChangeManager.registerObserver(this);
+        }
+    }
+
+    PolicyGraphCache(Debug debug, boolean enabled, int size, int ttlSeconds) {
+        this.debug = debug;
+        this.enabled = enabled;
+        this.graphs = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.localChanges = CacheBuilder.newBuilder()
+                .expireAfterWrite(LOCAL_CHANGE_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Returns the cached graph of the resource set, recomputed to take into account the changes applied to it since
+     * it was cached, if the policy engine needs no update to match it. Otherwise the graph is removed from the cache,
+     * so that the update is computed from a graph loaded from the policy store, which no other request can modify.
+     *
+     * @param resourceSetId The resource set ID.
+     * @return The valid computed graph, or {@code null} if there is no cached graph for the resource set or the
+     * policy engine needs updating.
+     */
+    public PolicyGraph get(String resourceSetId) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(resourceSetId);
+        PolicyGraph graph = graphs.getIfPresent(key);
+        if (graph == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        synchronized (graph) {
+            long start = System.nanoTime();
+            graph.computeGraph();
+            recordIncrementalUpdate(resourceSetId, System.nanoTime() - start);
+            if (graph.isValid()) {
+                hits.incrementAndGet();
+                return graph;
+            }
+            graphs.asMap().remove(key, graph);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a graph computed from all the policies of the resource set, if it reflects the policy engine.
+     *
+     * @param resourceSetId The resource set ID.
+     * @param graph The computed graph.
+     * @param computationTime The time it took to load and compute the graph, in nanoseconds.
+     */
+    public void put(String resourceSetId, PolicyGraph graph, long computationTime) {
+        fullComputations.incrementAndGet();
+        fullComputationTime.addAndGet(computationTime);
+        if (enabled && graph.isValid()) {
+            graphs.put(key(resourceSetId), graph);
+        }
+    }
+
+    /**
+     * Applies the creation of policies to the cached graph of the resource set.
+     *
+     * @param resourceSetId The resource set ID.
+     * @param policies The created policies.
+     */
+    public void policiesCreated(String resourceSetId, Collection<ResourceResponse> policies) {
+        String key = key(resourceSetId);
+        recordLocalChanges(key, policies.size());
+        PolicyGraph graph = enabled ? graphs.getIfPresent(key) : null;
+        if (graph != null) {
+            synchronized (graph) {
+                for (ResourceResponse policy : policies) {
+                    if (!graph.policyCreated(policy)) {
+                        graphs.asMap().remove(key, graph);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the deletion of policies to the cached graph of the resource set.
+     *
+     * @param resourceSetId The resource set ID.
+     * @param policies The deleted policies.
+     */
+    public void policiesDeleted(String resourceSetId, Collection<ResourceResponse> policies) {
+        String key = key(resourceSetId);
+        recordLocalChanges(key, policies.size());
+        PolicyGraph graph = enabled ? graphs.getIfPresent(key) : null;
+        if (graph != null) {
+            synchronized (graph) {
+                for (ResourceResponse policy : policies) {
+                    graph.policyDeleted(policy.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached graph of the resource set, after a change which cannot be applied incrementally.
+     *
+     * @param resourceSetId The resource set ID.
+     */
+    public void invalidate(String resourceSetId) {
+        graphs.invalidate(key(resourceSetId));
+    }
+
+    /**
+     * Removes every cached graph.
+     */
+    public void invalidateAll() {
+        graphs.invalidateAll();
+    }
+
+    /**
+     * Evicts the graph of the resource set whose policies changed in the policy store, unless the change was applied
+     * to the graph by this server. Every graph is evicted if changes may have been missed.
+     *
+     * @param event The policy store change event.
+     */
+    @Override
+    public void update(IndexChangeEvent event) {
+        if (event instanceof ModificationEvent) {
+            String pathIndex = ((ModificationEvent) event).getPathIndex();
+            if (pathIndex != null && pathIndex.regionMatches(true, 0, UMA_POLICY_SCHEME, 0,
+                    UMA_POLICY_SCHEME.length())) {
+                String resourceSetId = pathIndex.substring(UMA_POLICY_SCHEME.length());
+                while (resourceSetId.endsWith("/")) {
+                    resourceSetId = resourceSetId.substring(0, resourceSetId.length() - 1);
+                }
+                if (!consumeLocalChange(key(resourceSetId))) {
+                    invalidate(resourceSetId);
+                }
+            }
+        } else if (event.getType() == ErrorEventType.SEARCH_FAILURE) {
+            localChanges.invalidateAll();
+            invalidateAll();
+        }
+    }
+
+    /**
+     * @return The number of requests for a valid graph which was cached.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of requests for a graph which was not cached.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of times a cached graph was recomputed after incremental changes.
+     */
+    public long getIncrementalUpdateCount() {
+        return incrementalUpdates.get();
+    }
+
+    /**
+     * @return The total time, in nanoseconds, spent recomputing cached graphs.
+     */
+    public long getIncrementalUpdateTime() {
+        return incrementalUpdateTime.get();
+    }
+
+    /**
+     * @return The number of times a graph was computed from all the policies of its resource set.
+     */
+    public long getFullComputationCount() {
+        return fullComputations.get();
+    }
+
+    /**
+     * @return The total time, in nanoseconds, spent loading and computing graphs from all the policies of their
+     * resource set.
+     */
+    public long getFullComputationTime() {
+        return fullComputationTime.get();
+    }
+
+    /**
+     * Policy path indexes may be normalised to lower case, so graphs are cached under the lower case resource set ID.
+     */
+    private static String key(String resourceSetId) {
+        return resourceSetId.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Records the changes made by this server to the policies of a resource set, each of which the policy store
+     * notifies once.
+     */
+    private void recordLocalChanges(String key, int count) {
+        if (!enabled || count == 0) {
+            return;
+        }
+        AtomicInteger pending = localChanges.asMap().putIfAbsent(key, new AtomicInteger(count));
+        if (pending != null) {
+            pending.addAndGet(count);
+        }
+    }
+
+    /**
+     * Counts down the changes made by this server to the policies of a resource set, without going below zero.
+     *
+     * @return Whether a change made by this server was yet to be notified.
+     */
+    private boolean consumeLocalChange(String key) {
+        AtomicInteger pending = localChanges.getIfPresent(key);
+        if (pending == null) {
+            return false;
+        }
+        int count = pending.get();
+        while (count > 0) {
+            if (pending.compareAndSet(count, count - 1)) {
+                return true;
+            }
+            count = pending.get();
+        }
+        return false;
+    }
+
+    private void recordIncrementalUpdate(String resourceSetId, long time) {
+        incrementalUpdates.incrementAndGet();
+        incrementalUpdateTime.addAndGet(time);
+        if (debug.messageEnabled()) {
+            debug.message("PolicyGraphCache: recomputed graph of resource set " + resourceSetId + " in "
+                    + TimeUnit.NANOSECONDS.toMicros(time) + "us");
+        }
+    }
+}
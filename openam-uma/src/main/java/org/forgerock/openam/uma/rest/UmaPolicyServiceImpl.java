@@ -105,6 +105,7 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
     private final Debug debug;
     private final UmaSettingsFactory umaSettingsFactory;
     private final ExtensionFilterManager extensionFilterManager;
+    private final PolicyGraphCache policyGraphCache;
 
     /**
      * Creates an instance of the {@code UmaPolicyServiceImpl}.
@@ -118,13 +119,15 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
      * @param debug An instance of the REST {@code Debug}.
      * @param umaSettingsFactory An instance of the {@code UmaSettingsFactory}.
      * @param extensionFilterManager An instance of the {@code ExtensionFilterManager}.
+     * @param policyGraphCache An instance of the {@code PolicyGraphCache}.
      */
     @Inject
     public UmaPolicyServiceImpl(PolicyResourceDelegate policyResourceDelegate,
             ResourceSetStoreFactory resourceSetStoreFactory, Config<UmaAuditLogger> auditLogger,
             ContextHelper contextHelper, UmaPolicyEvaluatorFactory policyEvaluatorFactory,
             CoreServicesWrapper coreServicesWrapper, @Named("frRest") Debug debug,
-            UmaSettingsFactory umaSettingsFactory, ExtensionFilterManager extensionFilterManager) {
+            UmaSettingsFactory umaSettingsFactory, ExtensionFilterManager extensionFilterManager,
+            PolicyGraphCache policyGraphCache) {
         this.policyResourceDelegate = policyResourceDelegate;
         this.resourceSetStoreFactory = resourceSetStoreFactory;
         this.auditLogger = auditLogger;
@@ -134,6 +137,7 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
         this.debug = debug;
         this.umaSettingsFactory = umaSettingsFactory;
         this.extensionFilterManager = extensionFilterManager;
+        this.policyGraphCache = policyGraphCache;
     }
 
     private JsonValue resolveUsernameToUID(final Context context, JsonValue policy) throws BadRequestException {
@@ -258,6 +262,12 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
                         return policyResourceDelegate.createPolicies(context, umaPolicy.asUnderlyingPolicies(userId));
                     }
                 })
+                .thenOnResult(new ResultHandler<List<ResourceResponse>>() {
+                    @Override
+                    public void handleResult(List<ResourceResponse> createdPolicies) {
+                        policyGraphCache.policiesCreated(resourceSet.getId(), createdPolicies);
+                    }
+                })
                 .thenAlways(afterResourceShared(umaPolicy))
                 .thenAsync(new UpdatePolicyGraphStatesFunction<List<ResourceResponse>>(resourceSet, context))
                 .thenAsync(new AuditAndProduceUmaPolicyFunction(resourceSet, context));
@@ -324,6 +334,11 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
 
         @Override
         public Promise<T, ResourceException> apply(final T result) {
+            if (policyGraphCache.get(resourceSet.getId()) != null) {
+                // The cached graph has been recomputed with the changes made to its policies and needs no update
+                return newResultPromise(result);
+            }
+            final long start = System.nanoTime();
             final QueryRequest queryRequest = Requests.newQueryRequest("")
                     .setQueryFilter(QueryFilter.equalTo(new JsonPointer("resourceTypeUuid"), resourceSet.getId()));
             final PolicyGraph policyGraph = new PolicyGraph(resourceSet);
@@ -334,21 +349,26 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
                         public Promise<T, ResourceException> apply(QueryResponse queryResult) {
                             // All policies are now loaded, so compute the graph and update if necessary
                             policyGraph.computeGraph();
-                            if (!policyGraph.isValid()) {
-                                // Graph needs updating, so return a promise that completes once the update is done.
-                                return policyGraph.update(context, policyResourceDelegate).then(
-                                        new Function<List<List<ResourceResponse>>, T, ResourceException>() {
-                                            @Override
-                                            public T apply(List<List<ResourceResponse>> lists) {
-                                                return result;
-                                            }
-                                        });
-                            }
-                            // No update required, complete straight away.
-                            return newResultPromise(result);
+                            policyGraphCache.put(resourceSet.getId(), policyGraph, System.nanoTime() - start);
+                            return updatePolicyGraphStates(policyGraph, result);
                         }
                     });
         }
+
+        private Promise<T, ResourceException> updatePolicyGraphStates(PolicyGraph policyGraph, final T result) {
+            if (!policyGraph.isValid()) {
+                // Graph needs updating, so return a promise that completes once the update is done.
+                return policyGraph.update(context, policyResourceDelegate).then(
+                        new Function<List<List<ResourceResponse>>, T, ResourceException>() {
+                            @Override
+                            public T apply(List<List<ResourceResponse>> lists) {
+                                return result;
+                            }
+                        });
+            }
+            // No update required, complete straight away.
+            return newResultPromise(result);
+        }
     }
 
     private class AuditAndProduceUmaPolicyFunction implements AsyncFunction<List<ResourceResponse>, UmaPolicy, ResourceException> {
@@ -497,8 +517,20 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
                         policyResourceDelegate.deletePolicies(context, underlyingPolicyIds);
                     }
                 })
+                .thenAlways(invalidatePolicyGraph(resourceSetId))
                 .thenAsync(new UpdatePolicyGraphStatesFunction<UmaPolicy>(resourceSet, context))
-                .thenAsync(new UpdateUmaPolicyFunction(context, updatedUmaPolicy, resourceSetId, resourceSet));
+                .thenAsync(new UpdateUmaPolicyFunction(context, updatedUmaPolicy, resourceSetId, resourceSet))
+                .thenAlways(invalidatePolicyGraph(resourceSetId));
+    }
+
+    private Runnable invalidatePolicyGraph(final String resourceSetId) {
+        // Updates are made by several asynchronous calls, so cannot be applied to the cached graph incrementally
+        return new Runnable() {
+            @Override
+            public void run() {
+                policyGraphCache.invalidate(resourceSetId);
+            }
+        };
     }
 
     private class UpdateUmaPolicyFunction implements AsyncFunction<UmaPolicy, UmaPolicy, ResourceException> {
@@ -581,6 +613,12 @@ public class UmaPolicyServiceImpl implements UmaPolicyService {
                         return policyResourceDelegate.deletePolicies(context, value.getUnderlyingPolicyIds());
                     }
                 })
+                .thenOnResult(new ResultHandler<List<ResourceResponse>>() {
+                    @Override
+                    public void handleResult(List<ResourceResponse> deletedPolicies) {
+                        policyGraphCache.policiesDeleted(resourceSetId, deletedPolicies);
+                    }
+                })
                 .thenAsync(new UpdatePolicyGraphStatesFunction<List<ResourceResponse>>(resourceSet, context))
                 .thenAsync(new AsyncFunction<List<ResourceResponse>, Void, ResourceException>() {
                     @Override
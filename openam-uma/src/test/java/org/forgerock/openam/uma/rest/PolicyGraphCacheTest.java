@@ -0,0 +1,152 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.uma.rest;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.*;
+import static org.forgerock.openam.uma.UmaConstants.BackendPolicy.*;
+import static org.forgerock.openam.uma.UmaConstants.UmaPolicy.*;
+import static org.mockito.Mockito.mock;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.Responses;
+import org.forgerock.openam.entitlement.indextree.events.ErrorEventType;
+import org.forgerock.openam.entitlement.indextree.events.ModificationEventType;
+import org.forgerock.openam.oauth2.ResourceSetDescription;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class PolicyGraphCacheTest {
+
+    private static final String RESOURCE_SET_ID = "a1b2-c3d4";
+    private static final String OTHER_RESOURCE_SET_ID = "e5f6-a7b8";
+    private static final String ALICE = "Alice";
+    private static final String BOB = "Bob";
+
+    private PolicyGraphCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        cache = new PolicyGraphCache(mock(Debug.class), true, 10, 60);
+        cache.put(RESOURCE_SET_ID, validGraph(RESOURCE_SET_ID), 0);
+        cache.put(OTHER_RESOURCE_SET_ID, validGraph(OTHER_RESOURCE_SET_ID), 0);
+    }
+
+    @Test
+    public void shouldReturnValidCachedGraph() {
+        // When
+        PolicyGraph graph = cache.get(RESOURCE_SET_ID);
+
+        // Then
+        assertThat(graph).isNotNull();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotReturnCachedGraphNeedingAnUpdate() {
+        // Given
+        cache.policiesCreated(RESOURCE_SET_ID, singletonList(makePolicy(ALICE, BOB, false, "VIEW")));
+
+        // When
+        PolicyGraph graph = cache.get(RESOURCE_SET_ID);
+
+        // Then
+        assertThat(graph).isNull();
+        assertThat(cache.get(RESOURCE_SET_ID)).isNull();
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldEvictGraphWhenItsPoliciesChangeInThePolicyStore() {
+        // When
+        cache.update(ModificationEventType.ADD.createEvent("uma://" + RESOURCE_SET_ID.toUpperCase(), "/"));
+
+        // Then
+        assertThat(cache.get(RESOURCE_SET_ID)).isNull();
+        assertThat(cache.get(OTHER_RESOURCE_SET_ID)).isNotNull();
+    }
+
+    @Test
+    public void shouldKeepGraphWhenThePolicyStoreNotifiesChangesMadeByThisServer() {
+        // Given
+        cache.policiesDeleted(RESOURCE_SET_ID, singletonList(makePolicy(ALICE, "Carol", true, "VIEW")));
+
+        // When
+        cache.update(ModificationEventType.DELETE.createEvent("uma://" + RESOURCE_SET_ID, "/"));
+
+        // Then
+        assertThat(cache.get(RESOURCE_SET_ID)).isNotNull();
+    }
+
+    @Test
+    public void shouldEvictGraphWhenOtherServersChangeItsPoliciesAfterChangesMadeByThisServer() {
+        // Given
+        cache.policiesDeleted(RESOURCE_SET_ID, singletonList(makePolicy(ALICE, "Carol", true, "VIEW")));
+        cache.update(ModificationEventType.DELETE.createEvent("uma://" + RESOURCE_SET_ID, "/"));
+
+        // When
+        cache.update(ModificationEventType.ADD.createEvent("uma://" + RESOURCE_SET_ID, "/"));
+
+        // Then
+        assertThat(cache.get(RESOURCE_SET_ID)).isNull();
+    }
+
+    @Test
+    public void shouldIgnoreChangesToOtherPolicies() {
+        // When
+        cache.update(ModificationEventType.DELETE.createEvent("http://www.example.com/" + RESOURCE_SET_ID, "/"));
+
+        // Then
+        assertThat(cache.get(RESOURCE_SET_ID)).isNotNull();
+    }
+
+    @Test
+    public void shouldEvictEveryGraphWhenChangesMayHaveBeenMissed() {
+        // When
+        cache.update(ErrorEventType.SEARCH_FAILURE.createEvent());
+
+        // Then
+        assertThat(cache.get(RESOURCE_SET_ID)).isNull();
+        assertThat(cache.get(OTHER_RESOURCE_SET_ID)).isNull();
+    }
+
+    private static PolicyGraph validGraph(String resourceSetId) {
+        PolicyGraph graph = new PolicyGraph(new ResourceSetDescription(resourceSetId, "CLIENT_ID", ALICE, null));
+        graph.handleResource(makePolicy(ALICE, BOB, true, "VIEW"));
+        graph.computeGraph();
+        return graph;
+    }
+
+    private static ResourceResponse makePolicy(String owner, String subject, boolean active, String... scopes) {
+        String policyId = owner + "-" + subject + "-" + active;
+        JsonValue policy = json(object(
+                field("_id", policyId),
+                field(PolicyGraph.OWNER_KEY, owner),
+                field(SUBJECT_KEY, object(field(BACKEND_POLICY_SUBJECT_CLAIM_VALUE_KEY, subject))),
+                field(PolicyGraph.ACTIVE_KEY, active)
+        ));
+        for (String scope : scopes) {
+            policy.putPermissive(new JsonPointer(BACKEND_POLICY_ACTION_VALUES_KEY + "/" + scope), true);
+        }
+        return Responses.newResourceResponse(policyId, String.valueOf(policyId.hashCode()), policy);
+    }
+}
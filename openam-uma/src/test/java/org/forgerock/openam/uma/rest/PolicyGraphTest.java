@@ -133,6 +133,38 @@ public class PolicyGraphTest {
         assertThat(graph.isValid()).isTrue();
     }
 
+    /*
+      Alice no longer shares with Dave, so his active reshare to Ed is no longer valid.
+     */
+    @Test
+    public void shouldRecomputeRightsWhenReachablePolicyIsDeleted() throws Exception {
+        // Given
+        PolicyGraph graph = makePolicyGraph(VALID_POLICIES);
+        graph.computeGraph();
+
+        // When
+        graph.policyDeleted(ALICE + "-" + DAVE + "-true");
+        graph.computeGraph();
+
+        // Then
+        assertThat(graph.isValid()).isFalse();
+    }
+
+    @Test
+    public void shouldRevalidateSubjectOfCreatedPolicy() throws Exception {
+        // Given
+        PolicyGraph graph = makePolicyGraph(VALID_POLICIES);
+        graph.computeGraph();
+
+        // When
+        boolean applied = graph.policyCreated(makePolicy(DAVE, ED, false, EDIT));
+        graph.computeGraph();
+
+        // Then
+        assertThat(applied).isTrue();
+        assertThat(graph.isValid()).isTrue();
+    }
+
     /*
       VIEW scope is accessible to Dave, so his VIEW reshare to Ed should be active, not inactive.
      */
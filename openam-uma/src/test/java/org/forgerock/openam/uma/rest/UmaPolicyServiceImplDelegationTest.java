@@ -148,7 +148,7 @@ public class UmaPolicyServiceImplDelegationTest {
 
         policyService = new UmaPolicyServiceImpl(policyResourceDelegate, resourceSetStoreFactory, lazyAuditLogger,
                 contextHelper, policyEvaluatorFactory, coreServicesWrapper, debug, umaSettingsFactory,
-                extensionFilterManager);
+                extensionFilterManager, mock(PolicyGraphCache.class));
 
         given(contextHelper.getRealm(Matchers.<Context>anyObject())).willReturn("REALM");
 
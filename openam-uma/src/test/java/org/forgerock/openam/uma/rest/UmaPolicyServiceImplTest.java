@@ -135,7 +135,7 @@ public class UmaPolicyServiceImplTest {
 
         policyService = new UmaPolicyServiceImpl(policyResourceDelegate, resourceSetStoreFactory, lazyAuditLogger,
                 contextHelper, policyEvaluatorFactory, coreServicesWrapper, debug, umaSettingsFactory,
-                extensionFilterManager);
+                extensionFilterManager, mock(PolicyGraphCache.class));
 
         given(contextHelper.getRealm(Matchers.<Context>anyObject())).willReturn("REALM");
         given(contextHelper.getUserId(Matchers.<Context>anyObject())).willReturn(RESOURCE_OWNER_ID);